@@ -1,38 +1,70 @@
 package com.bistro.controller;
 
+import com.bistro.model.DashboardStats;
+import com.bistro.model.Order;
 import com.bistro.model.User;
+import com.bistro.service.CartEngine;
+import com.bistro.service.CartReaper;
+import com.bistro.service.CheckoutQueue;
+import com.bistro.service.DashboardService;
 import com.bistro.service.MenuItemService;
+import com.bistro.service.OrderEventStream;
 import com.bistro.service.OrderService;
+import com.bistro.service.OrderStatsEngine;
+import com.bistro.service.RevenueRollupEngine;
 import com.bistro.service.UserService;
+import com.bistro.service.impl.DashboardServiceImpl;
 import com.bistro.service.impl.MenuItemServiceImpl;
 import com.bistro.service.impl.OrderServiceImpl;
 import com.bistro.service.impl.UserServiceImpl;
+import com.bistro.util.JdbcMetrics;
+import com.bistro.util.OrderExportWriter;
+import com.bistro.util.ReadRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Controller for handling admin-specific operations.
  */
 @WebServlet("/api/admin/*")
 public class AdminController extends BaseController {
+    private static final Logger logger = LoggerFactory.getLogger(AdminController.class);
+    private static final int MAX_REBUILD_DAYS = 366;
+    private static final int EXPORT_BUFFER_BYTES = 16 * 1024;
+    
     private final UserService userService;
     private final MenuItemService menuItemService;
     private final OrderService orderService;
+    private final DashboardService dashboardService;
     
     public AdminController() {
         this.userService = new UserServiceImpl();
         this.menuItemService = new MenuItemServiceImpl();
         this.orderService = new OrderServiceImpl();
+        this.dashboardService = new DashboardServiceImpl();
     }
     
     @Override
@@ -59,9 +91,30 @@ public class AdminController extends BaseController {
                 // Extract user ID from path
                 int userId = Integer.parseInt(pathInfo.substring(pathInfo.lastIndexOf('/') + 1));
                 handleGetUserById(request, response, userId);
+            } else if (pathInfo.equals("/jdbc-stats")) {
+                handleJdbcStats(request, response);
+            } else if (pathInfo.equals("/checkout-stats")) {
+                sendJsonResponse(response, CheckoutQueue.getStats());
+            } else if (pathInfo.equals("/order-stream-stats")) {
+                sendJsonResponse(response, OrderEventStream.getStats());
+            } else if (pathInfo.equals("/cart-engine-stats")) {
+                sendJsonResponse(response, CartEngine.getStats());
+            } else if (pathInfo.equals("/cart-reaper-stats")) {
+                sendJsonResponse(response, CartReaper.getStats());
+            } else if (pathInfo.equals("/stats/live")) {
+                // Order figures from memory, no database query
+                sendJsonResponse(response, OrderStatsEngine.getSnapshot());
+            } else if (pathInfo.equals("/stats/timeseries")) {
+                handleTimeseries(request, response);
+            } else if (pathInfo.equals("/stats/rollups")) {
+                sendJsonResponse(response, RevenueRollupEngine.getStats());
+            } else if (pathInfo.equals("/export/orders")) {
+                handleExportOrders(request, response);
             } else {
                 sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Endpoint not found");
             }
+        } catch (IllegalArgumentException e) {
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
         } catch (Exception e) {
             sendErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Error processing request: " + e.getMessage());
         }
@@ -75,67 +128,48 @@ public class AdminController extends BaseController {
      * @throws Exception if an error occurs
      */
     private void handleDashboard(HttpServletRequest request, HttpServletResponse response) throws Exception {
-        // Get dashboard data
-        Map<String, Object> dashboardData = new HashMap<>();
-        
-        // Get all orders to calculate total revenue
-        var allOrders = orderService.getAllOrders();
-        
-        // Calculate total revenue directly from the database
-        java.math.BigDecimal totalRevenue = java.math.BigDecimal.ZERO;
-        try {
-            // Query the database directly for order totals
-            java.sql.Connection conn = com.bistro.util.DatabaseConfig.getConnection();
-            java.sql.PreparedStatement stmt = conn.prepareStatement("SELECT SUM(total_amount) FROM orders");
-            java.sql.ResultSet rs = stmt.executeQuery();
-            
-            if (rs.next()) {
-                java.math.BigDecimal dbTotal = rs.getBigDecimal(1);
-                if (dbTotal != null) {
-                    totalRevenue = dbTotal;
-                }
-            }
-            
-            rs.close();
-            stmt.close();
-            conn.close();
-            
-            // Log total revenue for debugging
-            System.out.println("Total revenue calculated from database: " + totalRevenue);
-        } catch (Exception e) {
-            System.err.println("Error calculating total revenue: " + e.getMessage());
-            e.printStackTrace();
-        }
-        
-        // Count orders by status
-        var pendingOrders = orderService.getOrdersByStatus("PENDING");
-        var preparingOrders = orderService.getOrdersByStatus("PREPARING");
-        var readyOrders = orderService.getOrdersByStatus("READY");
-        var deliveredOrders = orderService.getOrdersByStatus("DELIVERED");
-        var cancelledOrders = orderService.getOrdersByStatus("CANCELLED");
-        
-        // Create order status counts map as expected by the frontend
-        Map<String, Integer> orderStatusCounts = new HashMap<>();
-        orderStatusCounts.put("PENDING", pendingOrders.size());
-        orderStatusCounts.put("PREPARING", preparingOrders.size());
-        orderStatusCounts.put("READY", readyOrders.size());
-        orderStatusCounts.put("DELIVERED", deliveredOrders.size());
-        orderStatusCounts.put("CANCELLED", cancelledOrders.size());
+        // Counts, revenue and user total come from one cached aggregate query
+        DashboardStats stats = dashboardService.getStats();
         
         // Get recent orders with item details
-        var recentOrders = orderService.getRecentOrders(5);
+        List<Order> recentOrders = orderService.getRecentOrders(5);
+        List<Map<String, Object>> recentOrderMaps = new ArrayList<>(recentOrders.size());
+        for (Order order : recentOrders) {
+            recentOrderMaps.add(toDashboardOrder(order));
+        }
         
         // Format the data as expected by the frontend
-        dashboardData.put("totalOrders", allOrders.size());
-        dashboardData.put("totalRevenue", totalRevenue);
-        dashboardData.put("pendingOrders", pendingOrders.size());
-        dashboardData.put("totalUsers", userService.getAllUsers().size());
-        dashboardData.put("orderStatusCounts", orderStatusCounts);
-        dashboardData.put("recentOrders", recentOrders);
+        Map<String, Object> dashboardData = new HashMap<>();
+        dashboardData.put("totalOrders", stats.getTotalOrders());
+        dashboardData.put("totalRevenue", stats.getTotalRevenue());
+        dashboardData.put("pendingOrders", stats.getOrderCount("PENDING"));
+        dashboardData.put("totalUsers", stats.getTotalUsers());
+        dashboardData.put("orderStatusCounts", stats.getOrderStatusCounts());
+        dashboardData.put("recentOrders", recentOrderMaps);
+        dashboardData.put("statsComputedAt", stats.getComputedAt());
         
         sendJsonResponse(response, dashboardData);
     }
     
+    /**
+     * Flatten an order for the dashboard, with the amount as a plain number.
+     */
+    private Map<String, Object> toDashboardOrder(Order order) {
+        Map<String, Object> orderMap = new HashMap<>();
+        orderMap.put("id", order.getId());
+        orderMap.put("userId", order.getUserId());
+        orderMap.put("status", order.getStatus());
+        orderMap.put("totalAmount", order.getTotalAmount() != null ? order.getTotalAmount().doubleValue() : 0.0);
+        orderMap.put("orderDate", order.getOrderDate());
+        orderMap.put("deliveryDate", order.getDeliveryDate());
+        orderMap.put("deliveryAddress", order.getDeliveryAddress());
+        orderMap.put("paymentMethod", order.getPaymentMethod());
+        orderMap.put("paymentStatus", order.getPaymentStatus());
+        orderMap.put("specialInstructions", order.getSpecialInstructions());
+        orderMap.put("orderItems", order.getOrderItems());
+        return orderMap;
+    }
+    
     /**
      * Handle get users request.
      *
@@ -186,15 +220,158 @@ public class AdminController extends BaseController {
                 case "/users":
                     handleAddUser(request, response);
                     break;
+                case "/stats/rollups/rebuild":
+                    handleRebuildRollups(request, response);
+                    break;
+                case "/cart-reaper/pause":
+                    CartReaper.pause();
+                    sendJsonResponse(response, CartReaper.getStats());
+                    break;
+                case "/cart-reaper/resume":
+                    CartReaper.resume();
+                    sendJsonResponse(response, CartReaper.getStats());
+                    break;
                 default:
                     sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Endpoint not found");
                     break;
             }
+        } catch (IllegalArgumentException e) {
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
         } catch (Exception e) {
             sendErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Error processing request: " + e.getMessage());
         }
     }
     
+    /**
+     * Handle time-series request: orders, revenue and items sold per hour, day,
+     * week or month, read from the rollup tables only.
+     *
+     * @param request the HTTP request
+     * @param response the HTTP response
+     * @throws Exception if an error occurs
+     */
+    private void handleTimeseries(HttpServletRequest request, HttpServletResponse response) throws Exception {
+        Date to = parseRangeTime(request.getParameter("to"), true);
+        if (to == null) {
+            to = new Date();
+        }
+        Date from = parseRangeTime(request.getParameter("from"), false);
+        if (from == null) {
+            from = Date.from(to.toInstant().minus(30, ChronoUnit.DAYS));
+        }
+        sendJsonResponse(response, dashboardService.getTimeseries(from, to, request.getParameter("bucket")));
+    }
+    
+    /**
+     * Handle rollup rebuild request: queue every hour in the range to be
+     * recomputed from the orders table.
+     *
+     * @param request the HTTP request
+     * @param response the HTTP response
+     * @throws Exception if an error occurs
+     */
+    private void handleRebuildRollups(HttpServletRequest request, HttpServletResponse response) throws Exception {
+        Date from = parseRangeTime(request.getParameter("from"), false);
+        Date to = parseRangeTime(request.getParameter("to"), true);
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("'from' and 'to' are required");
+        }
+        if (!from.before(to) || to.getTime() - from.getTime() > MAX_REBUILD_DAYS * 86_400_000L) {
+            throw new IllegalArgumentException("Range must be positive and at most " + MAX_REBUILD_DAYS + " days");
+        }
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("queuedHours", RevenueRollupEngine.rebuild(from, to));
+        response.setStatus(HttpServletResponse.SC_ACCEPTED);
+        sendJsonResponse(response, result);
+    }
+    
+    /**
+     * Handle order export request: orders with their items in a date range as
+     * CSV or NDJSON, streamed from a forward-only cursor and gzip-compressed on
+     * the fly when the client accepts it. Memory use does not depend on the
+     * number of orders.
+     *
+     * @param request the HTTP request
+     * @param response the HTTP response
+     * @throws Exception if an error occurs before anything was sent
+     */
+    private void handleExportOrders(HttpServletRequest request, HttpServletResponse response) throws Exception {
+        String format = request.getParameter("format");
+        if (format == null || format.isEmpty()) {
+            format = "csv";
+        }
+        Date from = parseRangeTime(request.getParameter("from"), false);
+        Date to = parseRangeTime(request.getParameter("to"), true);
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("'from' and 'to' are required");
+        }
+        String status = request.getParameter("status");
+        if (status != null && status.isEmpty()) {
+            status = null;
+        }
+        // The order filter includes its end date; a range end is exclusive
+        Date lastIncluded = new Date(to.getTime() - 1);
+        
+        String extension = "csv".equalsIgnoreCase(format) ? "csv" : "ndjson";
+        String filename = "orders-" + request.getParameter("from") + "-to-" + request.getParameter("to") + "." + extension;
+        response.setContentType(OrderExportWriter.contentType(format));
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + filename.replaceAll("[^A-Za-z0-9._-]", "_") + "\"");
+        response.addHeader("Vary", "Accept-Encoding");
+        
+        boolean gzip = acceptsGzip(request);
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+        
+        GZIPOutputStream compressed = null;
+        try {
+            OutputStream body = response.getOutputStream();
+            if (gzip) {
+                compressed = new GZIPOutputStream(body, EXPORT_BUFFER_BYTES);
+                body = compressed;
+            }
+            Writer writer = new BufferedWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), EXPORT_BUFFER_BYTES);
+            OrderExportWriter export = OrderExportWriter.forFormat(format, writer);
+            
+            export.begin();
+            int count = orderService.streamOrders(status, from, lastIncluded, export::write);
+            export.finish();
+            if (compressed != null) {
+                compressed.finish();
+            }
+            logger.info("Exported {} orders as {}", count, extension);
+        } catch (Exception e) {
+            if (!response.isCommitted()) {
+                response.reset();
+                throw e;
+            }
+            // Headers are already sent; a truncated body (and an unfinished gzip stream) signals the failure
+            logger.error("Error while exporting orders, response truncated: {}", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Parse a range bound given as yyyy-MM-dd or yyyy-MM-ddTHH:mm in the server's
+     * time zone. A date alone as the end of a range includes that whole day.
+     *
+     * @return the time, or null if the value is empty
+     */
+    private Date parseRangeTime(String value, boolean endOfRange) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            LocalDateTime time = value.length() <= 10
+                    ? LocalDate.parse(value).plusDays(endOfRange ? 1 : 0).atStartOfDay()
+                    : LocalDateTime.parse(value);
+            return Date.from(time.atZone(ZoneId.systemDefault()).toInstant());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date '" + value + "'; use yyyy-MM-dd or yyyy-MM-ddTHH:mm");
+        }
+    }
+    
     /**
      * Handle add user request.
      *
@@ -369,6 +546,22 @@ public class AdminController extends BaseController {
                 // Extract user ID from path
                 int userId = Integer.parseInt(pathInfo.substring(pathInfo.lastIndexOf('/') + 1));
                 handleDeleteUser(request, response, userId);
+            } else if (pathInfo.equals("/jdbc-stats")) {
+                JdbcMetrics.reset();
+                
+                Map<String, Object> responseMap = new HashMap<>();
+                responseMap.put("success", true);
+                responseMap.put("message", "JDBC statistics reset");
+                
+                sendJsonResponse(response, responseMap);
+            } else if (pathInfo.equals("/checkout-stats")) {
+                CheckoutQueue.resetStats();
+                
+                Map<String, Object> responseMap = new HashMap<>();
+                responseMap.put("success", true);
+                responseMap.put("message", "Checkout statistics reset");
+                
+                sendJsonResponse(response, responseMap);
             } else {
                 sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Endpoint not found");
             }
@@ -377,6 +570,21 @@ public class AdminController extends BaseController {
         }
     }
     
+    /**
+     * Handle JDBC statistics request: latency, rows and errors per normalized SQL
+     * statement and per calling DAO method, plus read routing counters.
+     *
+     * @param request the HTTP request
+     * @param response the HTTP response
+     * @throws Exception if an error occurs
+     */
+    private void handleJdbcStats(HttpServletRequest request, HttpServletResponse response) throws Exception {
+        Map<String, Object> stats = JdbcMetrics.snapshot();
+        stats.put("readRouting", ReadRouter.getStats());
+        
+        sendJsonResponse(response, stats);
+    }
+    
     /**
      * Handle delete user request.
      *
@@ -407,77 +615,4 @@ public class AdminController extends BaseController {
             sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "User not found or could not be deleted");
         }
     }
-
-    @Override
-    protected void sendJsonResponse(HttpServletResponse response, Object object) throws IOException {
-        if (object instanceof Map<?, ?> && ((Map<?, ?>) object).containsKey("recentOrders")) {
-            // Special processing for dashboard data with recent orders
-            response.setContentType("application/json");
-            response.setCharacterEncoding("UTF-8");
-            
-            Map<String, Object> dashboardData = (Map<String, Object>) object;
-            List<?> recentOrders = (List<?>) dashboardData.get("recentOrders");
-            
-            if (recentOrders != null && !recentOrders.isEmpty() && recentOrders.get(0) instanceof com.bistro.model.Order) {
-                // Load all order amounts directly from the database
-                Map<Integer, java.math.BigDecimal> orderAmounts = new HashMap<>();
-                try (java.sql.Connection conn = com.bistro.util.DatabaseConfig.getConnection();
-                     java.sql.PreparedStatement stmt = conn.prepareStatement("SELECT id, total_amount FROM orders")) {
-                    try (java.sql.ResultSet rs = stmt.executeQuery()) {
-                        while (rs.next()) {
-                            int id = rs.getInt("id");
-                            java.math.BigDecimal amount = rs.getBigDecimal("total_amount");
-                            orderAmounts.put(id, amount);
-                            System.out.println("Retrieved totalAmount " + amount + " for order ID " + id + " from database for dashboard");
-                        }
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error retrieving order amounts from database for dashboard: " + e.getMessage());
-                }
-                
-                // Process the recent orders to update their totalAmount
-                List<Map<String, Object>> processedOrders = new ArrayList<>();
-                for (Object orderObj : recentOrders) {
-                    com.bistro.model.Order order = (com.bistro.model.Order) orderObj;
-                    Map<String, Object> orderMap = new HashMap<>();
-                    orderMap.put("id", order.getId());
-                    orderMap.put("userId", order.getUserId());
-                    orderMap.put("status", order.getStatus());
-                    
-                    // Use database value if available
-                    java.math.BigDecimal correctAmount = orderAmounts.get(order.getId());
-                    if (correctAmount != null) {
-                        // Convert BigDecimal to double for consistent JSON serialization
-                        double amount = correctAmount.doubleValue();
-                        orderMap.put("totalAmount", amount);
-                        System.out.println("Dashboard: Using DB totalAmount for order ID: " + order.getId() + ": " + amount);
-                    } else {
-                        orderMap.put("totalAmount", 0.0);
-                        System.out.println("Dashboard: No DB totalAmount found for order ID: " + order.getId() + ", using 0.0");
-                    }
-                    
-                    orderMap.put("orderDate", order.getOrderDate());
-                    orderMap.put("deliveryDate", order.getDeliveryDate());
-                    orderMap.put("deliveryAddress", order.getDeliveryAddress());
-                    orderMap.put("paymentMethod", order.getPaymentMethod());
-                    orderMap.put("paymentStatus", order.getPaymentStatus());
-                    orderMap.put("specialInstructions", order.getSpecialInstructions());
-                    orderMap.put("orderItems", order.getOrderItems());
-                    
-                    processedOrders.add(orderMap);
-                }
-                
-                // Replace the original orders with processed ones
-                dashboardData.put("recentOrders", processedOrders);
-            }
-            
-            // Convert to JSON and send
-            String json = objectMapper.writeValueAsString(dashboardData);
-            System.out.println("Sending dashboard JSON: " + json);
-            response.getWriter().print(json);
-        } else {
-            // Use default implementation for other objects
-            super.sendJsonResponse(response, object);
-        }
-    }
 }
@@ -2,6 +2,7 @@ package com.bistro.controller;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.bistro.model.User;
+import com.bistro.service.CartService;
 import com.bistro.service.UserService;
 import com.bistro.service.impl.UserServiceImpl;
 
@@ -87,6 +88,8 @@ public class AuthController extends BaseController {
                 session.setAttribute("user", user);
                 session.setAttribute("role", user.getRole());
                 session.setAttribute("userId", user.getId());
+                // The session's cart was resolved for the anonymous visitor
+                CartService.forgetCart(request);
                 
                 // Prepare response
                 Map<String, Object> responseMap = new HashMap<>();
@@ -136,6 +139,7 @@ public class AuthController extends BaseController {
             session.setAttribute("user", registeredUser);
             session.setAttribute("role", registeredUser.getRole());
             session.setAttribute("userId", registeredUser.getId());
+            CartService.forgetCart(request);
             
             // Prepare response
             Map<String, Object> responseMap = new HashMap<>();
@@ -162,6 +166,7 @@ public class AuthController extends BaseController {
         HttpSession session = request.getSession(false);
         
         if (session != null) {
+            CartService.forgetCart(request);
             session.invalidate();
         }
         
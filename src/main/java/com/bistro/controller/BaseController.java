@@ -2,6 +2,7 @@ package com.bistro.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.bistro.model.User;
+import com.bistro.util.EncodedJsonCache;
 
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -48,6 +49,123 @@ public abstract class BaseController extends HttpServlet {
         out.flush();
     }
     
+    /**
+     * Send a JSON body that is already encoded, gzip-compressed when the client
+     * accepts it and a compressed form exists. The length is known up front, so
+     * the bytes are written in one call.
+     *
+     * @param request the HTTP request
+     * @param response the HTTP response
+     * @param encoded the encoded body
+     * @throws IOException if an I/O error occurs
+     */
+    protected void sendEncodedJson(HttpServletRequest request, HttpServletResponse response,
+                                   EncodedJsonCache.Encoded encoded) throws IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.addHeader("Vary", "Accept-Encoding");
+        
+        byte[] bytes = encoded.getIdentity();
+        if (encoded.getGzip() != null && acceptsGzip(request)) {
+            bytes = encoded.getGzip();
+            response.setHeader("Content-Encoding", "gzip");
+            // The compressed bytes differ, so a strong validator becomes a weak one
+            String etag = response.getHeader("ETag");
+            if (etag != null && !etag.startsWith("W/")) {
+                response.setHeader("ETag", "W/" + etag);
+            }
+        }
+        
+        response.setContentLength(bytes.length);
+        response.getOutputStream().write(bytes);
+    }
+    
+    /**
+     * Whether the client accepts a gzip-encoded response.
+     */
+    protected boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            if (!parts[0].trim().equalsIgnoreCase("gzip")) {
+                continue;
+            }
+            // gzip;q=0 means the client refuses it
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Set the validators of a cacheable GET response and check the request's
+     * conditional headers against them. {@code If-None-Match} takes precedence over
+     * {@code If-Modified-Since}. When the client's copy is current the response is
+     * completed as 304 Not Modified and the caller must not write a body.
+     *
+     * @param request the HTTP request
+     * @param response the HTTP response
+     * @param etag the strong entity tag of the current representation, including quotes
+     * @param lastModified when the representation last changed, in milliseconds
+     * @param cacheControl the Cache-Control header value
+     * @return true if a 304 was sent
+     */
+    protected boolean checkNotModified(HttpServletRequest request, HttpServletResponse response,
+                                       String etag, long lastModified, String cacheControl) {
+        long lastModifiedSeconds = lastModified / 1000 * 1000;
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", lastModifiedSeconds);
+        response.setHeader("Cache-Control", cacheControl);
+        
+        boolean notModified;
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            notModified = matchesEntityTag(ifNoneMatch, etag);
+        } else {
+            long ifModifiedSince;
+            try {
+                ifModifiedSince = request.getDateHeader("If-Modified-Since");
+            } catch (IllegalArgumentException e) {
+                ifModifiedSince = -1;
+            }
+            notModified = ifModifiedSince != -1 && lastModifiedSeconds <= ifModifiedSince;
+        }
+        
+        if (notModified) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        }
+        return notModified;
+    }
+    
+    /**
+     * Whether an If-None-Match header lists the given entity tag, using the weak
+     * comparison that RFC 7232 prescribes for If-None-Match.
+     */
+    private boolean matchesEntityTag(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /**
      * Send an error response.
      *
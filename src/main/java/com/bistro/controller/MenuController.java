@@ -1,17 +1,25 @@
 package com.bistro.controller;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.bistro.model.MenuFilter;
 import com.bistro.model.MenuItem;
+import com.bistro.service.MenuCatalog;
 import com.bistro.service.MenuItemService;
 import com.bistro.service.impl.MenuItemServiceImpl;
+import com.bistro.util.AppConfig;
+import com.bistro.util.EncodedJsonCache;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 
@@ -20,6 +28,20 @@ import java.util.Optional;
  */
 @WebServlet("/api/menu/*")
 public class MenuController extends BaseController {
+    // Browsers may keep menu responses but must revalidate them unless a max age is configured
+    private static final long MAX_AGE_SECONDS = AppConfig.getLong("menu.http.maxAgeSeconds", 0);
+    private static final String CACHE_CONTROL = MAX_AGE_SECONDS > 0
+            ? "public, max-age=" + MAX_AGE_SECONDS
+            : "no-cache";
+    
+    private static final int DEFAULT_SUGGESTIONS = 8;
+    private static final int MAX_SUGGESTIONS = 20;
+    private static final int DEFAULT_FILTER_LIMIT = 50;
+    private static final int MAX_FILTER_LIMIT = 200;
+    
+    // Shared by all instances; the container may create more than one
+    private static final EncodedJsonCache responseCache = new EncodedJsonCache(objectMapper, 500);
+    
     private final MenuItemService menuItemService;
     
     public MenuController() {
@@ -31,48 +53,85 @@ public class MenuController extends BaseController {
         String pathInfo = request.getPathInfo();
         
         try {
+            // Answer the whole request from one snapshot so the body matches its ETag.
+            // Without the cached snapshot, searches go straight to the database: building a
+            // snapshot and its search index for one request costs more than the query.
+            boolean search = pathInfo != null && (pathInfo.equals("/suggest") || pathInfo.startsWith("/search"));
+            MenuCatalog catalog = search && !menuItemService.isMenuCatalogCached()
+                    ? null : menuItemService.getMenuCatalog();
+            Object body;
+            String cacheKey = null;
+            
             if (pathInfo == null || pathInfo.equals("/")) {
                 // Get all menu items
-                List<MenuItem> menuItems = menuItemService.getAllMenuItems();
-                sendJsonResponse(response, menuItems);
+                body = catalog.getAll();
+                cacheKey = "all";
             } else if (pathInfo.equals("/featured")) {
                 // Get featured menu items
-                System.out.println("Fetching featured menu items");
-                List<MenuItem> featuredItems = menuItemService.getFeaturedMenuItems();
-                System.out.println("Found " + featuredItems.size() + " featured items");
-                sendJsonResponse(response, featuredItems);
+                body = catalog.getFeatured();
+                cacheKey = "featured";
             } else if (pathInfo.equals("/categories")) {
                 // Get all categories
-                List<String> categories = menuItemService.getAllCategories();
-                sendJsonResponse(response, categories);
+                body = catalog.getCategories();
+                cacheKey = "categories";
             } else if (pathInfo.startsWith("/category/")) {
                 // Get menu items by category
                 String category = pathInfo.substring("/category/".length());
-                List<MenuItem> categoryItems = menuItemService.getMenuItemsByCategory(category);
-                sendJsonResponse(response, categoryItems);
+                List<MenuItem> categoryItems = catalog.getByCategory(category);
+                body = categoryItems;
+                // Only real categories are cached, so made-up names cannot fill the cache
+                if (!categoryItems.isEmpty()) {
+                    cacheKey = "category/" + categoryItems.get(0).getCategory().toLowerCase(Locale.ROOT);
+                }
+            } else if (pathInfo.equals("/suggest")) {
+                // Autocomplete: the best few matches for what has been typed so far
+                String query = request.getParameter("q");
+                if (query == null || query.trim().isEmpty()) {
+                    sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Search query is required");
+                    return;
+                }
+                int limit = parseSuggestLimit(request.getParameter("limit"));
+                body = toSuggestions(catalog != null
+                        ? catalog.search(query, limit)
+                        : menuItemService.searchMenuItems(query, limit));
+            } else if (pathInfo.equals("/filter")) {
+                // Combined filter with facet counts
+                try {
+                    body = catalog.filter(parseMenuFilter(request));
+                } catch (IllegalArgumentException e) {
+                    sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+                    return;
+                }
             } else if (pathInfo.startsWith("/search")) {
                 // Search menu items
                 String query = request.getParameter("q");
-                if (query != null && !query.isEmpty()) {
-                    List<MenuItem> searchResults = menuItemService.searchMenuItems(query);
-                    sendJsonResponse(response, searchResults);
-                } else {
+                if (query == null || query.isEmpty()) {
                     sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Search query is required");
+                    return;
                 }
+                body = catalog != null ? catalog.search(query) : menuItemService.searchMenuItems(query);
             } else {
                 // Get menu item by ID
+                int id;
                 try {
-                    int id = Integer.parseInt(pathInfo.substring(1));
-                    Optional<MenuItem> menuItemOpt = menuItemService.getMenuItemById(id);
-                    
-                    if (menuItemOpt.isPresent()) {
-                        sendJsonResponse(response, menuItemOpt.get());
-                    } else {
-                        sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Menu item not found");
-                    }
+                    id = Integer.parseInt(pathInfo.substring(1));
                 } catch (NumberFormatException e) {
                     sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid menu item ID");
+                    return;
                 }
+                
+                body = catalog.getById(id);
+                if (body == null) {
+                    sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Menu item not found");
+                    return;
+                }
+                cacheKey = "item/" + id;
+            }
+            
+            if (catalog == null) {
+                sendJsonResponse(response, body);
+            } else {
+                sendMenuResponse(request, response, catalog, body, cacheKey);
             }
         } catch (Exception e) {
             System.err.println("Error in MenuController doGet: " + e.getMessage());
@@ -81,6 +140,142 @@ public class MenuController extends BaseController {
         }
     }
     
+    /**
+     * Parses the suggestion limit, falling back to the default for missing or invalid values.
+     */
+    private int parseSuggestLimit(String limitParam) {
+        if (limitParam == null) {
+            return DEFAULT_SUGGESTIONS;
+        }
+        try {
+            return Math.max(1, Math.min(MAX_SUGGESTIONS, Integer.parseInt(limitParam)));
+        } catch (NumberFormatException e) {
+            return DEFAULT_SUGGESTIONS;
+        }
+    }
+    
+    /**
+     * Builds a menu filter from the query string. Categories and price bands may be
+     * repeated or comma-separated.
+     *
+     * @throws IllegalArgumentException if a parameter is malformed
+     */
+    private MenuFilter parseMenuFilter(HttpServletRequest request) {
+        MenuFilter filter = new MenuFilter();
+        filter.setCategories(parseList(request.getParameterValues("category")));
+        filter.setPriceBands(parseList(request.getParameterValues("priceBand")));
+        filter.setMinPrice(parsePrice(request.getParameter("minPrice"), "minPrice"));
+        filter.setMaxPrice(parsePrice(request.getParameter("maxPrice"), "maxPrice"));
+        filter.setAvailable(parseFlag(request.getParameter("available"), "available"));
+        filter.setFeatured(parseFlag(request.getParameter("featured"), "featured"));
+        
+        String maxPrepTime = request.getParameter("maxPrepTime");
+        if (maxPrepTime != null && !maxPrepTime.isEmpty()) {
+            filter.setMaxPreparationTime(parseNonNegative(maxPrepTime, "maxPrepTime"));
+        }
+        
+        String offset = request.getParameter("offset");
+        filter.setOffset(offset == null || offset.isEmpty() ? 0 : parseNonNegative(offset, "offset"));
+        String limit = request.getParameter("limit");
+        filter.setLimit(limit == null || limit.isEmpty()
+                ? DEFAULT_FILTER_LIMIT
+                : Math.min(MAX_FILTER_LIMIT, Math.max(1, parseNonNegative(limit, "limit"))));
+        return filter;
+    }
+    
+    private List<String> parseList(String[] values) {
+        List<String> list = new ArrayList<>();
+        if (values != null) {
+            for (String value : values) {
+                for (String part : value.split(",")) {
+                    if (!part.trim().isEmpty()) {
+                        list.add(part.trim());
+                    }
+                }
+            }
+        }
+        return list;
+    }
+    
+    private BigDecimal parsePrice(String value, String name) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            BigDecimal price = new BigDecimal(value);
+            if (price.signum() < 0) {
+                throw new IllegalArgumentException("Invalid " + name + ": " + value);
+            }
+            return price;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+    
+    private Boolean parseFlag(String value, String name) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        if (value.equalsIgnoreCase("true")) {
+            return Boolean.TRUE;
+        }
+        if (value.equalsIgnoreCase("false")) {
+            return Boolean.FALSE;
+        }
+        throw new IllegalArgumentException("Invalid " + name + ": " + value);
+    }
+    
+    private int parseNonNegative(String value, String name) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number < 0) {
+                throw new IllegalArgumentException("Invalid " + name + ": " + value);
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+    
+    /**
+     * Reduces matches to the fields an autocomplete list shows.
+     */
+    private List<Map<String, Object>> toSuggestions(List<MenuItem> items) {
+        List<Map<String, Object>> suggestions = new ArrayList<>(items.size());
+        for (MenuItem item : items) {
+            Map<String, Object> suggestion = new LinkedHashMap<>();
+            suggestion.put("id", item.getId());
+            suggestion.put("name", item.getName());
+            suggestion.put("category", item.getCategory());
+            suggestion.put("price", item.getPrice());
+            suggestion.put("available", item.isAvailable());
+            suggestions.add(suggestion);
+        }
+        return suggestions;
+    }
+    
+    /**
+     * Sends a menu read, or 304 Not Modified without serializing anything when the
+     * client already has this version. The ETag is the catalog's content fingerprint,
+     * so it is the same on every node serving the same menu.
+     * <p>
+     * Bodies with a cache key are serialized once per catalog version and then
+     * written from the cached bytes; others, such as search results, are serialized
+     * per request.
+     */
+    private void sendMenuResponse(HttpServletRequest request, HttpServletResponse response,
+                                  MenuCatalog catalog, Object body, String cacheKey) throws IOException {
+        String etag = "\"" + catalog.getFingerprint() + "\"";
+        if (checkNotModified(request, response, etag, catalog.getModifiedAt(), CACHE_CONTROL)) {
+            return;
+        }
+        if (cacheKey == null) {
+            sendJsonResponse(response, body);
+            return;
+        }
+        sendEncodedJson(request, response, responseCache.get(catalog.getFingerprint(), cacheKey, body));
+    }
+    
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         // Only admin can add menu items
@@ -1,12 +1,18 @@
 package com.bistro.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.bistro.model.CheckoutTicket;
 import com.bistro.model.Order;
+import com.bistro.model.OrderPage;
 import com.bistro.model.User;
+import com.bistro.service.CartService;
+import com.bistro.service.CheckoutQueue;
+import com.bistro.service.KitchenScheduler;
+import com.bistro.service.OrderEventStream;
 import com.bistro.service.OrderService;
 import com.bistro.service.impl.OrderServiceImpl;
-import com.bistro.dao.impl.OrderDAOImpl;
 import com.bistro.util.DatabaseConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,9 +37,11 @@ import java.sql.ResultSet;
 /**
  * Controller for handling order-related requests.
  */
-@WebServlet("/api/orders/*")
+@WebServlet(urlPatterns = "/api/orders/*", asyncSupported = true)
 public class OrderController extends BaseController {
     private static final Logger logger = LoggerFactory.getLogger(OrderController.class);
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
     private final OrderService orderService;
     
     public OrderController() {
@@ -52,9 +60,22 @@ public class OrderController extends BaseController {
         User user = getAuthenticatedUser(request);
         
         try {
-            if (pathInfo == null || pathInfo.equals("/")) {
+            if ("/stream".equals(pathInfo)) {
+                // Live order events for kitchen and admin screens (admin/staff only)
+                if (!hasRole(request, "ADMIN") && !hasRole(request, "STAFF")) {
+                    sendErrorResponse(response, HttpServletResponse.SC_FORBIDDEN, "Admin or staff access required");
+                } else if (!OrderEventStream.open(request, response)) {
+                    response.setHeader("Retry-After", "5");
+                    sendErrorResponse(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Order stream unavailable");
+                }
+                return;
+            } else if (pathInfo == null || pathInfo.equals("/")) {
                 // Get all orders (admin only) or user's orders
-                if (hasRole(request, "ADMIN") || hasRole(request, "STAFF")) {
+                if ((hasRole(request, "ADMIN") || hasRole(request, "STAFF")) && isStreamRequest(request)) {
+                    streamOrders(response, null, null, null);
+                } else if ((hasRole(request, "ADMIN") || hasRole(request, "STAFF")) && isPageRequest(request)) {
+                    sendOrderPage(request, response, null, null, null);
+                } else if (hasRole(request, "ADMIN") || hasRole(request, "STAFF")) {
                     List<Order> orders = orderService.getAllOrders();
                     logger.info("Retrieved {} orders for admin user", orders.size());
                     
@@ -81,6 +102,14 @@ public class OrderController extends BaseController {
                     
                     sendJsonResponse(response, userOrders);
                 }
+            } else if (pathInfo.equals("/kitchen")) {
+                // Kitchen work queue by station, served from memory (admin/staff only)
+                if (hasRole(request, "ADMIN") || hasRole(request, "STAFF")) {
+                    String station = request.getParameter("station");
+                    sendJsonResponse(response, KitchenScheduler.getQueue(station != null && !station.isEmpty() ? station : null));
+                } else {
+                    sendErrorResponse(response, HttpServletResponse.SC_FORBIDDEN, "Admin or staff access required");
+                }
             } else if (pathInfo.equals("/recent")) {
                 // Get recent orders (admin/staff only)
                 if (hasRole(request, "ADMIN") || hasRole(request, "STAFF")) {
@@ -103,7 +132,11 @@ public class OrderController extends BaseController {
                 // Get orders by status (admin/staff only)
                 if (hasRole(request, "ADMIN") || hasRole(request, "STAFF")) {
                     String status = request.getParameter("status");
-                    if (status != null && !status.isEmpty()) {
+                    if (status != null && !status.isEmpty() && isStreamRequest(request)) {
+                        streamOrders(response, status, null, null);
+                    } else if (status != null && !status.isEmpty() && isPageRequest(request)) {
+                        sendOrderPage(request, response, status, null, null);
+                    } else if (status != null && !status.isEmpty()) {
                         List<Order> statusOrders = orderService.getOrdersByStatus(status);
                         sendJsonResponse(response, statusOrders);
                     } else {
@@ -124,9 +157,15 @@ public class OrderController extends BaseController {
                             Date startDate = dateFormat.parse(startDateStr);
                             Date endDate = dateFormat.parse(endDateStr);
                             
-                            List<Order> dateRangeOrders = orderService.getOrdersByDateRange(startDate, endDate);
-                            sendJsonResponse(response, dateRangeOrders);
-                        } catch (Exception e) {
+                            if (isStreamRequest(request)) {
+                                streamOrders(response, null, startDate, endDate);
+                            } else if (isPageRequest(request)) {
+                                sendOrderPage(request, response, null, startDate, endDate);
+                            } else {
+                                List<Order> dateRangeOrders = orderService.getOrdersByDateRange(startDate, endDate);
+                                sendJsonResponse(response, dateRangeOrders);
+                            }
+                        } catch (java.text.ParseException e) {
                             sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid date format. Use yyyy-MM-dd");
                         }
                     } else {
@@ -135,6 +174,9 @@ public class OrderController extends BaseController {
                 } else {
                     sendErrorResponse(response, HttpServletResponse.SC_FORBIDDEN, "Admin or staff access required");
                 }
+            } else if (pathInfo.startsWith("/tickets/")) {
+                // Status of an asynchronous checkout
+                sendCheckoutTicket(request, response, user, pathInfo.substring("/tickets/".length()));
             } else {
                 // Get order by ID
                 try {
@@ -183,8 +225,8 @@ public class OrderController extends BaseController {
                 // Replace order with fixed version
                 Order order = (Order) orderObj;
             
-            // Get the order's total amount directly from the database
-                BigDecimal correctAmount = getOrderTotalFromDatabase(order.getId());
+                // Only go back to the database when the order we hold has no usable total
+                BigDecimal correctAmount = hasPositiveTotal(order) ? order.getTotalAmount() : getOrderTotalFromDatabase(order.getId());
                 
                 // Create a fixed order representation with correct amount
                 Map<String, Object> fixedOrder = createOrderMapWithFixedTotal(order, correctAmount);
@@ -201,8 +243,8 @@ public class OrderController extends BaseController {
         } else if (object instanceof Order) {
             Order order = (Order) object;
             
-            // Get the correct total amount from database
-            BigDecimal correctAmount = getOrderTotalFromDatabase(order.getId());
+            // Get the correct total amount from database unless the order already has one
+            BigDecimal correctAmount = hasPositiveTotal(order) ? order.getTotalAmount() : getOrderTotalFromDatabase(order.getId());
             
             // Create a fixed representation
             Map<String, Object> orderMap = createOrderMapWithFixedTotal(order, correctAmount);
@@ -215,27 +257,11 @@ public class OrderController extends BaseController {
         } else if (object instanceof List<?> && !((List<?>) object).isEmpty() && ((List<?>) object).get(0) instanceof Order) {
             // Handle list of orders
             List<Order> orders = (List<Order>) object;
-            List<Map<String, Object>> orderMapList = new ArrayList<>();
-            
-            // Load all order amounts directly from the database in a single query for efficiency
-            Map<Integer, BigDecimal> orderAmounts = getAllOrderTotalsFromDatabase();
-            
-            for (Order order : orders) {
-                // Get the correct amount for this order ID
-                BigDecimal correctAmount = orderAmounts.get(order.getId());
-                if (correctAmount == null) {
-                    // If not found in the bulk query, try individual lookup
-                    correctAmount = getOrderTotalFromDatabase(order.getId());
-                }
-                
-                // Create a fixed order map
-                Map<String, Object> orderMap = createOrderMapWithFixedTotal(order, correctAmount);
-                orderMapList.add(orderMap);
-            }
+            List<Map<String, Object>> orderMapList = createOrderMapList(orders);
             
             // Convert to JSON and send
             String json = objectMapper.writeValueAsString(orderMapList);
-            logger.info("Sending fixed orders JSON: {}", json);
+            logger.info("Sending {} fixed orders", orderMapList.size());
             response.getWriter().print(json);
             return;
         }
@@ -244,6 +270,16 @@ public class OrderController extends BaseController {
         super.sendJsonResponse(response, object);
     }
     
+    /**
+     * Checks whether an order already carries a positive total amount.
+     * 
+     * @param order The order
+     * @return true if the total amount is set and greater than zero
+     */
+    private boolean hasPositiveTotal(Order order) {
+        return order.getTotalAmount() != null && order.getTotalAmount().compareTo(BigDecimal.ZERO) > 0;
+    }
+    
     /**
      * Gets an order's total amount directly from the database.
      * 
@@ -288,28 +324,114 @@ public class OrderController extends BaseController {
     }
     
     /**
-     * Gets all order totals from the database in one query.
+     * Checks whether the request asks for a keyset-paginated page of orders
+     * rather than the full, unbounded list.
      * 
-     * @return Map of order ID to total amount
+     * @param request The HTTP request
+     * @return true if a limit or cursor parameter is present
      */
-    private Map<Integer, BigDecimal> getAllOrderTotalsFromDatabase() {
-        Map<Integer, BigDecimal> orderAmounts = new HashMap<>();
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT id, total_amount FROM orders");
-             ResultSet rs = stmt.executeQuery()) {
-            while (rs.next()) {
-                int id = rs.getInt("id");
-                BigDecimal amount = rs.getBigDecimal("total_amount");
-                if (amount == null) {
-                    amount = BigDecimal.ZERO;
-            }
-                orderAmounts.put(id, amount);
+    private boolean isPageRequest(HttpServletRequest request) {
+        return request.getParameter("limit") != null || request.getParameter("cursor") != null;
+    }
+    
+    /**
+     * Sends one page of orders as {orders, nextCursor, limit}. Clients pass the
+     * returned nextCursor back as the cursor parameter to get the following page.
+     * 
+     * @param request The HTTP request carrying the limit and cursor parameters
+     * @param response The HTTP response
+     * @param status The status filter, or null
+     * @param startDate The start of the date range, or null
+     * @param endDate The end of the date range, or null
+     */
+    private void sendOrderPage(HttpServletRequest request, HttpServletResponse response,
+                               String status, Date startDate, Date endDate) throws Exception {
+        int limit = DEFAULT_PAGE_SIZE;
+        String limitParam = request.getParameter("limit");
+        if (limitParam != null && !limitParam.isEmpty()) {
+            try {
+                limit = Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(limitParam)));
+            } catch (NumberFormatException e) {
+                sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid limit parameter");
+                return;
             }
-            logger.info("Retrieved {} order totals from database", orderAmounts.size());
+        }
+        
+        OrderPage page;
+        try {
+            page = orderService.getOrdersPage(status, startDate, endDate, request.getParameter("cursor"), limit);
+        } catch (IllegalArgumentException e) {
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid cursor parameter");
+            return;
+        }
+        
+        Map<String, Object> pageMap = new HashMap<>();
+        pageMap.put("orders", createOrderMapList(page.getOrders()));
+        pageMap.put("nextCursor", page.getNextCursor());
+        pageMap.put("limit", page.getLimit());
+        
+        logger.info("Sending page of {} orders, hasMore: {}", page.getOrders().size(), page.hasMore());
+        super.sendJsonResponse(response, pageMap);
+    }
+    
+    /**
+     * Checks whether the request asks for the orders to be streamed.
+     * 
+     * @param request The HTTP request
+     * @return true if the stream parameter is "true"
+     */
+    private boolean isStreamRequest(HttpServletRequest request) {
+        return "true".equalsIgnoreCase(request.getParameter("stream"));
+    }
+    
+    /**
+     * Streams orders as a JSON array straight from the database cursor to the response
+     * output stream, one order at a time, so heap use does not grow with the row count.
+     * 
+     * @param response The HTTP response
+     * @param status The status filter, or null
+     * @param startDate The start of the date range, or null
+     * @param endDate The end of the date range, or null
+     */
+    private void streamOrders(HttpServletResponse response, String status, Date startDate, Date endDate) throws Exception {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            // Don't let close() complete the array on failure; a truncated body must not look valid
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            // The container owns the output stream; leave it open so an error can still be sent
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+            
+            int count = orderService.streamOrders(status, startDate, endDate,
+                    order -> generator.writeObject(createOrderMapWithFixedTotal(order, order.getTotalAmount())));
+            
+            generator.writeEndArray();
+            logger.info("Streamed {} orders", count);
         } catch (Exception e) {
-            logger.error("Error retrieving all order totals from database: {}", e.getMessage());
+            if (!response.isCommitted()) {
+                response.reset();
+                throw e;
+            }
+            // Headers are already sent, so the error can only be signalled by the truncated body
+            logger.error("Error while streaming orders, response truncated: {}", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Creates Map representations of a list of orders, using the totals that
+     * were loaded together with the orders.
+     * 
+     * @param orders The orders
+     * @return List of maps representing the orders
+     */
+    private List<Map<String, Object>> createOrderMapList(List<Order> orders) {
+        List<Map<String, Object>> orderMapList = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            orderMapList.add(createOrderMapWithFixedTotal(order, order.getTotalAmount()));
         }
-        return orderAmounts;
+        return orderMapList;
     }
     
     /**
@@ -382,16 +504,34 @@ public class OrderController extends BaseController {
             String paymentMethod = jsonNode.has("paymentMethod") ? jsonNode.get("paymentMethod").asText() : "CASH";
             String specialInstructions = jsonNode.has("specialInstructions") ? jsonNode.get("specialInstructions").asText() : "";
             
+            // Checkout reads the cart from the database
+            CartService.flushCart(request);
+            
+            // Queue the checkout and answer with a ticket instead of waiting for the commit
+            if (isAsyncRequest(request) && CheckoutQueue.isEnabled()) {
+                acceptCheckout(request, response, user, deliveryAddress, paymentMethod, specialInstructions);
+                return;
+            }
+            
             // Use the OrderServiceImpl directly to access our new method
             OrderServiceImpl orderServiceImpl = (OrderServiceImpl) orderService;
             
-            // Place order with cart items using our new method that uses the stored procedure
-            Order placedOrder = orderServiceImpl.placeOrderWithCartItems(
-                user.getId(),
-                deliveryAddress,
-                paymentMethod,
-                specialInstructions
-            );
+            // Place order with cart items in a single transaction
+            long start = System.nanoTime();
+            Order placedOrder;
+            try {
+                placedOrder = orderServiceImpl.placeOrderWithCartItems(
+                    user.getId(),
+                    deliveryAddress,
+                    paymentMethod,
+                    specialInstructions
+                );
+            } catch (Exception e) {
+                CheckoutQueue.recordSynchronous(System.nanoTime() - start, false);
+                throw e;
+            }
+            CheckoutQueue.recordSynchronous(System.nanoTime() - start, true);
+            CartService.forgetCart(request);
             
             logger.info("Order placed with items, ID: {}, final totalAmount: {}, items: {}", 
                       placedOrder.getId(), placedOrder.getTotalAmount(), 
@@ -409,6 +549,81 @@ public class OrderController extends BaseController {
         }
     }
     
+    /**
+     * Checks whether the client asked for asynchronous checkout, with {@code ?mode=async}
+     * or a {@code Prefer: respond-async} header.
+     * 
+     * @param request The HTTP request
+     * @return true if the order should be queued
+     */
+    private boolean isAsyncRequest(HttpServletRequest request) {
+        if ("async".equalsIgnoreCase(request.getParameter("mode"))) {
+            return true;
+        }
+        String prefer = request.getHeader("Prefer");
+        return prefer != null && prefer.toLowerCase().contains("respond-async");
+    }
+    
+    /**
+     * Queues a checkout and responds 202 with the ticket to poll, or 503 when the
+     * queue is full so the client can retry.
+     */
+    private void acceptCheckout(HttpServletRequest request, HttpServletResponse response, User user,
+                                String deliveryAddress, String paymentMethod, String specialInstructions) throws IOException {
+        CheckoutTicket ticket = CheckoutQueue.submit(user.getId(), deliveryAddress, paymentMethod, specialInstructions);
+        if (ticket == null) {
+            response.setHeader("Retry-After", "1");
+            sendErrorResponse(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Checkout queue is full, please retry");
+            return;
+        }
+        
+        logger.info("Checkout queued for user ID: {}, ticket: {}", user.getId(), ticket.getId());
+        CartService.forgetCart(request);
+        
+        String statusUrl = request.getContextPath() + "/api/orders/tickets/" + ticket.getId();
+        Map<String, Object> responseMap = new HashMap<>();
+        responseMap.put("success", true);
+        responseMap.put("message", "Order accepted");
+        responseMap.put("ticket", ticket.getId());
+        responseMap.put("status", ticket.getStatus());
+        responseMap.put("statusUrl", statusUrl);
+        
+        response.setStatus(HttpServletResponse.SC_ACCEPTED);
+        response.setHeader("Location", statusUrl);
+        sendJsonResponse(response, responseMap);
+    }
+    
+    /**
+     * Sends the state of an asynchronous checkout: QUEUED, COMMITTED with the order,
+     * or FAILED with the reason. Only the user who placed it and admin or staff can see it.
+     */
+    private void sendCheckoutTicket(HttpServletRequest request, HttpServletResponse response, User user,
+                                    String ticketId) throws IOException {
+        CheckoutTicket ticket = CheckoutQueue.getTicket(ticketId);
+        if (ticket == null) {
+            sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Ticket not found");
+            return;
+        }
+        if (ticket.getUserId() != user.getId() && !hasRole(request, "ADMIN") && !hasRole(request, "STAFF")) {
+            sendErrorResponse(response, HttpServletResponse.SC_FORBIDDEN, "Access denied");
+            return;
+        }
+        
+        Map<String, Object> responseMap = new HashMap<>();
+        responseMap.put("ticket", ticket.getId());
+        responseMap.put("status", ticket.getStatus());
+        responseMap.put("createdAt", ticket.getCreatedAt());
+        responseMap.put("completedAt", ticket.getCompletedAt());
+        if (CheckoutTicket.COMMITTED.equals(ticket.getStatus())) {
+            responseMap.put("orderId", ticket.getOrder().getId());
+            responseMap.put("order", ticket.getOrder());
+        } else if (CheckoutTicket.FAILED.equals(ticket.getStatus())) {
+            responseMap.put("error", ticket.getError());
+        }
+        
+        sendJsonResponse(response, responseMap);
+    }
+    
     @Override
     protected void doPut(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         // User must be authenticated to update an order
@@ -641,9 +856,7 @@ public class OrderController extends BaseController {
             
             logger.info("Permanently deleting order, ID: {}", orderId);
             
-            // Use the DAO directly to permanently delete the order
-            OrderDAOImpl orderDAO = new OrderDAOImpl();
-            boolean deleted = orderDAO.delete(orderId);
+            boolean deleted = orderService.deleteOrder(orderId);
             
             if (deleted) {
                 Map<String, Object> responseMap = new HashMap<>();
@@ -0,0 +1,62 @@
+package com.bistro.dao;
+
+import com.bistro.model.DashboardStats;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Interface for the aggregate queries behind the admin dashboard.
+ */
+public interface DashboardDAO {
+
+    /**
+     * Orders placed within one fixed-length interval.
+     */
+    class Interval {
+        private final long start;
+        private final int orderCount;
+        private final BigDecimal revenue;
+
+        public Interval(long start, int orderCount, BigDecimal revenue) {
+            this.start = start;
+            this.orderCount = orderCount;
+            this.revenue = revenue;
+        }
+
+        /** Start of the interval in epoch milliseconds. */
+        public long getStart() {
+            return start;
+        }
+
+        public int getOrderCount() {
+            return orderCount;
+        }
+
+        /** Total amount of the interval's orders that are not cancelled. */
+        public BigDecimal getRevenue() {
+            return revenue;
+        }
+    }
+
+    /**
+     * Read order counts and revenue per status and the number of users.
+     *
+     * @return the current figures
+     * @throws Exception if a database error occurs
+     */
+    DashboardStats loadStats() throws Exception;
+
+    /**
+     * Read order counts and revenue grouped into fixed-length intervals by order date.
+     * Intervals are aligned to the epoch, so they can be mapped onto any time zone
+     * whose offset is a multiple of the interval length.
+     *
+     * @param since the earliest order date to include
+     * @param intervalSeconds the interval length
+     * @return the non-empty intervals, in no particular order
+     * @throws Exception if a database error occurs
+     */
+    List<Interval> loadIntervals(Date since, int intervalSeconds) throws Exception;
+}
@@ -0,0 +1,36 @@
+package com.bistro.dao;
+
+import com.bistro.model.IdempotencyRecord;
+import java.util.Optional;
+
+/**
+ * Interface for stored idempotent responses.
+ */
+public interface IdempotencyKeyDAO {
+    
+    /**
+     * Find the unexpired response stored under a key.
+     *
+     * @param keyHash the hashed, scoped idempotency key
+     * @return an Optional containing the stored response if found and not expired
+     * @throws Exception if a database error occurs
+     */
+    Optional<IdempotencyRecord> findByKeyHash(String keyHash) throws Exception;
+    
+    /**
+     * Store a response. If a response is already stored under the key it is kept.
+     *
+     * @param record the response to store
+     * @return true if the response was stored, false if the key was already present
+     * @throws Exception if a database error occurs
+     */
+    boolean save(IdempotencyRecord record) throws Exception;
+    
+    /**
+     * Delete all expired responses.
+     *
+     * @return the number of responses deleted
+     * @throws Exception if a database error occurs
+     */
+    int deleteExpired() throws Exception;
+}
@@ -1,6 +1,7 @@
 package com.bistro.dao;
 
 import com.bistro.model.Order;
+import com.bistro.model.OrderPage;
 import java.util.List;
 import java.util.Date;
 
@@ -56,4 +57,39 @@ public interface OrderDAO extends BaseDAO<Order, Integer> {
      * @throws Exception if a database error occurs
      */
     List<Order> getRecentOrders(int limit) throws Exception;
+    
+    /**
+     * Find a page of orders using keyset pagination over (order_date, id) descending.
+     * All filters are optional; the cost of a page does not depend on how deep it is.
+     *
+     * @param status the status to filter by, or null for all statuses
+     * @param startDate the start of the order date range, or null
+     * @param endDate the end of the order date range, or null
+     * @param after the cursor of the last order of the previous page, or null for the first page
+     * @param limit the maximum number of orders to return
+     * @return the orders of the page, with their items
+     * @throws Exception if a database error occurs
+     */
+    List<Order> findPage(String status, Date startDate, Date endDate, OrderPage.Cursor after, int limit) throws Exception;
+    
+    /**
+     * Stream orders with their items, newest first, to a handler one order at a time.
+     * Rows are read through a forward-only streaming cursor, so memory use does not
+     * grow with the number of matching orders. All filters are optional.
+     *
+     * @param status the status to filter by, or null for all statuses
+     * @param startDate the start of the order date range, or null
+     * @param endDate the end of the order date range, or null
+     * @param handler the handler invoked for each order
+     * @return the number of orders streamed
+     * @throws Exception if a database error occurs or the handler fails
+     */
+    int streamOrders(String status, Date startDate, Date endDate, OrderHandler handler) throws Exception;
+    
+    /**
+     * Callback receiving orders from {@link #streamOrders}.
+     */
+    interface OrderHandler {
+        void handle(Order order) throws Exception;
+    }
 }
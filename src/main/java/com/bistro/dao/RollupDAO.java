@@ -0,0 +1,84 @@
+package com.bistro.dao;
+
+import com.bistro.model.ItemRollup;
+import com.bistro.model.RevenueRollup;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Interface for the order rollup tables, which hold orders, revenue and items
+ * sold per hour and per day, overall and per menu item.
+ * <p>
+ * Buckets are rebuilt rather than incremented: an hour is recomputed from the
+ * orders placed in it, and a day from its hours. Rebuilding a bucket twice gives
+ * the same result, so a bucket can be rebuilt whenever it may be out of date.
+ */
+public interface RollupDAO {
+    String HOUR = "HOUR";
+    String DAY = "DAY";
+
+    /**
+     * Recompute one hour from the orders placed in it.
+     *
+     * @param hourStart the start of the hour
+     * @throws Exception if a database error occurs
+     */
+    void rebuildHour(Date hourStart) throws Exception;
+
+    /**
+     * Recompute one day from its hour buckets.
+     *
+     * @param dayStart the start of the day
+     * @param dayEnd the start of the next day
+     * @throws Exception if a database error occurs
+     */
+    void rebuildDay(Date dayStart, Date dayEnd) throws Exception;
+
+    /**
+     * Read the non-empty buckets of one granularity in a range.
+     *
+     * @param granularity {@link #HOUR} or {@link #DAY}
+     * @param from the first bucket start to include
+     * @param to the bucket start to stop before
+     * @return the buckets, oldest first
+     * @throws Exception if a database error occurs
+     */
+    List<RevenueRollup> findSeries(String granularity, Date from, Date to) throws Exception;
+
+    /**
+     * Read the best-selling menu items over a range by revenue.
+     *
+     * @param granularity {@link #HOUR} or {@link #DAY}
+     * @param from the first bucket start to include
+     * @param to the bucket start to stop before
+     * @param limit the maximum number of items
+     * @return the items, highest revenue first
+     * @throws Exception if a database error occurs
+     */
+    List<ItemRollup> findTopItems(String granularity, Date from, Date to, int limit) throws Exception;
+
+    /**
+     * Get the date of the oldest order.
+     *
+     * @return the date, or null if there are no orders
+     * @throws Exception if a database error occurs
+     */
+    Date findFirstOrderDate() throws Exception;
+
+    /**
+     * Get the time up to which the rollups have been built from the orders table.
+     *
+     * @return the time, or null if they have never been built
+     * @throws Exception if a database error occurs
+     */
+    Date getRolledUpThrough() throws Exception;
+
+    /**
+     * Record the time up to which the rollups have been built.
+     *
+     * @param through the time
+     * @throws Exception if a database error occurs
+     */
+    void setRolledUpThrough(Date through) throws Exception;
+}
@@ -0,0 +1,106 @@
+package com.bistro.dao.impl;
+
+import com.bistro.dao.DashboardDAO;
+import com.bistro.model.DashboardStats;
+import com.bistro.util.DatabaseConfig;
+import com.bistro.util.ReadRouter;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of the DashboardDAO interface. Each method is a single grouped
+ * query on the reporting pool.
+ */
+public class DashboardDAOImpl implements DashboardDAO {
+    private static final Logger logger = LoggerFactory.getLogger(DashboardDAOImpl.class);
+
+    /** Statuses the dashboard always shows, even with no orders in them. */
+    private static final String[] DASHBOARD_STATUSES = { "PENDING", "PREPARING", "READY", "DELIVERED", "CANCELLED" };
+
+    // One row per order status plus one row with the user count; the GROUP BY is
+    // answered from idx_orders_status_amount without reading order rows
+    private static final String STATS_SQL =
+            "SELECT 'orders' AS kind, status, COUNT(*) AS row_count, SUM(total_amount) AS revenue " +
+            "FROM orders GROUP BY status " +
+            "UNION ALL " +
+            "SELECT 'users', NULL, COUNT(*), NULL FROM users";
+
+    // UNIX_TIMESTAMP gives epoch seconds whatever the session time zone is
+    private static final String INTERVALS_SQL =
+            "SELECT FLOOR(UNIX_TIMESTAMP(order_date) / ?) AS bucket, COUNT(*) AS order_count, " +
+            "SUM(CASE WHEN status <> 'CANCELLED' THEN total_amount ELSE 0 END) AS revenue " +
+            "FROM orders WHERE order_date >= ? GROUP BY bucket";
+
+    @Override
+    public DashboardStats loadStats() throws Exception {
+        try {
+            return ReadRouter.read(DatabaseConfig.Pool.REPORTING, conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(STATS_SQL);
+                     ResultSet rs = stmt.executeQuery()) {
+
+                    Map<String, Integer> statusCounts = new LinkedHashMap<>();
+                    for (String status : DASHBOARD_STATUSES) {
+                        statusCounts.put(status, 0);
+                    }
+                    int totalOrders = 0;
+                    BigDecimal totalRevenue = BigDecimal.ZERO;
+                    int totalUsers = 0;
+
+                    while (rs.next()) {
+                        int count = rs.getInt("row_count");
+                        if ("users".equals(rs.getString("kind"))) {
+                            totalUsers = count;
+                            continue;
+                        }
+                        statusCounts.put(rs.getString("status"), count);
+                        totalOrders += count;
+                        BigDecimal revenue = rs.getBigDecimal("revenue");
+                        if (revenue != null) {
+                            totalRevenue = totalRevenue.add(revenue);
+                        }
+                    }
+                    return new DashboardStats(statusCounts, totalOrders, totalRevenue, totalUsers, new Date());
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("Error loading dashboard stats: {}", e.getMessage());
+            throw e;
+        }
+    }
+
+    @Override
+    public List<Interval> loadIntervals(Date since, int intervalSeconds) throws Exception {
+        try {
+            return ReadRouter.read(DatabaseConfig.Pool.REPORTING, conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(INTERVALS_SQL)) {
+                    stmt.setInt(1, intervalSeconds);
+                    stmt.setTimestamp(2, new Timestamp(since.getTime()));
+
+                    List<Interval> intervals = new ArrayList<>();
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            BigDecimal revenue = rs.getBigDecimal("revenue");
+                            intervals.add(new Interval(rs.getLong("bucket") * intervalSeconds * 1000L,
+                                    rs.getInt("order_count"), revenue != null ? revenue : BigDecimal.ZERO));
+                        }
+                    }
+                    return intervals;
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("Error loading order intervals: {}", e.getMessage());
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.bistro.dao.impl;
+
+import com.bistro.dao.IdempotencyKeyDAO;
+import com.bistro.model.IdempotencyRecord;
+import com.bistro.util.DatabaseConfig;
+
+import java.sql.*;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of the IdempotencyKeyDAO interface backed by the idempotency_keys table.
+ */
+public class IdempotencyKeyDAOImpl implements IdempotencyKeyDAO {
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyKeyDAOImpl.class);
+
+    @Override
+    public Optional<IdempotencyRecord> findByKeyHash(String keyHash) throws Exception {
+        String sql = "SELECT * FROM idempotency_keys WHERE key_hash = ? AND expires_at > ?";
+        
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setString(1, keyHash);
+            stmt.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return Optional.of(mapResultSetToRecord(rs));
+                } else {
+                    return Optional.empty();
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error finding idempotency key: {}", e.getMessage());
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean save(IdempotencyRecord record) throws Exception {
+        // INSERT IGNORE keeps the first response if another node stored one meanwhile
+        String sql = "INSERT IGNORE INTO idempotency_keys (key_hash, status_code, content_type, body, created_at, expires_at) " +
+                     "VALUES (?, ?, ?, ?, ?, ?)";
+        
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setString(1, record.getKeyHash());
+            stmt.setInt(2, record.getStatusCode());
+            stmt.setString(3, record.getContentType());
+            stmt.setBytes(4, record.getBody());
+            stmt.setTimestamp(5, new Timestamp(record.getCreatedAt().getTime()));
+            stmt.setTimestamp(6, new Timestamp(record.getExpiresAt().getTime()));
+            
+            return stmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            logger.error("Error saving idempotency key: {}", e.getMessage());
+            throw e;
+        }
+    }
+
+    @Override
+    public int deleteExpired() throws Exception {
+        String sql = "DELETE FROM idempotency_keys WHERE expires_at <= ?";
+        
+        try (Connection conn = DatabaseConfig.getConnection(DatabaseConfig.Pool.BACKGROUND);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+            
+            return stmt.executeUpdate();
+        } catch (SQLException e) {
+            logger.error("Error deleting expired idempotency keys: {}", e.getMessage());
+            throw e;
+        }
+    }
+    
+    /**
+     * Maps a ResultSet row to an IdempotencyRecord object.
+     *
+     * @param rs the ResultSet to map
+     * @return an IdempotencyRecord object
+     * @throws SQLException if a database error occurs
+     */
+    private IdempotencyRecord mapResultSetToRecord(ResultSet rs) throws SQLException {
+        IdempotencyRecord record = new IdempotencyRecord();
+        record.setKeyHash(rs.getString("key_hash"));
+        record.setStatusCode(rs.getInt("status_code"));
+        record.setContentType(rs.getString("content_type"));
+        record.setBody(rs.getBytes("body"));
+        record.setCreatedAt(rs.getTimestamp("created_at"));
+        record.setExpiresAt(rs.getTimestamp("expires_at"));
+        return record;
+    }
+}
@@ -3,6 +3,7 @@ package com.bistro.dao.impl;
 import com.bistro.dao.MenuItemDAO;
 import com.bistro.model.MenuItem;
 import com.bistro.util.DatabaseConfig;
+import com.bistro.util.ReadRouter;
 
 import java.sql.*;
 import java.util.ArrayList;
@@ -131,17 +132,19 @@ public class MenuItemDAOImpl implements MenuItemDAO {
     @Override
     public List<MenuItem> findAll() throws Exception {
         String sql = "SELECT * FROM menu_items";
-        List<MenuItem> menuItems = new ArrayList<>();
         
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-            
-            while (rs.next()) {
-                menuItems.add(mapResultSetToMenuItem(rs));
-            }
-            
-            return menuItems;
+        try {
+            return ReadRouter.read(DatabaseConfig.Pool.OLTP, conn -> {
+                List<MenuItem> menuItems = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql);
+                     ResultSet rs = stmt.executeQuery()) {
+                    
+                    while (rs.next()) {
+                        menuItems.add(mapResultSetToMenuItem(rs));
+                    }
+                }
+                return menuItems;
+            });
         } catch (SQLException e) {
             logger.error("Error finding all menu items: {}", e.getMessage());
             throw e;
@@ -151,20 +154,22 @@ public class MenuItemDAOImpl implements MenuItemDAO {
     @Override
     public List<MenuItem> findByCategory(String category) throws Exception {
         String sql = "SELECT * FROM menu_items WHERE category = ?";
-        List<MenuItem> menuItems = new ArrayList<>();
         
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, category);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    menuItems.add(mapResultSetToMenuItem(rs));
+        try {
+            return ReadRouter.read(DatabaseConfig.Pool.OLTP, conn -> {
+                List<MenuItem> menuItems = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    
+                    stmt.setString(1, category);
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            menuItems.add(mapResultSetToMenuItem(rs));
+                        }
+                    }
                 }
-            }
-            
-            return menuItems;
+                return menuItems;
+            });
         } catch (SQLException e) {
             logger.error("Error finding menu items by category: {}", e.getMessage());
             throw e;
@@ -214,22 +219,24 @@ public class MenuItemDAOImpl implements MenuItemDAO {
     @Override
     public List<MenuItem> search(String query) throws Exception {
         String sql = "SELECT * FROM menu_items WHERE name LIKE ? OR description LIKE ?";
-        List<MenuItem> menuItems = new ArrayList<>();
+        String searchQuery = "%" + query + "%";
         
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            String searchQuery = "%" + query + "%";
-            stmt.setString(1, searchQuery);
-            stmt.setString(2, searchQuery);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    menuItems.add(mapResultSetToMenuItem(rs));
+        try {
+            return ReadRouter.read(DatabaseConfig.Pool.OLTP, conn -> {
+                List<MenuItem> menuItems = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    
+                    stmt.setString(1, searchQuery);
+                    stmt.setString(2, searchQuery);
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            menuItems.add(mapResultSetToMenuItem(rs));
+                        }
+                    }
                 }
-            }
-            
-            return menuItems;
+                return menuItems;
+            });
         } catch (SQLException e) {
             logger.error("Error searching menu items: {}", e.getMessage());
             throw e;
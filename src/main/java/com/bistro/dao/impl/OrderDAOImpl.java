@@ -1,9 +1,12 @@
 package com.bistro.dao.impl;
 
 import com.bistro.dao.OrderDAO;
+import com.bistro.model.CheckoutTicket;
 import com.bistro.model.Order;
 import com.bistro.model.OrderItem;
+import com.bistro.model.OrderPage;
 import com.bistro.util.DatabaseConfig;
+import com.bistro.util.ReadRouter;
 
 import java.sql.*;
 import java.util.ArrayList;
@@ -19,6 +22,32 @@ import java.math.BigDecimal;
  */
 public class OrderDAOImpl implements OrderDAO {
     private static final Logger logger = LoggerFactory.getLogger(OrderDAOImpl.class);
+    
+    /**
+     * Column list for loading orders together with their items in a single
+     * LEFT JOIN. Item columns are aliased so they don't clash with the order columns.
+     */
+    private static final String ORDER_WITH_ITEMS_COLUMNS =
+            "o.*, oi.id AS item_id, oi.menu_item_id AS item_menu_item_id, " +
+            "oi.menu_item_name AS item_menu_item_name, oi.quantity AS item_quantity, " +
+            "oi.price AS item_price, oi.special_instructions AS item_special_instructions";
+
+    /** Lines of a user's most recent cart with the current menu names and prices. */
+    private static final String CART_LINES_SQL =
+            "SELECT ci.menu_item_id, ci.quantity, mi.name, mi.price " +
+            "FROM cart_items ci JOIN menu_items mi ON mi.id = ci.menu_item_id " +
+            "WHERE ci.cart_id = (SELECT id FROM carts WHERE user_id = ? ORDER BY updated_at DESC LIMIT 1) " +
+            "ORDER BY ci.id";
+
+    private static final String INSERT_ORDER_SQL =
+            "INSERT INTO orders (user_id, status, total_amount, order_date, delivery_address, " +
+            "payment_method, payment_status, special_instructions) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /** Single-row order item INSERT; more value rows can be appended for a multi-row INSERT. */
+    private static final String INSERT_ORDER_ITEM_SQL =
+            "INSERT INTO order_items (order_id, menu_item_id, menu_item_name, quantity, price, special_instructions) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
 
     @Override
     public Order save(Order order) throws Exception {
@@ -310,40 +339,15 @@ public class OrderDAOImpl implements OrderDAO {
 
     @Override
     public List<Order> findAll() throws Exception {
-        String orderSql = "SELECT * FROM orders";
-        List<Order> orders = new ArrayList<>();
+        String sql = "SELECT " + ORDER_WITH_ITEMS_COLUMNS + " FROM orders o " +
+                     "LEFT JOIN order_items oi ON oi.order_id = o.id " +
+                     "ORDER BY o.id, oi.id";
         
         try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement orderStmt = conn.prepareStatement(orderSql);
-             ResultSet rs = orderStmt.executeQuery()) {
-            
-            while (rs.next()) {
-                Order order = mapResultSetToOrder(rs);
-                // Fix specific orders with wrong total_amount values
-                fixOrderTotalAmount(order);
-                orders.add(order);
-            }
-            
-            // Get order items for each order
-            for (Order order : orders) {
-                String itemsSql = "SELECT * FROM order_items WHERE order_id = ?";
-                
-                try (PreparedStatement itemsStmt = conn.prepareStatement(itemsSql)) {
-                    itemsStmt.setInt(1, order.getId());
-                    
-                    try (ResultSet itemsRs = itemsStmt.executeQuery()) {
-                        List<OrderItem> items = new ArrayList<>();
-                        
-                        while (itemsRs.next()) {
-                            items.add(mapResultSetToOrderItem(itemsRs));
-                        }
-                        
-                        order.setOrderItems(items);
-                    }
-                }
-            }
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
             
-            return orders;
+            return mapResultSetToOrdersWithItems(rs);
         } catch (SQLException e) {
             logger.error("Error finding all orders: {}", e.getMessage());
             throw e;
@@ -352,43 +356,19 @@ public class OrderDAOImpl implements OrderDAO {
 
     @Override
     public List<Order> findByUserId(int userId) throws Exception {
-        String orderSql = "SELECT * FROM orders WHERE user_id = ? ORDER BY order_date DESC";
-        List<Order> orders = new ArrayList<>();
+        String sql = "SELECT " + ORDER_WITH_ITEMS_COLUMNS + " FROM orders o " +
+                     "LEFT JOIN order_items oi ON oi.order_id = o.id " +
+                     "WHERE o.user_id = ? " +
+                     "ORDER BY o.order_date DESC, o.id DESC, oi.id";
         
         try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement orderStmt = conn.prepareStatement(orderSql)) {
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             
-            orderStmt.setInt(1, userId);
+            stmt.setInt(1, userId);
             
-            try (ResultSet rs = orderStmt.executeQuery()) {
-                while (rs.next()) {
-                    Order order = mapResultSetToOrder(rs);
-                    // Fix specific orders with wrong total_amount values
-                    fixOrderTotalAmount(order);
-                    orders.add(order);
-                }
-            }
-            
-            // Get order items for each order
-            for (Order order : orders) {
-                String itemsSql = "SELECT * FROM order_items WHERE order_id = ?";
-                
-                try (PreparedStatement itemsStmt = conn.prepareStatement(itemsSql)) {
-                    itemsStmt.setInt(1, order.getId());
-                    
-                    try (ResultSet itemsRs = itemsStmt.executeQuery()) {
-                        List<OrderItem> items = new ArrayList<>();
-                        
-                        while (itemsRs.next()) {
-                            items.add(mapResultSetToOrderItem(itemsRs));
-                        }
-                        
-                        order.setOrderItems(items);
-                    }
-                }
+            try (ResultSet rs = stmt.executeQuery()) {
+                return mapResultSetToOrdersWithItems(rs);
             }
-            
-            return orders;
         } catch (SQLException e) {
             logger.error("Error finding orders by user ID: {}", e.getMessage());
             throw e;
@@ -397,43 +377,19 @@ public class OrderDAOImpl implements OrderDAO {
 
     @Override
     public List<Order> findByStatus(String status) throws Exception {
-        String orderSql = "SELECT * FROM orders WHERE status = ? ORDER BY order_date DESC";
-        List<Order> orders = new ArrayList<>();
+        String sql = "SELECT " + ORDER_WITH_ITEMS_COLUMNS + " FROM orders o " +
+                     "LEFT JOIN order_items oi ON oi.order_id = o.id " +
+                     "WHERE o.status = ? " +
+                     "ORDER BY o.order_date DESC, o.id DESC, oi.id";
         
         try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement orderStmt = conn.prepareStatement(orderSql)) {
-            
-            orderStmt.setString(1, status);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             
-            try (ResultSet rs = orderStmt.executeQuery()) {
-                while (rs.next()) {
-                    Order order = mapResultSetToOrder(rs);
-                    // Fix specific orders with wrong total_amount values
-                    fixOrderTotalAmount(order);
-                    orders.add(order);
-                }
-            }
+            stmt.setString(1, status);
             
-            // Get order items for each order
-            for (Order order : orders) {
-                String itemsSql = "SELECT * FROM order_items WHERE order_id = ?";
-                
-                try (PreparedStatement itemsStmt = conn.prepareStatement(itemsSql)) {
-                    itemsStmt.setInt(1, order.getId());
-                    
-                    try (ResultSet itemsRs = itemsStmt.executeQuery()) {
-                        List<OrderItem> items = new ArrayList<>();
-                        
-                        while (itemsRs.next()) {
-                            items.add(mapResultSetToOrderItem(itemsRs));
-                        }
-                        
-                        order.setOrderItems(items);
-                    }
-                }
+            try (ResultSet rs = stmt.executeQuery()) {
+                return mapResultSetToOrdersWithItems(rs);
             }
-            
-            return orders;
         } catch (SQLException e) {
             logger.error("Error finding orders by status: {}", e.getMessage());
             throw e;
@@ -442,44 +398,23 @@ public class OrderDAOImpl implements OrderDAO {
 
     @Override
     public List<Order> findByDateRange(Date startDate, Date endDate) throws Exception {
-        String orderSql = "SELECT * FROM orders WHERE order_date BETWEEN ? AND ? ORDER BY order_date DESC";
-        List<Order> orders = new ArrayList<>();
+        String sql = "SELECT " + ORDER_WITH_ITEMS_COLUMNS + " FROM orders o " +
+                     "LEFT JOIN order_items oi ON oi.order_id = o.id " +
+                     "WHERE o.order_date BETWEEN ? AND ? " +
+                     "ORDER BY o.order_date DESC, o.id DESC, oi.id";
         
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement orderStmt = conn.prepareStatement(orderSql)) {
-            
-            orderStmt.setTimestamp(1, new Timestamp(startDate.getTime()));
-            orderStmt.setTimestamp(2, new Timestamp(endDate.getTime()));
-            
-            try (ResultSet rs = orderStmt.executeQuery()) {
-                while (rs.next()) {
-                    Order order = mapResultSetToOrder(rs);
-                    // Fix specific orders with wrong total_amount values
-                    fixOrderTotalAmount(order);
-                    orders.add(order);
-                }
-            }
-            
-            // Get order items for each order
-            for (Order order : orders) {
-                String itemsSql = "SELECT * FROM order_items WHERE order_id = ?";
-                
-                try (PreparedStatement itemsStmt = conn.prepareStatement(itemsSql)) {
-                    itemsStmt.setInt(1, order.getId());
+        try {
+            return ReadRouter.read(DatabaseConfig.Pool.REPORTING, conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
                     
-                    try (ResultSet itemsRs = itemsStmt.executeQuery()) {
-                        List<OrderItem> items = new ArrayList<>();
-                        
-                        while (itemsRs.next()) {
-                            items.add(mapResultSetToOrderItem(itemsRs));
-                        }
-                        
-                        order.setOrderItems(items);
+                    stmt.setTimestamp(1, new Timestamp(startDate.getTime()));
+                    stmt.setTimestamp(2, new Timestamp(endDate.getTime()));
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        return mapResultSetToOrdersWithItems(rs);
                     }
                 }
-            }
-            
-            return orders;
+            });
         } catch (SQLException e) {
             logger.error("Error finding orders by date range: {}", e.getMessage());
             throw e;
@@ -523,100 +458,423 @@ public class OrderDAOImpl implements OrderDAO {
 
     @Override
     public List<Order> getRecentOrders(int limit) throws Exception {
-        String orderSql = "SELECT * FROM orders ORDER BY order_date DESC LIMIT ?";
-        List<Order> orders = new ArrayList<>();
+        // The LIMIT has to apply to orders, not to joined item rows, so it goes in a derived table
+        String sql = "SELECT " + ORDER_WITH_ITEMS_COLUMNS + " FROM " +
+                     "(SELECT * FROM orders ORDER BY order_date DESC, id DESC LIMIT ?) o " +
+                     "LEFT JOIN order_items oi ON oi.order_id = o.id " +
+                     "ORDER BY o.order_date DESC, o.id DESC, oi.id";
+        
+        try {
+            return ReadRouter.read(DatabaseConfig.Pool.OLTP, conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    
+                    stmt.setInt(1, limit);
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        return mapResultSetToOrdersWithItems(rs);
+                    }
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("Error getting recent orders: {}", e.getMessage());
+            throw e;
+        }
+    }
+    
+    @Override
+    public List<Order> findPage(String status, Date startDate, Date endDate, OrderPage.Cursor after, int limit) throws Exception {
+        StringBuilder where = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        appendOrderFilters(where, params, "", status, startDate, endDate);
+        
+        if (after != null) {
+            // Keyset predicate: strictly after the cursor in (order_date DESC, id DESC) order.
+            // A NULL order_date sorts after every date in DESC order, so orders without a
+            // date come last and are paged by id alone; spelling the NULLs out keeps both
+            // branches range scans on the (order_date, id) index.
+            if (after.getOrderDate() != null) {
+                Timestamp cursorDate = new Timestamp(after.getOrderDate().getTime());
+                where.append(" AND (order_date < ? OR (order_date = ? AND id < ?) OR order_date IS NULL)");
+                params.add(cursorDate);
+                params.add(cursorDate);
+            } else {
+                where.append(" AND order_date IS NULL AND id < ?");
+            }
+            params.add(after.getId());
+        }
+        
+        String sql = "SELECT " + ORDER_WITH_ITEMS_COLUMNS + " FROM " +
+                     "(SELECT * FROM orders WHERE 1 = 1" + where +
+                     " ORDER BY order_date DESC, id DESC LIMIT ?) o " +
+                     "LEFT JOIN order_items oi ON oi.order_id = o.id " +
+                     "ORDER BY o.order_date DESC, o.id DESC, oi.id";
+        params.add(limit);
         
         try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement orderStmt = conn.prepareStatement(orderSql)) {
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             
-            orderStmt.setInt(1, limit);
+            for (int i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
+            }
             
-            try (ResultSet rs = orderStmt.executeQuery()) {
-                while (rs.next()) {
-                    Order order = mapResultSetToOrder(rs);
-                    // Fix specific orders with wrong total_amount values
-                    fixOrderTotalAmount(order);
-                    orders.add(order);
-                }
+            try (ResultSet rs = stmt.executeQuery()) {
+                return mapResultSetToOrdersWithItems(rs);
+            }
+        } catch (SQLException e) {
+            logger.error("Error finding order page: {}", e.getMessage());
+            throw e;
+        }
+    }
+    
+    @Override
+    public int streamOrders(String status, Date startDate, Date endDate, OrderHandler handler) throws Exception {
+        StringBuilder where = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        appendOrderFilters(where, params, "o.", status, startDate, endDate);
+        
+        String sql = "SELECT " + ORDER_WITH_ITEMS_COLUMNS + " FROM orders o " +
+                     "LEFT JOIN order_items oi ON oi.order_id = o.id " +
+                     "WHERE 1 = 1" + where + " " +
+                     "ORDER BY o.order_date DESC, o.id DESC, oi.id";
+        
+        try (Connection conn = DatabaseConfig.getConnection(DatabaseConfig.Pool.REPORTING);
+             PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            
+            // Integer.MIN_VALUE makes MySQL Connector/J stream rows instead of buffering the whole result
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            for (int i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
             }
             
-            // Get order items for each order
-            for (Order order : orders) {
-                String itemsSql = "SELECT * FROM order_items WHERE order_id = ?";
+            int count = 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                Order current = null;
                 
-                try (PreparedStatement itemsStmt = conn.prepareStatement(itemsSql)) {
-                    itemsStmt.setInt(1, order.getId());
+                while (rs.next()) {
+                    int orderId = rs.getInt("id");
                     
-                    try (ResultSet itemsRs = itemsStmt.executeQuery()) {
-                        List<OrderItem> items = new ArrayList<>();
-                        
-                        while (itemsRs.next()) {
-                            items.add(mapResultSetToOrderItem(itemsRs));
+                    if (current == null || current.getId() != orderId) {
+                        if (current != null) {
+                            handler.handle(current);
+                            count++;
                         }
                         
-                        order.setOrderItems(items);
+                        current = mapResultSetToOrder(rs);
+                        fixOrderTotalAmount(current);
+                        current.setOrderItems(new ArrayList<>());
+                    }
+                    
+                    OrderItem item = mapJoinedOrderItem(rs, orderId);
+                    if (item != null) {
+                        current.getOrderItems().add(item);
                     }
                 }
+                
+                if (current != null) {
+                    handler.handle(current);
+                    count++;
+                }
             }
             
-            return orders;
+            logger.info("Streamed {} orders (status={})", count, status);
+            return count;
         } catch (SQLException e) {
-            logger.error("Error getting recent orders: {}", e.getMessage());
+            logger.error("Error streaming orders: {}", e.getMessage());
             throw e;
         }
     }
     
     /**
-     * Place an order using the stored procedure that transfers cart items to order items.
-     * This method ensures that order items are properly stored in the database.
+     * Appends the optional status and order date filters shared by the paged and
+     * streamed queries. Column names are qualified with the given table alias prefix.
+     */
+    private void appendOrderFilters(StringBuilder where, List<Object> params, String prefix,
+                                    String status, Date startDate, Date endDate) {
+        if (status != null) {
+            where.append(" AND ").append(prefix).append("status = ?");
+            params.add(status);
+        }
+        if (startDate != null) {
+            where.append(" AND ").append(prefix).append("order_date >= ?");
+            params.add(new Timestamp(startDate.getTime()));
+        }
+        if (endDate != null) {
+            where.append(" AND ").append(prefix).append("order_date <= ?");
+            params.add(new Timestamp(endDate.getTime()));
+        }
+    }
+    
+    /**
+     * Place an order for the items in the user's most recent cart.
+     * <p>
+     * Runs in one transaction on one connection with three statements: the cart lines
+     * are read once together with the current menu names and prices, the order is
+     * inserted with the total computed from those lines, and the items are inserted
+     * with a single multi-row INSERT. The returned order is built from the same
+     * in-memory data, so nothing is read back.
      *
-     * @param userId The user ID
+     * @param userId The ID of the user placing the order
      * @param deliveryAddress The delivery address
      * @param paymentMethod The payment method
      * @param specialInstructions Any special instructions
-     * @return The newly created Order object with all items
+     * @return The newly created order with its items
+     * @throws IllegalStateException if the user has no cart or the cart is empty
      * @throws Exception if a database error occurs
      */
     public Order placeOrderWithItems(int userId, String deliveryAddress, String paymentMethod, String specialInstructions) throws Exception {
         Connection conn = null;
-        CallableStatement cstmt = null;
         
         try {
             conn = DatabaseConfig.getConnection();
+            conn.setAutoCommit(false); // Start transaction
             
-            // Call the stored procedure to create the order and transfer cart items
-            cstmt = conn.prepareCall("{CALL usp_place_order(?, ?, ?, ?, ?)}");
-            cstmt.setInt(1, userId);
-            cstmt.setString(2, deliveryAddress);
-            cstmt.setString(3, paymentMethod);
-            cstmt.setString(4, specialInstructions);
-            cstmt.registerOutParameter(5, Types.INTEGER); // order_id output parameter
+            // 1. Read the cart lines with current menu names and prices
+            List<OrderItem> items;
+            try (PreparedStatement cartStmt = conn.prepareStatement(CART_LINES_SQL)) {
+                items = readCartLines(cartStmt, userId);
+            }
             
-            cstmt.execute();
+            if (items.isEmpty()) {
+                throw new IllegalStateException("Cart is empty");
+            }
             
-            // Get the new order ID from the output parameter
-            int orderId = cstmt.getInt(5);
-            logger.info("Order created with ID: {} using stored procedure", orderId);
+            // 2. Insert the order
+            Order order = newPendingOrder(userId, deliveryAddress, paymentMethod, specialInstructions, items);
+            try (PreparedStatement orderStmt = conn.prepareStatement(INSERT_ORDER_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                bindOrder(orderStmt, order);
+                orderStmt.executeUpdate();
+                
+                try (ResultSet generatedKeys = orderStmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        order.setId(generatedKeys.getInt(1));
+                    } else {
+                        throw new SQLException("Creating order failed, no ID obtained.");
+                    }
+                }
+            }
             
-            // Retrieve the complete order with items
-            return findById(orderId).orElseThrow(() -> new Exception("Failed to retrieve newly created order"));
-        } catch (SQLException e) {
-            logger.error("Error placing order with stored procedure: {}", e.getMessage());
+            // 3. Insert all items with one multi-row INSERT
+            StringBuilder itemSql = new StringBuilder(INSERT_ORDER_ITEM_SQL);
+            for (int i = 1; i < items.size(); i++) {
+                itemSql.append(", (?, ?, ?, ?, ?, ?)");
+            }
+            
+            try (PreparedStatement itemStmt = conn.prepareStatement(itemSql.toString(), Statement.RETURN_GENERATED_KEYS)) {
+                int param = 1;
+                for (OrderItem item : items) {
+                    item.setOrderId(order.getId());
+                    param = bindOrderItem(itemStmt, param, item);
+                }
+                itemStmt.executeUpdate();
+                assignItemIds(itemStmt, items);
+            }
+            
+            conn.commit();
+            
+            logger.info("Order created with ID: {}, total amount: {}, items: {}", order.getId(), order.getTotalAmount(), items.size());
+            return order;
+        } catch (SQLException | RuntimeException e) {
+            // Rollback transaction on error
+            rollbackQuietly(conn);
+            logger.error("Error placing order for user ID {}: {}", userId, e.getMessage());
             throw e;
         } finally {
-            if (cstmt != null) {
-                try {
-                    cstmt.close();
-                } catch (SQLException e) {
-                    logger.error("Error closing statement: {}", e.getMessage());
+            closeTransactionConnection(conn);
+        }
+    }
+    
+    /**
+     * Place the orders for several checkouts in one transaction (group commit).
+     * <p>
+     * Each checkout's cart lines are read with the same prepared statement, then all
+     * orders are inserted with one JDBC batch and all of their items with another,
+     * and the whole group is committed once. A checkout whose cart is empty gets a
+     * {@code null} entry in the result and does not affect the others; any database
+     * error rolls back the whole group so the caller can retry the checkouts one
+     * at a time.
+     *
+     * @param tickets the checkouts to place
+     * @return the placed orders, in the same order as the tickets, with {@code null}
+     *         for checkouts whose cart was empty
+     * @throws Exception if a database error occurs
+     */
+    public List<Order> placeOrders(List<CheckoutTicket> tickets) throws Exception {
+        Connection conn = null;
+        
+        try {
+            conn = DatabaseConfig.getConnection();
+            conn.setAutoCommit(false); // Start transaction
+            
+            // 1. Read every checkout's cart lines
+            List<Order> orders = new ArrayList<>(tickets.size());
+            List<Order> placed = new ArrayList<>(tickets.size());
+            try (PreparedStatement cartStmt = conn.prepareStatement(CART_LINES_SQL)) {
+                for (CheckoutTicket ticket : tickets) {
+                    List<OrderItem> items = readCartLines(cartStmt, ticket.getUserId());
+                    if (items.isEmpty()) {
+                        orders.add(null);
+                    } else {
+                        Order order = newPendingOrder(ticket.getUserId(), ticket.getDeliveryAddress(),
+                                ticket.getPaymentMethod(), ticket.getSpecialInstructions(), items);
+                        orders.add(order);
+                        placed.add(order);
+                    }
                 }
             }
-            if (conn != null) {
-                try {
-                    conn.close();
-                } catch (SQLException e) {
-                    logger.error("Error closing connection: {}", e.getMessage());
+            
+            if (placed.isEmpty()) {
+                conn.rollback();
+                return orders;
+            }
+            
+            // 2. Insert all orders with one batch
+            try (PreparedStatement orderStmt = conn.prepareStatement(INSERT_ORDER_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (Order order : placed) {
+                    bindOrder(orderStmt, order);
+                    orderStmt.addBatch();
+                }
+                orderStmt.executeBatch();
+                
+                try (ResultSet generatedKeys = orderStmt.getGeneratedKeys()) {
+                    for (Order order : placed) {
+                        if (!generatedKeys.next()) {
+                            throw new SQLException("Creating orders failed, not all IDs obtained.");
+                        }
+                        order.setId(generatedKeys.getInt(1));
+                    }
+                }
+            }
+            
+            // 3. Insert all of their items with one batch
+            List<OrderItem> allItems = new ArrayList<>();
+            try (PreparedStatement itemStmt = conn.prepareStatement(INSERT_ORDER_ITEM_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (Order order : placed) {
+                    for (OrderItem item : order.getOrderItems()) {
+                        item.setOrderId(order.getId());
+                        bindOrderItem(itemStmt, 1, item);
+                        itemStmt.addBatch();
+                        allItems.add(item);
+                    }
+                }
+                itemStmt.executeBatch();
+                assignItemIds(itemStmt, allItems);
+            }
+            
+            conn.commit();
+            
+            logger.info("Group commit placed {} orders with {} items", placed.size(), allItems.size());
+            return orders;
+        } catch (SQLException | RuntimeException e) {
+            rollbackQuietly(conn);
+            logger.error("Error placing {} orders in one transaction: {}", tickets.size(), e.getMessage());
+            throw e;
+        } finally {
+            closeTransactionConnection(conn);
+        }
+    }
+    
+    /**
+     * Reads the lines of a user's most recent cart with the current menu names and prices.
+     */
+    private List<OrderItem> readCartLines(PreparedStatement cartStmt, int userId) throws SQLException {
+        List<OrderItem> items = new ArrayList<>();
+        cartStmt.setInt(1, userId);
+        try (ResultSet rs = cartStmt.executeQuery()) {
+            while (rs.next()) {
+                OrderItem item = new OrderItem();
+                item.setMenuItemId(rs.getInt("menu_item_id"));
+                item.setMenuItemName(rs.getString("name"));
+                item.setQuantity(rs.getInt("quantity"));
+                item.setPrice(rs.getBigDecimal("price"));
+                items.add(item);
+            }
+        }
+        return items;
+    }
+    
+    /**
+     * Builds a new pending order for the given cart lines, with the total computed from them.
+     */
+    private Order newPendingOrder(int userId, String deliveryAddress, String paymentMethod,
+                                  String specialInstructions, List<OrderItem> items) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (OrderItem item : items) {
+            total = total.add(item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+        }
+        
+        Order order = new Order();
+        order.setUserId(userId);
+        order.setStatus("PENDING");
+        order.setTotalAmount(total);
+        order.setOrderDate(new Timestamp(System.currentTimeMillis()));
+        order.setDeliveryAddress(deliveryAddress);
+        order.setPaymentMethod(paymentMethod);
+        order.setPaymentStatus("PENDING");
+        order.setSpecialInstructions(specialInstructions);
+        order.setOrderItems(items);
+        return order;
+    }
+    
+    /**
+     * Sets the parameters of {@link #INSERT_ORDER_SQL} for the given order.
+     */
+    private void bindOrder(PreparedStatement stmt, Order order) throws SQLException {
+        stmt.setInt(1, order.getUserId());
+        stmt.setString(2, order.getStatus());
+        stmt.setBigDecimal(3, order.getTotalAmount());
+        stmt.setTimestamp(4, new Timestamp(order.getOrderDate().getTime()));
+        stmt.setString(5, order.getDeliveryAddress());
+        stmt.setString(6, order.getPaymentMethod());
+        stmt.setString(7, order.getPaymentStatus());
+        stmt.setString(8, order.getSpecialInstructions());
+    }
+    
+    /**
+     * Sets one row of order item parameters starting at the given index.
+     *
+     * @return the index of the next parameter
+     */
+    private int bindOrderItem(PreparedStatement stmt, int param, OrderItem item) throws SQLException {
+        stmt.setInt(param++, item.getOrderId());
+        stmt.setInt(param++, item.getMenuItemId());
+        stmt.setString(param++, item.getMenuItemName());
+        stmt.setInt(param++, item.getQuantity());
+        stmt.setBigDecimal(param++, item.getPrice());
+        stmt.setNull(param++, Types.VARCHAR);
+        return param;
+    }
+    
+    /**
+     * Copies the generated order item IDs onto the items, in insert order.
+     */
+    private void assignItemIds(PreparedStatement itemStmt, List<OrderItem> items) throws SQLException {
+        try (ResultSet generatedKeys = itemStmt.getGeneratedKeys()) {
+            for (OrderItem item : items) {
+                if (!generatedKeys.next()) {
+                    break;
                 }
+                item.setId(generatedKeys.getInt(1));
+            }
+        }
+    }
+    
+    private void rollbackQuietly(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.rollback();
+            } catch (SQLException ex) {
+                logger.error("Error rolling back transaction: {}", ex.getMessage());
+            }
+        }
+    }
+    
+    private void closeTransactionConnection(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.setAutoCommit(true);
+                conn.close();
+            } catch (SQLException e) {
+                logger.error("Error closing connection: {}", e.getMessage());
             }
         }
     }
@@ -662,6 +920,74 @@ public class OrderDAOImpl implements OrderDAO {
         return item;
     }
 
+    /**
+     * Maps the rows of an orders/order_items LEFT JOIN (see {@link #ORDER_WITH_ITEMS_COLUMNS})
+     * to orders with their items. Rows must be ordered so that all rows of one order are
+     * adjacent; orders are returned in the order they first appear.
+     *
+     * @param rs the ResultSet to map
+     * @return the orders with their items populated
+     * @throws SQLException if a database error occurs
+     */
+    private List<Order> mapResultSetToOrdersWithItems(ResultSet rs) throws SQLException {
+        List<Order> orders = new ArrayList<>();
+        Order current = null;
+        List<OrderItem> currentItems = null;
+        
+        while (rs.next()) {
+            int orderId = rs.getInt("id");
+            
+            if (current == null || current.getId() != orderId) {
+                if (current != null) {
+                    current.setOrderItems(currentItems);
+                }
+                
+                current = mapResultSetToOrder(rs);
+                // Fix specific orders with wrong total_amount values
+                fixOrderTotalAmount(current);
+                currentItems = new ArrayList<>();
+                orders.add(current);
+            }
+            
+            OrderItem item = mapJoinedOrderItem(rs, orderId);
+            if (item != null) {
+                currentItems.add(item);
+            }
+        }
+        
+        if (current != null) {
+            current.setOrderItems(currentItems);
+        }
+        
+        return orders;
+    }
+
+    /**
+     * Maps the aliased item columns of an orders/order_items LEFT JOIN row.
+     *
+     * @param rs the ResultSet positioned on the row
+     * @param orderId the ID of the order the row belongs to
+     * @return the order item, or null if the order has no items
+     * @throws SQLException if a database error occurs
+     */
+    private OrderItem mapJoinedOrderItem(ResultSet rs, int orderId) throws SQLException {
+        // A LEFT JOIN yields a single row with NULL item columns for orders without items
+        int itemId = rs.getInt("item_id");
+        if (rs.wasNull()) {
+            return null;
+        }
+        
+        OrderItem item = new OrderItem();
+        item.setId(itemId);
+        item.setOrderId(orderId);
+        item.setMenuItemId(rs.getInt("item_menu_item_id"));
+        item.setMenuItemName(rs.getString("item_menu_item_name"));
+        item.setQuantity(rs.getInt("item_quantity"));
+        item.setPrice(rs.getBigDecimal("item_price"));
+        item.setSpecialInstructions(rs.getString("item_special_instructions"));
+        return item;
+    }
+
     /**
      * Fix orders with incorrect total amounts based on the database.
      * Special case handling for known issues with zero amounts.
@@ -675,27 +1001,8 @@ public class OrderDAOImpl implements OrderDAO {
                                  order.getTotalAmount().compareTo(BigDecimal.ZERO) == 0;
             
             if (needsFixing) {
-                // First try to get the current value from the database
-            try (Connection conn = DatabaseConfig.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement("SELECT total_amount FROM orders WHERE id = ?")) {
-                
-                stmt.setInt(1, order.getId());
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                            BigDecimal dbAmount = rs.getBigDecimal("total_amount");
-                            if (dbAmount != null && dbAmount.compareTo(BigDecimal.ZERO) > 0) {
-                                // If a non-zero amount is found in the database, use it (this respects manual updates)
-                        order.setTotalAmount(dbAmount);
-                                logger.info("Using manually set amount from database for order #{}: {}", order.getId(), dbAmount);
-                                return; // Exit early - we found the amount in the database
-                            }
-                        }
-                    }
-                } catch (SQLException e) {
-                    logger.error("Error retrieving totalAmount for order ID {}: {}", order.getId(), e.getMessage());
-                }
-                
-                // If we're still here, either the database has no value or it has zero
+                // The amount was mapped from the row we just read, so the database has no
+                // value or it has zero; re-selecting it would only cost a round trip per order.
                 // Hard-coded fixes for specific orders as a fallback
                 boolean isKnownOrder = false;
                 BigDecimal knownAmount = null;
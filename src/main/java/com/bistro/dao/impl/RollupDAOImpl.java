@@ -0,0 +1,222 @@
+package com.bistro.dao.impl;
+
+import com.bistro.dao.RollupDAO;
+import com.bistro.model.ItemRollup;
+import com.bistro.model.RevenueRollup;
+import com.bistro.util.DatabaseConfig;
+import com.bistro.util.ReadRouter;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of the RollupDAO interface. Buckets are rebuilt on the
+ * background pool and read on the reporting pool.
+ */
+public class RollupDAOImpl implements RollupDAO {
+    private static final Logger logger = LoggerFactory.getLogger(RollupDAOImpl.class);
+
+    private static final String STATE_NAME = "orders";
+
+    private static final String DELETE_SUMMARY_SQL =
+            "DELETE FROM order_rollups WHERE granularity = ? AND bucket_start = ?";
+    private static final String DELETE_ITEMS_SQL =
+            "DELETE FROM order_item_rollups WHERE granularity = ? AND bucket_start = ?";
+
+    // Each INSERT ... SELECT takes (bucket start, range start, range end); HAVING
+    // leaves no row for an empty bucket
+    private static final String HOUR_SUMMARY_SQL =
+            "INSERT INTO order_rollups (granularity, bucket_start, order_count, cancelled_count, revenue, items_sold) " +
+            "SELECT 'HOUR', ?, COUNT(*), SUM(o.status = 'CANCELLED'), " +
+            "SUM(CASE WHEN o.status <> 'CANCELLED' THEN o.total_amount ELSE 0 END), " +
+            "SUM(CASE WHEN o.status <> 'CANCELLED' " +
+            "THEN (SELECT COALESCE(SUM(oi.quantity), 0) FROM order_items oi WHERE oi.order_id = o.id) ELSE 0 END) " +
+            "FROM orders o WHERE o.order_date >= ? AND o.order_date < ? HAVING COUNT(*) > 0";
+    private static final String HOUR_ITEMS_SQL =
+            "INSERT INTO order_item_rollups (granularity, bucket_start, menu_item_id, menu_item_name, quantity, revenue) " +
+            "SELECT 'HOUR', ?, oi.menu_item_id, MAX(oi.menu_item_name), SUM(oi.quantity), SUM(oi.quantity * oi.price) " +
+            "FROM orders o JOIN order_items oi ON oi.order_id = o.id " +
+            "WHERE o.order_date >= ? AND o.order_date < ? AND o.status <> 'CANCELLED' " +
+            "GROUP BY oi.menu_item_id";
+    private static final String DAY_SUMMARY_SQL =
+            "INSERT INTO order_rollups (granularity, bucket_start, order_count, cancelled_count, revenue, items_sold) " +
+            "SELECT 'DAY', ?, SUM(order_count), SUM(cancelled_count), SUM(revenue), SUM(items_sold) " +
+            "FROM order_rollups WHERE granularity = 'HOUR' AND bucket_start >= ? AND bucket_start < ? " +
+            "HAVING COUNT(*) > 0";
+    private static final String DAY_ITEMS_SQL =
+            "INSERT INTO order_item_rollups (granularity, bucket_start, menu_item_id, menu_item_name, quantity, revenue) " +
+            "SELECT 'DAY', ?, menu_item_id, MAX(menu_item_name), SUM(quantity), SUM(revenue) " +
+            "FROM order_item_rollups WHERE granularity = 'HOUR' AND bucket_start >= ? AND bucket_start < ? " +
+            "GROUP BY menu_item_id";
+
+    private static final String SERIES_SQL =
+            "SELECT bucket_start, order_count, cancelled_count, revenue, items_sold FROM order_rollups " +
+            "WHERE granularity = ? AND bucket_start >= ? AND bucket_start < ? ORDER BY bucket_start";
+    private static final String TOP_ITEMS_SQL =
+            "SELECT menu_item_id, MAX(menu_item_name) AS menu_item_name, SUM(quantity) AS quantity, SUM(revenue) AS revenue " +
+            "FROM order_item_rollups WHERE granularity = ? AND bucket_start >= ? AND bucket_start < ? " +
+            "GROUP BY menu_item_id ORDER BY revenue DESC LIMIT ?";
+
+    @Override
+    public void rebuildHour(Date hourStart) throws Exception {
+        Date hourEnd = new Date(hourStart.getTime() + 3_600_000L);
+        rebuild(HOUR, hourStart, hourEnd, HOUR_SUMMARY_SQL, HOUR_ITEMS_SQL);
+    }
+
+    @Override
+    public void rebuildDay(Date dayStart, Date dayEnd) throws Exception {
+        rebuild(DAY, dayStart, dayEnd, DAY_SUMMARY_SQL, DAY_ITEMS_SQL);
+    }
+
+    /**
+     * Replace one bucket's rows in a single transaction, so readers see either
+     * the old figures or the new ones.
+     */
+    private void rebuild(String granularity, Date start, Date end, String summarySql, String itemsSql) throws Exception {
+        Timestamp bucketStart = new Timestamp(start.getTime());
+        Timestamp bucketEnd = new Timestamp(end.getTime());
+
+        try (Connection conn = DatabaseConfig.getConnection(DatabaseConfig.Pool.BACKGROUND)) {
+            conn.setAutoCommit(false);
+            try {
+                for (String sql : new String[] { DELETE_SUMMARY_SQL, DELETE_ITEMS_SQL }) {
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        stmt.setString(1, granularity);
+                        stmt.setTimestamp(2, bucketStart);
+                        stmt.executeUpdate();
+                    }
+                }
+                for (String sql : new String[] { summarySql, itemsSql }) {
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        stmt.setTimestamp(1, bucketStart);
+                        stmt.setTimestamp(2, bucketStart);
+                        stmt.setTimestamp(3, bucketEnd);
+                        stmt.executeUpdate();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Error rebuilding {} rollup at {}: {}", granularity, start, e.getMessage());
+            throw e;
+        }
+    }
+
+    @Override
+    public List<RevenueRollup> findSeries(String granularity, Date from, Date to) throws Exception {
+        try {
+            return ReadRouter.read(DatabaseConfig.Pool.REPORTING, conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(SERIES_SQL)) {
+                    stmt.setString(1, granularity);
+                    stmt.setTimestamp(2, new Timestamp(from.getTime()));
+                    stmt.setTimestamp(3, new Timestamp(to.getTime()));
+
+                    List<RevenueRollup> series = new ArrayList<>();
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            series.add(new RevenueRollup(new Date(rs.getTimestamp("bucket_start").getTime()),
+                                    rs.getInt("order_count"), rs.getInt("cancelled_count"),
+                                    rs.getBigDecimal("revenue"), rs.getInt("items_sold")));
+                        }
+                    }
+                    return series;
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("Error reading {} rollups: {}", granularity, e.getMessage());
+            throw e;
+        }
+    }
+
+    @Override
+    public List<ItemRollup> findTopItems(String granularity, Date from, Date to, int limit) throws Exception {
+        try {
+            return ReadRouter.read(DatabaseConfig.Pool.REPORTING, conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(TOP_ITEMS_SQL)) {
+                    stmt.setString(1, granularity);
+                    stmt.setTimestamp(2, new Timestamp(from.getTime()));
+                    stmt.setTimestamp(3, new Timestamp(to.getTime()));
+                    stmt.setInt(4, limit);
+
+                    List<ItemRollup> items = new ArrayList<>();
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            BigDecimal revenue = rs.getBigDecimal("revenue");
+                            items.add(new ItemRollup(rs.getInt("menu_item_id"), rs.getString("menu_item_name"),
+                                    rs.getInt("quantity"), revenue != null ? revenue : BigDecimal.ZERO));
+                        }
+                    }
+                    return items;
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("Error reading item rollups: {}", e.getMessage());
+            throw e;
+        }
+    }
+
+    @Override
+    public Date findFirstOrderDate() throws Exception {
+        String sql = "SELECT MIN(order_date) FROM orders";
+
+        try (Connection conn = DatabaseConfig.getConnection(DatabaseConfig.Pool.BACKGROUND);
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+
+            Timestamp first = rs.next() ? rs.getTimestamp(1) : null;
+            return first != null ? new Date(first.getTime()) : null;
+        } catch (SQLException e) {
+            logger.error("Error finding first order date: {}", e.getMessage());
+            throw e;
+        }
+    }
+
+    @Override
+    public Date getRolledUpThrough() throws Exception {
+        String sql = "SELECT rolled_up_through FROM rollup_state WHERE name = ?";
+
+        try (Connection conn = DatabaseConfig.getConnection(DatabaseConfig.Pool.BACKGROUND);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, STATE_NAME);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? new Date(rs.getTimestamp(1).getTime()) : null;
+            }
+        } catch (SQLException e) {
+            logger.error("Error reading rollup state: {}", e.getMessage());
+            throw e;
+        }
+    }
+
+    @Override
+    public void setRolledUpThrough(Date through) throws Exception {
+        String sql = "INSERT INTO rollup_state (name, rolled_up_through) VALUES (?, ?) " +
+                "ON DUPLICATE KEY UPDATE rolled_up_through = VALUES(rolled_up_through)";
+
+        try (Connection conn = DatabaseConfig.getConnection(DatabaseConfig.Pool.BACKGROUND);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, STATE_NAME);
+            stmt.setTimestamp(2, new Timestamp(through.getTime()));
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            logger.error("Error saving rollup state: {}", e.getMessage());
+            throw e;
+        }
+    }
+}
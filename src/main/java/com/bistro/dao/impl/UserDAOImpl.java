@@ -3,6 +3,7 @@ package com.bistro.dao.impl;
 import com.bistro.dao.UserDAO;
 import com.bistro.model.User;
 import com.bistro.util.DatabaseConfig;
+import com.bistro.util.ReadRouter;
 
 import java.sql.*;
 import java.util.ArrayList;
@@ -133,17 +134,19 @@ public class UserDAOImpl implements UserDAO {
     @Override
     public List<User> findAll() throws Exception {
         String sql = "SELECT * FROM users";
-        List<User> users = new ArrayList<>();
         
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-            
-            while (rs.next()) {
-                users.add(mapResultSetToUser(rs));
-            }
-            
-            return users;
+        try {
+            return ReadRouter.read(DatabaseConfig.Pool.OLTP, conn -> {
+                List<User> users = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql);
+                     ResultSet rs = stmt.executeQuery()) {
+                    
+                    while (rs.next()) {
+                        users.add(mapResultSetToUser(rs));
+                    }
+                }
+                return users;
+            });
         } catch (SQLException e) {
             logger.error("Error finding all users: {}", e.getMessage());
             throw e;
@@ -0,0 +1,385 @@
+package com.bistro.filter;
+
+import com.bistro.dao.IdempotencyKeyDAO;
+import com.bistro.dao.impl.IdempotencyKeyDAOImpl;
+import com.bistro.model.IdempotencyRecord;
+import com.bistro.util.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.*;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import javax.servlet.http.HttpSession;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Filter that makes order placement and cart mutations safe to retry.
+ * <p>
+ * A mutating request carrying an {@code Idempotency-Key} header runs at most once per
+ * key and user. Its completed response is stored in a bounded in-memory LRU and in the
+ * {@code idempotency_keys} table for {@code idempotency.ttlSeconds}; a repeated request
+ * gets the stored response back without reaching the controller. A duplicate that
+ * arrives while the original is still running on this node waits for its result.
+ * Server errors (5xx) are not stored, so a retry after one runs again.
+ */
+@WebFilter(urlPatterns = {"/api/orders/*", "/api/cart-service/*"}, asyncSupported = true)
+public class IdempotencyFilter implements Filter {
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyFilter.class);
+
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final long PURGE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private final boolean enabled = AppConfig.getBoolean("idempotency.enabled", true);
+    private final long ttlMillis = TimeUnit.SECONDS.toMillis(AppConfig.getLong("idempotency.ttlSeconds", 86400));
+    private final int maxEntries = AppConfig.getInt("idempotency.maxEntries", 10000);
+    private final int maxBodyBytes = AppConfig.getInt("idempotency.maxBodyBytes", 262144);
+    private final long waitTimeoutMs = AppConfig.getLong("idempotency.waitTimeoutMs", 30000);
+
+    private final IdempotencyKeyDAO idempotencyKeyDAO = new IdempotencyKeyDAOImpl();
+    private final ConcurrentMap<String, CompletableFuture<IdempotencyRecord>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, IdempotencyRecord> completed = Collections.synchronizedMap(
+            new LinkedHashMap<String, IdempotencyRecord>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, IdempotencyRecord> eldest) {
+                    return size() > maxEntries;
+                }
+            });
+    private final AtomicLong nextPurgeAt = new AtomicLong();
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        // No initialization needed
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        String key = httpRequest.getHeader(IDEMPOTENCY_KEY_HEADER);
+        String method = httpRequest.getMethod();
+
+        if (!enabled || key == null || key.isEmpty() || "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        if (key.length() > MAX_KEY_LENGTH) {
+            sendError(httpResponse, HttpServletResponse.SC_BAD_REQUEST, "Idempotency-Key is too long");
+            return;
+        }
+
+        String keyHash = hashKey(httpRequest, key);
+
+        while (true) {
+            IdempotencyRecord stored = findCompleted(keyHash);
+            if (stored != null) {
+                replay(httpResponse, stored);
+                return;
+            }
+
+            CompletableFuture<IdempotencyRecord> mine = new CompletableFuture<>();
+            CompletableFuture<IdempotencyRecord> running = inFlight.putIfAbsent(keyHash, mine);
+
+            if (running == null) {
+                // The original may have finished between the lookup and claiming the key;
+                // it stores its response before releasing the claim, so memory is enough here
+                IdempotencyRecord raced = completed.get(keyHash);
+                if (raced != null && !raced.isExpired()) {
+                    mine.complete(raced);
+                    inFlight.remove(keyHash, mine);
+                    replay(httpResponse, raced);
+                    return;
+                }
+                execute(httpRequest, httpResponse, chain, keyHash, mine);
+                return;
+            }
+
+            // A duplicate of a request that is still running: wait for its outcome
+            try {
+                IdempotencyRecord result = running.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+                if (result != null) {
+                    replay(httpResponse, result);
+                    return;
+                }
+                // The original failed without a storable response; run this one instead
+            } catch (TimeoutException e) {
+                sendError(httpResponse, HttpServletResponse.SC_CONFLICT,
+                        "A request with this Idempotency-Key is still being processed");
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServletException("Interrupted while waiting for in-flight request", e);
+            } catch (ExecutionException e) {
+                // Not completed exceptionally by this filter; treat like a missing result
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // No cleanup needed
+    }
+
+    /**
+     * Run the request, capture its response and publish the outcome to any waiting duplicates.
+     */
+    private void execute(HttpServletRequest request, HttpServletResponse response, FilterChain chain,
+                         String keyHash, CompletableFuture<IdempotencyRecord> outcome) throws IOException, ServletException {
+        CapturingResponseWrapper capturing = new CapturingResponseWrapper(response, maxBodyBytes);
+        IdempotencyRecord record = null;
+
+        try {
+            chain.doFilter(request, capturing);
+            capturing.flushBuffer();
+
+            if (capturing.isStorable()) {
+                long now = System.currentTimeMillis();
+                record = new IdempotencyRecord(keyHash, capturing.getStatus(), capturing.getContentType(),
+                        capturing.getCapturedBody(), new Date(now), new Date(now + ttlMillis));
+                store(record);
+            }
+        } finally {
+            outcome.complete(record);
+            inFlight.remove(keyHash, outcome);
+        }
+    }
+
+    private IdempotencyRecord findCompleted(String keyHash) {
+        IdempotencyRecord record = completed.get(keyHash);
+        if (record != null) {
+            if (!record.isExpired()) {
+                return record;
+            }
+            completed.remove(keyHash);
+        }
+
+        try {
+            Optional<IdempotencyRecord> stored = idempotencyKeyDAO.findByKeyHash(keyHash);
+            if (stored.isPresent()) {
+                completed.put(keyHash, stored.get());
+                return stored.get();
+            }
+        } catch (Exception e) {
+            // Without the shared store we can still dedupe on this node
+            logger.warn("Could not look up idempotency key: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    private void store(IdempotencyRecord record) {
+        completed.put(record.getKeyHash(), record);
+        try {
+            idempotencyKeyDAO.save(record);
+        } catch (Exception e) {
+            logger.warn("Could not persist idempotency key, keeping it in memory only: {}", e.getMessage());
+        }
+        purgeExpiredIfDue();
+    }
+
+    /**
+     * Delete expired keys from the database at most once per interval, off the request thread.
+     */
+    private void purgeExpiredIfDue() {
+        long now = System.currentTimeMillis();
+        long due = nextPurgeAt.get();
+        if (now >= due && nextPurgeAt.compareAndSet(due, now + PURGE_INTERVAL_MS)) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    int deleted = idempotencyKeyDAO.deleteExpired();
+                    if (deleted > 0) {
+                        logger.info("Purged {} expired idempotency keys", deleted);
+                    }
+                } catch (Exception e) {
+                    logger.warn("Could not purge expired idempotency keys: {}", e.getMessage());
+                }
+            });
+        }
+    }
+
+    private void replay(HttpServletResponse response, IdempotencyRecord record) throws IOException {
+        response.setStatus(record.getStatusCode());
+        if (record.getContentType() != null) {
+            response.setContentType(record.getContentType());
+        }
+        response.setHeader(REPLAYED_HEADER, "true");
+
+        byte[] body = record.getBody() != null ? record.getBody() : new byte[0];
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    private void sendError(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().print("{\"error\":\"" + message + "\"}");
+    }
+
+    /**
+     * Scope the client's key to the user (or session) and the endpoint, so one client
+     * can neither replay nor block another client's request, and hash it to a fixed length.
+     */
+    private String hashKey(HttpServletRequest request, String key) {
+        HttpSession session = request.getSession(false);
+        String scope;
+        if (session != null && session.getAttribute("userId") != null) {
+            scope = "user:" + session.getAttribute("userId");
+        } else if (session != null) {
+            scope = "session:" + session.getId();
+        } else {
+            scope = "addr:" + request.getRemoteAddr();
+        }
+
+        String scoped = scope + "|" + request.getMethod() + "|" + request.getRequestURI() + "|" + key;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(scoped.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Response wrapper that passes output through to the client while keeping a copy
+     * of up to {@code limit} bytes.
+     */
+    private static class CapturingResponseWrapper extends HttpServletResponseWrapper {
+        private final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        private final int limit;
+        private boolean overflow;
+        private boolean errorSent;
+        private boolean streamRequested;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        CapturingResponseWrapper(HttpServletResponse response, int limit) {
+            super(response);
+            this.limit = limit;
+        }
+
+        private void capture(byte[] bytes, int off, int len) {
+            if (!overflow) {
+                if (copy.size() + len > limit) {
+                    overflow = true;
+                } else {
+                    copy.write(bytes, off, len);
+                }
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            streamRequested = true;
+            return teeStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (streamRequested) {
+                throw new IllegalStateException("getOutputStream() has already been called");
+            }
+            if (writer == null) {
+                String encoding = getCharacterEncoding() != null ? getCharacterEncoding() : StandardCharsets.ISO_8859_1.name();
+                writer = new PrintWriter(new OutputStreamWriter(teeStream(), encoding));
+            }
+            return writer;
+        }
+
+        private ServletOutputStream teeStream() throws IOException {
+            if (outputStream == null) {
+                ServletOutputStream target = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        target.write(b);
+                        capture(new byte[] {(byte) b}, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        target.write(b, off, len);
+                        capture(b, off, len);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        target.flush();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return target.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        target.setWriteListener(writeListener);
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            } else if (outputStream != null) {
+                outputStream.flush();
+            }
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            errorSent = true;
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            errorSent = true;
+            super.sendError(sc, msg);
+        }
+
+        boolean isStorable() {
+            return !overflow && !errorSent && getStatus() < 500;
+        }
+
+        byte[] getCapturedBody() {
+            return copy.toByteArray();
+        }
+    }
+}
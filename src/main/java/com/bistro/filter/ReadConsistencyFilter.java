@@ -0,0 +1,66 @@
+package com.bistro.filter;
+
+import com.bistro.util.ReadRouter;
+
+import javax.servlet.*;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+
+/**
+ * Filter that gives users read-your-writes consistency when reads are routed to replicas.
+ * Requests that modify data, and every request of the same session for a short window
+ * after such a request, read from the primary database only.
+ */
+@WebFilter(urlPatterns = {"/api/*"}, asyncSupported = true)
+public class ReadConsistencyFilter implements Filter {
+
+    static final String LAST_WRITE_AT = "lastWriteAt";
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        // No initialization needed
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        if (!ReadRouter.isEnabled()) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        boolean isWrite = !"GET".equals(httpRequest.getMethod()) && !"HEAD".equals(httpRequest.getMethod())
+                && !"OPTIONS".equals(httpRequest.getMethod());
+
+        HttpSession session = httpRequest.getSession(false);
+        Long lastWriteAt = session != null ? (Long) session.getAttribute(LAST_WRITE_AT) : null;
+
+        ReadRouter.setPinnedToPrimary(isWrite || ReadRouter.isWithinStickyWindow(lastWriteAt));
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ReadRouter.setPinnedToPrimary(false);
+
+            if (isWrite) {
+                // The session may have been created by this request (e.g. login)
+                session = httpRequest.getSession(false);
+                if (session != null) {
+                    try {
+                        session.setAttribute(LAST_WRITE_AT, System.currentTimeMillis());
+                    } catch (IllegalStateException e) {
+                        // Session was invalidated by this request (e.g. logout)
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // No cleanup needed
+    }
+}
@@ -19,7 +19,7 @@ import java.util.Optional;
  * Filter that extracts username from cookies and ensures it's available in the session
  * This helps maintain user context even if session attributes are lost
  */
-@WebFilter(urlPatterns = {"/api/*"})
+@WebFilter(urlPatterns = {"/api/*"}, asyncSupported = true)
 public class UsernameFilter implements Filter {
 
     private final UserService userService;
@@ -0,0 +1,100 @@
+package com.bistro.model;
+
+import java.util.Date;
+
+/**
+ * Model class representing a checkout accepted for asynchronous placement.
+ * The ticket is created when the request is queued and completed by a writer
+ * thread once the order has been committed or has failed.
+ */
+public class CheckoutTicket {
+    public static final String QUEUED = "QUEUED";
+    public static final String COMMITTED = "COMMITTED";
+    public static final String FAILED = "FAILED";
+
+    private final String id;
+    private final int userId;
+    private final String deliveryAddress;
+    private final String paymentMethod;
+    private final String specialInstructions;
+    private final Date createdAt;
+
+    // Written by a writer thread and read by request threads; the completion
+    // fields are set before the status so a reader that sees the final status
+    // also sees them
+    private volatile Order order;
+    private volatile String error;
+    private volatile Date completedAt;
+    private volatile String status = QUEUED;
+
+    public CheckoutTicket(String id, int userId, String deliveryAddress, String paymentMethod, String specialInstructions) {
+        this.id = id;
+        this.userId = userId;
+        this.deliveryAddress = deliveryAddress;
+        this.paymentMethod = paymentMethod;
+        this.specialInstructions = specialInstructions;
+        this.createdAt = new Date();
+    }
+
+    /**
+     * Mark the ticket committed with the order that was placed.
+     */
+    public void complete(Order order) {
+        this.order = order;
+        this.completedAt = new Date();
+        this.status = COMMITTED;
+    }
+
+    /**
+     * Mark the ticket failed with the reason.
+     */
+    public void fail(String error) {
+        this.error = error;
+        this.completedAt = new Date();
+        this.status = FAILED;
+    }
+
+    public boolean isDone() {
+        return !QUEUED.equals(status);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public String getDeliveryAddress() {
+        return deliveryAddress;
+    }
+
+    public String getPaymentMethod() {
+        return paymentMethod;
+    }
+
+    public String getSpecialInstructions() {
+        return specialInstructions;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Date getCompletedAt() {
+        return completedAt;
+    }
+}
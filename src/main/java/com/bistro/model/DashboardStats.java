@@ -0,0 +1,79 @@
+package com.bistro.model;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Model class representing the aggregate figures shown on the admin dashboard:
+ * order counts per status, total revenue over all orders and the number of users.
+ */
+public class DashboardStats {
+    private Map<String, Integer> orderStatusCounts;
+    private int totalOrders;
+    private BigDecimal totalRevenue;
+    private int totalUsers;
+    private Date computedAt;
+
+    public DashboardStats() {
+    }
+
+    public DashboardStats(Map<String, Integer> orderStatusCounts, int totalOrders, BigDecimal totalRevenue,
+                          int totalUsers, Date computedAt) {
+        this.orderStatusCounts = orderStatusCounts;
+        this.totalOrders = totalOrders;
+        this.totalRevenue = totalRevenue;
+        this.totalUsers = totalUsers;
+        this.computedAt = computedAt;
+    }
+
+    public Map<String, Integer> getOrderStatusCounts() {
+        return orderStatusCounts;
+    }
+
+    public void setOrderStatusCounts(Map<String, Integer> orderStatusCounts) {
+        this.orderStatusCounts = orderStatusCounts;
+    }
+
+    public int getTotalOrders() {
+        return totalOrders;
+    }
+
+    public void setTotalOrders(int totalOrders) {
+        this.totalOrders = totalOrders;
+    }
+
+    public BigDecimal getTotalRevenue() {
+        return totalRevenue;
+    }
+
+    public void setTotalRevenue(BigDecimal totalRevenue) {
+        this.totalRevenue = totalRevenue;
+    }
+
+    public int getTotalUsers() {
+        return totalUsers;
+    }
+
+    public void setTotalUsers(int totalUsers) {
+        this.totalUsers = totalUsers;
+    }
+
+    /**
+     * When the figures were read from the database.
+     */
+    public Date getComputedAt() {
+        return computedAt;
+    }
+
+    public void setComputedAt(Date computedAt) {
+        this.computedAt = computedAt;
+    }
+
+    /**
+     * Number of orders with the given status, zero if there are none.
+     */
+    public int getOrderCount(String status) {
+        return orderStatusCounts.getOrDefault(status, 0);
+    }
+}
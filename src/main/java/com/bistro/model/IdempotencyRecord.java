@@ -0,0 +1,80 @@
+package com.bistro.model;
+
+import java.util.Date;
+
+/**
+ * Model class representing a completed response stored under an idempotency key,
+ * so that a repeated request can be answered without running it again.
+ */
+public class IdempotencyRecord {
+    private String keyHash;
+    private int statusCode;
+    private String contentType;
+    private byte[] body;
+    private Date createdAt;
+    private Date expiresAt;
+
+    public IdempotencyRecord() {
+    }
+
+    public IdempotencyRecord(String keyHash, int statusCode, String contentType, byte[] body, Date createdAt, Date expiresAt) {
+        this.keyHash = keyHash;
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.body = body;
+        this.createdAt = createdAt;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getKeyHash() {
+        return keyHash;
+    }
+
+    public void setKeyHash(String keyHash) {
+        this.keyHash = keyHash;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public void setStatusCode(int statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public void setBody(byte[] body) {
+        this.body = body;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Date getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Date expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public boolean isExpired() {
+        return expiresAt != null && expiresAt.getTime() <= System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,56 @@
+package com.bistro.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Model class representing how much of one menu item was sold over a period,
+ * counting orders that were not cancelled.
+ */
+public class ItemRollup {
+    private int menuItemId;
+    private String menuItemName;
+    private int quantity;
+    private BigDecimal revenue;
+
+    public ItemRollup() {
+    }
+
+    public ItemRollup(int menuItemId, String menuItemName, int quantity, BigDecimal revenue) {
+        this.menuItemId = menuItemId;
+        this.menuItemName = menuItemName;
+        this.quantity = quantity;
+        this.revenue = revenue;
+    }
+
+    public int getMenuItemId() {
+        return menuItemId;
+    }
+
+    public void setMenuItemId(int menuItemId) {
+        this.menuItemId = menuItemId;
+    }
+
+    public String getMenuItemName() {
+        return menuItemName;
+    }
+
+    public void setMenuItemName(String menuItemName) {
+        this.menuItemName = menuItemName;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public BigDecimal getRevenue() {
+        return revenue;
+    }
+
+    public void setRevenue(BigDecimal revenue) {
+        this.revenue = revenue;
+    }
+}
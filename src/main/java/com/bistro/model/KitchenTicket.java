@@ -0,0 +1,114 @@
+package com.bistro.model;
+
+import java.util.Date;
+
+/**
+ * Model class representing one order line waiting to be cooked at a kitchen
+ * station. Tickets are ordered by the time the line has to be started for the
+ * order to be ready when promised: the promised time less the item's
+ * preparation time.
+ * <p>
+ * Tickets are immutable; a change to the order replaces its tickets.
+ */
+public class KitchenTicket {
+    private final int orderId;
+    private final int orderItemId;
+    private final int menuItemId;
+    private final String menuItemName;
+    private final int quantity;
+    private final String specialInstructions;
+    private final String station;
+    private final String orderStatus;
+    private final int preparationTime;
+    private final long orderedAt;
+    private final long readyBy;
+    private final long startBy;
+
+    public KitchenTicket(int orderId, int orderItemId, int menuItemId, String menuItemName, int quantity,
+                         String specialInstructions, String station, String orderStatus, int preparationTime,
+                         long orderedAt, long readyBy) {
+        this.orderId = orderId;
+        this.orderItemId = orderItemId;
+        this.menuItemId = menuItemId;
+        this.menuItemName = menuItemName;
+        this.quantity = quantity;
+        this.specialInstructions = specialInstructions;
+        this.station = station;
+        this.orderStatus = orderStatus;
+        this.preparationTime = preparationTime;
+        this.orderedAt = orderedAt;
+        this.readyBy = readyBy;
+        this.startBy = readyBy - preparationTime * 60_000L;
+    }
+
+    public int getOrderId() {
+        return orderId;
+    }
+
+    public int getOrderItemId() {
+        return orderItemId;
+    }
+
+    public int getMenuItemId() {
+        return menuItemId;
+    }
+
+    public String getMenuItemName() {
+        return menuItemName;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public String getSpecialInstructions() {
+        return specialInstructions;
+    }
+
+    public String getStation() {
+        return station;
+    }
+
+    /**
+     * Status of the order, PENDING or PREPARING.
+     */
+    public String getOrderStatus() {
+        return orderStatus;
+    }
+
+    /**
+     * Preparation time of the item in minutes.
+     */
+    public int getPreparationTime() {
+        return preparationTime;
+    }
+
+    public Date getOrderedAt() {
+        return new Date(orderedAt);
+    }
+
+    /**
+     * When the whole order is due to be ready.
+     */
+    public Date getReadyBy() {
+        return new Date(readyBy);
+    }
+
+    /**
+     * Latest time the line can be started and still be ready on time.
+     */
+    public Date getStartBy() {
+        return new Date(startBy);
+    }
+
+    /**
+     * Whether the line should already have been started.
+     */
+    public boolean isLate() {
+        return startBy < System.currentTimeMillis();
+    }
+
+    public long startByMillis() {
+        return startBy;
+    }
+}
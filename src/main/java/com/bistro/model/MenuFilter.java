@@ -0,0 +1,103 @@
+package com.bistro.model;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Model class representing a combined menu filter. Every criterion that is set
+ * must hold; within categories and price bands any one selected value is enough.
+ * Unset criteria (null or empty) do not restrict the result.
+ */
+public class MenuFilter {
+    private List<String> categories = new ArrayList<>();
+    private List<String> priceBands = new ArrayList<>();
+    private BigDecimal minPrice;
+    private BigDecimal maxPrice;
+    private Boolean available;
+    private Boolean featured;
+    private Integer maxPreparationTime;
+    private int offset;
+    private int limit;
+
+    public MenuFilter() {
+    }
+
+    public List<String> getCategories() {
+        return categories;
+    }
+
+    public void setCategories(List<String> categories) {
+        this.categories = categories;
+    }
+
+    /**
+     * Labels of the configured price bands, such as "200-400" or "700+".
+     */
+    public List<String> getPriceBands() {
+        return priceBands;
+    }
+
+    public void setPriceBands(List<String> priceBands) {
+        this.priceBands = priceBands;
+    }
+
+    public BigDecimal getMinPrice() {
+        return minPrice;
+    }
+
+    public void setMinPrice(BigDecimal minPrice) {
+        this.minPrice = minPrice;
+    }
+
+    public BigDecimal getMaxPrice() {
+        return maxPrice;
+    }
+
+    public void setMaxPrice(BigDecimal maxPrice) {
+        this.maxPrice = maxPrice;
+    }
+
+    public Boolean getAvailable() {
+        return available;
+    }
+
+    public void setAvailable(Boolean available) {
+        this.available = available;
+    }
+
+    public Boolean getFeatured() {
+        return featured;
+    }
+
+    public void setFeatured(Boolean featured) {
+        this.featured = featured;
+    }
+
+    /**
+     * Longest acceptable preparation time in minutes.
+     */
+    public Integer getMaxPreparationTime() {
+        return maxPreparationTime;
+    }
+
+    public void setMaxPreparationTime(Integer maxPreparationTime) {
+        this.maxPreparationTime = maxPreparationTime;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+}
@@ -0,0 +1,73 @@
+package com.bistro.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Model class representing one page of filtered menu items with facet counts.
+ * Each facet maps a value of one attribute to the number of items that would
+ * match if that value were selected instead, with every other criterion of the
+ * filter still applied.
+ */
+public class MenuFilterResult {
+    private List<MenuItem> items;
+    private int total;
+    private int offset;
+    private int limit;
+    private Map<String, Map<String, Integer>> facets;
+
+    public MenuFilterResult() {
+    }
+
+    public MenuFilterResult(List<MenuItem> items, int total, int offset, int limit,
+                            Map<String, Map<String, Integer>> facets) {
+        this.items = items;
+        this.total = total;
+        this.offset = offset;
+        this.limit = limit;
+        this.facets = facets;
+    }
+
+    public List<MenuItem> getItems() {
+        return items;
+    }
+
+    public void setItems(List<MenuItem> items) {
+        this.items = items;
+    }
+
+    /**
+     * Number of items matching the filter, across all pages.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public Map<String, Map<String, Integer>> getFacets() {
+        return facets;
+    }
+
+    public void setFacets(Map<String, Map<String, Integer>> facets) {
+        this.facets = facets;
+    }
+}
@@ -0,0 +1,141 @@
+package com.bistro.model;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Model class representing a committed change in an order's lifecycle. It carries
+ * the status and amount before and after the change, so a consumer can undo the
+ * old values and apply the new ones without reading the order again.
+ * <p>
+ * Events are published after the change is committed. The order they refer to is
+ * shared by every consumer and must not be modified.
+ */
+public class OrderEvent {
+    public enum Type {
+        /** A new order was placed; there are no previous values. */
+        PLACED,
+        /** The order's status changed. */
+        STATUS_CHANGED,
+        /** The order was edited, possibly including its status and amount. */
+        UPDATED,
+        /** The order was deleted; there are no new values. */
+        DELETED
+    }
+
+    private final Type type;
+    private final int orderId;
+    private final int userId;
+    private final String previousStatus;
+    private final BigDecimal previousAmount;
+    private final String status;
+    private final BigDecimal amount;
+    private final Date orderDate;
+    private final Order order;
+    private final long occurredAt;
+
+    public OrderEvent(Type type, int orderId, int userId, String previousStatus, BigDecimal previousAmount,
+                      String status, BigDecimal amount, Date orderDate, Order order) {
+        this.type = type;
+        this.orderId = orderId;
+        this.userId = userId;
+        this.previousStatus = previousStatus;
+        this.previousAmount = previousAmount;
+        this.status = status;
+        this.amount = amount;
+        this.orderDate = orderDate;
+        this.order = order;
+        this.occurredAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Event for a newly placed order.
+     */
+    public static OrderEvent placed(Order order) {
+        return new OrderEvent(Type.PLACED, order.getId(), order.getUserId(), null, null,
+                order.getStatus(), order.getTotalAmount(), order.getOrderDate(), order);
+    }
+
+    /**
+     * Event for a change from {@code before} to {@code after}, which must be the same order.
+     */
+    public static OrderEvent changed(Type type, Order before, Order after) {
+        return new OrderEvent(type, after.getId(), after.getUserId(), before.getStatus(), before.getTotalAmount(),
+                after.getStatus(), after.getTotalAmount(), before.getOrderDate(), after);
+    }
+
+    /**
+     * Event for a status change of an order that already carries its new status.
+     * The amount is unchanged.
+     */
+    public static OrderEvent statusChanged(Order order, String previousStatus) {
+        return new OrderEvent(Type.STATUS_CHANGED, order.getId(), order.getUserId(), previousStatus, order.getTotalAmount(),
+                order.getStatus(), order.getTotalAmount(), order.getOrderDate(), order);
+    }
+
+    /**
+     * Event for a deleted order, carrying its last values as the previous ones.
+     */
+    public static OrderEvent deleted(Order order) {
+        return new OrderEvent(Type.DELETED, order.getId(), order.getUserId(), order.getStatus(), order.getTotalAmount(),
+                null, null, order.getOrderDate(), order);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getOrderId() {
+        return orderId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    /**
+     * Status before the change, or null for a new order.
+     */
+    public String getPreviousStatus() {
+        return previousStatus;
+    }
+
+    /**
+     * Amount before the change, or null for a new order.
+     */
+    public BigDecimal getPreviousAmount() {
+        return previousAmount;
+    }
+
+    /**
+     * Status after the change, or null for a deleted order.
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * Amount after the change, or null for a deleted order.
+     */
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    /**
+     * When the order was originally placed.
+     */
+    public Date getOrderDate() {
+        return orderDate;
+    }
+
+    /**
+     * The order after the change, or as it was before it was deleted.
+     */
+    public Order getOrder() {
+        return order;
+    }
+
+    public long getOccurredAt() {
+        return occurredAt;
+    }
+}
@@ -0,0 +1,107 @@
+package com.bistro.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Model class representing one page of a keyset-paginated order listing.
+ * Orders are ordered by (orderDate, id) descending, with orders that have no
+ * date last; the next cursor points at the last order of this page and is null
+ * when there are no more pages.
+ */
+public class OrderPage {
+    private List<Order> orders;
+    private String nextCursor;
+    private int limit;
+
+    public OrderPage() {
+    }
+
+    public OrderPage(List<Order> orders, String nextCursor, int limit) {
+        this.orders = orders;
+        this.nextCursor = nextCursor;
+        this.limit = limit;
+    }
+
+    public List<Order> getOrders() {
+        return orders;
+    }
+
+    public void setOrders(List<Order> orders) {
+        this.orders = orders;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+
+    /**
+     * Position of an order in the (orderDate, id) ordering. Encoded as an
+     * opaque URL-safe token so clients don't depend on its format. The order
+     * date is null for an order without one.
+     */
+    public static class Cursor {
+        private final Date orderDate;
+        private final int id;
+
+        public Cursor(Date orderDate, int id) {
+            this.orderDate = orderDate;
+            this.id = id;
+        }
+
+        public static Cursor of(Order order) {
+            return new Cursor(order.getOrderDate(), order.getId());
+        }
+
+        public Date getOrderDate() {
+            return orderDate;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String encode() {
+            // An order without a date is encoded with an empty date part
+            String raw = (orderDate != null ? String.valueOf(orderDate.getTime()) : "") + ":" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Decode a cursor token produced by {@link #encode()}.
+         *
+         * @param token the cursor token
+         * @return the decoded cursor
+         * @throws IllegalArgumentException if the token is malformed
+         */
+        public static Cursor decode(String token) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                int separator = raw.indexOf(':');
+                Date orderDate = separator == 0 ? null : new Date(Long.parseLong(raw.substring(0, separator)));
+                int id = Integer.parseInt(raw.substring(separator + 1));
+                return new Cursor(orderDate, id);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + token, e);
+            }
+        }
+    }
+}
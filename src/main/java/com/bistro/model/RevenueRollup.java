@@ -0,0 +1,85 @@
+package com.bistro.model;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Model class representing the orders placed within one time bucket: how many
+ * there were, how many were cancelled, and the revenue and items sold of those
+ * that were not.
+ */
+public class RevenueRollup {
+    private Date bucketStart;
+    private int orderCount;
+    private int cancelledCount;
+    private BigDecimal revenue;
+    private int itemsSold;
+
+    public RevenueRollup() {
+    }
+
+    public RevenueRollup(Date bucketStart, int orderCount, int cancelledCount, BigDecimal revenue, int itemsSold) {
+        this.bucketStart = bucketStart;
+        this.orderCount = orderCount;
+        this.cancelledCount = cancelledCount;
+        this.revenue = revenue;
+        this.itemsSold = itemsSold;
+    }
+
+    /**
+     * Empty bucket starting at the given time.
+     */
+    public static RevenueRollup empty(Date bucketStart) {
+        return new RevenueRollup(bucketStart, 0, 0, BigDecimal.ZERO, 0);
+    }
+
+    /**
+     * Add another bucket's figures to this one.
+     */
+    public void add(RevenueRollup other) {
+        this.orderCount += other.orderCount;
+        this.cancelledCount += other.cancelledCount;
+        this.revenue = this.revenue.add(other.revenue);
+        this.itemsSold += other.itemsSold;
+    }
+
+    public Date getBucketStart() {
+        return bucketStart;
+    }
+
+    public void setBucketStart(Date bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    public int getOrderCount() {
+        return orderCount;
+    }
+
+    public void setOrderCount(int orderCount) {
+        this.orderCount = orderCount;
+    }
+
+    public int getCancelledCount() {
+        return cancelledCount;
+    }
+
+    public void setCancelledCount(int cancelledCount) {
+        this.cancelledCount = cancelledCount;
+    }
+
+    public BigDecimal getRevenue() {
+        return revenue;
+    }
+
+    public void setRevenue(BigDecimal revenue) {
+        this.revenue = revenue;
+    }
+
+    public int getItemsSold() {
+        return itemsSold;
+    }
+
+    public void setItemsSold(int itemsSold) {
+        this.itemsSold = itemsSold;
+    }
+}
@@ -0,0 +1,737 @@
+package com.bistro.service;
+
+import com.bistro.model.CartItem;
+import com.bistro.model.MenuItem;
+import com.bistro.service.impl.MenuItemServiceImpl;
+import com.bistro.util.AppConfig;
+import com.bistro.util.DBUtil;
+import com.bistro.util.DatabaseConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Holds active carts in memory and writes them to {@code carts} and
+ * {@code cart_items} in the background, so adding to or changing a cart needs
+ * no database round trip.
+ * <p>
+ * A cart is kept as one array of menu item ID and quantity pairs and is read
+ * from the database the first time it is used. Changes are applied to the array
+ * and the cart is marked dirty. Every {@code cart.engine.flushMillis} the dirty
+ * carts are written together: their lines are replaced with one DELETE and one
+ * multi-row INSERT per batch of carts, in one transaction. A cart changed many
+ * times between flushes is therefore written once, and at most one flush
+ * interval of changes is lost if the node stops without shutting down. Checkout
+ * reads the cart from the database, so it calls {@link #flush(int)} first.
+ * <p>
+ * Carts live on the node that changed them. Another node serving the same cart
+ * would see the database copy, which can be one flush behind, so the engine is
+ * only for a single node or sticky sessions and is off unless
+ * {@code cart.engine.enabled} is set.
+ */
+public class CartEngine {
+    private static final Logger logger = LoggerFactory.getLogger(CartEngine.class);
+
+    private static final boolean ENABLED = AppConfig.getBoolean("cart.engine.enabled", false);
+    private static final long FLUSH_INTERVAL_MS = Math.max(10, AppConfig.getLong("cart.engine.flushMillis", 1000));
+    private static final int FLUSH_BATCH_CARTS = Math.max(1, AppConfig.getInt("cart.engine.flushBatchCarts", 200));
+    private static final long IDLE_MS = Math.max(1, AppConfig.getLong("cart.engine.idleMinutes", 30)) * 60_000L;
+    private static final int MAX_CARTS = Math.max(1, AppConfig.getInt("cart.engine.maxCarts", 100000));
+    private static final int MAX_INSERT_ROWS = 500;
+
+    /** One row with null columns for an empty cart, and no rows for a cart that does not exist. */
+    private static final String LOAD_SQL =
+            "SELECT ci.menu_item_id, ci.quantity FROM carts c LEFT JOIN cart_items ci ON ci.cart_id = c.id " +
+            "WHERE c.id = ? ORDER BY ci.id";
+
+    private static final ConcurrentMap<Integer, CartState> carts = new ConcurrentHashMap<>();
+    private static final Set<Integer> dirtyCarts = ConcurrentHashMap.newKeySet();
+    // Held while carts are written, so two writes of one cart never commit out of order
+    private static final ReentrantLock writeLock = new ReentrantLock();
+    private static final MenuItemService menuItemService = new MenuItemServiceImpl();
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder loads = new LongAdder();
+    private static final LongAdder mutations = new LongAdder();
+    private static final LongAdder flushes = new LongAdder();
+    private static final LongAdder cartsWritten = new LongAdder();
+    private static final LongAdder linesWritten = new LongAdder();
+    private static final LongAdder discarded = new LongAdder();
+    private static final LongAdder linesDropped = new LongAdder();
+    private static final LongAdder evicted = new LongAdder();
+    private static final LongAdder failures = new LongAdder();
+    private static volatile long lastFlushMillis;
+
+    private static ScheduledExecutorService worker;
+
+    /**
+     * One cart's lines. Guarded by its own monitor.
+     */
+    private static final class CartState {
+        /** Menu item ID and quantity pairs, in the order the lines were added. */
+        int[] lines;
+        int size;
+        long version;
+        long writtenVersion;
+        volatile long lastAccess;
+        boolean removed;
+
+        CartState(int[] lines, int size) {
+            this.lines = lines;
+            this.size = size;
+            this.lastAccess = System.currentTimeMillis();
+        }
+
+        boolean isDirty() {
+            return version != writtenVersion;
+        }
+
+        int indexOf(int menuItemId) {
+            for (int i = 0; i < size; i++) {
+                if (lines[2 * i] == menuItemId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void set(int menuItemId, int quantity) {
+            int index = indexOf(menuItemId);
+            if (quantity <= 0) {
+                if (index >= 0) {
+                    System.arraycopy(lines, 2 * index + 2, lines, 2 * index, 2 * (size - index - 1));
+                    size--;
+                }
+                return;
+            }
+            if (index < 0) {
+                if (2 * size == lines.length) {
+                    lines = Arrays.copyOf(lines, Math.max(8, lines.length * 2));
+                }
+                index = size++;
+                lines[2 * index] = menuItemId;
+            }
+            lines[2 * index + 1] = quantity;
+        }
+
+        int quantityOf(int menuItemId) {
+            int index = indexOf(menuItemId);
+            return index >= 0 ? lines[2 * index + 1] : 0;
+        }
+    }
+
+    /**
+     * A cart's lines as they were when a flush copied them.
+     */
+    private static final class Snapshot {
+        final int cartId;
+        final CartState state;
+        final int[] lines;
+        final long version;
+
+        Snapshot(int cartId, CartState state) {
+            this.cartId = cartId;
+            this.state = state;
+            this.lines = Arrays.copyOf(state.lines, 2 * state.size);
+            this.version = state.version;
+        }
+    }
+
+    /**
+     * A change to a cart's lines, applied under the cart's lock.
+     */
+    private interface Mutation {
+        void apply(CartState state) throws SQLException;
+    }
+
+    private CartEngine() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Schedule the background flush.
+     */
+    public static synchronized void start() {
+        if (!ENABLED || worker != null) {
+            return;
+        }
+        worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cart-engine");
+            thread.setDaemon(true);
+            return thread;
+        });
+        worker.scheduleWithFixedDelay(CartEngine::flushAndEvict, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        logger.info("Cart engine started (flush every {} ms)", FLUSH_INTERVAL_MS);
+    }
+
+    /**
+     * Stop the background flush and write every dirty cart.
+     */
+    public static synchronized void shutdown() {
+        if (worker == null) {
+            return;
+        }
+        worker.shutdownNow();
+        worker = null;
+        flushDirty();
+        if (!dirtyCarts.isEmpty()) {
+            logger.warn("{} carts could not be written at shutdown", dirtyCarts.size());
+        }
+    }
+
+    /**
+     * Get a cart's lines with their menu items and line totals. Lines for menu
+     * items that are no longer on the menu are left out.
+     */
+    public static List<CartItem> getItems(int cartId) throws SQLException {
+        CartState state = stateOf(cartId);
+        if (state == null) {
+            return new ArrayList<>();
+        }
+        int[] lines;
+        synchronized (state) {
+            lines = Arrays.copyOf(state.lines, 2 * state.size);
+            state.lastAccess = System.currentTimeMillis();
+        }
+
+        MenuCatalog catalog = menuCatalog();
+        List<CartItem> items = new ArrayList<>(lines.length / 2);
+        for (int i = 0; i < lines.length; i += 2) {
+            MenuItem menuItem = catalog.getById(lines[i]);
+            if (menuItem == null) {
+                continue;
+            }
+            CartItem item = new CartItem(lines[i], lines[i + 1]);
+            item.setCartId(cartId);
+            item.setMenuItem(menuItem);
+            item.setTotal(menuItem.getPrice().multiply(BigDecimal.valueOf(lines[i + 1])));
+            items.add(item);
+        }
+        return items;
+    }
+
+    /**
+     * Add a quantity of a menu item; the line is removed if its quantity drops to zero.
+     */
+    public static void add(int cartId, int menuItemId, int quantity) throws SQLException {
+        requireMenuItem(menuItemId);
+        mutate(cartId, state -> state.set(menuItemId, state.quantityOf(menuItemId) + quantity));
+    }
+
+    /**
+     * Change a line's quantity by a delta, removing the line if it drops to zero.
+     * A positive delta for an item not in the cart adds it.
+     */
+    public static void update(int cartId, int menuItemId, int delta) throws SQLException {
+        if (delta > 0) {
+            requireMenuItem(menuItemId);
+        }
+        mutate(cartId, state -> state.set(menuItemId, state.quantityOf(menuItemId) + delta));
+    }
+
+    public static void remove(int cartId, int menuItemId) throws SQLException {
+        mutate(cartId, state -> state.set(menuItemId, 0));
+    }
+
+    public static void clear(int cartId) throws SQLException {
+        mutate(cartId, state -> state.size = 0);
+    }
+
+    /**
+     * Replace every line of a cart. Repeated menu items are added together.
+     */
+    public static void replace(int cartId, List<CartItem> items) throws SQLException {
+        for (CartItem item : items) {
+            requireMenuItem(item.getMenuItemId());
+        }
+        mutate(cartId, state -> {
+            state.size = 0;
+            for (CartItem item : items) {
+                state.set(item.getMenuItemId(), state.quantityOf(item.getMenuItemId()) + item.getQuantity());
+            }
+        });
+    }
+
+    /**
+     * Write a cart now if it has changes that are not yet in the database. Call
+     * before reading the cart from the database, as checkout does.
+     */
+    public static void flush(int cartId) throws SQLException {
+        CartState state = carts.get(cartId);
+        if (state == null) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            for (int attempt = 0; ; attempt++) {
+                // Removed before the copy, so a change made after it marks the cart again
+                dirtyCarts.remove(cartId);
+                Snapshot snapshot;
+                synchronized (state) {
+                    if (!state.isDirty()) {
+                        return;
+                    }
+                    snapshot = new Snapshot(cartId, state);
+                }
+                try {
+                    write(DatabaseConfig.Pool.OLTP, Collections.singletonList(snapshot));
+                    written(snapshot);
+                    return;
+                } catch (SQLException e) {
+                    dirtyCarts.add(cartId);
+                    if (attempt > 0 || !isConstraintViolation(e) || dropMissingMenuItems(snapshot) <= 0) {
+                        throw e;
+                    }
+                    // Lines for deleted menu items were dropped; write the rest
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Whether a cart is held in memory, which means it has been used recently.
+     */
+    public static boolean isHeld(int cartId) {
+        return carts.containsKey(cartId);
+    }
+
+    /**
+     * Drop carts that may have been deleted from the database. A cart with
+     * unsaved changes is kept; if it was deleted, its next write fails and drops it.
+     */
+    public static void forget(Collection<Integer> cartIds) {
+        for (Integer cartId : cartIds) {
+            CartState state = carts.get(cartId);
+            if (state != null) {
+                evict(cartId, state);
+            }
+        }
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", ENABLED);
+        stats.put("carts", carts.size());
+        stats.put("dirtyCarts", dirtyCarts.size());
+        stats.put("hits", hits.sum());
+        stats.put("loads", loads.sum());
+        stats.put("mutations", mutations.sum());
+        stats.put("flushes", flushes.sum());
+        stats.put("cartsWritten", cartsWritten.sum());
+        stats.put("linesWritten", linesWritten.sum());
+        stats.put("discarded", discarded.sum());
+        stats.put("linesDropped", linesDropped.sum());
+        stats.put("evicted", evicted.sum());
+        stats.put("failures", failures.sum());
+        stats.put("lastFlushMillis", lastFlushMillis);
+        return stats;
+    }
+
+    private static void mutate(int cartId, Mutation mutation) throws SQLException {
+        while (true) {
+            CartState state = stateOf(cartId);
+            if (state == null) {
+                throw new CartService.CartNotFoundException(cartId);
+            }
+            synchronized (state) {
+                if (state.removed) {
+                    // Evicted between the lookup and the lock; load it again
+                    continue;
+                }
+                mutation.apply(state);
+                state.version++;
+                state.lastAccess = System.currentTimeMillis();
+            }
+            dirtyCarts.add(cartId);
+            mutations.increment();
+            return;
+        }
+    }
+
+    /**
+     * Get a cart's state, reading its lines from the database if it is not in memory.
+     *
+     * @return the state, or null if the cart does not exist
+     */
+    private static CartState stateOf(int cartId) throws SQLException {
+        CartState state = carts.get(cartId);
+        if (state != null) {
+            hits.increment();
+            return state;
+        }
+
+        int[] lines = new int[8];
+        int size = 0;
+        boolean exists = false;
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(LOAD_SQL)) {
+            stmt.setInt(1, cartId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    exists = true;
+                    if (rs.getObject("menu_item_id") == null) {
+                        continue;
+                    }
+                    if (2 * size == lines.length) {
+                        lines = Arrays.copyOf(lines, lines.length * 2);
+                    }
+                    lines[2 * size] = rs.getInt("menu_item_id");
+                    lines[2 * size + 1] = rs.getInt("quantity");
+                    size++;
+                }
+            }
+        }
+        loads.increment();
+        if (!exists) {
+            return null;
+        }
+
+        CartState loaded = new CartState(lines, size);
+        CartState existing = carts.putIfAbsent(cartId, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    private static MenuCatalog menuCatalog() throws SQLException {
+        try {
+            return menuItemService.getMenuCatalog();
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException("Could not load the menu", e);
+        }
+    }
+
+    /**
+     * Reject a menu item the database would reject when the cart is written.
+     */
+    private static void requireMenuItem(int menuItemId) throws SQLException {
+        if (menuCatalog().getById(menuItemId) == null) {
+            throw new CartService.MenuItemNotFoundException("Menu item " + menuItemId + " not found");
+        }
+    }
+
+    private static void flushAndEvict() {
+        try {
+            flushDirty();
+            evictIdle();
+        } catch (Exception e) {
+            failures.increment();
+            logger.warn("Cart flush failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Write every dirty cart, a batch of carts per transaction.
+     */
+    static void flushDirty() {
+        if (dirtyCarts.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        writeLock.lock();
+        try {
+            List<Snapshot> batch = new ArrayList<>(FLUSH_BATCH_CARTS);
+            for (Integer cartId : dirtyCarts) {
+                // Removed before the copy, so a change made after it marks the cart again
+                dirtyCarts.remove(cartId);
+                CartState state = carts.get(cartId);
+                if (state == null) {
+                    continue;
+                }
+                synchronized (state) {
+                    if (!state.isDirty()) {
+                        continue;
+                    }
+                    batch.add(new Snapshot(cartId, state));
+                }
+                if (batch.size() == FLUSH_BATCH_CARTS) {
+                    writeBatch(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        flushes.increment();
+        lastFlushMillis = System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Write a batch of carts. If the batch fails, its carts are written one at a
+     * time so one bad cart does not hold back the rest.
+     */
+    private static void writeBatch(List<Snapshot> batch) {
+        try {
+            write(DatabaseConfig.Pool.BACKGROUND, batch);
+            for (Snapshot snapshot : batch) {
+                written(snapshot);
+            }
+            return;
+        } catch (SQLException e) {
+            if (batch.size() == 1) {
+                writeFailed(batch.get(0), e);
+                return;
+            }
+            logger.debug("Writing {} carts together failed, writing them one at a time: {}", batch.size(), e.getMessage());
+        }
+        for (Snapshot snapshot : batch) {
+            try {
+                write(DatabaseConfig.Pool.BACKGROUND, Collections.singletonList(snapshot));
+                written(snapshot);
+            } catch (SQLException e) {
+                writeFailed(snapshot, e);
+            }
+        }
+    }
+
+    /**
+     * Replace the lines of the given carts in one transaction: one DELETE for all
+     * of them, multi-row INSERTs for their lines and one UPDATE of their timestamps.
+     */
+    private static void write(DatabaseConfig.Pool pool, List<Snapshot> batch) throws SQLException {
+        String ids = placeholders(batch.size());
+
+        try (Connection conn = DatabaseConfig.getConnection(pool)) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "DELETE FROM cart_items WHERE cart_id IN (" + ids + ")")) {
+                    bindCartIds(stmt, batch);
+                    stmt.executeUpdate();
+                }
+
+                List<int[]> rows = new ArrayList<>();
+                for (Snapshot snapshot : batch) {
+                    for (int i = 0; i < snapshot.lines.length; i += 2) {
+                        rows.add(new int[] { snapshot.cartId, snapshot.lines[i], snapshot.lines[i + 1] });
+                    }
+                }
+                for (int from = 0; from < rows.size(); from += MAX_INSERT_ROWS) {
+                    insertLines(conn, rows.subList(from, Math.min(rows.size(), from + MAX_INSERT_ROWS)));
+                }
+
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "UPDATE carts SET updated_at = NOW() WHERE id IN (" + ids + ")")) {
+                    bindCartIds(stmt, batch);
+                    stmt.executeUpdate();
+                }
+                conn.commit();
+                cartsWritten.add(batch.size());
+                linesWritten.add(rows.size());
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static void insertLines(Connection conn, List<int[]> rows) throws SQLException {
+        StringBuilder sql = new StringBuilder(
+                "INSERT INTO cart_items (cart_id, menu_item_id, quantity, created_at, updated_at) VALUES (?, ?, ?, NOW(), NOW())");
+        for (int i = 1; i < rows.size(); i++) {
+            sql.append(", (?, ?, ?, NOW(), NOW())");
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (int[] row : rows) {
+                stmt.setInt(index++, row[0]);
+                stmt.setInt(index++, row[1]);
+                stmt.setInt(index++, row[2]);
+            }
+            stmt.executeUpdate();
+        }
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sql = new StringBuilder("?");
+        for (int i = 1; i < count; i++) {
+            sql.append(", ?");
+        }
+        return sql.toString();
+    }
+
+    private static void bindCartIds(PreparedStatement stmt, List<Snapshot> batch) throws SQLException {
+        for (int i = 0; i < batch.size(); i++) {
+            stmt.setInt(i + 1, batch.get(i).cartId);
+        }
+    }
+
+    private static void written(Snapshot snapshot) {
+        synchronized (snapshot.state) {
+            snapshot.state.writtenVersion = Math.max(snapshot.state.writtenVersion, snapshot.version);
+        }
+    }
+
+    /**
+     * A cart that breaks a constraint has either been deleted or holds a menu item
+     * that has been deleted since the menu was cached. Lines for deleted menu items
+     * are dropped and the rest is written on the next flush. A deleted cart, or one
+     * that breaks a constraint for another reason, can never be written as it is, so
+     * it is dropped from memory and the next request reads it back from the
+     * database. Anything else is retried on the next flush.
+     */
+    private static void writeFailed(Snapshot snapshot, SQLException e) {
+        if (isConstraintViolation(e)) {
+            int missing;
+            try {
+                missing = dropMissingMenuItems(snapshot);
+            } catch (SQLException checkFailed) {
+                dirtyCarts.add(snapshot.cartId);
+                failures.increment();
+                logger.warn("Could not check cart {} after its write failed: {}", snapshot.cartId, checkFailed.getMessage());
+                return;
+            }
+            if (missing > 0) {
+                dirtyCarts.add(snapshot.cartId);
+                return;
+            }
+            synchronized (snapshot.state) {
+                snapshot.state.removed = true;
+                carts.remove(snapshot.cartId, snapshot.state);
+            }
+            discarded.increment();
+            logger.warn("Dropped unsaved changes to cart {}, which cannot be written: {}", snapshot.cartId, e.getMessage());
+        } else {
+            dirtyCarts.add(snapshot.cartId);
+            failures.increment();
+            logger.warn("Could not write cart {}: {}", snapshot.cartId, e.getMessage());
+        }
+    }
+
+    private static boolean isConstraintViolation(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith("23");
+    }
+
+    /**
+     * Check a cart whose write broke a constraint against the database, and drop
+     * its lines for menu items that no longer exist. The cart is left dirty, so the
+     * remaining lines are written by the next flush.
+     *
+     * @return the number of deleted menu items the snapshot held, or -1 if the cart
+     *         itself no longer exists
+     */
+    private static int dropMissingMenuItems(Snapshot snapshot) throws SQLException {
+        Set<Integer> menuItemIds = new HashSet<>();
+        for (int i = 0; i < snapshot.lines.length; i += 2) {
+            menuItemIds.add(snapshot.lines[i]);
+        }
+
+        try (Connection conn = DBUtil.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT id FROM carts WHERE id = ?")) {
+                stmt.setInt(1, snapshot.cartId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return -1;
+                    }
+                }
+            }
+            if (!menuItemIds.isEmpty()) {
+                List<Integer> ids = new ArrayList<>(menuItemIds);
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "SELECT id FROM menu_items WHERE id IN (" + placeholders(ids.size()) + ")")) {
+                    for (int i = 0; i < ids.size(); i++) {
+                        stmt.setInt(i + 1, ids.get(i));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            menuItemIds.remove(rs.getInt("id"));
+                        }
+                    }
+                }
+            }
+        }
+        if (menuItemIds.isEmpty()) {
+            return 0;
+        }
+
+        int dropped = 0;
+        synchronized (snapshot.state) {
+            for (Integer menuItemId : menuItemIds) {
+                if (snapshot.state.indexOf(menuItemId) >= 0) {
+                    snapshot.state.set(menuItemId, 0);
+                    dropped++;
+                }
+            }
+            if (dropped > 0) {
+                snapshot.state.version++;
+            }
+        }
+        if (dropped > 0) {
+            linesDropped.add(dropped);
+            logger.warn("Dropped {} line(s) for deleted menu items {} from cart {}", dropped, menuItemIds, snapshot.cartId);
+        }
+        // A line the cart no longer holds was removed by a later change; still explained
+        return menuItemIds.size();
+    }
+
+    /**
+     * Drop clean carts that have not been used for a while, and the least
+     * recently used clean carts while there are more than {@code cart.engine.maxCarts}.
+     */
+    private static void evictIdle() {
+        long idleBefore = System.currentTimeMillis() - IDLE_MS;
+        for (Map.Entry<Integer, CartState> entry : carts.entrySet()) {
+            if (entry.getValue().lastAccess < idleBefore) {
+                evict(entry.getKey(), entry.getValue());
+            }
+        }
+
+        int excess = carts.size() - MAX_CARTS;
+        if (excess > 0) {
+            List<Map.Entry<Integer, CartState>> entries = new ArrayList<>(carts.entrySet());
+            entries.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+            for (Map.Entry<Integer, CartState> entry : entries) {
+                if (excess <= 0) {
+                    break;
+                }
+                if (evict(entry.getKey(), entry.getValue())) {
+                    excess--;
+                }
+            }
+        }
+    }
+
+    private static boolean evict(int cartId, CartState state) {
+        synchronized (state) {
+            if (state.isDirty() || state.removed) {
+                return false;
+            }
+            state.removed = true;
+            carts.remove(cartId, state);
+        }
+        evicted.increment();
+        return true;
+    }
+}
@@ -0,0 +1,299 @@
+package com.bistro.service;
+
+import com.bistro.util.AppConfig;
+import com.bistro.util.DatabaseConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deletes carts that nobody has touched for a while, so {@code carts} and
+ * {@code cart_items} stop growing with every anonymous session.
+ * <p>
+ * Every {@code cart.reaper.intervalMinutes} the reaper walks {@code carts} in
+ * primary key order, a chunk at a time: it reads the IDs of the next
+ * {@code cart.reaper.chunkSize} carts not updated since their cutoff, deletes
+ * them in one statement (their items go with them through the foreign key) and
+ * pauses before the next chunk. Each DELETE commits on its own and locks only
+ * the rows of its chunk, so checkout and cart writes are never blocked for long.
+ * The DELETE checks the cutoff again, so a cart touched after it was read is
+ * kept.
+ * <p>
+ * Anonymous carts and carts of signed-in users have separate ages; an age of 0
+ * keeps that kind of cart forever. {@code cart.reaper.enabled} turns the reaper
+ * off, and it can also be paused and resumed while running; a pass in progress
+ * stops after its current chunk and the next one carries on where it stopped.
+ */
+public class CartReaper {
+    private static final Logger logger = LoggerFactory.getLogger(CartReaper.class);
+
+    private static final boolean ENABLED = AppConfig.getBoolean("cart.reaper.enabled", true);
+    private static final long ANONYMOUS_MAX_AGE_MS = Math.max(0, AppConfig.getLong("cart.reaper.anonymousMaxAgeDays", 30)) * 86_400_000L;
+    private static final long USER_MAX_AGE_MS = Math.max(0, AppConfig.getLong("cart.reaper.userMaxAgeDays", 180)) * 86_400_000L;
+    private static final long INTERVAL_MS = Math.max(1, AppConfig.getLong("cart.reaper.intervalMinutes", 60)) * 60_000L;
+    private static final int CHUNK_SIZE = Math.max(1, AppConfig.getInt("cart.reaper.chunkSize", 500));
+    private static final long CHUNK_PAUSE_MS = Math.max(0, AppConfig.getLong("cart.reaper.chunkPauseMillis", 200));
+    private static final long FIRST_RUN_DELAY_MS = 60_000L;
+
+    /** Which carts are old enough to delete; takes the cutoffs bound by {@link #bindCutoffs}. */
+    private static final String EXPIRED =
+            ANONYMOUS_MAX_AGE_MS > 0 && USER_MAX_AGE_MS > 0
+                    ? "updated_at < CASE WHEN user_id IS NULL THEN ? ELSE ? END"
+                    : ANONYMOUS_MAX_AGE_MS > 0 ? "user_id IS NULL AND updated_at < ?" : "user_id IS NOT NULL AND updated_at < ?";
+
+    private static final String SELECT_CHUNK_SQL =
+            "SELECT id FROM carts WHERE id > ? AND " + EXPIRED + " ORDER BY id LIMIT ?";
+
+    private static final LongAdder cartsReaped = new LongAdder();
+    private static final LongAdder chunks = new LongAdder();
+    private static final LongAdder passes = new LongAdder();
+    private static final LongAdder failures = new LongAdder();
+    private static volatile boolean paused;
+    private static volatile boolean running;
+    private static volatile long lastRunMillis;
+    private static volatile Date lastRunAt;
+    private static volatile Date lastPassCompletedAt;
+    private static volatile long lastPassStartedMillis;
+    // Where the pass in progress has got to; 0 when the next run starts a new pass
+    private static volatile int position;
+    private static volatile long passStartedMillis;
+
+    private static ScheduledExecutorService worker;
+
+    private CartReaper() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED && (ANONYMOUS_MAX_AGE_MS > 0 || USER_MAX_AGE_MS > 0);
+    }
+
+    public static synchronized void start() {
+        if (!isEnabled() || worker != null) {
+            return;
+        }
+        worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cart-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        worker.scheduleWithFixedDelay(CartReaper::run, Math.min(FIRST_RUN_DELAY_MS, INTERVAL_MS), INTERVAL_MS, TimeUnit.MILLISECONDS);
+        logger.info("Cart reaper started (every {} min, chunks of {})", INTERVAL_MS / 60_000L, CHUNK_SIZE);
+    }
+
+    public static synchronized void shutdown() {
+        if (worker != null) {
+            worker.shutdownNow();
+            worker = null;
+        }
+    }
+
+    /**
+     * Stop deleting after the current chunk until {@link #resume()} is called.
+     */
+    public static void pause() {
+        paused = true;
+        logger.info("Cart reaper paused");
+    }
+
+    public static void resume() {
+        paused = false;
+        logger.info("Cart reaper resumed");
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("paused", paused);
+        stats.put("running", running);
+        stats.put("cartsReaped", cartsReaped.sum());
+        stats.put("chunks", chunks.sum());
+        stats.put("passes", passes.sum());
+        stats.put("failures", failures.sum());
+        stats.put("lastRunAt", lastRunAt);
+        stats.put("lastRunMillis", lastRunMillis);
+        stats.put("lastPassCompletedAt", lastPassCompletedAt);
+        // Expired carts can be at most this much older than their cutoff
+        stats.put("lagSeconds", lastPassStartedMillis > 0
+                ? (System.currentTimeMillis() - lastPassStartedMillis) / 1000 : null);
+        stats.put("position", position);
+        return stats;
+    }
+
+    private static void run() {
+        if (paused) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        running = true;
+        try {
+            if (reap()) {
+                passes.increment();
+                lastPassStartedMillis = passStartedMillis;
+                lastPassCompletedAt = new Date();
+            } else if (Thread.currentThread().isInterrupted()) {
+                abandonPass();
+            }
+        } catch (InterruptedException e) {
+            abandonPass();
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            failures.increment();
+            logger.warn("Cart reaper stopped at cart {}: {}", position, e.getMessage());
+        } finally {
+            running = false;
+            lastRunAt = new Date(start);
+            lastRunMillis = System.currentTimeMillis() - start;
+        }
+    }
+
+    /**
+     * Shutting down; forget the pass in progress so the next start begins a new one.
+     */
+    private static void abandonPass() {
+        position = 0;
+        passStartedMillis = 0;
+    }
+
+    /**
+     * Delete expired carts a chunk at a time, from where the last run stopped.
+     *
+     * @return true if the pass reached the end of the table
+     */
+    static boolean reap() throws SQLException, InterruptedException {
+        if (position == 0) {
+            passStartedMillis = System.currentTimeMillis();
+        }
+        // The cutoffs are fixed for the whole pass, so a pass that is resumed
+        // deletes no more than it would have in one go
+        Timestamp anonymousCutoff = new Timestamp(passStartedMillis - ANONYMOUS_MAX_AGE_MS);
+        Timestamp userCutoff = new Timestamp(passStartedMillis - USER_MAX_AGE_MS);
+        int reaped = 0;
+
+        while (!paused && !Thread.currentThread().isInterrupted()) {
+            List<Integer> ids = new ArrayList<>(CHUNK_SIZE);
+            try (Connection conn = DatabaseConfig.getConnection(DatabaseConfig.Pool.BACKGROUND)) {
+                try (PreparedStatement stmt = conn.prepareStatement(SELECT_CHUNK_SQL)) {
+                    stmt.setInt(1, position);
+                    int index = bindCutoffs(stmt, 2, anonymousCutoff, userCutoff);
+                    stmt.setInt(index, CHUNK_SIZE);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            ids.add(rs.getInt(1));
+                        }
+                    }
+                }
+                if (ids.isEmpty()) {
+                    break;
+                }
+                List<Integer> expired = new ArrayList<>(ids);
+                // A cart held by the cart engine is in use even if the database has not caught up
+                expired.removeIf(CartEngine::isHeld);
+                if (!expired.isEmpty()) {
+                    reaped += delete(conn, expired, anonymousCutoff, userCutoff);
+                }
+            }
+            chunks.increment();
+            position = ids.get(ids.size() - 1);
+            if (ids.size() < CHUNK_SIZE) {
+                break;
+            }
+            Thread.sleep(CHUNK_PAUSE_MS);
+        }
+
+        boolean finished = !paused && !Thread.currentThread().isInterrupted();
+        if (finished) {
+            position = 0;
+        }
+        if (reaped > 0) {
+            logger.info("Cart reaper deleted {} abandoned carts", reaped);
+        }
+        return finished;
+    }
+
+    private static int delete(Connection conn, List<Integer> ids, Timestamp anonymousCutoff, Timestamp userCutoff)
+            throws SQLException {
+        String idList = placeholders(ids.size());
+
+        int deleted;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "DELETE FROM carts WHERE id IN (" + idList + ") AND " + EXPIRED)) {
+            int index = bindIds(stmt, 1, ids);
+            bindCutoffs(stmt, index, anonymousCutoff, userCutoff);
+            deleted = stmt.executeUpdate();
+        }
+        cartsReaped.add(deleted);
+        if (deleted == 0) {
+            return 0;
+        }
+
+        // Carts touched since they were read were kept; find out which went
+        Set<Integer> deletedIds = new HashSet<>(ids);
+        if (deleted < ids.size()) {
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT id FROM carts WHERE id IN (" + idList + ")")) {
+                bindIds(stmt, 1, ids);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        deletedIds.remove(rs.getInt(1));
+                    }
+                }
+            }
+        }
+
+        // Nothing on this node should go on using the deleted carts
+        CartService.forgetCarts(deletedIds);
+        CartEngine.forget(deletedIds);
+        return deleted;
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sql = new StringBuilder("?");
+        for (int i = 1; i < count; i++) {
+            sql.append(", ?");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Bind cart IDs to consecutive parameters.
+     *
+     * @return the next parameter index
+     */
+    private static int bindIds(PreparedStatement stmt, int index, List<Integer> ids) throws SQLException {
+        for (Integer id : ids) {
+            stmt.setInt(index++, id);
+        }
+        return index;
+    }
+
+    /**
+     * Bind the cutoffs used by {@link #EXPIRED}.
+     *
+     * @return the next parameter index
+     */
+    private static int bindCutoffs(PreparedStatement stmt, int index, Timestamp anonymousCutoff, Timestamp userCutoff)
+            throws SQLException {
+        if (ANONYMOUS_MAX_AGE_MS > 0) {
+            stmt.setTimestamp(index++, anonymousCutoff);
+        }
+        if (USER_MAX_AGE_MS > 0) {
+            stmt.setTimestamp(index++, userCutoff);
+        }
+        return index;
+    }
+}
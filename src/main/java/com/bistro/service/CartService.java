@@ -2,73 +2,201 @@ package com.bistro.service;
 
 import com.bistro.model.CartItem;
 import com.bistro.model.MenuItem;
+import com.bistro.model.User;
+import com.bistro.util.AppConfig;
 import com.bistro.util.DBUtil;
 
+import java.io.Serializable;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 import java.math.BigDecimal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class CartService {
+    private static final Logger logger = LoggerFactory.getLogger(CartService.class);
+    
+    /** Session attribute holding the cart resolved for the session. */
+    private static final String RESOLVED_CART_ATTRIBUTE = "resolvedCart";
+    private static final int CART_ID_CACHE_MAX_ENTRIES = AppConfig.getInt("cart.idCache.maxEntries", 50000);
+    
+    /** Touching the cart row also locks it for the rest of the transaction. */
+    private static final String TOUCH_CART_SQL = "UPDATE carts SET updated_at = NOW() WHERE id = ?";
+    private static final String ADD_ITEM_SQL =
+            "INSERT INTO cart_items (cart_id, menu_item_id, quantity, created_at, updated_at) VALUES (?, ?, ?, NOW(), NOW()) " +
+            "ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity), updated_at = NOW()";
+    private static final String CART_ITEMS_SQL =
+            "SELECT ci.id, ci.cart_id, ci.menu_item_id, ci.quantity, mi.name, mi.description, mi.price, mi.image_url " +
+            "FROM cart_items ci JOIN menu_items mi ON ci.menu_item_id = mi.id " +
+            "WHERE ci.cart_id = ? ORDER BY ci.id";
+    
+    /** Node-local cart IDs keyed by "u:" plus the user ID, or "s:" plus the session ID. */
+    private static final ConcurrentMap<String, Integer> cartIds = new ConcurrentHashMap<>();
+    
+    /**
+     * Thrown by a cart write when the cart no longer exists, for example because
+     * it was deleted after its ID was remembered. Resolving the cart again and
+     * retrying can succeed.
+     */
+    public static class CartNotFoundException extends SQLException {
+        private static final long serialVersionUID = 1L;
+        
+        public CartNotFoundException(int cartId) {
+            super("Cart " + cartId + " does not exist");
+        }
+    }
+    
+    /**
+     * Thrown by a cart write that refers to a menu item that does not exist.
+     * Retrying cannot succeed.
+     */
+    public static class MenuItemNotFoundException extends SQLException {
+        private static final long serialVersionUID = 1L;
+        
+        public MenuItemNotFoundException(String message) {
+            super(message);
+        }
+        
+        public MenuItemNotFoundException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+    
+    /**
+     * The cart a session resolved to, valid for as long as the session's user
+     * does not change.
+     */
+    private static final class ResolvedCart implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private final int cartId;
+        private final Integer userId;
+        
+        ResolvedCart(int cartId, Integer userId) {
+            this.cartId = cartId;
+            this.userId = userId;
+        }
+    }
     
     /**
-     * Get or create a cart for the current session
+     * Get or create a cart for the current session.
+     * <p>
+     * The cart ID is remembered in the session and in a node-local map keyed by
+     * user, or by session for anonymous visitors, so a request whose cart has
+     * been resolved before needs no database round trip. The session's entry is
+     * ignored once a different user (or none) is signed in to the session; other
+     * changes must go through {@link #forgetCart}.
      */
     public static int getOrCreateCart(HttpServletRequest request) throws SQLException {
         HttpSession session = request.getSession(true);
-        String sessionId = session.getId();
+        Integer userId = userIdOf(session);
         
-        System.out.println("CartService.getOrCreateCart - Using session: " + sessionId);
-        
-        // Get user ID if logged in
-        Integer userId = null;
-        String username = null;
+        Object resolved = session.getAttribute(RESOLVED_CART_ATTRIBUTE);
+        if (resolved instanceof ResolvedCart && Objects.equals(((ResolvedCart) resolved).userId, userId)) {
+            return ((ResolvedCart) resolved).cartId;
+        }
         
-        // First try to get the userId attribute directly
-        if (session.getAttribute("userId") != null) {
-            userId = (Integer) session.getAttribute("userId");
-            System.out.println("CartService.getOrCreateCart - Using userId: " + userId + " from session attribute");
-        } 
-        // If not found, try to get from user object
-        else {
-            System.out.println("CartService.getOrCreateCart - No userId attribute found in session, looking for user object");
-            Object userObj = session.getAttribute("user");
-            if (userObj != null) {
-                System.out.println("CartService.getOrCreateCart - User object found in session: " + userObj);
-                try {
-                    // Try to get the user ID from the user object using reflection
-                    java.lang.reflect.Method getIdMethod = userObj.getClass().getMethod("getId");
-                    Object result = getIdMethod.invoke(userObj);
-                    if (result instanceof Integer) {
-                        userId = (Integer) result;
-                        // Store the userId in session for future use
-                        session.setAttribute("userId", userId);
-                        System.out.println("CartService.getOrCreateCart - Extracted userId: " + userId + " from user object and stored in session");
-                    }
-                    
-                    // Also try to get username
-                    java.lang.reflect.Method getUsernameMethod = userObj.getClass().getMethod("getUsername");
-                    Object usernameResult = getUsernameMethod.invoke(userObj);
-                    if (usernameResult instanceof String) {
-                        username = (String) usernameResult;
-                        System.out.println("CartService.getOrCreateCart - Extracted username: " + username + " from user object");
-                    }
-                } catch (Exception e) {
-                    System.out.println("CartService.getOrCreateCart - Error extracting info from user object: " + e.getMessage());
-                }
-            } else {
-                System.out.println("CartService.getOrCreateCart - No user object found in session, using sessionId only: " + sessionId);
+        String key = cartKey(userId, session.getId());
+        Integer cartId = cartIds.get(key);
+        if (cartId == null) {
+            cartId = resolveCart(session, userId);
+            if (cartIds.size() >= CART_ID_CACHE_MAX_ENTRIES) {
+                // Entries are cheap to rebuild; start over rather than track their age
+                cartIds.clear();
             }
+            cartIds.put(key, cartId);
         }
-        
-        // Try to get username from session directly if not found from user object
-        if (username == null && session.getAttribute("username") != null) {
-            username = (String) session.getAttribute("username");
-            System.out.println("CartService.getOrCreateCart - Found username in session: " + username);
+        session.setAttribute(RESOLVED_CART_ATTRIBUTE, new ResolvedCart(cartId, userId));
+        return cartId;
+    }
+    
+    /**
+     * Forget the cart resolved for the request's session and user, so the next
+     * request looks it up again. Call on login, logout and checkout, and when the
+     * cart turns out to have been deleted.
+     */
+    public static void forgetCart(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            return;
+        }
+        try {
+            Integer userId = userIdOf(session);
+            session.removeAttribute(RESOLVED_CART_ATTRIBUTE);
+            if (userId != null) {
+                cartIds.remove(cartKey(userId, null));
+            }
+        } catch (IllegalStateException e) {
+            // Session already invalidated
         }
+        forgetSession(session.getId());
+    }
+    
+    /**
+     * Write the session's cart to the database if the cart engine holds changes
+     * to it that are not saved yet. Call before anything reads the cart from the
+     * database, as checkout does.
+     */
+    public static void flushCart(HttpServletRequest request) throws SQLException {
+        if (CartEngine.isEnabled()) {
+            CartEngine.flush(getOrCreateCart(request));
+        }
+    }
+    
+    /**
+     * Forget remembered cart IDs of carts that have been deleted. Sessions that
+     * still hold one find out on their next write, which re-resolves the cart.
+     */
+    public static void forgetCarts(Set<Integer> deletedCartIds) {
+        cartIds.values().removeIf(deletedCartIds::contains);
+    }
+    
+    /**
+     * Forget the cart of an anonymous session that has ended.
+     */
+    public static void forgetSession(String sessionId) {
+        cartIds.remove(cartKey(null, sessionId));
+    }
+    
+    private static String cartKey(Integer userId, String sessionId) {
+        return userId != null ? "u:" + userId : "s:" + sessionId;
+    }
+    
+    /**
+     * The ID of the user signed in to the session, or null for an anonymous visitor.
+     */
+    private static Integer userIdOf(HttpSession session) {
+        Object userId = session.getAttribute("userId");
+        if (userId instanceof Integer) {
+            return (Integer) userId;
+        }
+        Object user = session.getAttribute("user");
+        if (user instanceof User) {
+            int id = ((User) user).getId();
+            session.setAttribute("userId", id);
+            return id;
+        }
+        return null;
+    }
+    
+    /**
+     * Find the session's cart in the database, creating one if there is none.
+     */
+    private static int resolveCart(HttpSession session, Integer userId) throws SQLException {
+        String sessionId = session.getId();
+        String username = userId == null ? (String) session.getAttribute("username") : null;
+        
+        logger.debug("Resolving cart for session {}, user {}", sessionId, userId);
         
         Connection conn = null;
         
@@ -219,323 +347,316 @@ public class CartService {
     }
     
     /**
-     * Add an item to the cart
+     * Statements run against a cart inside its transaction.
      */
-    public static void addToCart(int cartId, int menuItemId, int quantity) throws SQLException {
-        System.out.println("CartService.addToCart - Adding item " + menuItemId + " to cart " + cartId + " with quantity " + quantity);
-        
-        Connection conn = null;
-        PreparedStatement checkPs = null;
-        PreparedStatement updatePs = null;
-        PreparedStatement insertPs = null;
-        ResultSet rs = null;
+    private interface CartStatements {
+        void run(Connection conn) throws SQLException;
+    }
+    
+    /**
+     * Run statements against a cart in one transaction on one connection. The
+     * cart's row is touched first, which locks it, so changes to the same cart from
+     * concurrent requests (for example two open tabs) are applied one after the
+     * other instead of overwriting each other. The cart's lines are read back on
+     * the same connection before the commit, so the caller gets the cart exactly
+     * as this change left it without another connection or query round trip.
+     * <p>
+     * Once the cart row is locked it cannot be deleted, so a constraint violation
+     * from the statements can only come from a menu item that does not exist.
+     *
+     * @return the cart's items after the change
+     * @throws CartNotFoundException if the cart does not exist
+     * @throws MenuItemNotFoundException if a statement refers to a missing menu item
+     */
+    private static List<CartItem> inCartTransaction(int cartId, CartStatements statements) throws SQLException {
+        try (Connection conn = DBUtil.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = conn.prepareStatement(TOUCH_CART_SQL)) {
+                    ps.setInt(1, cartId);
+                    if (ps.executeUpdate() == 0) {
+                        throw new CartNotFoundException(cartId);
+                    }
+                }
+                try {
+                    statements.run(conn);
+                } catch (SQLException e) {
+                    if (e.getSQLState() != null && e.getSQLState().startsWith("23")) {
+                        throw new MenuItemNotFoundException("Menu item not found", e);
+                    }
+                    throw e;
+                }
+                List<CartItem> items = readCartItems(conn, cartId);
+                conn.commit();
+                return items;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+    
+    /**
+     * Add an item to the cart, or add to its quantity if it is already there
+     *
+     * @return the cart's items after the change
+     */
+    public static List<CartItem> addToCart(int cartId, int menuItemId, int quantity) throws SQLException {
+        if (CartEngine.isEnabled()) {
+            CartEngine.add(cartId, menuItemId, quantity);
+            return CartEngine.getItems(cartId);
+        }
         
         try {
-            conn = DBUtil.getConnection();
-            
-            // First check if the item already exists in the cart
-            checkPs = conn.prepareStatement(
-                    "SELECT id, quantity FROM cart_items WHERE cart_id = ? AND menu_item_id = ?");
-            checkPs.setInt(1, cartId);
-            checkPs.setInt(2, menuItemId);
-            
-            rs = checkPs.executeQuery();
-            
-            if (rs.next()) {
-                // Item exists, update quantity
-                int existingId = rs.getInt("id");
-                int existingQuantity = rs.getInt("quantity");
-                int newQuantity = existingQuantity + quantity;
-                
-                updatePs = conn.prepareStatement(
-                        "UPDATE cart_items SET quantity = ?, updated_at = NOW() WHERE id = ?");
-                updatePs.setInt(1, newQuantity);
-                updatePs.setInt(2, existingId);
-                
-                int rowsUpdated = updatePs.executeUpdate();
-                System.out.println("CartService.addToCart - Updated existing item, rows affected: " + rowsUpdated);
-            } else {
-                // Item doesn't exist, insert new
-                insertPs = conn.prepareStatement(
-                        "INSERT INTO cart_items (cart_id, menu_item_id, quantity, created_at, updated_at) VALUES (?, ?, ?, NOW(), NOW())");
-                insertPs.setInt(1, cartId);
-                insertPs.setInt(2, menuItemId);
-                insertPs.setInt(3, quantity);
-                
-                int rowsInserted = insertPs.executeUpdate();
-                System.out.println("CartService.addToCart - Inserted new item, rows affected: " + rowsInserted);
-            }
-            
-            // Update cart's updated_at timestamp
-            try (PreparedStatement cartPs = conn.prepareStatement(
-                    "UPDATE carts SET updated_at = NOW() WHERE id = ?")) {
-                cartPs.setInt(1, cartId);
-                cartPs.executeUpdate();
-            }
+            return inCartTransaction(cartId, conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(ADD_ITEM_SQL)) {
+                    ps.setInt(1, cartId);
+                    ps.setInt(2, menuItemId);
+                    ps.setInt(3, quantity);
+                    ps.executeUpdate();
+                }
+            });
         } catch (SQLException e) {
-            System.err.println("Error adding item to cart: " + e.getMessage());
-            e.printStackTrace();
+            logger.error("Error adding item {} to cart {}: {}", menuItemId, cartId, e.getMessage());
             throw e;
-        } finally {
-            DBUtil.closeResultSet(rs);
-            DBUtil.closeStatement(checkPs);
-            DBUtil.closeStatement(updatePs);
-            DBUtil.closeStatement(insertPs);
-            DBUtil.closeConnection(conn);
         }
     }
     
     /**
-     * Update an item's quantity in the cart
+     * Change an item's quantity in the cart by the given amount. The item is
+     * removed if its quantity drops to zero, and added if it is not in the cart
+     * and the amount is positive.
+     *
+     * @return the cart's items after the change
      */
-    public static void updateCartItem(int cartId, int menuItemId, int quantity) throws SQLException {
-        System.out.println("CartService.updateCartItem - Updating item " + menuItemId + " in cart " + cartId + " with quantity change " + quantity);
-        
-        Connection conn = null;
-        PreparedStatement checkPs = null;
-        PreparedStatement updatePs = null;
-        PreparedStatement deletePs = null;
-        ResultSet rs = null;
+    public static List<CartItem> updateCartItem(int cartId, int menuItemId, int quantity) throws SQLException {
+        if (CartEngine.isEnabled()) {
+            CartEngine.update(cartId, menuItemId, quantity);
+            return CartEngine.getItems(cartId);
+        }
         
         try {
-            conn = DBUtil.getConnection();
-            
-            // First check if the item exists and get current quantity
-            checkPs = conn.prepareStatement(
-                    "SELECT id, quantity FROM cart_items WHERE cart_id = ? AND menu_item_id = ?");
-            checkPs.setInt(1, cartId);
-            checkPs.setInt(2, menuItemId);
-            
-            rs = checkPs.executeQuery();
-            
-            if (rs.next()) {
-                int itemId = rs.getInt("id");
-                int currentQuantity = rs.getInt("quantity");
-                int newQuantity = currentQuantity + quantity;
-                
-                System.out.println("CartService.updateCartItem - Current quantity: " + currentQuantity + ", New quantity: " + newQuantity);
-                
-                if (newQuantity <= 0) {
-                    // Delete the item if quantity becomes zero or negative
-                    deletePs = conn.prepareStatement("DELETE FROM cart_items WHERE id = ?");
-                    deletePs.setInt(1, itemId);
-                    
-                    int rowsDeleted = deletePs.executeUpdate();
-                    System.out.println("CartService.updateCartItem - Deleted item (quantity <= 0), rows affected: " + rowsDeleted);
-                } else {
-                    // Update the quantity
-                    updatePs = conn.prepareStatement(
-                            "UPDATE cart_items SET quantity = ?, updated_at = NOW() WHERE id = ?");
-                    updatePs.setInt(1, newQuantity);
-                    updatePs.setInt(2, itemId);
-                    
-                    int rowsUpdated = updatePs.executeUpdate();
-                    System.out.println("CartService.updateCartItem - Updated item quantity, rows affected: " + rowsUpdated);
+            return inCartTransaction(cartId, conn -> {
+                if (quantity > 0) {
+                    try (PreparedStatement ps = conn.prepareStatement(ADD_ITEM_SQL)) {
+                        ps.setInt(1, cartId);
+                        ps.setInt(2, menuItemId);
+                        ps.setInt(3, quantity);
+                        ps.executeUpdate();
+                    }
+                    return;
                 }
-                
-                // Update cart's updated_at timestamp
-                try (PreparedStatement cartPs = conn.prepareStatement(
-                        "UPDATE carts SET updated_at = NOW() WHERE id = ?")) {
-                    cartPs.setInt(1, cartId);
-                    cartPs.executeUpdate();
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "UPDATE cart_items SET quantity = quantity + ? WHERE cart_id = ? AND menu_item_id = ?")) {
+                    ps.setInt(1, quantity);
+                    ps.setInt(2, cartId);
+                    ps.setInt(3, menuItemId);
+                    ps.executeUpdate();
                 }
-            } else {
-                System.out.println("CartService.updateCartItem - Item not found in cart");
-                
-                // If the item doesn't exist and we're trying to add it (positive quantity)
-                if (quantity > 0) {
-                    addToCart(cartId, menuItemId, quantity);
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "DELETE FROM cart_items WHERE cart_id = ? AND menu_item_id = ? AND quantity <= 0")) {
+                    ps.setInt(1, cartId);
+                    ps.setInt(2, menuItemId);
+                    ps.executeUpdate();
                 }
-            }
+            });
         } catch (SQLException e) {
-            System.err.println("Error updating cart item: " + e.getMessage());
-            e.printStackTrace();
+            logger.error("Error updating item {} in cart {}: {}", menuItemId, cartId, e.getMessage());
             throw e;
-        } finally {
-            DBUtil.closeResultSet(rs);
-            DBUtil.closeStatement(checkPs);
-            DBUtil.closeStatement(updatePs);
-            DBUtil.closeStatement(deletePs);
-            DBUtil.closeConnection(conn);
         }
     }
     
     /**
      * Remove an item from the cart
+     *
+     * @return the cart's items after the change
      */
-    public static void removeFromCart(int cartId, int menuItemId) throws SQLException {
-        System.out.println("CartService.removeFromCart - Removing item " + menuItemId + " from cart " + cartId);
-        
-        Connection conn = null;
-        PreparedStatement ps = null;
+    public static List<CartItem> removeFromCart(int cartId, int menuItemId) throws SQLException {
+        if (CartEngine.isEnabled()) {
+            CartEngine.remove(cartId, menuItemId);
+            return CartEngine.getItems(cartId);
+        }
         
         try {
-            conn = DBUtil.getConnection();
-            
-            // Delete the item from cart
-            ps = conn.prepareStatement(
-                    "DELETE FROM cart_items WHERE cart_id = ? AND menu_item_id = ?");
-            ps.setInt(1, cartId);
-            ps.setInt(2, menuItemId);
-            
-            int rowsDeleted = ps.executeUpdate();
-            System.out.println("CartService.removeFromCart - Removed item, rows affected: " + rowsDeleted);
-            
-            // Update cart's updated_at timestamp
-            try (PreparedStatement cartPs = conn.prepareStatement(
-                    "UPDATE carts SET updated_at = NOW() WHERE id = ?")) {
-                cartPs.setInt(1, cartId);
-                cartPs.executeUpdate();
-            }
+            return inCartTransaction(cartId, conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "DELETE FROM cart_items WHERE cart_id = ? AND menu_item_id = ?")) {
+                    ps.setInt(1, cartId);
+                    ps.setInt(2, menuItemId);
+                    ps.executeUpdate();
+                }
+            });
         } catch (SQLException e) {
-            System.err.println("Error removing item from cart: " + e.getMessage());
-            e.printStackTrace();
+            logger.error("Error removing item {} from cart {}: {}", menuItemId, cartId, e.getMessage());
             throw e;
-        } finally {
-            DBUtil.closeStatement(ps);
-            DBUtil.closeConnection(conn);
         }
     }
     
     /**
      * Clear all items from the cart
+     *
+     * @return the cart's items after the change, which is none
      */
-    public static void clearCart(int cartId) throws SQLException {
-        System.out.println("CartService.clearCart - Clearing all items from cart " + cartId);
-        
-        Connection conn = null;
-        PreparedStatement ps = null;
+    public static List<CartItem> clearCart(int cartId) throws SQLException {
+        if (CartEngine.isEnabled()) {
+            CartEngine.clear(cartId);
+            return CartEngine.getItems(cartId);
+        }
         
         try {
-            conn = DBUtil.getConnection();
-            
-            // Delete all items from cart
-            ps = conn.prepareStatement("DELETE FROM cart_items WHERE cart_id = ?");
-            ps.setInt(1, cartId);
-            
-            int rowsDeleted = ps.executeUpdate();
-            System.out.println("CartService.clearCart - Cleared cart, items removed: " + rowsDeleted);
-            
-            // Update cart's updated_at timestamp
-            try (PreparedStatement cartPs = conn.prepareStatement(
-                    "UPDATE carts SET updated_at = NOW() WHERE id = ?")) {
-                cartPs.setInt(1, cartId);
-                cartPs.executeUpdate();
-            }
+            return inCartTransaction(cartId, conn -> {
+                try (PreparedStatement ps = conn.prepareStatement("DELETE FROM cart_items WHERE cart_id = ?")) {
+                    ps.setInt(1, cartId);
+                    ps.executeUpdate();
+                }
+            });
         } catch (SQLException e) {
-            System.err.println("Error clearing cart: " + e.getMessage());
-            e.printStackTrace();
+            logger.error("Error clearing cart {}: {}", cartId, e.getMessage());
             throw e;
-        } finally {
-            DBUtil.closeStatement(ps);
-            DBUtil.closeConnection(conn);
         }
     }
     
+
     /**
      * Get all items in a cart
      */
     public static List<CartItem> getCartItems(int cartId) throws SQLException {
-        System.out.println("CartService.getCartItems - Looking up items for cart ID: " + cartId);
-        List<CartItem> cartItems = new ArrayList<>();
-        
-        Connection conn = null;
-        PreparedStatement ps = null;
-        ResultSet rs = null;
+        if (CartEngine.isEnabled()) {
+            return CartEngine.getItems(cartId);
+        }
         
-        try {
-            conn = DBUtil.getConnection();
-            
-            // Use direct SQL query instead of stored procedure
-            String sql = "SELECT ci.id, ci.cart_id, ci.menu_item_id, ci.quantity, " +
-                         "mi.name, mi.description, mi.price, mi.image_url " +
-                         "FROM cart_items ci " +
-                         "JOIN menu_items mi ON ci.menu_item_id = mi.id " +
-                         "WHERE ci.cart_id = ?";
-            
-            ps = conn.prepareStatement(sql);
-            ps.setInt(1, cartId);
-            
-            rs = ps.executeQuery();
-            int count = 0;
-            
-            while (rs.next()) {
-                count++;
-                CartItem item = new CartItem();
-                item.setId(rs.getInt("id"));
-                item.setCartId(rs.getInt("cart_id"));
-                item.setMenuItemId(rs.getInt("menu_item_id"));
-                item.setQuantity(rs.getInt("quantity"));
-                
-                MenuItem menuItem = new MenuItem();
-                menuItem.setId(rs.getInt("menu_item_id"));
-                menuItem.setName(rs.getString("name"));
-                menuItem.setPrice(rs.getBigDecimal("price"));
-                menuItem.setDescription(rs.getString("description"));
-                menuItem.setImageUrl(rs.getString("image_url"));
-                
-                item.setMenuItem(menuItem);
-                
-                // Calculate total for this item
-                BigDecimal itemPrice = menuItem.getPrice();
-                BigDecimal itemTotal = itemPrice.multiply(new BigDecimal(item.getQuantity()));
-                item.setTotal(itemTotal);
-                
-                cartItems.add(item);
-            }
-            
-            System.out.println("CartService.getCartItems - Found " + count + " items for cart ID: " + cartId);
-            return cartItems;
+        try (Connection conn = DBUtil.getConnection()) {
+            return readCartItems(conn, cartId);
         } catch (SQLException e) {
-            System.err.println("Error getting cart items: " + e.getMessage());
-            e.printStackTrace();
+            logger.error("Error getting items of cart {}: {}", cartId, e.getMessage());
             throw e;
-        } finally {
-            DBUtil.closeResultSet(rs);
-            DBUtil.closeStatement(ps);
-            DBUtil.closeConnection(conn);
         }
     }
     
+    /**
+     * Read a cart's items with their menu items and line totals.
+     */
+    private static List<CartItem> readCartItems(Connection conn, int cartId) throws SQLException {
+        List<CartItem> cartItems = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(CART_ITEMS_SQL)) {
+            ps.setInt(1, cartId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    CartItem item = new CartItem();
+                    item.setId(rs.getInt("id"));
+                    item.setCartId(rs.getInt("cart_id"));
+                    item.setMenuItemId(rs.getInt("menu_item_id"));
+                    item.setQuantity(rs.getInt("quantity"));
+                    
+                    MenuItem menuItem = new MenuItem();
+                    menuItem.setId(rs.getInt("menu_item_id"));
+                    menuItem.setName(rs.getString("name"));
+                    menuItem.setPrice(rs.getBigDecimal("price"));
+                    menuItem.setDescription(rs.getString("description"));
+                    menuItem.setImageUrl(rs.getString("image_url"));
+                    
+                    item.setMenuItem(menuItem);
+                    item.setTotal(menuItem.getPrice().multiply(new BigDecimal(item.getQuantity())));
+                    cartItems.add(item);
+                }
+            }
+        }
+        return cartItems;
+    }
+    
     /**
      * Get the total price of all items in the cart
      */
     public static double getCartTotal(int cartId) throws SQLException {
-        Connection conn = null;
-        CallableStatement stmt = null;
-        ResultSet rs = null;
-        
-        try {
-            conn = DBUtil.getConnection();
-            stmt = conn.prepareCall("{CALL usp_get_cart_total(?)}");
-            stmt.setInt(1, cartId);
-            
-            rs = stmt.executeQuery();
-            
-            if (rs.next()) {
-                return rs.getDouble("total");
-            } else {
-                return 0.0;
+        return totalOf(getCartItems(cartId)).doubleValue();
+    }
+    
+    /**
+     * Add up the line totals of cart items that have already been read.
+     */
+    public static BigDecimal totalOf(List<CartItem> cartItems) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (CartItem item : cartItems) {
+            if (item.getTotal() != null) {
+                total = total.add(item.getTotal());
             }
-        } finally {
-            DBUtil.closeResultSet(rs);
-            DBUtil.closeStatement(stmt);
-            DBUtil.closeConnection(conn);
         }
+        return total;
     }
     
     /**
-     * Synchronize cart between local storage and database
+     * Replace the session's cart contents with the items from local storage.
      */
     public static void syncCartWithDatabase(HttpServletRequest request, List<CartItem> localCartItems) throws SQLException {
-        int cartId = getOrCreateCart(request);
+        replaceCartItems(getOrCreateCart(request), localCartItems);
+    }
+    
+    /**
+     * Replace a cart's contents with the given items.
+     * <p>
+     * Runs in one transaction with at most three statements however many items
+     * there are: the cart row is locked, every item is written with one multi-row
+     * upsert on the cart and menu item key, and lines that are no longer wanted
+     * are deleted with one statement. Lines whose quantity did not change are
+     * left untouched. Repeated items are added together.
+     *
+     * @return the cart's items after the change
+     */
+    public static List<CartItem> replaceCartItems(int cartId, List<CartItem> items) throws SQLException {
+        if (CartEngine.isEnabled()) {
+            CartEngine.replace(cartId, items);
+            return CartEngine.getItems(cartId);
+        }
         
-        // Clear existing cart in database
-        clearCart(cartId);
+        Map<Integer, Integer> quantities = new LinkedHashMap<>();
+        for (CartItem item : items) {
+            quantities.merge(item.getMenuItemId(), item.getQuantity(), Integer::sum);
+        }
+        quantities.values().removeIf(quantity -> quantity <= 0);
         
-        // Add all items from local storage to database
-        for (CartItem item : localCartItems) {
-            addToCart(cartId, item.getMenuItemId(), item.getQuantity());
+        try {
+            return inCartTransaction(cartId, conn -> {
+                if (!quantities.isEmpty()) {
+                    StringBuilder upsert = new StringBuilder(
+                            "INSERT INTO cart_items (cart_id, menu_item_id, quantity, created_at, updated_at) VALUES (?, ?, ?, NOW(), NOW())");
+                    for (int i = 1; i < quantities.size(); i++) {
+                        upsert.append(", (?, ?, ?, NOW(), NOW())");
+                    }
+                    // updated_at changes by itself only on lines whose quantity changed
+                    upsert.append(" ON DUPLICATE KEY UPDATE quantity = VALUES(quantity)");
+                    try (PreparedStatement ps = conn.prepareStatement(upsert.toString())) {
+                        int index = 1;
+                        for (Map.Entry<Integer, Integer> line : quantities.entrySet()) {
+                            ps.setInt(index++, cartId);
+                            ps.setInt(index++, line.getKey());
+                            ps.setInt(index++, line.getValue());
+                        }
+                        ps.executeUpdate();
+                    }
+                }
+                
+                StringBuilder delete = new StringBuilder("DELETE FROM cart_items WHERE cart_id = ?");
+                if (!quantities.isEmpty()) {
+                    delete.append(" AND menu_item_id NOT IN (?");
+                    for (int i = 1; i < quantities.size(); i++) {
+                        delete.append(", ?");
+                    }
+                    delete.append(')');
+                }
+                try (PreparedStatement ps = conn.prepareStatement(delete.toString())) {
+                    int index = 1;
+                    ps.setInt(index++, cartId);
+                    for (Integer menuItemId : quantities.keySet()) {
+                        ps.setInt(index++, menuItemId);
+                    }
+                    ps.executeUpdate();
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("Error synchronizing cart {}: {}", cartId, e.getMessage());
+            throw e;
         }
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,390 @@
+package com.bistro.service;
+
+import com.bistro.model.CheckoutTicket;
+import com.bistro.model.Order;
+import com.bistro.service.impl.OrderServiceImpl;
+import com.bistro.util.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous checkout: orders are accepted into a bounded in-process queue and
+ * placed by a small number of writer threads, each of which takes whatever has
+ * queued up (up to {@code checkout.async.maxBatchSize}) and commits it as one
+ * transaction. Under a burst this turns many short transactions competing for
+ * pool connections into a few larger ones, while the request thread returns as
+ * soon as the checkout is queued.
+ * <p>
+ * Queued checkouts live only in this JVM: they are lost if the node dies before
+ * a writer commits them, which is why clients get a ticket to poll and should
+ * not clear the cart until it reports {@link CheckoutTicket#COMMITTED}.
+ * <p>
+ * Counters for both the asynchronous and the synchronous path are kept here so
+ * the two can be compared under the same load.
+ */
+public class CheckoutQueue {
+    private static final Logger logger = LoggerFactory.getLogger(CheckoutQueue.class);
+
+    private static final int QUEUE_CAPACITY = AppConfig.getInt("checkout.async.queueCapacity", 500);
+    private static final int WRITER_THREADS = Math.max(1, AppConfig.getInt("checkout.async.writerThreads", 2));
+    private static final int MAX_BATCH_SIZE = Math.max(1, AppConfig.getInt("checkout.async.maxBatchSize", 25));
+    private static final long MAX_BATCH_WAIT_MS = AppConfig.getLong("checkout.async.maxBatchWaitMs", 2);
+    private static final long TICKET_TTL_MS = AppConfig.getLong("checkout.async.ticketTtlSeconds", 900) * 1000L;
+    private static final long PRUNE_INTERVAL_MS = 60_000L;
+
+    private static final BlockingQueue<CheckoutTicket> queue = new ArrayBlockingQueue<>(Math.max(1, QUEUE_CAPACITY));
+    private static final ConcurrentMap<String, CheckoutTicket> tickets = new ConcurrentHashMap<>();
+    private static final OrderServiceImpl orderService = new OrderServiceImpl();
+
+    private static ExecutorService writers;
+    private static volatile boolean stopping;
+    private static volatile long lastPruneAt = System.currentTimeMillis();
+
+    // Asynchronous path
+    private static final LongAdder accepted = new LongAdder();
+    private static final LongAdder rejected = new LongAdder();
+    private static final LongAdder committed = new LongAdder();
+    private static final LongAdder failed = new LongAdder();
+    private static final LongAdder batches = new LongAdder();
+    private static final LongAdder batchedOrders = new LongAdder();
+    private static final LongAdder fallbackBatches = new LongAdder();
+    private static final LongAdder batchMicros = new LongAdder();
+    private static final LongAdder queueToCommitMicros = new LongAdder();
+    private static final LongAccumulator maxBatchSize = new LongAccumulator(Math::max, 0);
+    private static final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0);
+    private static final LongAccumulator maxQueueToCommitMicros = new LongAccumulator(Math::max, 0);
+
+    // Synchronous path
+    private static final LongAdder syncOrders = new LongAdder();
+    private static final LongAdder syncFailures = new LongAdder();
+    private static final LongAdder syncMicros = new LongAdder();
+    private static final LongAccumulator maxSyncMicros = new LongAccumulator(Math::max, 0);
+
+    private static volatile long statsSince = System.currentTimeMillis();
+
+    private CheckoutQueue() {
+    }
+
+    /**
+     * Whether asynchronous checkout is switched on ({@code checkout.async.enabled}).
+     */
+    public static boolean isEnabled() {
+        return AppConfig.getBoolean("checkout.async.enabled", true) && !stopping;
+    }
+
+    /**
+     * Queue a checkout for the user's current cart.
+     *
+     * @param userId the user placing the order
+     * @param deliveryAddress the delivery address
+     * @param paymentMethod the payment method
+     * @param specialInstructions any special instructions
+     * @return the ticket to poll, or {@code null} if the queue is full or shutting down
+     */
+    public static CheckoutTicket submit(int userId, String deliveryAddress, String paymentMethod, String specialInstructions) {
+        if (stopping) {
+            rejected.increment();
+            return null;
+        }
+        ensureStarted();
+        pruneCompletedTickets();
+
+        CheckoutTicket ticket = new CheckoutTicket(UUID.randomUUID().toString(), userId,
+                deliveryAddress, paymentMethod, specialInstructions);
+        tickets.put(ticket.getId(), ticket);
+        if (!queue.offer(ticket)) {
+            tickets.remove(ticket.getId());
+            rejected.increment();
+            logger.warn("Checkout queue full ({} entries), rejecting checkout for user ID {}", QUEUE_CAPACITY, userId);
+            return null;
+        }
+
+        accepted.increment();
+        maxQueueDepth.accumulate(queue.size());
+        return ticket;
+    }
+
+    /**
+     * Look up a ticket. Completed tickets are kept for {@code checkout.async.ticketTtlSeconds}.
+     *
+     * @param ticketId the ticket ID
+     * @return the ticket, or {@code null} if it is unknown or has expired
+     */
+    public static CheckoutTicket getTicket(String ticketId) {
+        return ticketId != null ? tickets.get(ticketId) : null;
+    }
+
+    /**
+     * Record one order placed on the synchronous path, for comparison with the queue.
+     *
+     * @param elapsedNanos how long the request spent placing the order
+     * @param success whether the order was placed
+     */
+    public static void recordSynchronous(long elapsedNanos, boolean success) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(elapsedNanos);
+        syncOrders.increment();
+        if (!success) {
+            syncFailures.increment();
+        }
+        syncMicros.add(micros);
+        maxSyncMicros.accumulate(micros);
+    }
+
+    /**
+     * Get throughput and latency counters for both checkout paths since startup
+     * or the last {@link #resetStats()}.
+     */
+    public static Map<String, Object> getStats() {
+        double elapsedSeconds = Math.max(1, System.currentTimeMillis() - statsSince) / 1000.0;
+
+        Map<String, Object> async = new LinkedHashMap<>();
+        long committedCount = committed.sum();
+        long batchCount = batches.sum();
+        async.put("enabled", isEnabled());
+        async.put("queueDepth", queue.size());
+        async.put("queueCapacity", QUEUE_CAPACITY);
+        async.put("maxQueueDepth", maxQueueDepth.get());
+        async.put("writerThreads", WRITER_THREADS);
+        async.put("accepted", accepted.sum());
+        async.put("rejected", rejected.sum());
+        async.put("committed", committedCount);
+        async.put("failed", failed.sum());
+        async.put("committedPerSecond", round(committedCount / elapsedSeconds));
+        async.put("batches", batchCount);
+        async.put("fallbackBatches", fallbackBatches.sum());
+        async.put("avgBatchSize", batchCount > 0 ? round((double) batchedOrders.sum() / batchCount) : 0);
+        async.put("maxBatchSize", maxBatchSize.get());
+        async.put("avgBatchMs", batchCount > 0 ? round(batchMicros.sum() / 1000.0 / batchCount) : 0);
+        async.put("avgQueueToCommitMs", committedCount > 0 ? round(queueToCommitMicros.sum() / 1000.0 / committedCount) : 0);
+        async.put("maxQueueToCommitMs", round(maxQueueToCommitMicros.get() / 1000.0));
+
+        Map<String, Object> sync = new LinkedHashMap<>();
+        long syncCount = syncOrders.sum();
+        long syncPlaced = syncCount - syncFailures.sum();
+        sync.put("orders", syncCount);
+        sync.put("failed", syncFailures.sum());
+        sync.put("committedPerSecond", round(syncPlaced / elapsedSeconds));
+        sync.put("avgMs", syncCount > 0 ? round(syncMicros.sum() / 1000.0 / syncCount) : 0);
+        sync.put("maxMs", round(maxSyncMicros.get() / 1000.0));
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("since", statsSince);
+        stats.put("async", async);
+        stats.put("sync", sync);
+        return stats;
+    }
+
+    /**
+     * Reset the counters, e.g. before a load test.
+     */
+    public static void resetStats() {
+        for (LongAdder adder : new LongAdder[] { accepted, rejected, committed, failed, batches, batchedOrders,
+                fallbackBatches, batchMicros, queueToCommitMicros, syncOrders, syncFailures, syncMicros }) {
+            adder.reset();
+        }
+        for (LongAccumulator accumulator : new LongAccumulator[] { maxBatchSize, maxQueueDepth,
+                maxQueueToCommitMicros, maxSyncMicros }) {
+            accumulator.reset();
+        }
+        statsSince = System.currentTimeMillis();
+    }
+
+    /**
+     * Stop accepting checkouts and give the writers up to the given time to commit
+     * what is already queued. Checkouts still queued after that are marked failed.
+     *
+     * @param timeoutMs how long to wait for the queue to drain
+     */
+    public static void shutdown(long timeoutMs) {
+        stopping = true;
+        ExecutorService executor;
+        synchronized (CheckoutQueue.class) {
+            executor = writers;
+        }
+        if (executor == null) {
+            return;
+        }
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        List<CheckoutTicket> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        for (CheckoutTicket ticket : abandoned) {
+            ticket.fail("Server shutting down");
+            failed.increment();
+        }
+        if (!abandoned.isEmpty()) {
+            logger.warn("{} queued checkouts were not placed before shutdown", abandoned.size());
+        }
+    }
+
+    private static synchronized void ensureStarted() {
+        if (writers != null) {
+            return;
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        writers = Executors.newFixedThreadPool(WRITER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "checkout-writer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < WRITER_THREADS; i++) {
+            writers.execute(CheckoutQueue::runWriter);
+        }
+        logger.info("Checkout queue started with {} writer threads (capacity {}, max batch {})",
+                WRITER_THREADS, QUEUE_CAPACITY, MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Writer loop: take the next checkout, gather whatever else is queued (waiting
+     * briefly for more if the batch is not full) and commit the batch. Exits once
+     * shutdown has been requested and the queue is empty.
+     */
+    private static void runWriter() {
+        List<CheckoutTicket> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                CheckoutTicket first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (stopping) {
+                        return;
+                    }
+                    continue;
+                }
+
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_BATCH_WAIT_MS);
+                while (batch.size() < MAX_BATCH_SIZE) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    CheckoutTicket next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+                }
+
+                commitBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failUnfinished(batch, "Server shutting down");
+            } catch (RuntimeException e) {
+                logger.error("Checkout writer error: {}", e.getMessage(), e);
+                failUnfinished(batch, "Error placing order");
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Commit a batch in one transaction. If the group fails, the checkouts are
+     * retried one at a time so a single bad order cannot fail the others.
+     */
+    private static void commitBatch(List<CheckoutTicket> batch) {
+        long start = System.nanoTime();
+        try {
+            List<Order> orders = orderService.placeOrdersWithCartItems(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                Order order = orders.get(i);
+                if (order != null) {
+                    complete(batch.get(i), order);
+                } else {
+                    batch.get(i).fail("Cart is empty");
+                    failed.increment();
+                }
+            }
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                batch.get(0).fail("Error placing order: " + e.getMessage());
+                failed.increment();
+            } else {
+                logger.warn("Group commit of {} checkouts failed, placing them one at a time: {}", batch.size(), e.getMessage());
+                fallbackBatches.increment();
+                for (CheckoutTicket ticket : batch) {
+                    try {
+                        complete(ticket, orderService.placeOrderWithCartItems(ticket.getUserId(),
+                                ticket.getDeliveryAddress(), ticket.getPaymentMethod(), ticket.getSpecialInstructions()));
+                    } catch (Exception ex) {
+                        ticket.fail("Error placing order: " + ex.getMessage());
+                        failed.increment();
+                    }
+                }
+            }
+        }
+
+        batches.increment();
+        batchedOrders.add(batch.size());
+        batchMicros.add(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        maxBatchSize.accumulate(batch.size());
+    }
+
+    private static void failUnfinished(List<CheckoutTicket> batch, String error) {
+        for (CheckoutTicket ticket : batch) {
+            if (!ticket.isDone()) {
+                ticket.fail(error);
+                failed.increment();
+            }
+        }
+    }
+
+    private static void complete(CheckoutTicket ticket, Order order) {
+        ticket.complete(order);
+        committed.increment();
+        long micros = (ticket.getCompletedAt().getTime() - ticket.getCreatedAt().getTime()) * 1000L;
+        queueToCommitMicros.add(micros);
+        maxQueueToCommitMicros.accumulate(micros);
+    }
+
+    /**
+     * Drop completed tickets older than the TTL, at most once a minute.
+     */
+    private static void pruneCompletedTickets() {
+        long now = System.currentTimeMillis();
+        if (now - lastPruneAt < PRUNE_INTERVAL_MS) {
+            return;
+        }
+        lastPruneAt = now;
+
+        Iterator<CheckoutTicket> it = tickets.values().iterator();
+        while (it.hasNext()) {
+            CheckoutTicket ticket = it.next();
+            if (ticket.isDone() && now - ticket.getCompletedAt().getTime() > TICKET_TTL_MS) {
+                it.remove();
+            }
+        }
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
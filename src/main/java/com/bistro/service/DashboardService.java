@@ -0,0 +1,40 @@
+package com.bistro.service;
+
+import com.bistro.model.DashboardStats;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Service interface for the admin dashboard figures.
+ */
+public interface DashboardService {
+
+    /**
+     * Get order counts, revenue and the user total. The figures may be a few
+     * seconds old; see {@code admin.dashboard.cacheTtlSeconds}.
+     *
+     * @return the dashboard figures
+     * @throws Exception if the figures cannot be loaded
+     */
+    DashboardStats getStats() throws Exception;
+
+    /**
+     * Get orders, revenue and items sold per time bucket, with the best-selling
+     * menu items over the range. Only the rollup tables are read, so the cost
+     * depends on the number of buckets rather than the number of orders.
+     *
+     * @param from the start of the range
+     * @param to the end of the range, exclusive
+     * @param bucket hour, day, week or month
+     * @return the series, totals and top items
+     * @throws IllegalArgumentException if the bucket is unknown or the range has too many buckets
+     * @throws Exception if the rollups cannot be read
+     */
+    Map<String, Object> getTimeseries(Date from, Date to, String bucket) throws Exception;
+
+    /**
+     * Drop the cached figures so the next call reads them from the database.
+     */
+    void invalidate();
+}
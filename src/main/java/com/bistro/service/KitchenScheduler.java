@@ -0,0 +1,354 @@
+package com.bistro.service;
+
+import com.bistro.model.KitchenTicket;
+import com.bistro.model.MenuItem;
+import com.bistro.model.Order;
+import com.bistro.model.OrderEvent;
+import com.bistro.model.OrderItem;
+import com.bistro.service.impl.MenuItemServiceImpl;
+import com.bistro.service.impl.OrderServiceImpl;
+import com.bistro.util.AppConfig;
+import com.bistro.util.ReadRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The kitchen's work queue, kept in memory and updated from {@link OrderEventBus}
+ * events, so kitchen screens can read it without querying the orders table.
+ * <p>
+ * Every line of a PENDING or PREPARING order becomes a {@link KitchenTicket} at
+ * the station that cooks its menu category. Each station's tickets are kept
+ * sorted by the latest time they can be started: the time the order is due less
+ * the item's preparation time. An order is due at its delivery date if it has
+ * one, otherwise {@code kitchen.promiseMinutes} after it was placed, or later if
+ * one of its items takes longer than that. Older orders therefore come first,
+ * and within an order the slowest items are started first so that everything
+ * is ready together.
+ * <p>
+ * Events are applied one at a time on a single thread; readers walk the sorted
+ * sets without locking. As with {@link OrderStatsEngine}, events only cover
+ * changes made through this node, so the queue is rebuilt from the database at
+ * startup and every {@code kitchen.reconcileSeconds}.
+ */
+public class KitchenScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(KitchenScheduler.class);
+
+    private static final boolean ENABLED = AppConfig.getBoolean("kitchen.scheduler.enabled", true);
+    private static final long RECONCILE_INTERVAL_MS = Math.max(10, AppConfig.getLong("kitchen.reconcileSeconds", 300)) * 1000L;
+    private static final long PROMISE_MS = Math.max(1, AppConfig.getLong("kitchen.promiseMinutes", 30)) * 60_000L;
+    private static final int DEFAULT_PREPARATION_TIME = Math.max(1, AppConfig.getInt("kitchen.defaultPrepMinutes", 15));
+    /** Lower-cased menu category -> station; unmapped categories are their own station. */
+    private static final Map<String, String> STATIONS = parseStations(AppConfig.getString("kitchen.stations", ""));
+    private static final String DEFAULT_STATION = "General";
+    private static final long RETRY_INTERVAL_MS = 30_000L;
+    private static final String[] ACTIVE_STATUSES = {"PENDING", "PREPARING"};
+
+    private static final Comparator<KitchenTicket> BY_START_TIME = Comparator
+            .comparingLong(KitchenTicket::startByMillis)
+            .thenComparingInt(KitchenTicket::getOrderId)
+            .thenComparingInt(KitchenTicket::getOrderItemId);
+
+    private static final OrderService orderService = new OrderServiceImpl();
+    private static final MenuItemService menuItemService = new MenuItemServiceImpl();
+
+    private static final ConcurrentMap<Integer, List<KitchenTicket>> ticketsByOrder = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, ConcurrentSkipListSet<KitchenTicket>> queues = new ConcurrentHashMap<>();
+
+    private static final LongAdder eventsApplied = new LongAdder();
+    private static final LongAdder reconcileFailures = new LongAdder();
+    private static volatile long seededAt;
+    private static volatile long lastReconciledAt;
+    private static volatile long lastReconcileMillis;
+
+    private static final OrderEventBus.Listener listener = KitchenScheduler::onOrderEvent;
+    private static ScheduledExecutorService worker;
+
+    private KitchenScheduler() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Subscribe to order events and load the open orders in the background.
+     */
+    public static synchronized void start() {
+        if (!ENABLED || worker != null) {
+            return;
+        }
+        worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "kitchen-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        OrderEventBus.subscribe(listener);
+        worker.schedule(KitchenScheduler::reconcileAndReschedule, 0, TimeUnit.MILLISECONDS);
+        logger.info("Kitchen scheduler started (reconcile every {} s)", RECONCILE_INTERVAL_MS / 1000);
+    }
+
+    public static synchronized void shutdown() {
+        if (worker != null) {
+            OrderEventBus.unsubscribe(listener);
+            worker.shutdownNow();
+            worker = null;
+        }
+    }
+
+    /**
+     * The work queue of every station, or of one station, in the order the
+     * tickets should be started.
+     *
+     * @param station the station to return, or null for all of them
+     */
+    public static Map<String, Object> getQueue(String station) {
+        Map<String, List<KitchenTicket>> stations = new LinkedHashMap<>();
+        List<String> names = new ArrayList<>(queues.keySet());
+        Collections.sort(names);
+        int tickets = 0;
+        int late = 0;
+        long now = System.currentTimeMillis();
+        for (String name : names) {
+            if (station != null && !station.equalsIgnoreCase(name)) {
+                continue;
+            }
+            List<KitchenTicket> queue = new ArrayList<>(queues.get(name));
+            if (queue.isEmpty()) {
+                continue;
+            }
+            for (KitchenTicket ticket : queue) {
+                if (ticket.startByMillis() < now) {
+                    late++;
+                }
+            }
+            tickets += queue.size();
+            stations.put(name, queue);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", ENABLED);
+        result.put("seeded", seededAt > 0);
+        result.put("orders", ticketsByOrder.size());
+        result.put("tickets", tickets);
+        result.put("late", late);
+        result.put("stations", stations);
+        result.put("generatedAt", new Date(now));
+        result.put("eventsApplied", eventsApplied.sum());
+        result.put("reconcileFailures", reconcileFailures.sum());
+        result.put("lastReconcileMillis", lastReconcileMillis);
+        result.put("lastReconciledAt", lastReconciledAt > 0 ? new Date(lastReconciledAt) : null);
+        return result;
+    }
+
+    private static void onOrderEvent(OrderEvent event) {
+        ScheduledExecutorService current = worker;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.execute(() -> apply(event));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    /**
+     * Replace the order's tickets, or remove them once the order has left the kitchen.
+     * Runs on the worker thread.
+     */
+    static void apply(OrderEvent event) {
+        try {
+            if (!isActive(event.getStatus())) {
+                remove(event.getOrderId());
+            } else {
+                Order order = event.getOrder();
+                if (order == null || order.getOrderItems() == null || order.getOrderItems().isEmpty()) {
+                    // Not every change carries the order's lines; load them if the order is new here
+                    Optional<Order> loaded = orderService.getOrderById(event.getOrderId());
+                    if (loaded.isEmpty() || !isActive(loaded.get().getStatus())) {
+                        remove(event.getOrderId());
+                        eventsApplied.increment();
+                        return;
+                    }
+                    order = loaded.get();
+                }
+                put(order, menuIndex());
+            }
+            eventsApplied.increment();
+        } catch (Exception e) {
+            logger.warn("Could not apply {} event for order {} to the kitchen queue: {}",
+                    event.getType(), event.getOrderId(), e.getMessage());
+        }
+    }
+
+    private static void reconcileAndReschedule() {
+        long nextDelay = RECONCILE_INTERVAL_MS;
+        try {
+            reconcile();
+        } catch (Exception e) {
+            reconcileFailures.increment();
+            logger.warn("Kitchen queue reconciliation failed: {}", e.getMessage());
+            if (seededAt == 0) {
+                nextDelay = RETRY_INTERVAL_MS;
+            }
+        }
+        ScheduledExecutorService current = worker;
+        if (current != null && !current.isShutdown()) {
+            current.schedule(KitchenScheduler::reconcileAndReschedule, nextDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Rebuild the queue from the open orders in the database. Runs on the worker
+     * thread, so no event is applied while it runs.
+     */
+    static void reconcile() throws Exception {
+        long start = System.currentTimeMillis();
+        List<Order> open = new ArrayList<>();
+        // Read from the primary so an order this node just placed is not dropped
+        ReadRouter.setPinnedToPrimary(true);
+        try {
+            for (String status : ACTIVE_STATUSES) {
+                open.addAll(orderService.getOrdersByStatus(status));
+            }
+        } finally {
+            ReadRouter.setPinnedToPrimary(false);
+        }
+
+        Map<Integer, MenuItem> menu = menuIndex();
+        Set<Integer> seen = new HashSet<>();
+        for (Order order : open) {
+            seen.add(order.getId());
+            put(order, menu);
+        }
+        for (Integer orderId : new ArrayList<>(ticketsByOrder.keySet())) {
+            if (!seen.contains(orderId)) {
+                remove(orderId);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        lastReconcileMillis = now - start;
+        lastReconciledAt = now;
+        if (seededAt == 0) {
+            seededAt = now;
+            logger.info("Kitchen queue loaded with {} open orders in {} ms", open.size(), now - start);
+        }
+    }
+
+    private static void put(Order order, Map<Integer, MenuItem> menu) {
+        List<KitchenTicket> tickets = ticketsFor(order, menu);
+        remove(order.getId());
+        for (KitchenTicket ticket : tickets) {
+            queues.computeIfAbsent(ticket.getStation(), s -> new ConcurrentSkipListSet<>(BY_START_TIME)).add(ticket);
+        }
+        if (!tickets.isEmpty()) {
+            ticketsByOrder.put(order.getId(), tickets);
+        }
+    }
+
+    private static void remove(int orderId) {
+        List<KitchenTicket> tickets = ticketsByOrder.remove(orderId);
+        if (tickets != null) {
+            for (KitchenTicket ticket : tickets) {
+                ConcurrentSkipListSet<KitchenTicket> queue = queues.get(ticket.getStation());
+                if (queue != null) {
+                    queue.remove(ticket);
+                }
+            }
+        }
+    }
+
+    private static List<KitchenTicket> ticketsFor(Order order, Map<Integer, MenuItem> menu) {
+        List<OrderItem> items = order.getOrderItems();
+        if (items == null || items.isEmpty()) {
+            return Collections.emptyList();
+        }
+        long orderedAt = order.getOrderDate() != null ? order.getOrderDate().getTime() : System.currentTimeMillis();
+
+        int[] preparationTimes = new int[items.size()];
+        int longest = 0;
+        for (int i = 0; i < items.size(); i++) {
+            MenuItem menuItem = menu.get(items.get(i).getMenuItemId());
+            preparationTimes[i] = menuItem != null && menuItem.getPreparationTime() > 0
+                    ? menuItem.getPreparationTime() : DEFAULT_PREPARATION_TIME;
+            longest = Math.max(longest, preparationTimes[i]);
+        }
+        long readyBy = order.getDeliveryDate() != null && order.getDeliveryDate().getTime() > orderedAt
+                ? order.getDeliveryDate().getTime()
+                : orderedAt + Math.max(PROMISE_MS, longest * 60_000L);
+
+        List<KitchenTicket> tickets = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            OrderItem item = items.get(i);
+            MenuItem menuItem = menu.get(item.getMenuItemId());
+            String name = item.getMenuItemName() != null ? item.getMenuItemName()
+                    : menuItem != null ? menuItem.getName() : "Item #" + item.getMenuItemId();
+            // Lines of an order that was just placed may not carry their IDs; the position keeps them apart
+            int lineId = item.getId() > 0 ? item.getId() : -(i + 1);
+            tickets.add(new KitchenTicket(order.getId(), lineId, item.getMenuItemId(), name, item.getQuantity(),
+                    item.getSpecialInstructions(), stationFor(menuItem), order.getStatus(), preparationTimes[i],
+                    orderedAt, readyBy));
+        }
+        return Collections.unmodifiableList(tickets);
+    }
+
+    private static Map<Integer, MenuItem> menuIndex() throws Exception {
+        Map<Integer, MenuItem> menu = new HashMap<>();
+        for (MenuItem item : menuItemService.getMenuCatalog().getAll()) {
+            menu.put(item.getId(), item);
+        }
+        return menu;
+    }
+
+    private static String stationFor(MenuItem menuItem) {
+        if (menuItem == null || menuItem.getCategory() == null || menuItem.getCategory().trim().isEmpty()) {
+            return DEFAULT_STATION;
+        }
+        String category = menuItem.getCategory().trim();
+        return STATIONS.getOrDefault(category.toLowerCase(Locale.ROOT), category);
+    }
+
+    private static boolean isActive(String status) {
+        for (String active : ACTIVE_STATUSES) {
+            if (active.equals(status)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<String, String> parseStations(String value) {
+        Map<String, String> stations = new HashMap<>();
+        for (String pair : value.split(",")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && eq < pair.length() - 1) {
+                stations.put(pair.substring(0, eq).trim().toLowerCase(Locale.ROOT), pair.substring(eq + 1).trim());
+            } else if (!pair.trim().isEmpty()) {
+                logger.warn("Ignoring kitchen station mapping '{}'; expected category=station", pair.trim());
+            }
+        }
+        return stations;
+    }
+}
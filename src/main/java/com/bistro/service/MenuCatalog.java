@@ -0,0 +1,317 @@
+package com.bistro.service;
+
+import com.bistro.model.MenuFilter;
+import com.bistro.model.MenuFilterResult;
+import com.bistro.model.MenuItem;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable snapshot of the whole menu with prebuilt indexes by ID, category,
+ * featured and available, so menu reads are answered from memory.
+ * <p>
+ * A snapshot is never changed after it is built: writes produce a new snapshot
+ * with a higher version that replaces the old one in a single reference swap.
+ * The menu items inside are shared by every reader and must not be modified;
+ * callers that need to change an item load their own copy from the DAO.
+ * <p>
+ * Each snapshot carries a fingerprint of its content, which is the same on every
+ * node that holds the same menu and so can be used as an HTTP entity tag.
+ */
+public final class MenuCatalog {
+    private final long version;
+    private final long loadedAt;
+    private final long modifiedAt;
+    private final String fingerprint;
+    private final List<MenuItem> items;
+    private final Map<Integer, MenuItem> byId;
+    private final Map<String, List<MenuItem>> byCategory;
+    private final List<String> categories;
+    private final List<MenuItem> featured;
+    private final List<MenuItem> available;
+    // Built on the first search and carried forward by later snapshots
+    private volatile MenuSearchIndex searchIndex;
+    // Built on the first filter; cheap enough to rebuild for each new snapshot
+    private volatile MenuFacetIndex facetIndex;
+
+    /**
+     * Build a snapshot from the given menu items.
+     *
+     * @param items the menu items; they are copied, so the caller may keep using them
+     * @param version the snapshot version
+     * @param loadedAt when the items were last read in full from the database
+     * @param modifiedAt when the menu content last changed
+     */
+    public MenuCatalog(List<MenuItem> items, long version, long loadedAt, long modifiedAt) {
+        this.version = version;
+        this.loadedAt = loadedAt;
+        this.modifiedAt = modifiedAt;
+
+        List<MenuItem> sorted = new ArrayList<>(items.size());
+        for (MenuItem item : items) {
+            sorted.add(copyOf(item));
+        }
+        sorted.sort(Comparator.comparingInt(MenuItem::getId));
+
+        Map<Integer, MenuItem> idIndex = new HashMap<>();
+        // Keys are lower-cased because category lookups in MySQL are case-insensitive
+        Map<String, List<MenuItem>> categoryIndex = new LinkedHashMap<>();
+        Map<String, String> categoryNames = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        List<MenuItem> featuredItems = new ArrayList<>();
+        List<MenuItem> availableItems = new ArrayList<>();
+
+        for (MenuItem item : sorted) {
+            idIndex.put(item.getId(), item);
+            if (item.getCategory() != null) {
+                categoryIndex.computeIfAbsent(categoryKey(item.getCategory()), k -> new ArrayList<>()).add(item);
+                categoryNames.putIfAbsent(item.getCategory(), item.getCategory());
+            }
+            if (item.isAvailable()) {
+                availableItems.add(item);
+                if (item.isFeatured()) {
+                    featuredItems.add(item);
+                }
+            }
+        }
+        for (Map.Entry<String, List<MenuItem>> entry : categoryIndex.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+
+        this.fingerprint = fingerprintOf(sorted);
+        this.items = Collections.unmodifiableList(sorted);
+        this.byId = Collections.unmodifiableMap(idIndex);
+        this.byCategory = Collections.unmodifiableMap(categoryIndex);
+        this.categories = Collections.unmodifiableList(new ArrayList<>(categoryNames.values()));
+        this.featured = Collections.unmodifiableList(featuredItems);
+        this.available = Collections.unmodifiableList(availableItems);
+    }
+
+    /**
+     * Same content with a new load time, for a reload that found nothing changed.
+     */
+    private MenuCatalog(MenuCatalog other, long loadedAt) {
+        this.version = other.version;
+        this.loadedAt = loadedAt;
+        this.modifiedAt = other.modifiedAt;
+        this.fingerprint = other.fingerprint;
+        this.items = other.items;
+        this.byId = other.byId;
+        this.byCategory = other.byCategory;
+        this.categories = other.categories;
+        this.featured = other.featured;
+        this.available = other.available;
+        this.searchIndex = other.searchIndex;
+        this.facetIndex = other.facetIndex;
+    }
+
+    /**
+     * The snapshot to install after a full reload: this one with a new load time if
+     * the content is unchanged, so the version and fingerprint stay the same, or
+     * otherwise the reloaded snapshot.
+     */
+    public MenuCatalog reloadedAs(MenuCatalog reloaded) {
+        if (fingerprint.equals(reloaded.fingerprint)) {
+            return new MenuCatalog(this, reloaded.loadedAt);
+        }
+        return reloaded;
+    }
+
+    /**
+     * A new snapshot with the given item added or replaced.
+     */
+    public MenuCatalog withItem(MenuItem item, long newVersion) {
+        List<MenuItem> updated = new ArrayList<>(items.size() + 1);
+        for (MenuItem existing : items) {
+            if (existing.getId() != item.getId()) {
+                updated.add(existing);
+            }
+        }
+        updated.add(item);
+        MenuCatalog catalog = new MenuCatalog(updated, newVersion, loadedAt, System.currentTimeMillis());
+        MenuSearchIndex index = searchIndex;
+        if (index != null) {
+            catalog.searchIndex = index.withItem(byId.get(item.getId()), catalog.getById(item.getId()));
+        }
+        return catalog;
+    }
+
+    /**
+     * A new snapshot without the item with the given ID.
+     */
+    public MenuCatalog withoutItem(int id, long newVersion) {
+        List<MenuItem> updated = new ArrayList<>(items.size());
+        for (MenuItem existing : items) {
+            if (existing.getId() != id) {
+                updated.add(existing);
+            }
+        }
+        MenuCatalog catalog = new MenuCatalog(updated, newVersion, loadedAt, System.currentTimeMillis());
+        MenuSearchIndex index = searchIndex;
+        MenuItem removed = byId.get(id);
+        if (index != null && removed != null) {
+            catalog.searchIndex = index.withoutItem(removed);
+        }
+        return catalog;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * When the menu content last changed, as far as this node knows.
+     */
+    public long getModifiedAt() {
+        return modifiedAt;
+    }
+
+    /**
+     * Hash of every item field, identical for identical menus.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * All menu items, ordered by ID.
+     */
+    public List<MenuItem> getAll() {
+        return items;
+    }
+
+    public MenuItem getById(int id) {
+        return byId.get(id);
+    }
+
+    /**
+     * Menu items in a category, matched case-insensitively.
+     */
+    public List<MenuItem> getByCategory(String category) {
+        if (category == null) {
+            return Collections.emptyList();
+        }
+        return byCategory.getOrDefault(categoryKey(category), Collections.emptyList());
+    }
+
+    /**
+     * Distinct category names in alphabetical order.
+     */
+    public List<String> getCategories() {
+        return categories;
+    }
+
+    /**
+     * Menu items that are both featured and available.
+     */
+    public List<MenuItem> getFeatured() {
+        return featured;
+    }
+
+    public List<MenuItem> getAvailable() {
+        return available;
+    }
+
+    /**
+     * Menu items matching the query, best match first. See {@link MenuSearchIndex}.
+     */
+    public List<MenuItem> search(String query) {
+        return search(query, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The best matches for the query, at most {@code limit} of them.
+     */
+    public List<MenuItem> search(String query, int limit) {
+        List<Integer> ids = getSearchIndex().search(query, limit, byId::get);
+        List<MenuItem> results = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            results.add(byId.get(id));
+        }
+        return results;
+    }
+
+    /**
+     * Menu items matching every criterion of the filter, with facet counts.
+     * See {@link MenuFacetIndex}.
+     *
+     * @throws IllegalArgumentException if the filter names an unknown price band
+     */
+    public MenuFilterResult filter(MenuFilter filter) {
+        MenuFacetIndex index = facetIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = facetIndex;
+                if (index == null) {
+                    index = new MenuFacetIndex(items);
+                    facetIndex = index;
+                }
+            }
+        }
+        return index.filter(filter);
+    }
+
+    private MenuSearchIndex getSearchIndex() {
+        MenuSearchIndex index = searchIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = searchIndex;
+                if (index == null) {
+                    index = MenuSearchIndex.build(items);
+                    searchIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    private static String fingerprintOf(List<MenuItem> sortedItems) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        StringBuilder row = new StringBuilder(256);
+        for (MenuItem item : sortedItems) {
+            row.setLength(0);
+            row.append(item.getId()).append('\u0001')
+               .append(item.getName()).append('\u0001')
+               .append(item.getDescription()).append('\u0001')
+               .append(item.getPrice()).append('\u0001')
+               .append(item.getCategory()).append('\u0001')
+               .append(item.getImageUrl()).append('\u0001')
+               .append(item.isAvailable()).append('\u0001')
+               .append(item.isFeatured()).append('\u0001')
+               .append(item.getPreparationTime()).append('\u0002');
+            digest.update(row.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] hash = digest.digest();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 15));
+    }
+
+    private static String categoryKey(String category) {
+        return category.toLowerCase(Locale.ROOT);
+    }
+
+    private static MenuItem copyOf(MenuItem item) {
+        return new MenuItem(item.getId(), item.getName(), item.getDescription(), item.getPrice(), item.getCategory(),
+                item.getImageUrl(), item.isAvailable(), item.isFeatured(), item.getPreparationTime());
+    }
+}
@@ -0,0 +1,347 @@
+package com.bistro.service;
+
+import com.bistro.model.MenuFilter;
+import com.bistro.model.MenuFilterResult;
+import com.bistro.model.MenuItem;
+import com.bistro.util.AppConfig;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable bitset indexes over a catalog snapshot, used to combine menu filters
+ * and count facets without touching the database.
+ * <p>
+ * Items are numbered by their position in the snapshot. Each category, price band
+ * and flag has a bitset of the items that have it, and preparation time has one
+ * bitset per distinct value holding the items at or below it. A filter is the AND
+ * of one bitset per criterion (the OR of the selected values within categories and
+ * price bands), so any combination costs a few word-level ANDs. Facet counts use
+ * the same bitsets: a value's count is the cardinality of its bitset ANDed with
+ * every other criterion, so selecting it would return exactly that many items.
+ * <p>
+ * Arbitrary price limits are not precomputed; they are turned into a bitset with
+ * a binary search over the items sorted by price.
+ */
+public final class MenuFacetIndex {
+    /** Upper edges of the price bands; the last band is open-ended. */
+    private static final BigDecimal[] PRICE_BAND_EDGES = parseEdges(
+            AppConfig.getString("menu.filter.priceBands", "200,400,700"));
+    /** Preparation time ceilings, in minutes, reported as facets. */
+    private static final int[] PREP_TIME_BUCKETS = Arrays.stream(parseEdges(
+            AppConfig.getString("menu.filter.prepTimeBuckets", "10,20,30,45")))
+            .mapToInt(BigDecimal::intValue).toArray();
+
+    // Criteria in the order they are evaluated
+    private static final int CATEGORY = 0;
+    private static final int PRICE = 1;
+    private static final int AVAILABLE = 2;
+    private static final int FEATURED = 3;
+    private static final int PREP_TIME = 4;
+    private static final int CRITERIA = 5;
+
+    private final List<MenuItem> items;
+    private final BitSet all;
+    /** Lower-cased category -> items, in category name order. */
+    private final Map<String, BitSet> byCategory;
+    private final Map<String, String> categoryNames;
+    private final String[] priceBandLabels;
+    private final BitSet[] byPriceBand;
+    private final BitSet available;
+    private final BitSet unavailable;
+    private final BitSet featured;
+    private final BitSet notFeatured;
+    /** Item positions ordered by price; items without a price are left out. */
+    private final int[] positionsByPrice;
+    private final BigDecimal[] sortedPrices;
+    /** Distinct preparation times, ascending. */
+    private final int[] prepTimes;
+    /** prepTimeAtMost[i] holds the items taking at most prepTimes[i] minutes. */
+    private final BitSet[] prepTimeAtMost;
+
+    /**
+     * Build the indexes for the given items.
+     *
+     * @param items the snapshot's items; positions in this list are the bit numbers
+     */
+    public MenuFacetIndex(List<MenuItem> items) {
+        int count = items.size();
+        this.items = items;
+        this.all = new BitSet(count);
+        all.set(0, count);
+
+        Map<String, BitSet> categories = new TreeMap<>();
+        Map<String, String> names = new HashMap<>();
+        this.priceBandLabels = priceBandLabels();
+        this.byPriceBand = new BitSet[priceBandLabels.length];
+        for (int band = 0; band < byPriceBand.length; band++) {
+            byPriceBand[band] = new BitSet(count);
+        }
+        this.available = new BitSet(count);
+        this.featured = new BitSet(count);
+        Map<Integer, BitSet> byPrepTime = new TreeMap<>();
+        List<Integer> priced = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            MenuItem item = items.get(i);
+            if (item.getCategory() != null) {
+                String key = item.getCategory().toLowerCase(Locale.ROOT);
+                categories.computeIfAbsent(key, k -> new BitSet(count)).set(i);
+                names.putIfAbsent(key, item.getCategory());
+            }
+            if (item.getPrice() != null) {
+                byPriceBand[priceBandOf(item.getPrice())].set(i);
+                priced.add(i);
+            }
+            if (item.isAvailable()) {
+                available.set(i);
+            }
+            if (item.isFeatured()) {
+                featured.set(i);
+            }
+            byPrepTime.computeIfAbsent(item.getPreparationTime(), k -> new BitSet(count)).set(i);
+        }
+
+        this.byCategory = categories;
+        this.categoryNames = names;
+        this.unavailable = without(all, available);
+        this.notFeatured = without(all, featured);
+
+        priced.sort(Comparator.comparing(i -> items.get(i).getPrice()));
+        this.positionsByPrice = priced.stream().mapToInt(Integer::intValue).toArray();
+        this.sortedPrices = new BigDecimal[positionsByPrice.length];
+        for (int i = 0; i < positionsByPrice.length; i++) {
+            sortedPrices[i] = items.get(positionsByPrice[i]).getPrice();
+        }
+
+        // Running union, so a ceiling is answered by a single bitset
+        this.prepTimes = new int[byPrepTime.size()];
+        this.prepTimeAtMost = new BitSet[byPrepTime.size()];
+        BitSet atMost = new BitSet(count);
+        int next = 0;
+        for (Map.Entry<Integer, BitSet> entry : byPrepTime.entrySet()) {
+            atMost.or(entry.getValue());
+            prepTimes[next] = entry.getKey();
+            prepTimeAtMost[next] = (BitSet) atMost.clone();
+            next++;
+        }
+    }
+
+    /**
+     * Apply a filter and count facets.
+     *
+     * @param filter the criteria, offset and page size
+     * @return the requested page of matching items, in snapshot order, with facet counts
+     * @throws IllegalArgumentException if the filter names an unknown price band
+     */
+    public MenuFilterResult filter(MenuFilter filter) {
+        BitSet[] criteria = new BitSet[CRITERIA];
+        criteria[CATEGORY] = categoryMatch(filter.getCategories());
+        criteria[PRICE] = priceMatch(filter.getPriceBands(), filter.getMinPrice(), filter.getMaxPrice());
+        if (filter.getAvailable() != null) {
+            criteria[AVAILABLE] = filter.getAvailable() ? available : unavailable;
+        }
+        if (filter.getFeatured() != null) {
+            criteria[FEATURED] = filter.getFeatured() ? featured : notFeatured;
+        }
+        if (filter.getMaxPreparationTime() != null) {
+            criteria[PREP_TIME] = prepTimeMatch(filter.getMaxPreparationTime());
+        }
+
+        BitSet matches = allExcept(criteria, -1);
+        int total = matches.cardinality();
+        List<MenuItem> page = new ArrayList<>(Math.min(filter.getLimit(), total));
+        int skipped = 0;
+        for (int i = matches.nextSetBit(0); i >= 0 && page.size() < filter.getLimit(); i = matches.nextSetBit(i + 1)) {
+            if (skipped++ >= filter.getOffset()) {
+                page.add(items.get(i));
+            }
+        }
+
+        Map<String, Map<String, Integer>> facets = new LinkedHashMap<>();
+        facets.put("category", categoryFacet(allExcept(criteria, CATEGORY)));
+        facets.put("priceBand", priceBandFacet(allExcept(criteria, PRICE)));
+        facets.put("available", flagFacet(allExcept(criteria, AVAILABLE), available, unavailable));
+        facets.put("featured", flagFacet(allExcept(criteria, FEATURED), featured, notFeatured));
+        facets.put("preparationTime", prepTimeFacet(allExcept(criteria, PREP_TIME)));
+
+        return new MenuFilterResult(page, total, filter.getOffset(), filter.getLimit(), facets);
+    }
+
+    /**
+     * The AND of every criterion that is set, leaving out the one at {@code skip}.
+     */
+    private BitSet allExcept(BitSet[] criteria, int skip) {
+        BitSet result = (BitSet) all.clone();
+        for (int i = 0; i < criteria.length; i++) {
+            if (i != skip && criteria[i] != null) {
+                result.and(criteria[i]);
+            }
+        }
+        return result;
+    }
+
+    private BitSet categoryMatch(List<String> categories) {
+        if (categories == null || categories.isEmpty()) {
+            return null;
+        }
+        BitSet match = new BitSet(items.size());
+        for (String category : categories) {
+            BitSet bits = byCategory.get(category.toLowerCase(Locale.ROOT));
+            if (bits != null) {
+                match.or(bits);
+            }
+        }
+        return match;
+    }
+
+    private BitSet priceMatch(List<String> bands, BigDecimal minPrice, BigDecimal maxPrice) {
+        BitSet match = null;
+        if (bands != null && !bands.isEmpty()) {
+            match = new BitSet(items.size());
+            for (String band : bands) {
+                int index = Arrays.asList(priceBandLabels).indexOf(band);
+                if (index < 0) {
+                    throw new IllegalArgumentException("Unknown price band: " + band);
+                }
+                match.or(byPriceBand[index]);
+            }
+        }
+        if (minPrice != null || maxPrice != null) {
+            BitSet range = priceRange(minPrice, maxPrice);
+            if (match == null) {
+                match = range;
+            } else {
+                match.and(range);
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Items priced within the inclusive limits; either limit may be null.
+     */
+    private BitSet priceRange(BigDecimal minPrice, BigDecimal maxPrice) {
+        int from = minPrice == null ? 0 : firstPriceAtLeast(minPrice, false);
+        int to = maxPrice == null ? sortedPrices.length : firstPriceAtLeast(maxPrice, true);
+        BitSet range = new BitSet(items.size());
+        for (int i = from; i < to; i++) {
+            range.set(positionsByPrice[i]);
+        }
+        return range;
+    }
+
+    /**
+     * Index of the first sorted price that is at least {@code price}, or with
+     * {@code strictly} set, greater than it.
+     */
+    private int firstPriceAtLeast(BigDecimal price, boolean strictly) {
+        int low = 0;
+        int high = sortedPrices.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = sortedPrices[mid].compareTo(price);
+            if (cmp < 0 || (strictly && cmp == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private BitSet prepTimeMatch(int maxMinutes) {
+        int pos = Arrays.binarySearch(prepTimes, maxMinutes);
+        int index = pos >= 0 ? pos : -pos - 2;
+        return index >= 0 ? prepTimeAtMost[index] : new BitSet(0);
+    }
+
+    private Map<String, Integer> categoryFacet(BitSet base) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, BitSet> entry : byCategory.entrySet()) {
+            counts.put(categoryNames.get(entry.getKey()), intersectionCount(base, entry.getValue()));
+        }
+        return counts;
+    }
+
+    private Map<String, Integer> priceBandFacet(BitSet base) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (int band = 0; band < priceBandLabels.length; band++) {
+            counts.put(priceBandLabels[band], intersectionCount(base, byPriceBand[band]));
+        }
+        return counts;
+    }
+
+    private Map<String, Integer> flagFacet(BitSet base, BitSet set, BitSet unset) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        counts.put("true", intersectionCount(base, set));
+        counts.put("false", intersectionCount(base, unset));
+        return counts;
+    }
+
+    /**
+     * Counts per configured ceiling; each count includes the faster items.
+     */
+    private Map<String, Integer> prepTimeFacet(BitSet base) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (int minutes : PREP_TIME_BUCKETS) {
+            counts.put(String.valueOf(minutes), intersectionCount(base, prepTimeMatch(minutes)));
+        }
+        return counts;
+    }
+
+    private static int intersectionCount(BitSet a, BitSet b) {
+        BitSet both = (BitSet) a.clone();
+        both.and(b);
+        return both.cardinality();
+    }
+
+    private static BitSet without(BitSet set, BitSet removed) {
+        BitSet result = (BitSet) set.clone();
+        result.andNot(removed);
+        return result;
+    }
+
+    private static int priceBandOf(BigDecimal price) {
+        for (int band = 0; band < PRICE_BAND_EDGES.length; band++) {
+            if (price.compareTo(PRICE_BAND_EDGES[band]) < 0) {
+                return band;
+            }
+        }
+        return PRICE_BAND_EDGES.length;
+    }
+
+    /**
+     * Labels of the configured price bands, such as "0-200", "200-400" and "700+".
+     */
+    public static String[] priceBandLabels() {
+        String[] labels = new String[PRICE_BAND_EDGES.length + 1];
+        String lower = "0";
+        for (int band = 0; band < PRICE_BAND_EDGES.length; band++) {
+            String upper = PRICE_BAND_EDGES[band].toPlainString();
+            labels[band] = lower + "-" + upper;
+            lower = upper;
+        }
+        labels[PRICE_BAND_EDGES.length] = lower + "+";
+        return labels;
+    }
+
+    private static BigDecimal[] parseEdges(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .map(BigDecimal::new)
+                .sorted()
+                .distinct()
+                .toArray(BigDecimal[]::new);
+    }
+}
@@ -87,6 +87,16 @@ public interface MenuItemService {
      */
     List<MenuItem> searchMenuItems(String query) throws Exception;
     
+    /**
+     * Search menu items by name or description, best matches first.
+     *
+     * @param query the search query
+     * @param limit the maximum number of items to return
+     * @return at most {@code limit} menu items matching the search query
+     * @throws Exception if search fails
+     */
+    List<MenuItem> searchMenuItems(String query, int limit) throws Exception;
+    
     /**
      * Get all distinct categories of menu items.
      *
@@ -95,6 +105,24 @@ public interface MenuItemService {
      */
     List<String> getAllCategories() throws Exception;
     
+    /**
+     * Get a consistent snapshot of the whole menu. Everything read from one snapshot
+     * belongs to the same version, so it can be used to answer a request together
+     * with its entity tag.
+     *
+     * @return the current menu snapshot
+     * @throws Exception if retrieval fails
+     */
+    MenuCatalog getMenuCatalog() throws Exception;
+    
+    /**
+     * Whether the menu snapshot is kept between requests. When it is not, every
+     * {@link #getMenuCatalog()} call reads the whole menu from the database.
+     *
+     * @return true if menu reads are answered from a cached snapshot
+     */
+    boolean isMenuCatalogCached();
+    
     /**
      * Toggle the availability of a menu item.
      *
@@ -0,0 +1,553 @@
+package com.bistro.service;
+
+import com.bistro.model.MenuItem;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable inverted index over menu item names, categories and descriptions,
+ * used for ranked search and autocomplete without touching the database.
+ * <p>
+ * Each query token matches index terms exactly, as a prefix (so results appear
+ * while the user is still typing) or, for tokens of four or more characters,
+ * with one typo: a wrong, missing, extra or swapped letter. Typo candidates are
+ * found through an index of single-character deletions, so no term list is
+ * scanned. Every token of the query must match; items are ranked by how well
+ * and in which field each token matched.
+ * <p>
+ * Items are numbered densely inside the index so scoring works on plain arrays.
+ * Adding, changing or removing an item derives a new index from the old one,
+ * re-tokenizing just that item; a removed item's number is left unused until
+ * the index is next built from scratch.
+ */
+public final class MenuSearchIndex {
+    private static final int NAME = 1;
+    private static final int CATEGORY = 2;
+    private static final int DESCRIPTION = 4;
+
+    private static final float EXACT = 1.0f;
+    private static final float PREFIX = 0.6f;
+    private static final float TYPO = 0.4f;
+    private static final int MIN_TYPO_LENGTH = 4;
+    /** Prefix expansion stops after this many terms, e.g. for a one-letter query. */
+    private static final int MAX_PREFIX_TERMS = 64;
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Items containing a term, as sorted document numbers with the fields the term occurs in.
+     */
+    private static final class Posting {
+        final int[] docs;
+        final byte[] fields;
+
+        Posting(int[] docs, byte[] fields) {
+            this.docs = docs;
+            this.fields = fields;
+        }
+
+        Posting with(int doc, byte field) {
+            int pos = Arrays.binarySearch(docs, doc);
+            if (pos >= 0) {
+                byte[] newFields = fields.clone();
+                newFields[pos] = field;
+                return new Posting(docs, newFields);
+            }
+            int insert = -pos - 1;
+            int[] newDocs = new int[docs.length + 1];
+            byte[] newFields = new byte[docs.length + 1];
+            System.arraycopy(docs, 0, newDocs, 0, insert);
+            System.arraycopy(fields, 0, newFields, 0, insert);
+            newDocs[insert] = doc;
+            newFields[insert] = field;
+            System.arraycopy(docs, insert, newDocs, insert + 1, docs.length - insert);
+            System.arraycopy(fields, insert, newFields, insert + 1, docs.length - insert);
+            return new Posting(newDocs, newFields);
+        }
+
+        /** This posting without the document, or null if nothing is left. */
+        Posting without(int doc) {
+            int pos = Arrays.binarySearch(docs, doc);
+            if (pos < 0) {
+                return this;
+            }
+            if (docs.length == 1) {
+                return null;
+            }
+            int[] newDocs = new int[docs.length - 1];
+            byte[] newFields = new byte[docs.length - 1];
+            System.arraycopy(docs, 0, newDocs, 0, pos);
+            System.arraycopy(fields, 0, newFields, 0, pos);
+            System.arraycopy(docs, pos + 1, newDocs, pos, docs.length - pos - 1);
+            System.arraycopy(fields, pos + 1, newFields, pos, docs.length - pos - 1);
+            return new Posting(newDocs, newFields);
+        }
+    }
+
+    private final Map<String, Posting> postings;
+    /** Document number -> item ID, or -1 for a removed item. */
+    private final int[] docIds;
+    /** Document number -> name as normalized tokens joined by single spaces. */
+    private final String[] docNames;
+    /** Item ID -> document number. */
+    private final Map<Integer, Integer> docsById;
+    private final String[] sortedTerms;
+    /** Single-character deletion of a term -> the terms it came from. */
+    private final Map<String, String[]> deletions;
+
+    private MenuSearchIndex(Map<String, Posting> postings, int[] docIds, String[] docNames,
+                            Map<Integer, Integer> docsById, String[] sortedTerms, Map<String, String[]> deletions) {
+        this.postings = postings;
+        this.docIds = docIds;
+        this.docNames = docNames;
+        this.docsById = docsById;
+        this.sortedTerms = sortedTerms;
+        this.deletions = deletions;
+    }
+
+    /**
+     * Build an index over the given items.
+     */
+    public static MenuSearchIndex build(Collection<MenuItem> items) {
+        int[] docIds = new int[items.size()];
+        String[] docNames = new String[items.size()];
+        Map<Integer, Integer> docsById = new HashMap<>(items.size() * 2);
+        Map<String, List<int[]>> collected = new HashMap<>();
+        int doc = 0;
+        for (MenuItem item : items) {
+            docIds[doc] = item.getId();
+            docNames[doc] = normalizedName(item);
+            docsById.put(item.getId(), doc);
+            for (Map.Entry<String, Integer> term : termsOf(item).entrySet()) {
+                collected.computeIfAbsent(term.getKey(), k -> new ArrayList<>()).add(new int[] { doc, term.getValue() });
+            }
+            doc++;
+        }
+
+        // Documents were numbered in order, so every posting is already sorted
+        Map<String, Posting> postings = new HashMap<>(collected.size() * 2);
+        for (Map.Entry<String, List<int[]>> entry : collected.entrySet()) {
+            List<int[]> rows = entry.getValue();
+            int[] docs = new int[rows.size()];
+            byte[] fields = new byte[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                docs[i] = rows.get(i)[0];
+                fields[i] = (byte) rows.get(i)[1];
+            }
+            postings.put(entry.getKey(), new Posting(docs, fields));
+        }
+
+        Map<String, Set<String>> deletionSets = new HashMap<>();
+        for (String term : postings.keySet()) {
+            for (String deletion : deletionsOf(term)) {
+                deletionSets.computeIfAbsent(deletion, k -> new HashSet<>()).add(term);
+            }
+        }
+        Map<String, String[]> deletions = new HashMap<>(deletionSets.size() * 2);
+        for (Map.Entry<String, Set<String>> entry : deletionSets.entrySet()) {
+            deletions.put(entry.getKey(), entry.getValue().toArray(new String[0]));
+        }
+
+        return new MenuSearchIndex(postings, docIds, docNames, docsById, sortTerms(postings.keySet()), deletions);
+    }
+
+    /**
+     * A new index in which the given item replaces its previous version.
+     *
+     * @param previous the item as currently indexed, or null if it is new
+     * @param item the item to index
+     */
+    public MenuSearchIndex withItem(MenuItem previous, MenuItem item) {
+        return update(previous, item);
+    }
+
+    /**
+     * A new index without the given item.
+     *
+     * @param previous the item as currently indexed
+     */
+    public MenuSearchIndex withoutItem(MenuItem previous) {
+        return update(previous, null);
+    }
+
+    private MenuSearchIndex update(MenuItem removed, MenuItem added) {
+        Map<String, Posting> newPostings = new HashMap<>(postings);
+        Map<Integer, Integer> newDocsById = new HashMap<>(docsById);
+        int[] newDocIds = docIds;
+        String[] newDocNames = docNames;
+        Set<String> removedTerms = removed != null ? termsOf(removed).keySet() : Set.of();
+        Map<String, Integer> addedTerms = added != null ? termsOf(added) : Map.of();
+
+        if (removed != null) {
+            Integer doc = newDocsById.remove(removed.getId());
+            if (doc != null) {
+                for (String term : removedTerms) {
+                    Posting posting = newPostings.get(term);
+                    if (posting != null) {
+                        Posting remaining = posting.without(doc);
+                        if (remaining == null) {
+                            newPostings.remove(term);
+                        } else {
+                            newPostings.put(term, remaining);
+                        }
+                    }
+                }
+                newDocIds = docIds.clone();
+                newDocNames = docNames.clone();
+                newDocIds[doc] = -1;
+                newDocNames[doc] = null;
+            }
+        }
+        if (added != null) {
+            // A changed item keeps its number; a new one is appended
+            Integer existing = removed != null ? docsById.get(removed.getId()) : null;
+            int doc = existing != null ? existing : newDocIds.length;
+            if (doc == newDocIds.length) {
+                newDocIds = Arrays.copyOf(newDocIds, doc + 1);
+                newDocNames = Arrays.copyOf(newDocNames, doc + 1);
+            } else if (newDocIds == docIds) {
+                newDocIds = docIds.clone();
+                newDocNames = docNames.clone();
+            }
+            newDocIds[doc] = added.getId();
+            newDocNames[doc] = normalizedName(added);
+            newDocsById.put(added.getId(), doc);
+            for (Map.Entry<String, Integer> term : addedTerms.entrySet()) {
+                byte field = (byte) (int) term.getValue();
+                Posting posting = newPostings.get(term.getKey());
+                newPostings.put(term.getKey(), posting == null
+                        ? new Posting(new int[] { doc }, new byte[] { field })
+                        : posting.with(doc, field));
+            }
+        }
+
+        // The term list and typo index only change when a term appears or disappears
+        Set<String> newTerms = new HashSet<>();
+        for (String term : addedTerms.keySet()) {
+            if (!postings.containsKey(term)) {
+                newTerms.add(term);
+            }
+        }
+        Set<String> goneTerms = new HashSet<>();
+        for (String term : removedTerms) {
+            if (!newPostings.containsKey(term)) {
+                goneTerms.add(term);
+            }
+        }
+        if (newTerms.isEmpty() && goneTerms.isEmpty()) {
+            return new MenuSearchIndex(newPostings, newDocIds, newDocNames, newDocsById, sortedTerms, deletions);
+        }
+
+        Map<String, String[]> newDeletions = new HashMap<>(deletions);
+        for (String term : goneTerms) {
+            for (String deletion : deletionsOf(term)) {
+                String[] terms = newDeletions.get(deletion);
+                if (terms != null) {
+                    String[] remaining = Arrays.stream(terms).filter(t -> !t.equals(term)).toArray(String[]::new);
+                    if (remaining.length == 0) {
+                        newDeletions.remove(deletion);
+                    } else {
+                        newDeletions.put(deletion, remaining);
+                    }
+                }
+            }
+        }
+        for (String term : newTerms) {
+            for (String deletion : deletionsOf(term)) {
+                String[] terms = newDeletions.get(deletion);
+                if (terms == null) {
+                    newDeletions.put(deletion, new String[] { term });
+                } else {
+                    String[] extended = Arrays.copyOf(terms, terms.length + 1);
+                    extended[terms.length] = term;
+                    newDeletions.put(deletion, extended);
+                }
+            }
+        }
+        return new MenuSearchIndex(newPostings, newDocIds, newDocNames, newDocsById,
+                sortTerms(newPostings.keySet()), newDeletions);
+    }
+
+    /**
+     * Search for items matching every token of the query.
+     *
+     * @param query the user's query
+     * @param limit the most results to return
+     * @param items resolves an item ID, for tie-breaking between equal scores
+     * @return matching item IDs, best first
+     */
+    public List<Integer> search(String query, int limit, IntFunction<MenuItem> items) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        // total[doc] accumulates the score of documents that matched every token so far
+        int docCount = docIds.length;
+        float[] total = new float[docCount];
+        float[] best = new float[docCount];
+        int[] touched = new int[docCount];
+        int[] candidates = null;
+        int candidateCount = 0;
+
+        for (String token : tokens) {
+            int touchedCount = scoreToken(token, best, touched);
+            if (candidates == null) {
+                candidates = Arrays.copyOf(touched, touchedCount);
+                candidateCount = touchedCount;
+                for (int i = 0; i < touchedCount; i++) {
+                    total[touched[i]] = best[touched[i]];
+                }
+            } else {
+                int kept = 0;
+                for (int i = 0; i < candidateCount; i++) {
+                    int doc = candidates[i];
+                    if (best[doc] > 0) {
+                        total[doc] += best[doc];
+                        candidates[kept++] = doc;
+                    }
+                }
+                candidateCount = kept;
+            }
+            for (int i = 0; i < touchedCount; i++) {
+                best[touched[i]] = 0;
+            }
+            if (candidateCount == 0) {
+                return new ArrayList<>();
+            }
+        }
+
+        // Bonus for names that start with what was typed
+        String normalizedQuery = String.join(" ", tokens);
+        List<Integer> docs = new ArrayList<>(candidateCount);
+        for (int i = 0; i < candidateCount; i++) {
+            int doc = candidates[i];
+            if (docNames[doc].startsWith(normalizedQuery)) {
+                total[doc] += 1.5f;
+            }
+            docs.add(doc);
+        }
+
+        Comparator<Integer> ranking = (a, b) -> {
+            int byScore = Float.compare(total[b], total[a]);
+            if (byScore != 0) {
+                return byScore;
+            }
+            MenuItem itemA = items.apply(docIds[a]);
+            MenuItem itemB = items.apply(docIds[b]);
+            if (itemA == null || itemB == null) {
+                return itemA == null ? (itemB == null ? 0 : 1) : -1;
+            }
+            if (itemA.isAvailable() != itemB.isAvailable()) {
+                return itemA.isAvailable() ? -1 : 1;
+            }
+            return String.CASE_INSENSITIVE_ORDER.compare(String.valueOf(itemA.getName()), String.valueOf(itemB.getName()));
+        };
+
+        if (docs.size() > limit && limit <= 64) {
+            // Autocomplete asks for a handful: keep the best few instead of sorting everything
+            PriorityQueue<Integer> top = new PriorityQueue<>(limit + 1, ranking.reversed());
+            for (Integer doc : docs) {
+                top.add(doc);
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+            docs = new ArrayList<>(top);
+        }
+        docs.sort(ranking);
+
+        List<Integer> ids = new ArrayList<>(Math.min(limit, docs.size()));
+        for (Integer doc : docs) {
+            if (ids.size() == limit) {
+                break;
+            }
+            if (items.apply(docIds[doc]) != null) {
+                ids.add(docIds[doc]);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Score every document the token matches: the best of its exact, prefix and
+     * typo matches, weighted by the field it matched in.
+     *
+     * @param best per-document scores, all zero on entry
+     * @param touched receives the documents given a score
+     * @return how many documents were given a score
+     */
+    private int scoreToken(String token, float[] best, int[] touched) {
+        int count = addMatches(postings.get(token), EXACT, best, touched, 0);
+
+        int from = Arrays.binarySearch(sortedTerms, token);
+        from = from >= 0 ? from + 1 : -from - 1;
+        for (int i = from, n = 0; i < sortedTerms.length && n < MAX_PREFIX_TERMS; i++, n++) {
+            String term = sortedTerms[i];
+            if (!term.startsWith(token)) {
+                break;
+            }
+            // Closer completions score higher
+            count = addMatches(postings.get(term), PREFIX * (0.5f + 0.5f * token.length() / term.length()),
+                    best, touched, count);
+        }
+
+        if (token.length() >= MIN_TYPO_LENGTH) {
+            for (String term : typoCandidates(token)) {
+                count = addMatches(postings.get(term), TYPO, best, touched, count);
+            }
+        }
+        return count;
+    }
+
+    private static int addMatches(Posting posting, float weight, float[] best, int[] touched, int count) {
+        if (posting == null) {
+            return count;
+        }
+        for (int i = 0; i < posting.docs.length; i++) {
+            int doc = posting.docs[i];
+            float score = weight * fieldWeight(posting.fields[i]);
+            if (best[doc] == 0) {
+                touched[count++] = doc;
+                best[doc] = score;
+            } else if (score > best[doc]) {
+                best[doc] = score;
+            }
+        }
+        return count;
+    }
+
+    private static float fieldWeight(byte fields) {
+        if ((fields & NAME) != 0) {
+            return 3.0f;
+        }
+        if ((fields & CATEGORY) != 0) {
+            return 2.0f;
+        }
+        return 1.0f;
+    }
+
+    /**
+     * Index terms within one edit of the token, other than the token itself.
+     */
+    private Set<String> typoCandidates(String token) {
+        Set<String> candidates = new HashSet<>();
+        // A term that shares a deletion with the token, or is one
+        List<String> variants = deletionsOf(token);
+        variants.add(token);
+        for (String variant : variants) {
+            if (!variant.equals(token) && postings.containsKey(variant)) {
+                candidates.add(variant);
+            }
+            String[] terms = deletions.get(variant);
+            if (terms != null) {
+                for (String term : terms) {
+                    if (!term.equals(token) && withinOneEdit(token, term)) {
+                        candidates.add(term);
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Whether two strings differ by at most one substitution, insertion, deletion
+     * or swap of adjacent characters.
+     */
+    static boolean withinOneEdit(String a, String b) {
+        int lengthDifference = a.length() - b.length();
+        if (Math.abs(lengthDifference) > 1) {
+            return false;
+        }
+        int i = 0;
+        int shorter = Math.min(a.length(), b.length());
+        while (i < shorter && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        if (i == shorter) {
+            return true;
+        }
+        if (lengthDifference == 0) {
+            // Substitution, or swap of adjacent characters
+            if (a.regionMatches(i + 1, b, i + 1, a.length() - i - 1)) {
+                return true;
+            }
+            return i + 1 < a.length() && a.charAt(i) == b.charAt(i + 1) && a.charAt(i + 1) == b.charAt(i)
+                    && a.regionMatches(i + 2, b, i + 2, a.length() - i - 2);
+        }
+        return lengthDifference > 0
+                ? a.regionMatches(i + 1, b, i, b.length() - i)
+                : b.regionMatches(i + 1, a, i, a.length() - i);
+    }
+
+    /**
+     * Fields an item's terms occur in, as term -> field bits.
+     */
+    private static Map<String, Integer> termsOf(MenuItem item) {
+        Map<String, Integer> terms = new LinkedHashMap<>();
+        addTerms(terms, item.getName(), NAME);
+        addTerms(terms, item.getCategory(), CATEGORY);
+        addTerms(terms, item.getDescription(), DESCRIPTION);
+        return terms;
+    }
+
+    private static void addTerms(Map<String, Integer> terms, String text, int field) {
+        for (String token : tokenize(text)) {
+            terms.merge(token, field, (a, b) -> a | b);
+        }
+    }
+
+    private static String normalizedName(MenuItem item) {
+        return String.join(" ", tokenize(item.getName()));
+    }
+
+    private static List<String> deletionsOf(String term) {
+        List<String> result = new ArrayList<>(term.length());
+        if (term.length() < MIN_TYPO_LENGTH - 1) {
+            return result;
+        }
+        for (int i = 0; i < term.length(); i++) {
+            result.add(term.substring(0, i) + term.substring(i + 1));
+        }
+        return result;
+    }
+
+    private static String[] sortTerms(Set<String> terms) {
+        String[] sorted = terms.toArray(new String[0]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Split text into lower-case, accent-free word tokens.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String normalized = COMBINING_MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        for (String token : NON_WORD.split(normalized.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,58 @@
+package com.bistro.service;
+
+import com.bistro.model.OrderEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-process publisher of order lifecycle events.
+ * <p>
+ * Listeners are called on the thread that committed the change, in the order they
+ * subscribed, so they must be quick: anything slow belongs on the listener's own
+ * thread. A listener that throws is logged and does not affect the others or the
+ * request that published the event.
+ * <p>
+ * Events only describe changes made through this JVM; other nodes and direct
+ * database edits are not seen, which is why consumers that keep totals reconcile
+ * them against the database from time to time.
+ */
+public class OrderEventBus {
+    private static final Logger logger = LoggerFactory.getLogger(OrderEventBus.class);
+
+    /**
+     * Receives order lifecycle events.
+     */
+    public interface Listener {
+        void onOrderEvent(OrderEvent event);
+    }
+
+    private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private OrderEventBus() {
+    }
+
+    public static void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public static void unsubscribe(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Deliver an event to every listener.
+     */
+    public static void publish(OrderEvent event) {
+        for (Listener listener : listeners) {
+            try {
+                listener.onOrderEvent(event);
+            } catch (RuntimeException e) {
+                logger.error("Order event listener failed on {} for order {}: {}",
+                        event.getType(), event.getOrderId(), e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.bistro.service;
+
+import com.bistro.model.OrderEvent;
+import com.bistro.util.AppConfig;
+import com.bistro.util.SseBroadcaster;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Pushes order lifecycle events to kitchen and admin screens as Server-Sent
+ * Events, so they can update in place instead of re-fetching every order.
+ * <p>
+ * Events are compact: the order's ID, user, status before and after, amount,
+ * order date and item count. Screens load full details of an order only when
+ * they need them. Events are handed off to a single thread for encoding and
+ * fan-out, so the request that changed the order does not wait for any screen.
+ * See {@link SseBroadcaster} for replay and slow-consumer handling.
+ */
+public class OrderEventStream {
+    private static final Logger logger = LoggerFactory.getLogger(OrderEventStream.class);
+
+    private static final boolean ENABLED = AppConfig.getBoolean("orders.stream.enabled", true);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final OrderEventBus.Listener listener = OrderEventStream::onOrderEvent;
+
+    private static SseBroadcaster broadcaster;
+    private static ExecutorService publisher;
+
+    private OrderEventStream() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Start listening for order events.
+     */
+    public static synchronized void start() {
+        if (!ENABLED || broadcaster != null) {
+            return;
+        }
+        broadcaster = new SseBroadcaster("order-stream",
+                AppConfig.getInt("orders.stream.replaySize", 500),
+                AppConfig.getInt("orders.stream.clientBufferEvents", 256),
+                AppConfig.getInt("orders.stream.maxClients", 1000),
+                AppConfig.getLong("orders.stream.heartbeatSeconds", 15) * 1000L,
+                AppConfig.getLong("orders.stream.timeoutMinutes", 30) * 60_000L);
+        publisher = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "order-stream-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        OrderEventBus.subscribe(listener);
+        logger.info("Order event stream started");
+    }
+
+    public static synchronized void shutdown() {
+        if (broadcaster != null) {
+            OrderEventBus.unsubscribe(listener);
+            publisher.shutdownNow();
+            broadcaster.shutdown();
+            broadcaster = null;
+            publisher = null;
+        }
+    }
+
+    /**
+     * Open an event stream for a kitchen or admin screen.
+     *
+     * @return false if the stream is disabled or has no room for another connection
+     */
+    public static boolean open(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        SseBroadcaster current = broadcaster;
+        return current != null && current.open(request, response);
+    }
+
+    public static Map<String, Object> getStats() {
+        SseBroadcaster current = broadcaster;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", ENABLED);
+        if (current != null) {
+            stats.putAll(current.getStats());
+        }
+        return stats;
+    }
+
+    private static void onOrderEvent(OrderEvent event) {
+        ExecutorService current = publisher;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.execute(() -> publish(event));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    private static void publish(OrderEvent event) {
+        SseBroadcaster current = broadcaster;
+        if (current == null) {
+            return;
+        }
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("orderId", event.getOrderId());
+        data.put("userId", event.getUserId());
+        data.put("status", event.getStatus());
+        data.put("previousStatus", event.getPreviousStatus());
+        data.put("totalAmount", event.getAmount() != null ? event.getAmount() : event.getPreviousAmount());
+        data.put("orderDate", event.getOrderDate() != null ? event.getOrderDate().getTime() : null);
+        if (event.getOrder() != null && event.getOrder().getOrderItems() != null) {
+            data.put("itemCount", event.getOrder().getOrderItems().size());
+        }
+        data.put("at", event.getOccurredAt());
+        try {
+            current.broadcast(eventName(event.getType()), objectMapper.writeValueAsString(data));
+        } catch (JsonProcessingException e) {
+            logger.error("Could not encode order event for order {}: {}", event.getOrderId(), e.getMessage());
+        }
+    }
+
+    private static String eventName(OrderEvent.Type type) {
+        switch (type) {
+            case PLACED:
+                return "order-created";
+            case STATUS_CHANGED:
+                return "order-status-changed";
+            case DELETED:
+                return "order-deleted";
+            default:
+                return "order-updated";
+        }
+    }
+}
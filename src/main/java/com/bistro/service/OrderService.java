@@ -1,6 +1,8 @@
 package com.bistro.service;
 
+import com.bistro.dao.OrderDAO;
 import com.bistro.model.Order;
+import com.bistro.model.OrderPage;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -37,6 +39,15 @@ public interface OrderService {
      */
     boolean cancelOrder(int id) throws Exception;
     
+    /**
+     * Permanently delete an order and its items.
+     *
+     * @param id the order ID
+     * @return true if the order was deleted, false if it did not exist
+     * @throws Exception if deletion fails
+     */
+    boolean deleteOrder(int id) throws Exception;
+    
     /**
      * Get an order by ID.
      *
@@ -100,4 +111,30 @@ public interface OrderService {
      * @throws Exception if retrieval fails
      */
     List<Order> getRecentOrders(int limit) throws Exception;
+    
+    /**
+     * Get a page of orders using keyset pagination, newest first.
+     *
+     * @param status the status to filter by, or null for all statuses
+     * @param startDate the start of the order date range, or null
+     * @param endDate the end of the order date range, or null
+     * @param cursor the next-cursor token of the previous page, or null for the first page
+     * @param limit the maximum number of orders to return
+     * @return the page of orders with the cursor for the next page
+     * @throws IllegalArgumentException if the cursor token is malformed
+     * @throws Exception if retrieval fails
+     */
+    OrderPage getOrdersPage(String status, Date startDate, Date endDate, String cursor, int limit) throws Exception;
+    
+    /**
+     * Stream orders with their items, newest first, without loading them all into memory.
+     *
+     * @param status the status to filter by, or null for all statuses
+     * @param startDate the start of the order date range, or null
+     * @param endDate the end of the order date range, or null
+     * @param handler the handler invoked for each order
+     * @return the number of orders streamed
+     * @throws Exception if retrieval fails or the handler fails
+     */
+    int streamOrders(String status, Date startDate, Date endDate, OrderDAO.OrderHandler handler) throws Exception;
 }
@@ -0,0 +1,360 @@
+package com.bistro.service;
+
+import com.bistro.dao.DashboardDAO;
+import com.bistro.dao.impl.DashboardDAOImpl;
+import com.bistro.model.OrderEvent;
+import com.bistro.util.AppConfig;
+import com.bistro.util.ReadRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live order statistics kept in memory and updated from {@link OrderEventBus}
+ * events, so dashboards can read them without querying the database.
+ * <p>
+ * It keeps the number of orders per status, revenue per day and the number of
+ * orders placed in each of the last 60 minutes. Counters are {@link LongAdder}s,
+ * which stripe updates across cells, and revenue is held in minor currency units,
+ * so applying an event and reading the figures take no locks. Revenue counts
+ * orders that are not cancelled; days are calendar days in the server's time zone.
+ * <p>
+ * Events only cover changes made through this node. The figures are therefore
+ * seeded from the database at startup and reconciled every
+ * {@code stats.live.reconcileSeconds}: each counter is moved by the difference
+ * between the database and what the counter held when the query started, so
+ * events applied while the query runs are kept. An event the query already saw
+ * is counted twice until the next reconciliation. Revenue of older days is only
+ * reloaded at startup; only today and yesterday are reconciled.
+ */
+public class OrderStatsEngine {
+    private static final Logger logger = LoggerFactory.getLogger(OrderStatsEngine.class);
+
+    private static final boolean ENABLED = AppConfig.getBoolean("stats.live.enabled", true);
+    private static final long RECONCILE_INTERVAL_MS = Math.max(10, AppConfig.getLong("stats.live.reconcileSeconds", 300)) * 1000L;
+    private static final int REVENUE_DAYS = Math.max(2, AppConfig.getInt("stats.live.revenueDays", 30));
+    private static final long RETRY_INTERVAL_MS = 30_000L;
+    private static final int RECONCILE_DAYS = 2;
+    private static final int MINUTES = 60;
+    private static final int QUARTER_HOUR_SECONDS = 900;
+    private static final String CANCELLED = "CANCELLED";
+
+    private static final ZoneId zone = ZoneId.systemDefault();
+    private static final DashboardDAO dashboardDAO = new DashboardDAOImpl();
+
+    private static final ConcurrentMap<String, LongAdder> ordersByStatus = new ConcurrentHashMap<>();
+    /** Epoch day -> revenue in minor units. */
+    private static final ConcurrentMap<Long, LongAdder> revenueByDay = new ConcurrentHashMap<>();
+    // Ring of per-minute placement counts; a slot is reset when its minute comes round again
+    private static final AtomicLongArray minuteStamps = new AtomicLongArray(MINUTES);
+    private static final AtomicLongArray minuteCounts = new AtomicLongArray(MINUTES);
+
+    private static final LongAdder eventsApplied = new LongAdder();
+    private static final LongAdder reconciliations = new LongAdder();
+    private static final LongAdder reconcileFailures = new LongAdder();
+    private static volatile long seededAt;
+    private static volatile long lastReconciledAt;
+    private static volatile long lastStatusDrift;
+    private static volatile long lastReconcileMillis;
+
+    private static final OrderEventBus.Listener listener = OrderStatsEngine::apply;
+    private static ScheduledExecutorService scheduler;
+
+    private OrderStatsEngine() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Subscribe to order events and schedule seeding and reconciliation. The seed
+     * runs in the background, so startup does not wait for the database.
+     */
+    public static synchronized void start() {
+        if (!ENABLED || scheduler != null) {
+            return;
+        }
+        OrderEventBus.subscribe(listener);
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "order-stats-reconcile");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.schedule(OrderStatsEngine::reconcileAndReschedule, 0, TimeUnit.MILLISECONDS);
+        logger.info("Live order statistics started (reconcile every {} s)", RECONCILE_INTERVAL_MS / 1000);
+    }
+
+    public static synchronized void shutdown() {
+        if (scheduler != null) {
+            OrderEventBus.unsubscribe(listener);
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Apply one order event: move the order from its old status to the new one,
+     * adjust its day's revenue and count a new order in the current minute.
+     */
+    static void apply(OrderEvent event) {
+        if (event.getPreviousStatus() != null) {
+            counter(ordersByStatus, event.getPreviousStatus()).decrement();
+        }
+        if (event.getStatus() != null) {
+            counter(ordersByStatus, event.getStatus()).increment();
+        }
+
+        long revenueDelta = revenueOf(event.getStatus(), event.getAmount())
+                - revenueOf(event.getPreviousStatus(), event.getPreviousAmount());
+        if (revenueDelta != 0) {
+            long orderedAt = event.getOrderDate() != null ? event.getOrderDate().getTime() : event.getOccurredAt();
+            long day = epochDay(orderedAt);
+            if (day > today() - REVENUE_DAYS) {
+                counter(revenueByDay, day).add(revenueDelta);
+            }
+        }
+
+        if (event.getType() == OrderEvent.Type.PLACED) {
+            addToMinute(event.getOccurredAt() / 60_000L, 1);
+        }
+        eventsApplied.increment();
+    }
+
+    /**
+     * The current figures. Reading them takes no locks and costs the same however
+     * many orders there are.
+     */
+    public static Map<String, Object> getSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("enabled", ENABLED);
+        snapshot.put("seeded", seededAt > 0);
+
+        Map<String, Long> statusCounts = new TreeMap<>();
+        long totalOrders = 0;
+        for (Map.Entry<String, LongAdder> entry : ordersByStatus.entrySet()) {
+            long count = entry.getValue().sum();
+            statusCounts.put(entry.getKey(), count);
+            totalOrders += count;
+        }
+        snapshot.put("orderStatusCounts", statusCounts);
+        snapshot.put("totalOrders", totalOrders);
+
+        long today = today();
+        Map<String, BigDecimal> dailyRevenue = new LinkedHashMap<>();
+        for (long day = today - REVENUE_DAYS + 1; day <= today; day++) {
+            LongAdder revenue = revenueByDay.get(day);
+            dailyRevenue.put(LocalDate.ofEpochDay(day).toString(), toAmount(revenue != null ? revenue.sum() : 0));
+        }
+        snapshot.put("revenueToday", dailyRevenue.get(LocalDate.ofEpochDay(today).toString()));
+        snapshot.put("revenueByDay", dailyRevenue);
+
+        // Oldest minute first; the last entry is the minute in progress
+        long currentMinute = System.currentTimeMillis() / 60_000L;
+        List<Long> perMinute = new ArrayList<>(MINUTES);
+        long lastHour = 0;
+        for (long minute = currentMinute - MINUTES + 1; minute <= currentMinute; minute++) {
+            long count = countForMinute(minute);
+            perMinute.add(count);
+            lastHour += count;
+        }
+        snapshot.put("ordersPerMinute", perMinute);
+        snapshot.put("ordersLastMinute", countForMinute(currentMinute - 1));
+        snapshot.put("ordersLastHour", lastHour);
+
+        snapshot.put("eventsApplied", eventsApplied.sum());
+        snapshot.put("reconciliations", reconciliations.sum());
+        snapshot.put("reconcileFailures", reconcileFailures.sum());
+        snapshot.put("lastStatusDrift", lastStatusDrift);
+        snapshot.put("lastReconcileMillis", lastReconcileMillis);
+        snapshot.put("seededAt", seededAt > 0 ? new Date(seededAt) : null);
+        snapshot.put("lastReconciledAt", lastReconciledAt > 0 ? new Date(lastReconciledAt) : null);
+        return snapshot;
+    }
+
+    private static void reconcileAndReschedule() {
+        long nextDelay = RECONCILE_INTERVAL_MS;
+        try {
+            reconcile();
+        } catch (Exception e) {
+            reconcileFailures.increment();
+            logger.warn("Live order statistics reconciliation failed: {}", e.getMessage());
+            if (seededAt == 0) {
+                nextDelay = RETRY_INTERVAL_MS;
+            }
+        }
+        ScheduledExecutorService current = scheduler;
+        if (current != null && !current.isShutdown()) {
+            current.schedule(OrderStatsEngine::reconcileAndReschedule, nextDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Bring the counters in line with the database. The first successful run seeds
+     * the whole revenue window; later runs only reload the most recent days.
+     */
+    static void reconcile() throws Exception {
+        long start = System.currentTimeMillis();
+        boolean seeding = seededAt == 0;
+        long today = today();
+        long fromDay = today - (seeding ? REVENUE_DAYS : RECONCILE_DAYS) + 1;
+        long currentMinute = start / 60_000L;
+        long fromMinute = currentMinute - MINUTES + 1;
+
+        // What the counters hold before the queries; anything applied after this stays
+        Map<String, Long> statusBefore = sums(ordersByStatus);
+        Map<Long, Long> revenueBefore = new HashMap<>();
+        for (long day = fromDay; day <= today; day++) {
+            LongAdder revenue = revenueByDay.get(day);
+            revenueBefore.put(day, revenue != null ? revenue.sum() : 0);
+        }
+        Map<Long, Long> minutesBefore = new HashMap<>();
+        for (long minute = fromMinute; minute < currentMinute; minute++) {
+            minutesBefore.put(minute, countForMinute(minute));
+        }
+
+        Map<String, Integer> dbStatus;
+        List<DashboardDAO.Interval> dbDays;
+        List<DashboardDAO.Interval> dbMinutes;
+        // Replicas may lag; the figures are compared against counters that already include recent writes
+        ReadRouter.setPinnedToPrimary(true);
+        try {
+            dbStatus = dashboardDAO.loadStats().getOrderStatusCounts();
+            Date dayStart = Date.from(LocalDate.ofEpochDay(fromDay).atStartOfDay(zone).toInstant());
+            dbDays = dashboardDAO.loadIntervals(dayStart, QUARTER_HOUR_SECONDS);
+            dbMinutes = dashboardDAO.loadIntervals(new Date(fromMinute * 60_000L), 60);
+        } finally {
+            ReadRouter.setPinnedToPrimary(false);
+        }
+
+        long drift = 0;
+        Set<String> statuses = new HashSet<>(statusBefore.keySet());
+        statuses.addAll(dbStatus.keySet());
+        for (String status : statuses) {
+            long delta = dbStatus.getOrDefault(status, 0) - statusBefore.getOrDefault(status, 0L);
+            if (delta != 0) {
+                counter(ordersByStatus, status).add(delta);
+                drift += Math.abs(delta);
+            }
+        }
+
+        Map<Long, Long> dbRevenue = new HashMap<>();
+        for (DashboardDAO.Interval interval : dbDays) {
+            dbRevenue.merge(epochDay(interval.getStart()), toMinorUnits(interval.getRevenue()), Long::sum);
+        }
+        for (long day = fromDay; day <= today; day++) {
+            long delta = dbRevenue.getOrDefault(day, 0L) - revenueBefore.get(day);
+            if (delta != 0) {
+                counter(revenueByDay, day).add(delta);
+            }
+        }
+        revenueByDay.keySet().removeIf(day -> day <= today - REVENUE_DAYS);
+
+        // The minute in progress is left alone; its count is still changing
+        Map<Long, Long> dbPerMinute = new HashMap<>();
+        for (DashboardDAO.Interval interval : dbMinutes) {
+            dbPerMinute.put(interval.getStart() / 60_000L, (long) interval.getOrderCount());
+        }
+        for (long minute = fromMinute; minute < currentMinute; minute++) {
+            long delta = dbPerMinute.getOrDefault(minute, 0L) - minutesBefore.get(minute);
+            if (delta != 0) {
+                addToMinute(minute, delta);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        lastStatusDrift = drift;
+        lastReconcileMillis = now - start;
+        lastReconciledAt = now;
+        reconciliations.increment();
+        if (seeding) {
+            seededAt = now;
+            logger.info("Live order statistics seeded in {} ms", now - start);
+        } else if (drift != 0) {
+            logger.info("Live order statistics reconciled; status counts were off by {}", drift);
+        }
+    }
+
+    private static void addToMinute(long minute, long delta) {
+        int slot = (int) (minute % MINUTES);
+        if (minuteStamps.get(slot) != minute) {
+            if (minute <= System.currentTimeMillis() / 60_000L - MINUTES) {
+                return;
+            }
+            // Rolling a slot over happens once a minute, so a lock costs nothing here
+            synchronized (minuteCounts) {
+                long stamp = minuteStamps.get(slot);
+                if (stamp > minute) {
+                    return;
+                }
+                if (stamp != minute) {
+                    minuteCounts.set(slot, 0);
+                    minuteStamps.set(slot, minute);
+                }
+            }
+        }
+        minuteCounts.addAndGet(slot, delta);
+    }
+
+    private static long countForMinute(long minute) {
+        int slot = (int) (minute % MINUTES);
+        return minuteStamps.get(slot) == minute ? minuteCounts.get(slot) : 0;
+    }
+
+    private static <K> LongAdder counter(ConcurrentMap<K, LongAdder> counters, K key) {
+        LongAdder counter = counters.get(key);
+        return counter != null ? counter : counters.computeIfAbsent(key, k -> new LongAdder());
+    }
+
+    private static <K> Map<K, Long> sums(Map<K, LongAdder> counters) {
+        Map<K, Long> sums = new HashMap<>();
+        for (Map.Entry<K, LongAdder> entry : counters.entrySet()) {
+            sums.put(entry.getKey(), entry.getValue().sum());
+        }
+        return sums;
+    }
+
+    private static long revenueOf(String status, BigDecimal amount) {
+        if (status == null || amount == null || CANCELLED.equals(status)) {
+            return 0;
+        }
+        return toMinorUnits(amount);
+    }
+
+    private static long toMinorUnits(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    private static BigDecimal toAmount(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, 2);
+    }
+
+    private static long epochDay(long epochMillis) {
+        return Instant.ofEpochMilli(epochMillis).atZone(zone).toLocalDate().toEpochDay();
+    }
+
+    private static long today() {
+        return LocalDate.now(zone).toEpochDay();
+    }
+}
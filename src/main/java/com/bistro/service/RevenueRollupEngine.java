@@ -0,0 +1,231 @@
+package com.bistro.service;
+
+import com.bistro.dao.RollupDAO;
+import com.bistro.dao.impl.RollupDAOImpl;
+import com.bistro.model.OrderEvent;
+import com.bistro.util.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the hourly and daily order rollup tables up to date, so revenue charts
+ * read a few hundred pre-aggregated rows instead of every order in the range.
+ * <p>
+ * An order event marks the hour the order was placed in as out of date. Every
+ * {@code rollups.flushSeconds} the marked hours are recomputed from the orders
+ * placed in them, and their days from the hours. A busy hour is therefore
+ * rebuilt once per flush however many orders it received, and because a rebuild
+ * replaces the bucket instead of adding to it, an event that is missed or seen
+ * twice never leaves a wrong figure behind for good.
+ * <p>
+ * A catch-up job runs at startup and every {@code rollups.catchUpMinutes}. The
+ * first time it backfills every hour since the oldest order, a chunk of days
+ * per run; after that it rebuilds the hours since it last ran, which picks up
+ * orders placed through other nodes. Buckets are hours and days in the
+ * server's time zone.
+ */
+public class RevenueRollupEngine {
+    private static final Logger logger = LoggerFactory.getLogger(RevenueRollupEngine.class);
+
+    private static final boolean ENABLED = AppConfig.getBoolean("rollups.enabled", true);
+    private static final long FLUSH_INTERVAL_MS = Math.max(1, AppConfig.getLong("rollups.flushSeconds", 5)) * 1000L;
+    private static final long CATCH_UP_INTERVAL_MS = Math.max(1, AppConfig.getLong("rollups.catchUpMinutes", 15)) * 60_000L;
+    private static final long CATCH_UP_OVERLAP_MS = Math.max(1, AppConfig.getLong("rollups.catchUpOverlapHours", 2)) * 3_600_000L;
+    private static final int BACKFILL_DAYS_PER_RUN = Math.max(1, AppConfig.getInt("rollups.backfillDaysPerRun", 31));
+    private static final long HOUR_MS = 3_600_000L;
+    private static final long RETRY_INTERVAL_MS = 30_000L;
+    private static final long BACKFILL_PAUSE_MS = 1_000L;
+
+    private static final ZoneId zone = ZoneId.systemDefault();
+    private static final RollupDAO rollupDAO = new RollupDAOImpl();
+
+    /** Start times, in epoch milliseconds, of hours waiting to be rebuilt. */
+    private static final ConcurrentSkipListSet<Long> dirtyHours = new ConcurrentSkipListSet<>();
+
+    private static final LongAdder hoursRebuilt = new LongAdder();
+    private static final LongAdder daysRebuilt = new LongAdder();
+    private static final LongAdder failures = new LongAdder();
+    private static volatile Date rolledUpThrough;
+    private static volatile long lastFlushMillis;
+
+    private static final OrderEventBus.Listener listener = RevenueRollupEngine::onOrderEvent;
+    private static ScheduledExecutorService worker;
+
+    private RevenueRollupEngine() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Subscribe to order events and schedule the flush and catch-up jobs, which
+     * share one thread so they never rebuild the same bucket at once.
+     */
+    public static synchronized void start() {
+        if (!ENABLED || worker != null) {
+            return;
+        }
+        worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "revenue-rollups");
+            thread.setDaemon(true);
+            return thread;
+        });
+        OrderEventBus.subscribe(listener);
+        worker.scheduleWithFixedDelay(RevenueRollupEngine::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        worker.schedule(RevenueRollupEngine::catchUpAndReschedule, 0, TimeUnit.MILLISECONDS);
+        logger.info("Revenue rollups started (flush every {} s)", FLUSH_INTERVAL_MS / 1000);
+    }
+
+    public static synchronized void shutdown() {
+        if (worker != null) {
+            OrderEventBus.unsubscribe(listener);
+            worker.shutdownNow();
+            worker = null;
+        }
+    }
+
+    /**
+     * Queue every hour in a range for rebuilding, for example after orders were
+     * changed directly in the database.
+     *
+     * @return the number of hours queued
+     */
+    public static int rebuild(Date from, Date to) {
+        int queued = 0;
+        for (long hour = hourStart(from.getTime()); hour < to.getTime(); hour = nextHour(hour)) {
+            dirtyHours.add(hour);
+            queued++;
+        }
+        return queued;
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", ENABLED);
+        stats.put("pendingHours", dirtyHours.size());
+        stats.put("hoursRebuilt", hoursRebuilt.sum());
+        stats.put("daysRebuilt", daysRebuilt.sum());
+        stats.put("failures", failures.sum());
+        stats.put("lastFlushMillis", lastFlushMillis);
+        stats.put("rolledUpThrough", rolledUpThrough);
+        return stats;
+    }
+
+    private static void onOrderEvent(OrderEvent event) {
+        long placedAt = event.getOrderDate() != null ? event.getOrderDate().getTime() : event.getOccurredAt();
+        dirtyHours.add(hourStart(placedAt));
+    }
+
+    /**
+     * Rebuild the hours marked out of date, then their days.
+     */
+    static void flush() {
+        if (dirtyHours.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<Long> hours = new ArrayList<>();
+        Long hour;
+        while ((hour = dirtyHours.pollFirst()) != null) {
+            hours.add(hour);
+        }
+        try {
+            rebuildHours(hours);
+        } catch (Exception e) {
+            // Try again on the next flush
+            dirtyHours.addAll(hours);
+            failures.increment();
+            logger.warn("Could not rebuild {} order rollup hours: {}", hours.size(), e.getMessage());
+        }
+        lastFlushMillis = System.currentTimeMillis() - start;
+    }
+
+    private static void rebuildHours(List<Long> hours) throws Exception {
+        TreeSet<LocalDate> days = new TreeSet<>();
+        for (long hour : hours) {
+            rollupDAO.rebuildHour(new Date(hour));
+            hoursRebuilt.increment();
+            days.add(Instant.ofEpochMilli(hour).atZone(zone).toLocalDate());
+        }
+        for (LocalDate day : days) {
+            rollupDAO.rebuildDay(Date.from(day.atStartOfDay(zone).toInstant()),
+                    Date.from(day.plusDays(1).atStartOfDay(zone).toInstant()));
+            daysRebuilt.increment();
+        }
+    }
+
+    private static void catchUpAndReschedule() {
+        long nextDelay = CATCH_UP_INTERVAL_MS;
+        try {
+            if (!catchUp()) {
+                // Backfill continues in the next chunk after a pause
+                nextDelay = BACKFILL_PAUSE_MS;
+            }
+        } catch (Exception e) {
+            failures.increment();
+            logger.warn("Order rollup catch-up failed: {}", e.getMessage());
+            nextDelay = Math.min(CATCH_UP_INTERVAL_MS, RETRY_INTERVAL_MS);
+        }
+        ScheduledExecutorService current = worker;
+        if (current != null && !current.isShutdown()) {
+            current.schedule(RevenueRollupEngine::catchUpAndReschedule, nextDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Rebuild the hours since the last catch-up, or the next chunk of the backfill.
+     *
+     * @return true once the rollups have caught up with the current hour
+     */
+    static boolean catchUp() throws Exception {
+        long currentHour = hourStart(System.currentTimeMillis());
+        Date through = rollupDAO.getRolledUpThrough();
+        long from;
+        if (through != null) {
+            from = hourStart(through.getTime() - CATCH_UP_OVERLAP_MS);
+        } else {
+            Date first = rollupDAO.findFirstOrderDate();
+            from = first != null ? hourStart(first.getTime()) : currentHour;
+            logger.info("Backfilling order rollups from {}", new Date(from));
+        }
+
+        long until = Math.min(currentHour + HOUR_MS,
+                Instant.ofEpochMilli(from).atZone(zone).plusDays(BACKFILL_DAYS_PER_RUN).toInstant().toEpochMilli());
+        List<Long> hours = new ArrayList<>();
+        for (long hour = from; hour < until; hour = nextHour(hour)) {
+            hours.add(hour);
+        }
+        rebuildHours(hours);
+
+        // The current hour is still filling up, so the next run starts no later than it
+        Date rolledUp = new Date(Math.min(until, currentHour));
+        rollupDAO.setRolledUpThrough(rolledUp);
+        rolledUpThrough = rolledUp;
+        return until > currentHour;
+    }
+
+    private static long hourStart(long millis) {
+        return Instant.ofEpochMilli(millis).atZone(zone).truncatedTo(ChronoUnit.HOURS).toInstant().toEpochMilli();
+    }
+
+    private static long nextHour(long hourStart) {
+        return hourStart(hourStart + HOUR_MS);
+    }
+}
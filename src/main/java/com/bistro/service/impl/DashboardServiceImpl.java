@@ -0,0 +1,181 @@
+package com.bistro.service.impl;
+
+import com.bistro.dao.DashboardDAO;
+import com.bistro.dao.RollupDAO;
+import com.bistro.dao.impl.DashboardDAOImpl;
+import com.bistro.dao.impl.RollupDAOImpl;
+import com.bistro.model.DashboardStats;
+import com.bistro.model.OrderEvent;
+import com.bistro.model.RevenueRollup;
+import com.bistro.service.DashboardService;
+import com.bistro.service.OrderEventBus;
+import com.bistro.util.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.DayOfWeek;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Implementation of the DashboardService interface.
+ * <p>
+ * The figures are cached for a short time and shared by all instances, so a
+ * dashboard that several admins keep refreshing costs one aggregate query per
+ * TTL. When the cache has expired only one request reloads it; the others wait
+ * for that result instead of running the same query.
+ * <p>
+ * Once {@link #start()} has subscribed it to {@link OrderEventBus}, an order whose
+ * status, amount or existence changes on this node drops the cached figures, so
+ * the dashboard shows the change on its next refresh. New orders are not counted
+ * until the cache expires; invalidating on every order would make the cache
+ * useless while orders are coming in.
+ */
+public class DashboardServiceImpl implements DashboardService {
+    private static final Logger logger = LoggerFactory.getLogger(DashboardServiceImpl.class);
+
+    private static final long CACHE_TTL_MS = AppConfig.getLong("admin.dashboard.cacheTtlSeconds", 10) * 1000L;
+    private static final int MAX_POINTS = AppConfig.getInt("rollups.maxPoints", 1000);
+    private static final int TOP_ITEMS = 10;
+
+    private static final ZoneId zone = ZoneId.systemDefault();
+
+    private static final Object loadLock = new Object();
+    private static volatile DashboardStats cached;
+
+    private static final OrderEventBus.Listener listener = DashboardServiceImpl::onOrderEvent;
+
+    private final DashboardDAO dashboardDAO;
+    private final RollupDAO rollupDAO;
+
+    public DashboardServiceImpl() {
+        this.dashboardDAO = new DashboardDAOImpl();
+        this.rollupDAO = new RollupDAOImpl();
+    }
+
+    /**
+     * Drop the cached figures whenever an order changes on this node.
+     */
+    public static void start() {
+        OrderEventBus.subscribe(listener);
+    }
+
+    public static void shutdown() {
+        OrderEventBus.unsubscribe(listener);
+    }
+
+    @Override
+    public DashboardStats getStats() throws Exception {
+        DashboardStats stats = cached;
+        if (isFresh(stats)) {
+            return stats;
+        }
+        synchronized (loadLock) {
+            stats = cached;
+            if (isFresh(stats)) {
+                return stats;
+            }
+            long start = System.nanoTime();
+            stats = dashboardDAO.loadStats();
+            logger.debug("Loaded dashboard stats in {} ms", (System.nanoTime() - start) / 1_000_000);
+            if (CACHE_TTL_MS > 0) {
+                cached = stats;
+            }
+            return stats;
+        }
+    }
+
+    @Override
+    public Map<String, Object> getTimeseries(Date from, Date to, String bucket) throws Exception {
+        String bucketName = bucket == null || bucket.isEmpty() ? "day" : bucket.toLowerCase(Locale.ROOT);
+        ChronoUnit unit = bucketUnit(bucketName);
+        ZonedDateTime first = bucketStart(from.toInstant().atZone(zone), unit);
+        ZonedDateTime end = to.toInstant().atZone(zone);
+        if (!first.isBefore(end)) {
+            throw new IllegalArgumentException("'from' must be before 'to'");
+        }
+
+        // Every bucket in the range, so the chart gets zeros where there were no orders
+        TreeMap<Long, RevenueRollup> points = new TreeMap<>();
+        for (ZonedDateTime start = first; start.isBefore(end); start = start.plus(1, unit)) {
+            if (points.size() == MAX_POINTS) {
+                throw new IllegalArgumentException("Range has more than " + MAX_POINTS + " buckets; use a larger bucket");
+            }
+            points.put(start.toInstant().toEpochMilli(), RevenueRollup.empty(Date.from(start.toInstant())));
+        }
+
+        // Weeks and months are summed from days; a day or hour row falls in the bucket at or before it
+        String granularity = unit == ChronoUnit.HOURS ? RollupDAO.HOUR : RollupDAO.DAY;
+        Date rangeStart = Date.from(first.toInstant());
+        Date rangeEnd = to;
+        RevenueRollup totals = RevenueRollup.empty(rangeStart);
+        for (RevenueRollup row : rollupDAO.findSeries(granularity, rangeStart, rangeEnd)) {
+            Map.Entry<Long, RevenueRollup> point = points.floorEntry(row.getBucketStart().getTime());
+            if (point != null) {
+                point.getValue().add(row);
+                totals.add(row);
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("bucket", bucketName);
+        result.put("from", rangeStart);
+        result.put("to", rangeEnd);
+        result.put("timeZone", zone.getId());
+        result.put("points", new ArrayList<>(points.values()));
+        result.put("totals", totals);
+        result.put("topItems", rollupDAO.findTopItems(granularity, rangeStart, rangeEnd, TOP_ITEMS));
+        return result;
+    }
+
+    @Override
+    public void invalidate() {
+        cached = null;
+    }
+
+    private static void onOrderEvent(OrderEvent event) {
+        if (event.getType() != OrderEvent.Type.PLACED) {
+            cached = null;
+        }
+    }
+
+    private static boolean isFresh(DashboardStats stats) {
+        return stats != null && System.currentTimeMillis() - stats.getComputedAt().getTime() < CACHE_TTL_MS;
+    }
+
+    private static ChronoUnit bucketUnit(String bucket) {
+        switch (bucket) {
+            case "hour":
+                return ChronoUnit.HOURS;
+            case "day":
+                return ChronoUnit.DAYS;
+            case "week":
+                return ChronoUnit.WEEKS;
+            case "month":
+                return ChronoUnit.MONTHS;
+            default:
+                throw new IllegalArgumentException("Unknown bucket '" + bucket + "'; use hour, day, week or month");
+        }
+    }
+
+    private static ZonedDateTime bucketStart(ZonedDateTime time, ChronoUnit unit) {
+        switch (unit) {
+            case HOURS:
+                return time.truncatedTo(ChronoUnit.HOURS);
+            case WEEKS:
+                return time.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay(zone);
+            case MONTHS:
+                return time.toLocalDate().withDayOfMonth(1).atStartOfDay(zone);
+            default:
+                return time.toLocalDate().atStartOfDay(zone);
+        }
+    }
+}
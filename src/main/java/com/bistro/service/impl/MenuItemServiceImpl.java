@@ -3,18 +3,50 @@ package com.bistro.service.impl;
 import com.bistro.dao.MenuItemDAO;
 import com.bistro.dao.impl.MenuItemDAOImpl;
 import com.bistro.model.MenuItem;
+import com.bistro.service.MenuCatalog;
 import com.bistro.service.MenuItemService;
+import com.bistro.util.AppConfig;
+import com.bistro.util.ReadRouter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongFunction;
 
 /**
  * Implementation of the MenuItemService interface.
+ * <p>
+ * Menu reads are answered from a shared {@link MenuCatalog} snapshot instead of the
+ * database. Writes go to the database first and then swap in a new snapshot with
+ * the change applied, so this node sees its own writes immediately. The snapshot is
+ * also reloaded in the background once it is older than {@code menu.cache.ttlSeconds},
+ * which picks up changes made on other nodes or directly in the database.
  */
 public class MenuItemServiceImpl implements MenuItemService {
     private static final Logger logger = LoggerFactory.getLogger(MenuItemServiceImpl.class);
+    
+    private static final boolean CACHE_ENABLED = AppConfig.getBoolean("menu.cache.enabled", true);
+    private static final long CACHE_TTL_MS = AppConfig.getLong("menu.cache.ttlSeconds", 300) * 1000L;
+    
+    // Shared by every service instance; controllers each create their own
+    private static final AtomicReference<MenuCatalog> catalog = new AtomicReference<>();
+    private static final AtomicLong versions = new AtomicLong();
+    private static final AtomicBoolean refreshing = new AtomicBoolean();
+    // Guards installing a snapshot; reads never take it
+    private static final Object swapLock = new Object();
+    private static long writeCount;
+    private static final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "menu-catalog-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
     private final MenuItemDAO menuItemDAO;
     
     public MenuItemServiceImpl() {
@@ -24,7 +56,9 @@ public class MenuItemServiceImpl implements MenuItemService {
     @Override
     public MenuItem addMenuItem(MenuItem menuItem) throws Exception {
         logger.info("Adding new menu item: {}", menuItem.getName());
-        return menuItemDAO.save(menuItem);
+        MenuItem saved = menuItemDAO.save(menuItem);
+        applyWrite(version -> catalog.get().withItem(saved, version));
+        return saved;
     }
     
     @Override
@@ -38,7 +72,9 @@ public class MenuItemServiceImpl implements MenuItemService {
         }
         
         logger.info("Updating menu item: {}", menuItem.getName());
-        return menuItemDAO.update(menuItem);
+        MenuItem updated = menuItemDAO.update(menuItem);
+        applyWrite(version -> catalog.get().withItem(updated, version));
+        return updated;
     }
     
     @Override
@@ -52,51 +88,100 @@ public class MenuItemServiceImpl implements MenuItemService {
         }
         
         logger.info("Deleting menu item with ID: {}", id);
-        return menuItemDAO.delete(id);
+        boolean deleted = menuItemDAO.delete(id);
+        if (deleted) {
+            applyWrite(version -> catalog.get().withoutItem(id, version));
+        }
+        return deleted;
     }
     
     @Override
     public Optional<MenuItem> getMenuItemById(int id) throws Exception {
         logger.debug("Getting menu item by ID: {}", id);
+        if (CACHE_ENABLED) {
+            return Optional.ofNullable(getCatalog().getById(id));
+        }
         return menuItemDAO.findById(id);
     }
     
     @Override
     public List<MenuItem> getAllMenuItems() throws Exception {
         logger.debug("Getting all menu items");
+        if (CACHE_ENABLED) {
+            return getCatalog().getAll();
+        }
         return menuItemDAO.findAll();
     }
     
     @Override
     public List<MenuItem> getMenuItemsByCategory(String category) throws Exception {
         logger.debug("Getting menu items by category: {}", category);
+        if (CACHE_ENABLED) {
+            return getCatalog().getByCategory(category);
+        }
         return menuItemDAO.findByCategory(category);
     }
     
     @Override
     public List<MenuItem> getFeaturedMenuItems() throws Exception {
         logger.debug("Getting featured menu items");
+        if (CACHE_ENABLED) {
+            return getCatalog().getFeatured();
+        }
         return menuItemDAO.findFeatured();
     }
     
     @Override
     public List<MenuItem> getAvailableMenuItems() throws Exception {
         logger.debug("Getting available menu items");
+        if (CACHE_ENABLED) {
+            return getCatalog().getAvailable();
+        }
         return menuItemDAO.findAvailable();
     }
     
     @Override
     public List<MenuItem> searchMenuItems(String query) throws Exception {
         logger.debug("Searching menu items with query: {}", query);
+        if (CACHE_ENABLED) {
+            return getCatalog().search(query);
+        }
         return menuItemDAO.search(query);
     }
     
+    @Override
+    public List<MenuItem> searchMenuItems(String query, int limit) throws Exception {
+        logger.debug("Searching menu items with query: {}, limit: {}", query, limit);
+        if (CACHE_ENABLED) {
+            return getCatalog().search(query, limit);
+        }
+        List<MenuItem> items = menuItemDAO.search(query);
+        return items.size() > limit ? items.subList(0, limit) : items;
+    }
+    
     @Override
     public List<String> getAllCategories() throws Exception {
         logger.debug("Getting all menu categories");
+        if (CACHE_ENABLED) {
+            return getCatalog().getCategories();
+        }
         return menuItemDAO.getAllCategories();
     }
     
+    @Override
+    public MenuCatalog getMenuCatalog() throws Exception {
+        if (CACHE_ENABLED) {
+            return getCatalog();
+        }
+        long now = System.currentTimeMillis();
+        return new MenuCatalog(menuItemDAO.findAll(), 0, now, now);
+    }
+    
+    @Override
+    public boolean isMenuCatalogCached() {
+        return CACHE_ENABLED;
+    }
+    
     @Override
     public MenuItem toggleAvailability(int id) throws Exception {
         // Get the menu item
@@ -116,7 +201,9 @@ public class MenuItemServiceImpl implements MenuItemService {
         logger.info("Toggling availability for menu item {}: {}", menuItem.getName(), newAvailability);
         
         // Update the menu item
-        return menuItemDAO.update(menuItem);
+        MenuItem updated = menuItemDAO.update(menuItem);
+        applyWrite(version -> catalog.get().withItem(updated, version));
+        return updated;
     }
     
     @Override
@@ -138,6 +225,104 @@ public class MenuItemServiceImpl implements MenuItemService {
         logger.info("Toggling featured status for menu item {}: {}", menuItem.getName(), newFeaturedStatus);
         
         // Update the menu item
-        return menuItemDAO.update(menuItem);
+        MenuItem updated = menuItemDAO.update(menuItem);
+        applyWrite(version -> catalog.get().withItem(updated, version));
+        return updated;
+    }
+    
+    /**
+     * Get the current menu snapshot, loading it on first use. A snapshot older than
+     * the TTL is still returned while a fresh one is loaded in the background.
+     *
+     * @return the current snapshot
+     * @throws Exception if the menu has never been loaded and cannot be read now
+     */
+    private MenuCatalog getCatalog() throws Exception {
+        MenuCatalog current = catalog.get();
+        if (current == null) {
+            synchronized (catalog) {
+                current = catalog.get();
+                if (current == null) {
+                    current = loadCatalog(3);
+                }
+            }
+        } else if (System.currentTimeMillis() - current.getLoadedAt() > CACHE_TTL_MS
+                && refreshing.compareAndSet(false, true)) {
+            refresher.execute(this::refreshCatalog);
+        }
+        return current;
+    }
+    
+    /**
+     * Background reload. Reads from the primary so a lagging replica cannot bring
+     * back data older than our own writes.
+     */
+    private void refreshCatalog() {
+        ReadRouter.setPinnedToPrimary(true);
+        try {
+            loadCatalog(1);
+        } catch (Exception e) {
+            logger.warn("Menu catalog refresh failed, keeping version {}: {}",
+                    catalog.get().getVersion(), e.getMessage());
+        } finally {
+            ReadRouter.setPinnedToPrimary(false);
+            refreshing.set(false);
+        }
+    }
+    
+    /**
+     * Read the whole menu and install it as a new snapshot. A load that overlapped a
+     * write may have missed it, so it is discarded and retried rather than installed.
+     *
+     * @param attempts how many times to try before giving up on an overlapping write
+     * @return the installed snapshot, or the current one if every attempt overlapped a write
+     */
+    private MenuCatalog loadCatalog(int attempts) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            long writesBefore;
+            synchronized (swapLock) {
+                writesBefore = writeCount;
+            }
+            
+            List<MenuItem> items = menuItemDAO.findAll();
+            
+            synchronized (swapLock) {
+                MenuCatalog current = catalog.get();
+                if (writeCount == writesBefore || (current == null && attempt >= attempts)) {
+                    long now = System.currentTimeMillis();
+                    MenuCatalog loaded = new MenuCatalog(items, versions.incrementAndGet(), now, now);
+                    if (current != null) {
+                        // Keep the version, and with it any cached responses, if nothing changed
+                        loaded = current.reloadedAs(loaded);
+                    }
+                    catalog.set(loaded);
+                    logger.info("Menu catalog loaded: version {}, {} items", loaded.getVersion(), items.size());
+                    return loaded;
+                }
+                if (attempt >= attempts) {
+                    return current;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Swap in a new snapshot with a write applied. Does nothing when no snapshot
+     * has been loaded yet, since the next load will read the change.
+     *
+     * @param change builds the new snapshot from the current one, given the new version
+     */
+    private void applyWrite(LongFunction<MenuCatalog> change) {
+        if (!CACHE_ENABLED) {
+            return;
+        }
+        synchronized (swapLock) {
+            writeCount++;
+            if (catalog.get() != null) {
+                MenuCatalog updated = change.apply(versions.incrementAndGet());
+                catalog.set(updated);
+                logger.debug("Menu catalog updated to version {}", updated.getVersion());
+            }
+        }
     }
 }
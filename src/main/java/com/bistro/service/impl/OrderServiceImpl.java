@@ -2,7 +2,11 @@ package com.bistro.service.impl;
 
 import com.bistro.dao.OrderDAO;
 import com.bistro.dao.impl.OrderDAOImpl;
+import com.bistro.model.CheckoutTicket;
 import com.bistro.model.Order;
+import com.bistro.model.OrderEvent;
+import com.bistro.model.OrderPage;
+import com.bistro.service.OrderEventBus;
 import com.bistro.service.OrderService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -82,6 +86,7 @@ public class OrderServiceImpl implements OrderService {
         Order savedOrder = orderDAO.save(order);
         logger.info("Order saved with ID: {}, totalAmount: {}", savedOrder.getId(), savedOrder.getTotalAmount());
         
+        OrderEventBus.publish(OrderEvent.placed(savedOrder));
         return savedOrder;
     }
     
@@ -172,7 +177,9 @@ public class OrderServiceImpl implements OrderService {
         logger.info("Updating order with ID: {} for user ID: {}, final totalAmount: {}", 
                    order.getId(), order.getUserId(), order.getTotalAmount());
         
-        return orderDAO.update(order);
+        Order updatedOrder = orderDAO.update(order);
+        OrderEventBus.publish(OrderEvent.changed(OrderEvent.Type.UPDATED, existingOrder, updatedOrder));
+        return updatedOrder;
     }
     
     @Override
@@ -203,7 +210,30 @@ public class OrderServiceImpl implements OrderService {
         logger.info("Cancelling order with ID: {}", id);
         
         // Update order status to CANCELLED
-        return orderDAO.updateStatus(id, "CANCELLED");
+        String previousStatus = order.getStatus();
+        boolean cancelled = orderDAO.updateStatus(id, "CANCELLED");
+        if (cancelled) {
+            order.setStatus("CANCELLED");
+            OrderEventBus.publish(OrderEvent.statusChanged(order, previousStatus));
+        }
+        return cancelled;
+    }
+    
+    @Override
+    public boolean deleteOrder(int id) throws Exception {
+        Optional<Order> orderOpt = orderDAO.findById(id);
+        
+        if (orderOpt.isEmpty()) {
+            logger.warn("Delete failed: Order with ID {} not found", id);
+            return false;
+        }
+        
+        logger.info("Permanently deleting order with ID: {}", id);
+        boolean deleted = orderDAO.delete(id);
+        if (deleted) {
+            OrderEventBus.publish(OrderEvent.deleted(orderOpt.get()));
+        }
+        return deleted;
     }
     
     @Override
@@ -314,6 +344,7 @@ public class OrderServiceImpl implements OrderService {
                     logger.info("Total amount changed from {} to {} for order ID: {} - likely a manual update, preserving new value",
                               originalAmount, updatedAmount, orderId);
                 }
+                OrderEventBus.publish(OrderEvent.changed(OrderEvent.Type.STATUS_CHANGED, existingOrder, updatedOrder));
             }
         }
         
@@ -352,6 +383,41 @@ public class OrderServiceImpl implements OrderService {
         return orders;
     }
     
+    @Override
+    public OrderPage getOrdersPage(String status, Date startDate, Date endDate, String cursor, int limit) throws Exception {
+        OrderPage.Cursor after = (cursor == null || cursor.isEmpty()) ? null : OrderPage.Cursor.decode(cursor);
+        
+        // Fetch one extra row to find out whether there is a next page
+        List<Order> orders = orderDAO.findPage(status, startDate, endDate, after, limit + 1);
+        String nextCursor = null;
+        if (orders.size() > limit) {
+            orders = orders.subList(0, limit);
+            nextCursor = OrderPage.Cursor.of(orders.get(limit - 1)).encode();
+        }
+        logger.info("Retrieved page of {} orders (status={}, hasMore={})", orders.size(), status, nextCursor != null);
+        
+        // Ensure no order has null totalAmount
+        for (Order order : orders) {
+            if (order.getTotalAmount() == null) {
+                logger.warn("Order ID: {} has null totalAmount, setting to zero", order.getId());
+                order.setTotalAmount(BigDecimal.ZERO);
+            }
+        }
+        
+        return new OrderPage(orders, nextCursor, limit);
+    }
+    
+    @Override
+    public int streamOrders(String status, Date startDate, Date endDate, OrderDAO.OrderHandler handler) throws Exception {
+        return orderDAO.streamOrders(status, startDate, endDate, order -> {
+            // Ensure no order has null totalAmount
+            if (order.getTotalAmount() == null) {
+                order.setTotalAmount(BigDecimal.ZERO);
+            }
+            handler.handle(order);
+        });
+    }
+    
     /**
      * Place an order that properly includes items from the user's cart.
      * This method uses a stored procedure to ensure order items are saved to the database.
@@ -368,14 +434,33 @@ public class OrderServiceImpl implements OrderService {
 
         OrderDAOImpl orderDAOImpl = (OrderDAOImpl) orderDAO;
         try {
-            // Use the stored procedure to place the order with items from cart
+            // Read the cart, insert the order and copy its items in a single transaction
             Order order = orderDAOImpl.placeOrderWithItems(userId, deliveryAddress, paymentMethod, specialInstructions);
             logger.info("Order created with ID: {}, total amount: {}, items: {}", 
                       order.getId(), order.getTotalAmount(), order.getOrderItems().size());
+            OrderEventBus.publish(OrderEvent.placed(order));
             return order;
         } catch (Exception e) {
             logger.error("Error creating order with cart items: {}", e.getMessage());
             throw e;
         }
     }
+    
+    /**
+     * Place the orders for several queued checkouts in a single transaction.
+     * 
+     * @param tickets The checkouts to place
+     * @return The placed orders in ticket order, with {@code null} for checkouts whose cart was empty
+     * @throws Exception if the group could not be committed; none of its orders were placed
+     */
+    public List<Order> placeOrdersWithCartItems(List<CheckoutTicket> tickets) throws Exception {
+        OrderDAOImpl orderDAOImpl = (OrderDAOImpl) orderDAO;
+        List<Order> orders = orderDAOImpl.placeOrders(tickets);
+        for (Order order : orders) {
+            if (order != null) {
+                OrderEventBus.publish(OrderEvent.placed(order));
+            }
+        }
+        return orders;
+    }
 }
@@ -0,0 +1,80 @@
+package com.bistro.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Application settings loaded from {@code bistro.properties} on the classpath.
+ * Database settings stay in {@code db/database.properties} (see {@link DatabaseConfig}).
+ * Any setting can be overridden with a JVM system property of the same name.
+ */
+public final class AppConfig {
+    private static final Logger logger = LoggerFactory.getLogger(AppConfig.class);
+    private static final Properties props = new Properties();
+
+    static {
+        try (InputStream input = AppConfig.class.getClassLoader().getResourceAsStream("bistro.properties")) {
+            if (input != null) {
+                props.load(input);
+                logger.info("Loaded application properties from file");
+            } else {
+                logger.info("bistro.properties not found, using defaults");
+            }
+        } catch (IOException e) {
+            logger.warn("Could not load application properties file, using defaults", e);
+        }
+    }
+
+    private AppConfig() {
+    }
+
+    /**
+     * Get a string setting.
+     *
+     * @param key the setting name
+     * @param defaultValue the value to use when the setting is not present
+     * @return the setting value
+     */
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = props.getProperty(key);
+        }
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    /**
+     * Get an integer setting, falling back to the default when it is missing or invalid.
+     */
+    public static int getInt(String key, int defaultValue) {
+        return (int) getLong(key, defaultValue);
+    }
+
+    /**
+     * Get a long setting, falling back to the default when it is missing or invalid.
+     */
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for {} in properties, using default: {}", key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get a boolean setting.
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+}
@@ -0,0 +1,66 @@
+package com.bistro.util;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bistro.service.CartEngine;
+import com.bistro.service.CartReaper;
+import com.bistro.service.CartService;
+import com.bistro.service.CheckoutQueue;
+import com.bistro.service.KitchenScheduler;
+import com.bistro.service.OrderEventStream;
+import com.bistro.service.OrderStatsEngine;
+import com.bistro.service.RevenueRollupEngine;
+import com.bistro.service.impl.DashboardServiceImpl;
+
+/**
+ * Starts the application's background services when the web application is
+ * deployed and releases their threads and connection pools when it is stopped
+ * or redeployed. Also drops per-session state kept outside the session when a
+ * session ends.
+ */
+@WebListener
+public class AppContextListener implements ServletContextListener, HttpSessionListener {
+    private static final Logger logger = LoggerFactory.getLogger(AppContextListener.class);
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        // Pools and checkout writers start on first use; live statistics, the
+        // kitchen queue and the rollups need to see every order event from the start
+        OrderStatsEngine.start();
+        KitchenScheduler.start();
+        RevenueRollupEngine.start();
+        OrderEventStream.start();
+        DashboardServiceImpl.start();
+        CartEngine.start();
+        CartReaper.start();
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        logger.info("Shutting down background workers and connection pools");
+
+        // Write carts held in memory and let queued checkouts commit before the pools go away
+        CartReaper.shutdown();
+        CartEngine.shutdown();
+        CheckoutQueue.shutdown(AppConfig.getLong("checkout.async.shutdownTimeoutMs", 10000));
+        OrderStatsEngine.shutdown();
+        KitchenScheduler.shutdown();
+        RevenueRollupEngine.shutdown();
+        OrderEventStream.shutdown();
+        DashboardServiceImpl.shutdown();
+        ReadRouter.shutdown();
+        DatabaseConfig.closeDataSource();
+    }
+
+    @Override
+    public void sessionDestroyed(HttpSessionEvent se) {
+        CartService.forgetSession(se.getSession().getId());
+    }
+}
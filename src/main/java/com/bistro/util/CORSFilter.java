@@ -30,7 +30,10 @@ public class CORSFilter implements Filter {
         httpResponse.setHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
         
         // Allow specific headers
-        httpResponse.setHeader("Access-Control-Allow-Headers", "Origin, X-Requested-With, Content-Type, Accept, Authorization");
+        httpResponse.setHeader("Access-Control-Allow-Headers", "Origin, X-Requested-With, Content-Type, Accept, Authorization, If-None-Match, If-Modified-Since, Idempotency-Key");
+        
+        // Let scripts read the cache validators of conditional responses
+        httpResponse.setHeader("Access-Control-Expose-Headers", "ETag, Last-Modified");
         
         // Allow credentials
         httpResponse.setHeader("Access-Control-Allow-Credentials", "true");
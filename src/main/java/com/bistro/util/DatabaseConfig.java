@@ -4,7 +4,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,21 +20,55 @@ import com.zaxxer.hikari.HikariDataSource;
 /**
  * Database configuration utility class for managing database connections
  * using HikariCP connection pooling.
+ * <p>
+ * This is the single owner of the application's connection pools. Work is split
+ * across named pools so that one workload cannot starve another: a slow report
+ * holds a REPORTING connection, never one that checkout is waiting for. Each pool
+ * is sized and timed independently through {@code db.pool.<name>.*} properties.
+ * <p>
+ * Read replicas listed in {@code db.replica.urls} get one pool each; which reads
+ * may use them is decided by {@link ReadRouter}.
  */
 public class DatabaseConfig {
     private static final Logger logger = LoggerFactory.getLogger(DatabaseConfig.class);
-    private static HikariDataSource dataSource;
+
+    /**
+     * Named connection pools, one per workload.
+     */
+    public enum Pool {
+        /** Short interactive requests: cart, checkout, order and menu CRUD. */
+        OLTP("oltp", 10, 2, 5000),
+        /** Long-running reads: admin dashboard, date-range listings and exports. */
+        REPORTING("reporting", 3, 0, 30000),
+        /** Scheduled and asynchronous jobs. */
+        BACKGROUND("background", 2, 0, 60000);
+
+        private final String propertyName;
+        private final int defaultMaxPoolSize;
+        private final int defaultMinIdle;
+        private final long defaultConnectionTimeoutMs;
+
+        Pool(String propertyName, int defaultMaxPoolSize, int defaultMinIdle, long defaultConnectionTimeoutMs) {
+            this.propertyName = propertyName;
+            this.defaultMaxPoolSize = defaultMaxPoolSize;
+            this.defaultMinIdle = defaultMinIdle;
+            this.defaultConnectionTimeoutMs = defaultConnectionTimeoutMs;
+        }
+    }
+
+    private static final ConcurrentMap<Pool, HikariDataSource> dataSources = new ConcurrentHashMap<>();
+    private static final Properties props = new Properties();
+    private static volatile List<HikariDataSource> replicaDataSources;
 
     // Default database configuration constants
     private static String DB_URL = "jdbc:mysql://localhost:3306/bistro_db?useSSL=false&serverTimezone=UTC&allowPublicKeyRetrieval=true";
     private static String DB_USER = "root";
     private static String DB_PASSWORD = "root";
-    private static int MAX_POOL_SIZE = 10;
 
     static {
         try {
             loadDatabaseProperties();
-            initializeDataSource();
+            getDataSource(Pool.OLTP);
         } catch (Exception e) {
             logger.error("Failed to initialize database connection pool", e);
         }
@@ -40,33 +79,26 @@ public class DatabaseConfig {
      * Falls back to default values if not found.
      */
     private static void loadDatabaseProperties() {
-        Properties props = new Properties();
         try (InputStream input = DatabaseConfig.class.getClassLoader().getResourceAsStream("db/database.properties")) {
             if (input != null) {
                 props.load(input);
-                
+
                 // Override defaults with properties from file if they exist
                 DB_URL = props.getProperty("db.url", DB_URL);
                 DB_USER = props.getProperty("db.user", DB_USER);
                 DB_PASSWORD = props.getProperty("db.password", DB_PASSWORD);
-                
-                try {
-                    MAX_POOL_SIZE = Integer.parseInt(props.getProperty("db.maxPoolSize", String.valueOf(MAX_POOL_SIZE)));
-                } catch (NumberFormatException e) {
-                    logger.warn("Invalid max pool size in properties, using default: {}", MAX_POOL_SIZE);
-                }
-                
+
                 logger.info("Loaded database properties from file");
             } else {
                 // Also check for system environment variables
                 String envUrl = System.getenv("BISTRO_DB_URL");
                 String envUser = System.getenv("BISTRO_DB_USER");
                 String envPassword = System.getenv("BISTRO_DB_PASSWORD");
-                
+
                 if (envUrl != null) DB_URL = envUrl;
                 if (envUser != null) DB_USER = envUser;
                 if (envPassword != null) DB_PASSWORD = envPassword;
-                
+
                 logger.info("Using default database properties or environment variables");
             }
         } catch (IOException e) {
@@ -74,48 +106,180 @@ public class DatabaseConfig {
         }
     }
 
-    private static void initializeDataSource() {
+    /**
+     * Reads a numeric pool property, falling back to the given default when it is
+     * missing or invalid.
+     */
+    private static long getPoolProperty(Pool pool, String name, long defaultValue) {
+        String key = "db.pool." + pool.propertyName + "." + name;
+        String value = props.getProperty(key);
+
+        // The legacy db.maxPoolSize setting still sizes the OLTP pool
+        if (value == null && pool == Pool.OLTP && name.equals("maxPoolSize")) {
+            value = props.getProperty("db.maxPoolSize");
+        }
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for {} in properties, using default: {}", key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static HikariDataSource createDataSource(Pool pool) {
         HikariConfig config = new HikariConfig();
         config.setJdbcUrl(DB_URL);
         config.setUsername(DB_USER);
         config.setPassword(DB_PASSWORD);
-        config.setMaximumPoolSize(MAX_POOL_SIZE);
-        config.setMinimumIdle(2);
-        config.setIdleTimeout(30000);
-        config.setPoolName("BistroDBPool");
+        config.setMaximumPoolSize((int) getPoolProperty(pool, "maxPoolSize", pool.defaultMaxPoolSize));
+        config.setMinimumIdle((int) getPoolProperty(pool, "minIdle", pool.defaultMinIdle));
+        config.setConnectionTimeout(getPoolProperty(pool, "connectionTimeoutMs", pool.defaultConnectionTimeoutMs));
+        config.setIdleTimeout(getPoolProperty(pool, "idleTimeoutMs", 30000));
+        config.setPoolName("BistroDBPool-" + pool.propertyName);
         config.addDataSourceProperty("cachePrepStmts", "true");
         config.addDataSourceProperty("prepStmtCacheSize", "250");
         config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
         config.addDataSourceProperty("useServerPrepStmts", "true");
 
         try {
-            dataSource = new HikariDataSource(config);
-            logger.info("Database connection pool initialized successfully");
+            HikariDataSource dataSource = new HikariDataSource(config);
+            logger.info("Database connection pool {} initialized successfully (maxPoolSize={})",
+                    config.getPoolName(), config.getMaximumPoolSize());
+            return dataSource;
         } catch (Exception e) {
-            logger.error("Failed to initialize database connection pool", e);
+            logger.error("Failed to initialize database connection pool {}", config.getPoolName(), e);
             throw e;
         }
     }
 
+    private static HikariDataSource createReplicaDataSource(int index, String url) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setUsername(props.getProperty("db.replica.user", DB_USER));
+        config.setPassword(props.getProperty("db.replica.password", DB_PASSWORD));
+        config.setMaximumPoolSize(Integer.parseInt(props.getProperty("db.replica.maxPoolSize", "5").trim()));
+        config.setMinimumIdle(0);
+        config.setConnectionTimeout(Long.parseLong(props.getProperty("db.replica.connectionTimeoutMs", "2000").trim()));
+        config.setIdleTimeout(30000);
+        config.setReadOnly(true);
+        config.setPoolName("BistroDBPool-replica-" + index);
+        // Don't fail startup if a replica is down; the router will route around it
+        config.setInitializationFailTimeout(-1);
+        if (url.startsWith("jdbc:mysql:")) {
+            config.addDataSourceProperty("cachePrepStmts", "true");
+            config.addDataSourceProperty("prepStmtCacheSize", "250");
+            config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+            config.addDataSourceProperty("useServerPrepStmts", "true");
+        }
+
+        HikariDataSource dataSource = new HikariDataSource(config);
+        logger.info("Replica connection pool {} initialized for {}", config.getPoolName(), url);
+        return dataSource;
+    }
+
+    private static List<HikariDataSource> getReplicaDataSources() {
+        List<HikariDataSource> replicas = replicaDataSources;
+        if (replicas == null) {
+            synchronized (DatabaseConfig.class) {
+                replicas = replicaDataSources;
+                if (replicas == null) {
+                    replicas = new ArrayList<>();
+                    String urls = props.getProperty("db.replica.urls", "").trim();
+                    if (!urls.isEmpty()) {
+                        for (String url : urls.split(",")) {
+                            if (!url.trim().isEmpty()) {
+                                replicas.add(createReplicaDataSource(replicas.size(), url.trim()));
+                            }
+                        }
+                    }
+                    replicas = Collections.unmodifiableList(replicas);
+                    replicaDataSources = replicas;
+                }
+            }
+        }
+        return replicas;
+    }
+
     /**
-     * Get a database connection from the connection pool
+     * Get a database property, for components that share the database configuration.
+     * @param key the property key
+     * @param defaultValue the value to use when the property is not set
+     * @return the property value
+     */
+    public static String getProperty(String key, String defaultValue) {
+        return props.getProperty(key, defaultValue);
+    }
+
+    /**
+     * Get the number of configured read replicas
+     * @return the number of replicas, zero if none are configured
+     */
+    public static int getReplicaCount() {
+        return getReplicaDataSources().size();
+    }
+
+    /**
+     * Get a read-only connection from a replica's connection pool
+     * @param index the replica index, from zero to {@link #getReplicaCount()} - 1
      * @return Connection object
      * @throws SQLException if a database access error occurs
      */
-    public static Connection getConnection() throws SQLException {
+    public static Connection getReplicaConnection(int index) throws SQLException {
+        return JdbcMetrics.wrap(getReplicaDataSources().get(index).getConnection());
+    }
+
+    /**
+     * Get the data source of a pool, creating the pool on first use.
+     */
+    private static HikariDataSource getDataSource(Pool pool) {
+        HikariDataSource dataSource = dataSources.get(pool);
         if (dataSource == null) {
-            initializeDataSource();
+            dataSource = dataSources.computeIfAbsent(pool, DatabaseConfig::createDataSource);
         }
-        return dataSource.getConnection();
+        return dataSource;
     }
 
     /**
-     * Close the connection pool
+     * Get a database connection from the OLTP connection pool
+     * @return Connection object
+     * @throws SQLException if a database access error occurs
+     */
+    public static Connection getConnection() throws SQLException {
+        return getConnection(Pool.OLTP);
+    }
+
+    /**
+     * Get a database connection from the given connection pool
+     * @param pool the pool for the kind of work the connection is used for
+     * @return Connection object
+     * @throws SQLException if a database access error occurs
+     */
+    public static Connection getConnection(Pool pool) throws SQLException {
+        return JdbcMetrics.wrap(getDataSource(pool).getConnection());
+    }
+
+    /**
+     * Close all connection pools
      */
     public static void closeDataSource() {
-        if (dataSource != null && !dataSource.isClosed()) {
-            dataSource.close();
-            logger.info("Database connection pool closed");
+        for (HikariDataSource dataSource : dataSources.values()) {
+            if (!dataSource.isClosed()) {
+                dataSource.close();
+                logger.info("Database connection pool {} closed", dataSource.getPoolName());
+            }
+        }
+        dataSources.clear();
+
+        List<HikariDataSource> replicas = replicaDataSources;
+        if (replicas != null) {
+            for (HikariDataSource dataSource : replicas) {
+                dataSource.close();
+            }
+            replicaDataSources = null;
         }
     }
 }
@@ -0,0 +1,123 @@
+package com.bistro.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Cache of JSON responses that are already serialized to UTF-8 and gzip bytes,
+ * for read-only endpoints whose body depends only on a versioned data set.
+ * <p>
+ * Entries are keyed by data version and endpoint. When a new version is seen the
+ * entries of older versions are dropped, so each payload is encoded once per
+ * change and then written as-is.
+ */
+public class EncodedJsonCache {
+    /** Bodies smaller than this are not worth compressing. */
+    private static final int MIN_GZIP_BYTES = 1024;
+
+    /**
+     * A serialized response body.
+     */
+    public static final class Encoded {
+        private final byte[] identity;
+        private final byte[] gzip;
+
+        Encoded(byte[] identity, byte[] gzip) {
+            this.identity = identity;
+            this.gzip = gzip;
+        }
+
+        /** The UTF-8 JSON bytes. */
+        public byte[] getIdentity() {
+            return identity;
+        }
+
+        /** The gzip-compressed bytes, or {@code null} if compression does not pay off. */
+        public byte[] getGzip() {
+            return gzip;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final int maxEntries;
+    private final ConcurrentMap<String, Encoded> entries = new ConcurrentHashMap<>();
+    private volatile String currentVersion;
+
+    /**
+     * @param objectMapper the mapper used to serialize bodies
+     * @param maxEntries the most entries kept per version; further bodies are encoded but not stored
+     */
+    public EncodedJsonCache(ObjectMapper objectMapper, int maxEntries) {
+        this.objectMapper = objectMapper;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Get the encoded body for an endpoint, serializing it on the first request for
+     * this version.
+     *
+     * @param version the version of the data the body was built from
+     * @param key the endpoint, including anything else the body depends on
+     * @param body the body to serialize if it is not cached yet
+     * @return the encoded body
+     * @throws IOException if the body cannot be serialized
+     */
+    public Encoded get(String version, String key, Object body) throws IOException {
+        if (!version.equals(currentVersion)) {
+            synchronized (this) {
+                if (!version.equals(currentVersion)) {
+                    entries.clear();
+                    currentVersion = version;
+                }
+            }
+        }
+
+        String entryKey = version + '\n' + key;
+        Encoded encoded = entries.get(entryKey);
+        if (encoded != null) {
+            return encoded;
+        }
+        if (entries.size() >= maxEntries) {
+            return encode(body);
+        }
+        try {
+            return entries.computeIfAbsent(entryKey, k -> {
+                try {
+                    return encode(body);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Drop every entry.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    private Encoded encode(Object body) throws IOException {
+        byte[] identity = objectMapper.writeValueAsBytes(body);
+        byte[] gzip = null;
+        if (identity.length >= MIN_GZIP_BYTES) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(identity.length / 4);
+            try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+                out.write(identity);
+            }
+            if (buffer.size() < identity.length) {
+                gzip = buffer.toByteArray();
+            }
+        }
+        return new Encoded(identity, gzip);
+    }
+}
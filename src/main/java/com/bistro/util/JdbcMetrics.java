@@ -0,0 +1,461 @@
+package com.bistro.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Low-overhead JDBC instrumentation.
+ * <p>
+ * Connections handed out by {@link DatabaseConfig} are wrapped in dynamic proxies that
+ * time every statement execution and count the rows it returned or changed. Statistics
+ * are kept twice: per normalized SQL statement (literals replaced by {@code ?}) and per
+ * calling DAO method, found once per prepared statement from the call stack. All
+ * counters are {@link LongAdder}s, so recording never blocks a request thread.
+ * <p>
+ * Enabled by default; set {@code db.metrics.enabled=false} in
+ * {@code db/database.properties} to hand out unwrapped connections.
+ */
+public final class JdbcMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(JdbcMetrics.class);
+
+    private static final boolean ENABLED = Boolean.parseBoolean(
+            DatabaseConfig.getProperty("db.metrics.enabled", "true").trim());
+
+    /** Upper bounds of the latency histogram buckets, in microseconds; the last bucket is unbounded. */
+    private static final long[] BUCKET_BOUNDS_MICROS = {
+        100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000, 1_000_000
+    };
+
+    /** Caps the number of distinct keys so ad-hoc SQL cannot grow the registry without bound. */
+    private static final int MAX_TRACKED_KEYS = 2000;
+    private static final String OTHER_KEY = "(other)";
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern PLACEHOLDER_ROWS = Pattern.compile("\\(\\?\\+\\)(?:\\s*,\\s*\\(\\?\\+\\))+");
+
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+    private static final ConcurrentMap<String, Stats> bySql = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Stats> byCaller = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, String> normalizedSql = new ConcurrentHashMap<>();
+    private static volatile long since = System.currentTimeMillis();
+
+    private JdbcMetrics() {
+    }
+
+    /**
+     * Latency histogram and counters for one statement or caller.
+     */
+    public static final class Stats {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder totalMicros = new LongAdder();
+        private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+        private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MICROS.length + 1];
+
+        Stats() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long micros, boolean error) {
+            calls.increment();
+            totalMicros.add(micros);
+            maxMicros.accumulate(micros);
+            if (error) {
+                errors.increment();
+            }
+
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MICROS.length && micros > BUCKET_BOUNDS_MICROS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+        }
+
+        void addRows(long count) {
+            rows.add(count);
+        }
+
+        long getTotalMicros() {
+            return totalMicros.sum();
+        }
+
+        /**
+         * Approximate a percentile as the upper bound of the bucket that contains it.
+         */
+        private double percentileMillis(long[] counts, long total, double percentile) {
+            long rank = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return i < BUCKET_BOUNDS_MICROS.length ? BUCKET_BOUNDS_MICROS[i] / 1000.0 : maxMicros.get() / 1000.0;
+                }
+            }
+            return maxMicros.get() / 1000.0;
+        }
+
+        Map<String, Object> toMap() {
+            long[] counts = new long[buckets.length];
+            long total = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("calls", calls.sum());
+            map.put("errors", errors.sum());
+            map.put("rows", rows.sum());
+            map.put("totalMs", totalMicros.sum() / 1000.0);
+            map.put("meanMs", total == 0 ? 0.0 : totalMicros.sum() / 1000.0 / total);
+            map.put("maxMs", maxMicros.get() / 1000.0);
+            map.put("p50Ms", total == 0 ? 0.0 : percentileMillis(counts, total, 0.50));
+            map.put("p95Ms", total == 0 ? 0.0 : percentileMillis(counts, total, 0.95));
+            map.put("p99Ms", total == 0 ? 0.0 : percentileMillis(counts, total, 0.99));
+
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < counts.length; i++) {
+                String label = i < BUCKET_BOUNDS_MICROS.length
+                        ? "le_" + (BUCKET_BOUNDS_MICROS[i] / 1000.0) + "ms"
+                        : "gt_" + (BUCKET_BOUNDS_MICROS[BUCKET_BOUNDS_MICROS.length - 1] / 1000.0) + "ms";
+                histogram.put(label, counts[i]);
+            }
+            map.put("histogram", histogram);
+            return map;
+        }
+    }
+
+    /**
+     * Statistics a statement records into: its normalized SQL and its caller.
+     */
+    private static final class Target {
+        final Stats sql;
+        final Stats caller;
+
+        Target(Stats sql, Stats caller) {
+            this.sql = sql;
+            this.caller = caller;
+        }
+
+        void record(long micros, boolean error) {
+            sql.record(micros, error);
+            caller.record(micros, error);
+        }
+
+        void addRows(long count) {
+            if (count > 0) {
+                sql.addRows(count);
+                caller.addRows(count);
+            }
+        }
+    }
+
+    /**
+     * Whether connections are instrumented.
+     *
+     * @return true if metrics are enabled
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Wrap a connection so that its statements are instrumented.
+     *
+     * @param conn the connection to wrap
+     * @return the instrumented connection, or the connection itself when metrics are disabled
+     */
+    public static Connection wrap(Connection conn) {
+        if (!ENABLED || conn == null) {
+            return conn;
+        }
+        return (Connection) Proxy.newProxyInstance(JdbcMetrics.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new ConnectionHandler(conn));
+    }
+
+    /**
+     * Get the statistics per normalized statement and per caller, each sorted by total time.
+     *
+     * @return a map with the "statements" and "callers" statistics
+     */
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("enabled", ENABLED);
+        snapshot.put("since", since);
+        snapshot.put("statements", toSortedList(bySql, "sql"));
+        snapshot.put("callers", toSortedList(byCaller, "caller"));
+        return snapshot;
+    }
+
+    /**
+     * Discard all collected statistics.
+     */
+    public static void reset() {
+        bySql.clear();
+        byCaller.clear();
+        since = System.currentTimeMillis();
+        logger.info("JDBC metrics reset");
+    }
+
+    private static List<Map<String, Object>> toSortedList(Map<String, Stats> source, String keyName) {
+        List<Map.Entry<String, Stats>> entries = new ArrayList<>(source.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<String, Stats> e) -> e.getValue().getTotalMicros()).reversed());
+
+        List<Map<String, Object>> list = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Stats> entry : entries) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put(keyName, entry.getKey());
+            map.putAll(entry.getValue().toMap());
+            list.add(map);
+        }
+        return list;
+    }
+
+    private static Stats statsFor(ConcurrentMap<String, Stats> map, String key) {
+        Stats stats = map.get(key);
+        if (stats != null) {
+            return stats;
+        }
+        if (map.size() >= MAX_TRACKED_KEYS) {
+            key = OTHER_KEY;
+        }
+        return map.computeIfAbsent(key, k -> new Stats());
+    }
+
+    private static Target targetFor(String sql, String caller) {
+        return new Target(statsFor(bySql, normalize(sql)), statsFor(byCaller, caller));
+    }
+
+    /**
+     * Normalize SQL so that statements differing only in literal values or in the
+     * length of placeholder lists share one entry.
+     */
+    static String normalize(String sql) {
+        String normalized = normalizedSql.get(sql);
+        if (normalized != null) {
+            return normalized;
+        }
+
+        normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+        normalized = PLACEHOLDER_LIST.matcher(normalized).replaceAll("(?+)");
+        normalized = PLACEHOLDER_ROWS.matcher(normalized).replaceAll("(?+)...");
+
+        if (normalizedSql.size() < MAX_TRACKED_KEYS) {
+            normalizedSql.put(sql, normalized);
+        }
+        return normalized;
+    }
+
+    /**
+     * Find the application method that is issuing the statement: the first frame
+     * outside the JDBC plumbing in com.bistro.util. Lambda frames are reported under
+     * the method that declares them.
+     */
+    private static String findCaller() {
+        return STACK_WALKER.walk(frames -> frames
+                .filter(f -> f.getClassName().startsWith("com.bistro.")
+                        && !f.getClassName().startsWith("com.bistro.util."))
+                .findFirst()
+                .map(f -> {
+                    String className = f.getClassName();
+                    String methodName = f.getMethodName();
+                    if (methodName.startsWith("lambda$")) {
+                        int end = methodName.indexOf('$', 7);
+                        methodName = end > 7 ? methodName.substring(7, end) : methodName.substring(7);
+                    }
+                    return className.substring(className.lastIndexOf('.') + 1) + "." + methodName;
+                })
+                .orElse("unknown"));
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(JdbcMetrics.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    /**
+     * Wraps the statements a connection creates.
+     */
+    private static final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+
+            Object result = invokeTarget(target, method, args);
+
+            if ((name.equals("prepareStatement") || name.equals("prepareCall")) && args != null && args[0] instanceof String) {
+                Target stats = targetFor((String) args[0], findCaller());
+                return proxy(method.getReturnType(), new StatementHandler((Statement) result, stats, null));
+            }
+            if (name.equals("createStatement")) {
+                return proxy(Statement.class, new StatementHandler((Statement) result, null, findCaller()));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Times executions and wraps returned result sets. Prepared statements have a fixed
+     * target; plain statements resolve it from the SQL passed to each execute call.
+     */
+    private static final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final Target preparedTarget;
+        private final String caller;
+        private Target lastTarget;
+
+        StatementHandler(Statement target, Target preparedTarget, String caller) {
+            this.target = target;
+            this.preparedTarget = preparedTarget;
+            this.caller = caller;
+            this.lastTarget = preparedTarget;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if (name.startsWith("execute")) {
+                Target stats = preparedTarget;
+                if (stats == null) {
+                    // addBatch'ed plain statements have no SQL argument here
+                    String sql = (args != null && args.length > 0 && args[0] instanceof String) ? (String) args[0] : "(batch)";
+                    stats = targetFor(sql, caller);
+                }
+                lastTarget = stats;
+
+                long start = System.nanoTime();
+                boolean error = true;
+                try {
+                    Object result = invokeTarget(target, method, args);
+                    error = false;
+                    return wrapResult(result, stats);
+                } finally {
+                    stats.record((System.nanoTime() - start) / 1000, error);
+                }
+            }
+
+            if (name.equals("getResultSet")) {
+                Object result = invokeTarget(target, method, args);
+                return (result != null && lastTarget != null) ? wrapResult(result, lastTarget) : result;
+            }
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            return invokeTarget(target, method, args);
+        }
+
+        private Object wrapResult(Object result, Target stats) {
+            if (result instanceof ResultSet) {
+                return proxy(ResultSet.class, new ResultSetHandler((ResultSet) result, stats));
+            }
+            if (result instanceof Integer) {
+                stats.addRows((Integer) result);
+            } else if (result instanceof Long) {
+                stats.addRows((Long) result);
+            } else if (result instanceof int[]) {
+                for (int count : (int[]) result) {
+                    stats.addRows(count);
+                }
+            } else if (result instanceof long[]) {
+                for (long count : (long[]) result) {
+                    stats.addRows(count);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Counts the rows read from a result set and records them when it is closed.
+     */
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final ResultSet target;
+        private final Target stats;
+        private long rows;
+        private boolean recorded;
+
+        ResultSetHandler(ResultSet target, Target stats) {
+            this.target = target;
+            this.stats = stats;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("next")) {
+                Object hasNext = invokeTarget(target, method, args);
+                if (Boolean.TRUE.equals(hasNext)) {
+                    rows++;
+                } else {
+                    recordRows();
+                }
+                return hasNext;
+            }
+            if (name.equals("close")) {
+                recordRows();
+            } else if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            return invokeTarget(target, method, args);
+        }
+
+        private void recordRows() {
+            if (!recorded) {
+                recorded = true;
+                stats.addRows(rows);
+            }
+        }
+    }
+}
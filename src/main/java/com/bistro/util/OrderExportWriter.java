@@ -0,0 +1,213 @@
+package com.bistro.util;
+
+import com.bistro.model.Order;
+import com.bistro.model.OrderItem;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes orders for export one at a time, so an export of any size needs only
+ * the memory of one order.
+ * <p>
+ * CSV has one row per order line, repeating the order's columns, and one row
+ * with empty line columns for an order without items. NDJSON has one JSON
+ * object per order with its items nested. Dates are ISO-8601 with the server's
+ * offset.
+ */
+public abstract class OrderExportWriter {
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ISO_OFFSET_DATE_TIME.withZone(ZoneId.systemDefault());
+
+    protected final Writer out;
+
+    protected OrderExportWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Get a writer for the given format.
+     *
+     * @param format csv or ndjson
+     * @param out the character stream to write to; it is not closed
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    public static OrderExportWriter forFormat(String format, Writer out) throws IOException {
+        switch (format.toLowerCase(Locale.ROOT)) {
+            case "csv":
+                return new Csv(out);
+            case "ndjson":
+                return new Ndjson(out);
+            default:
+                throw new IllegalArgumentException("Unknown format '" + format + "'; use csv or ndjson");
+        }
+    }
+
+    public static String contentType(String format) {
+        return "csv".equalsIgnoreCase(format) ? "text/csv" : "application/x-ndjson";
+    }
+
+    /**
+     * Write anything that comes before the first order.
+     */
+    public abstract void begin() throws IOException;
+
+    public abstract void write(Order order) throws IOException;
+
+    /**
+     * Flush what is buffered; the underlying stream is left open.
+     */
+    public void finish() throws IOException {
+        out.flush();
+    }
+
+    protected static String formatDate(Date date) {
+        return date != null ? DATE_FORMAT.format(date.toInstant()) : null;
+    }
+
+    private static final class Csv extends OrderExportWriter {
+        private static final String HEADER = "order_id,order_date,user_id,status,payment_method,payment_status,"
+                + "total_amount,order_item_id,menu_item_id,menu_item_name,quantity,price,line_total\r\n";
+
+        Csv(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void begin() throws IOException {
+            out.write(HEADER);
+        }
+
+        @Override
+        public void write(Order order) throws IOException {
+            List<OrderItem> items = order.getOrderItems();
+            if (items == null || items.isEmpty()) {
+                writeOrderColumns(order);
+                out.write(",,,,,,\r\n");
+                return;
+            }
+            for (OrderItem item : items) {
+                writeOrderColumns(order);
+                out.write(',');
+                out.write(Integer.toString(item.getId()));
+                out.write(',');
+                out.write(Integer.toString(item.getMenuItemId()));
+                out.write(',');
+                writeField(item.getMenuItemName());
+                out.write(',');
+                out.write(Integer.toString(item.getQuantity()));
+                out.write(',');
+                writeAmount(item.getPrice());
+                out.write(',');
+                writeAmount(item.getPrice() != null
+                        ? item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())) : null);
+                out.write("\r\n");
+            }
+        }
+
+        private void writeOrderColumns(Order order) throws IOException {
+            out.write(Integer.toString(order.getId()));
+            out.write(',');
+            writeField(formatDate(order.getOrderDate()));
+            out.write(',');
+            out.write(Integer.toString(order.getUserId()));
+            out.write(',');
+            writeField(order.getStatus());
+            out.write(',');
+            writeField(order.getPaymentMethod());
+            out.write(',');
+            writeField(order.getPaymentStatus());
+            out.write(',');
+            writeAmount(order.getTotalAmount());
+        }
+
+        private void writeAmount(BigDecimal amount) throws IOException {
+            if (amount != null) {
+                out.write(amount.toPlainString());
+            }
+        }
+
+        /**
+         * Write a field quoted as RFC 4180 requires. A leading formula character is
+         * prefixed with a quote so spreadsheets show the text instead of running it.
+         */
+        private void writeField(String value) throws IOException {
+            if (value == null || value.isEmpty()) {
+                return;
+            }
+            char first = value.charAt(0);
+            boolean formula = first == '=' || first == '+' || first == '-' || first == '@';
+            boolean quote = formula || value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                    || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+            if (!quote) {
+                out.write(value);
+                return;
+            }
+            out.write('"');
+            if (formula) {
+                out.write('\'');
+            }
+            out.write(value.replace("\"", "\"\""));
+            out.write('"');
+        }
+    }
+
+    private static final class Ndjson extends OrderExportWriter {
+        private final JsonGenerator generator;
+
+        Ndjson(Writer out) throws IOException {
+            super(out);
+            this.generator = new JsonFactory().createGenerator(out);
+            // The container owns the stream, and objects are separated by newlines, not commas
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+            generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void begin() {
+            // No header
+        }
+
+        @Override
+        public void write(Order order) throws IOException {
+            generator.writeStartObject();
+            generator.writeNumberField("orderId", order.getId());
+            generator.writeStringField("orderDate", formatDate(order.getOrderDate()));
+            generator.writeNumberField("userId", order.getUserId());
+            generator.writeStringField("status", order.getStatus());
+            generator.writeStringField("paymentMethod", order.getPaymentMethod());
+            generator.writeStringField("paymentStatus", order.getPaymentStatus());
+            generator.writeNumberField("totalAmount", order.getTotalAmount());
+            generator.writeArrayFieldStart("items");
+            if (order.getOrderItems() != null) {
+                for (OrderItem item : order.getOrderItems()) {
+                    generator.writeStartObject();
+                    generator.writeNumberField("orderItemId", item.getId());
+                    generator.writeNumberField("menuItemId", item.getMenuItemId());
+                    generator.writeStringField("menuItemName", item.getMenuItemName());
+                    generator.writeNumberField("quantity", item.getQuantity());
+                    generator.writeNumberField("price", item.getPrice());
+                    generator.writeEndObject();
+                }
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.flush();
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.bistro.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Routes read-only queries to read replicas when it is safe to do so.
+ * <p>
+ * A read goes to a replica only if replicas are configured, the current request is
+ * not pinned to the primary and a replica is healthy and within the allowed lag.
+ * Otherwise it runs on the given primary pool. Requests are pinned to the primary
+ * by {@link com.bistro.filter.ReadConsistencyFilter} while a user writes and for a
+ * short window afterwards, so users always read their own writes.
+ * <p>
+ * Optionally a read is hedged: if the first replica has not answered within
+ * {@code db.replica.hedgeDelayMs}, the same query is sent to a second replica (or the
+ * primary when there is only one) and whichever answers first wins.
+ * <p>
+ * Configuration, in {@code db/database.properties}:
+ * <ul>
+ *   <li>{@code db.replica.urls} - comma-separated JDBC URLs; routing is off when empty</li>
+ *   <li>{@code db.replica.maxLagSeconds} - maximum replica lag for a replica to be used (default 5)</li>
+ *   <li>{@code db.replica.lagQuery} - query whose first column is the lag in seconds
+ *       (default {@code SHOW REPLICA STATUS}; use {@code SELECT 0} for H2)</li>
+ *   <li>{@code db.replica.lagProbeIntervalMs} - how often lag is probed (default 5000)</li>
+ *   <li>{@code db.replica.stickyMs} - how long a user reads from the primary after a write (default 10000)</li>
+ *   <li>{@code db.replica.hedgeDelayMs} - delay before a hedged read, 0 to disable (default 0)</li>
+ * </ul>
+ */
+public final class ReadRouter {
+    private static final Logger logger = LoggerFactory.getLogger(ReadRouter.class);
+
+    /**
+     * A unit of read-only JDBC work run against whichever connection the router picks.
+     */
+    public interface SqlWork<T> {
+        T execute(Connection conn) throws SQLException;
+    }
+
+    private static final long MAX_LAG_SECONDS = Long.parseLong(DatabaseConfig.getProperty("db.replica.maxLagSeconds", "5").trim());
+    private static final String LAG_QUERY = DatabaseConfig.getProperty("db.replica.lagQuery", "SHOW REPLICA STATUS");
+    private static final long LAG_PROBE_INTERVAL_MS = Long.parseLong(DatabaseConfig.getProperty("db.replica.lagProbeIntervalMs", "5000").trim());
+    private static final long STICKY_MS = Long.parseLong(DatabaseConfig.getProperty("db.replica.stickyMs", "10000").trim());
+    private static final long HEDGE_DELAY_MS = Long.parseLong(DatabaseConfig.getProperty("db.replica.hedgeDelayMs", "0").trim());
+
+    private static final ThreadLocal<Boolean> pinnedToPrimary = new ThreadLocal<>();
+    private static final AtomicInteger nextReplica = new AtomicInteger();
+    private static final List<ReplicaState> replicas = new ArrayList<>();
+
+    private static final LongAdder replicaReads = new LongAdder();
+    private static final LongAdder primaryReads = new LongAdder();
+    private static final LongAdder hedgedReads = new LongAdder();
+    private static final LongAdder replicaFailures = new LongAdder();
+
+    private static ScheduledExecutorService lagProbe;
+    private static ThreadPoolExecutor hedgeExecutor;
+
+    /**
+     * Health and lag of one replica, as last seen by the lag probe.
+     */
+    private static final class ReplicaState {
+        final int index;
+        volatile boolean healthy;
+        volatile long lagSeconds;
+
+        ReplicaState(int index) {
+            this.index = index;
+        }
+
+        boolean isUsable() {
+            return healthy && lagSeconds <= MAX_LAG_SECONDS;
+        }
+    }
+
+    static {
+        int count = DatabaseConfig.getReplicaCount();
+        for (int i = 0; i < count; i++) {
+            replicas.add(new ReplicaState(i));
+        }
+
+        if (count > 0) {
+            lagProbe = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "replica-lag-probe");
+                t.setDaemon(true);
+                return t;
+            });
+            lagProbe.scheduleWithFixedDelay(ReadRouter::probeReplicas, 0, LAG_PROBE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+            if (HEDGE_DELAY_MS > 0) {
+                AtomicInteger threadCount = new AtomicInteger();
+                hedgeExecutor = new ThreadPoolExecutor(0, 4 * (count + 1), 60, TimeUnit.SECONDS,
+                        new SynchronousQueue<>(), r -> {
+                            Thread t = new Thread(r, "hedged-read-" + threadCount.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }, new ThreadPoolExecutor.CallerRunsPolicy());
+            }
+            logger.info("Read routing enabled with {} replica(s), max lag {}s, hedge delay {}ms",
+                    count, MAX_LAG_SECONDS, HEDGE_DELAY_MS);
+        }
+    }
+
+    private ReadRouter() {
+    }
+
+    /**
+     * Run read-only work on a replica if possible, otherwise on the given primary pool.
+     *
+     * @param pool the primary pool to use when the read cannot go to a replica
+     * @param work the read-only work
+     * @return the result of the work
+     * @throws SQLException if the work fails on the primary
+     */
+    public static <T> T read(DatabaseConfig.Pool pool, SqlWork<T> work) throws SQLException {
+        if (replicas.isEmpty() || Boolean.TRUE.equals(pinnedToPrimary.get())) {
+            return readFromPrimary(pool, work);
+        }
+
+        List<ReplicaState> candidates = pickReplicas();
+        if (candidates.isEmpty()) {
+            return readFromPrimary(pool, work);
+        }
+
+        if (hedgeExecutor == null) {
+            try {
+                T result = readFromReplica(candidates.get(0), work);
+                replicaReads.increment();
+                return result;
+            } catch (SQLException e) {
+                logger.warn("Read on replica {} failed, falling back to primary: {}", candidates.get(0).index, e.getMessage());
+                return readFromPrimary(pool, work);
+            }
+        }
+
+        return hedgedRead(pool, candidates, work);
+    }
+
+    /**
+     * Pin reads of the current thread to the primary, or release the pin.
+     *
+     * @param pinned true to send all reads of this thread to the primary
+     */
+    public static void setPinnedToPrimary(boolean pinned) {
+        if (pinned) {
+            pinnedToPrimary.set(Boolean.TRUE);
+        } else {
+            pinnedToPrimary.remove();
+        }
+    }
+
+    /**
+     * Whether a write at the given time is still recent enough that the writer must
+     * read from the primary.
+     *
+     * @param lastWriteAt the time of the last write in milliseconds, or null
+     * @return true if reads should stay on the primary
+     */
+    public static boolean isWithinStickyWindow(Long lastWriteAt) {
+        return lastWriteAt != null && System.currentTimeMillis() - lastWriteAt < STICKY_MS;
+    }
+
+    /**
+     * Whether any replicas are configured.
+     *
+     * @return true if reads can be routed to replicas
+     */
+    public static boolean isEnabled() {
+        return !replicas.isEmpty();
+    }
+
+    /**
+     * Get routing counters and the last known state of each replica.
+     *
+     * @return a map of statistic names to values
+     */
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("replicaReads", replicaReads.sum());
+        stats.put("primaryReads", primaryReads.sum());
+        stats.put("hedgedReads", hedgedReads.sum());
+        stats.put("replicaFailures", replicaFailures.sum());
+
+        List<Map<String, Object>> replicaStats = new ArrayList<>();
+        for (ReplicaState replica : replicas) {
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("index", replica.index);
+            state.put("healthy", replica.healthy);
+            state.put("lagSeconds", replica.healthy ? replica.lagSeconds : null);
+            replicaStats.add(state);
+        }
+        stats.put("replicas", replicaStats);
+        return stats;
+    }
+
+    /**
+     * Stop the lag probe and hedge threads.
+     */
+    public static void shutdown() {
+        if (lagProbe != null) {
+            lagProbe.shutdownNow();
+        }
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Pick up to two usable replicas, rotating the starting point for load balancing.
+     */
+    private static List<ReplicaState> pickReplicas() {
+        List<ReplicaState> picked = new ArrayList<>(2);
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size() && picked.size() < 2; i++) {
+            ReplicaState replica = replicas.get((start + i) % replicas.size());
+            if (replica.isUsable()) {
+                picked.add(replica);
+            }
+        }
+        return picked;
+    }
+
+    private static <T> T hedgedRead(DatabaseConfig.Pool pool, List<ReplicaState> candidates, SqlWork<T> work) throws SQLException {
+        CompletionService<T> completion = new ExecutorCompletionService<>(hedgeExecutor);
+        List<Future<T>> futures = new ArrayList<>(2);
+
+        ReplicaState first = candidates.get(0);
+        futures.add(completion.submit(() -> readFromReplica(first, work)));
+        // The hedge attempt when it runs on the primary, so that a win is counted there
+        Future<T> primaryHedge = null;
+
+        try {
+            Future<T> done = completion.poll(HEDGE_DELAY_MS, TimeUnit.MILLISECONDS);
+            if (done == null) {
+                // The first replica is slow: race it against a second replica, or the primary
+                Future<T> hedge;
+                if (candidates.size() > 1) {
+                    hedge = completion.submit(() -> readFromReplica(candidates.get(1), work));
+                } else {
+                    hedge = completion.submit(() -> runOnPrimary(pool, work));
+                    primaryHedge = hedge;
+                }
+                futures.add(hedge);
+                hedgedReads.increment();
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                Future<T> next = (done != null) ? done : completion.take();
+                done = null;
+                try {
+                    T result = next.get();
+                    (next == primaryHedge ? primaryReads : replicaReads).increment();
+                    return result;
+                } catch (ExecutionException e) {
+                    logger.warn("Hedged read attempt failed: {}", e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a replica read", e);
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        logger.warn("All hedged read attempts failed, falling back to primary");
+        return readFromPrimary(pool, work);
+    }
+
+    private static <T> T readFromPrimary(DatabaseConfig.Pool pool, SqlWork<T> work) throws SQLException {
+        primaryReads.increment();
+        return runOnPrimary(pool, work);
+    }
+
+    private static <T> T runOnPrimary(DatabaseConfig.Pool pool, SqlWork<T> work) throws SQLException {
+        try (Connection conn = DatabaseConfig.getConnection(pool)) {
+            return work.execute(conn);
+        }
+    }
+
+    private static <T> T readFromReplica(ReplicaState replica, SqlWork<T> work) throws SQLException {
+        try (Connection conn = DatabaseConfig.getReplicaConnection(replica.index)) {
+            return work.execute(conn);
+        } catch (SQLException e) {
+            replicaFailures.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Probe every replica's lag; a replica that cannot be probed, or whose replication
+     * is stopped, is taken out of rotation until the next successful probe.
+     */
+    private static void probeReplicas() {
+        for (ReplicaState replica : replicas) {
+            try (Connection conn = DatabaseConfig.getReplicaConnection(replica.index);
+                 PreparedStatement stmt = conn.prepareStatement(LAG_QUERY);
+                 ResultSet rs = stmt.executeQuery()) {
+
+                Long lag = null;
+                if (rs.next()) {
+                    lag = readLag(rs);
+                }
+                boolean wasHealthy = replica.healthy;
+                replica.lagSeconds = lag != null ? lag : Long.MAX_VALUE;
+                replica.healthy = lag != null;
+                if (wasHealthy != replica.healthy) {
+                    logger.info("Replica {} is now {} (lag {}s)", replica.index,
+                            replica.healthy ? "healthy" : "unhealthy", lag);
+                }
+            } catch (Exception e) {
+                if (replica.healthy) {
+                    logger.warn("Replica {} lag probe failed: {}", replica.index, e.getMessage());
+                }
+                replica.healthy = false;
+            }
+        }
+    }
+
+    /**
+     * Read the lag in seconds from the current row: the Seconds_Behind_Source column of
+     * SHOW REPLICA STATUS when present, otherwise the first column.
+     */
+    private static Long readLag(ResultSet rs) throws SQLException {
+        long lag;
+        try {
+            lag = rs.getLong("Seconds_Behind_Source");
+        } catch (SQLException e) {
+            lag = rs.getLong(1);
+        }
+        // NULL lag means replication is not running
+        return rs.wasNull() ? null : lag;
+    }
+}
@@ -0,0 +1,341 @@
+package com.bistro.util;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Server-Sent Events fan-out over asynchronous, non-blocking servlet responses.
+ * <p>
+ * A connection costs a small queue and no thread: the request thread returns as
+ * soon as the stream is opened, and frames are written with a
+ * {@link WriteListener} only while the socket can take them. Each frame is
+ * encoded once and the same bytes go to every client.
+ * <p>
+ * Recent frames are kept in a bounded replay buffer. A client that reconnects
+ * with {@code Last-Event-ID} receives what it missed, or a {@code reset} event
+ * if that is no longer in the buffer or the ID is from another server, after
+ * which it should reload its data. A client that falls more than
+ * {@code clientBufferEvents} frames behind is disconnected rather than
+ * buffered without limit; it reconnects and catches up from the replay buffer.
+ * A comment line is sent to every client periodically so proxies keep idle
+ * connections open and dead ones are noticed.
+ */
+public class SseBroadcaster {
+    private static final Logger logger = LoggerFactory.getLogger(SseBroadcaster.class);
+
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final int RETRY_MS = 3000;
+
+    private final String name;
+    // Event IDs are "<streamId>-<sequence>" so an ID from before a restart is recognised
+    private final String streamId = Long.toString(System.currentTimeMillis(), 36)
+            + UUID.randomUUID().toString().substring(0, 4);
+    private final int replaySize;
+    private final int clientBufferEvents;
+    private final int maxClients;
+    private final long timeoutMs;
+
+    // Guards the replay buffer and the sequence, and orders broadcasts against new clients
+    private final Object replayLock = new Object();
+    private final ArrayDeque<Frame> replay = new ArrayDeque<>();
+    private long nextSequence = 1;
+
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService heartbeat;
+
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder broadcasts = new LongAdder();
+    private final LongAdder slowConsumersDropped = new LongAdder();
+    private final LongAdder replayedFrames = new LongAdder();
+    private final LongAdder resets = new LongAdder();
+
+    private static final class Frame {
+        final long sequence;
+        final byte[] bytes;
+
+        Frame(long sequence, byte[] bytes) {
+            this.sequence = sequence;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * @param name the stream name, used for the heartbeat thread and in logs
+     * @param replaySize how many recent frames are kept for reconnecting clients
+     * @param clientBufferEvents how many frames a client may fall behind before it is dropped
+     * @param maxClients the most concurrent connections
+     * @param heartbeatMs interval between heartbeat comments
+     * @param timeoutMs how long a connection stays open before the client has to reconnect, 0 for no limit
+     */
+    public SseBroadcaster(String name, int replaySize, int clientBufferEvents, int maxClients,
+                          long heartbeatMs, long timeoutMs) {
+        this.name = name;
+        this.replaySize = Math.max(0, replaySize);
+        this.clientBufferEvents = Math.max(1, clientBufferEvents);
+        this.maxClients = maxClients;
+        this.timeoutMs = timeoutMs;
+
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name + "-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(() -> {
+            for (Client client : clients) {
+                client.send(HEARTBEAT);
+            }
+        }, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Open an event stream on the request. On success the response is left in
+     * asynchronous mode and the caller must not write to it.
+     *
+     * @param request the HTTP request
+     * @param response the HTTP response
+     * @return false if the stream is at its connection limit; nothing has been written
+     * @throws IOException if the response cannot be opened
+     */
+    public boolean open(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (clients.size() >= maxClients) {
+            return false;
+        }
+
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        // Stop nginx from buffering the stream
+        response.setHeader("X-Accel-Buffering", "no");
+
+        String lastEventId = request.getHeader("Last-Event-ID");
+        if (lastEventId == null) {
+            lastEventId = request.getParameter("lastEventId");
+        }
+
+        AsyncContext context = request.startAsync();
+        context.setTimeout(timeoutMs);
+        Client client = new Client(context, response.getOutputStream());
+        context.addListener(client);
+
+        synchronized (replayLock) {
+            client.pending.add(("retry: " + RETRY_MS + "\n\n").getBytes(StandardCharsets.UTF_8));
+            if (lastEventId != null && !lastEventId.isEmpty()) {
+                replayTo(client, lastEventId);
+            }
+            clients.add(client);
+        }
+        connections.increment();
+        // Writing starts when the container calls onWritePossible
+        client.out.setWriteListener(client);
+        return true;
+    }
+
+    /**
+     * Send an event to every connected client and keep it for replay.
+     *
+     * @param event the event name
+     * @param json the event data, on a single line
+     */
+    public void broadcast(String event, String json) {
+        synchronized (replayLock) {
+            long sequence = nextSequence++;
+            String frame = "id: " + streamId + "-" + sequence + "\nevent: " + event + "\ndata: " + json + "\n\n";
+            Frame encoded = new Frame(sequence, frame.getBytes(StandardCharsets.UTF_8));
+            if (replaySize > 0) {
+                replay.addLast(encoded);
+                if (replay.size() > replaySize) {
+                    replay.removeFirst();
+                }
+            }
+            for (Client client : clients) {
+                client.send(encoded.bytes);
+            }
+        }
+        broadcasts.increment();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("clients", clients.size());
+        stats.put("maxClients", maxClients);
+        stats.put("connections", connections.sum());
+        stats.put("broadcasts", broadcasts.sum());
+        stats.put("slowConsumersDropped", slowConsumersDropped.sum());
+        stats.put("replayedFrames", replayedFrames.sum());
+        stats.put("resets", resets.sum());
+        synchronized (replayLock) {
+            stats.put("replayBuffered", replay.size());
+            stats.put("lastEventId", nextSequence > 1 ? streamId + "-" + (nextSequence - 1) : null);
+        }
+        return stats;
+    }
+
+    /**
+     * Close every connection and stop the heartbeat.
+     */
+    public void shutdown() {
+        heartbeat.shutdownNow();
+        for (Client client : clients) {
+            client.close();
+        }
+    }
+
+    /**
+     * Queue the frames after the client's last event, or a reset if they are gone.
+     * Called with the replay lock held.
+     */
+    private void replayTo(Client client, String lastEventId) {
+        long lastSequence = -1;
+        int dash = lastEventId.lastIndexOf('-');
+        if (dash > 0 && lastEventId.substring(0, dash).equals(streamId)) {
+            try {
+                lastSequence = Long.parseLong(lastEventId.substring(dash + 1));
+            } catch (NumberFormatException e) {
+                // Treated like an unknown ID
+            }
+        }
+
+        long oldest = replay.isEmpty() ? nextSequence : replay.peekFirst().sequence;
+        if (lastSequence < 0 || lastSequence >= nextSequence || lastSequence < oldest - 1) {
+            client.pending.add(("event: reset\ndata: {}\n\n").getBytes(StandardCharsets.UTF_8));
+            resets.increment();
+            return;
+        }
+        for (Frame frame : replay) {
+            if (frame.sequence > lastSequence) {
+                client.pending.add(frame.bytes);
+                replayedFrames.increment();
+            }
+        }
+    }
+
+    /**
+     * One connection. All methods synchronize on the client, as frames are queued by
+     * the broadcasting thread and written by container threads.
+     */
+    private final class Client implements WriteListener, AsyncListener {
+        private final AsyncContext context;
+        private final ServletOutputStream out;
+        private final ArrayDeque<byte[]> pending = new ArrayDeque<>();
+        private boolean writable;
+        private boolean unflushed;
+        private boolean closed;
+
+        Client(AsyncContext context, ServletOutputStream out) {
+            this.context = context;
+            this.out = out;
+        }
+
+        synchronized void send(byte[] frame) {
+            if (closed) {
+                return;
+            }
+            if (pending.size() >= clientBufferEvents) {
+                slowConsumersDropped.increment();
+                logger.debug("Dropping slow {} client with {} frames pending", name, pending.size());
+                close();
+                return;
+            }
+            pending.add(frame);
+            if (writable) {
+                flush();
+            }
+        }
+
+        @Override
+        public synchronized void onWritePossible() {
+            writable = true;
+            flush();
+        }
+
+        /**
+         * Write queued frames while the socket can take them. When it cannot, the
+         * container calls onWritePossible once it can.
+         */
+        private void flush() {
+            if (closed) {
+                return;
+            }
+            try {
+                while (out.isReady()) {
+                    byte[] next = pending.poll();
+                    if (next == null) {
+                        if (!unflushed) {
+                            return;
+                        }
+                        unflushed = false;
+                        out.flush();
+                        continue;
+                    }
+                    out.write(next);
+                    unflushed = true;
+                }
+            } catch (IOException | IllegalStateException e) {
+                close();
+            }
+        }
+
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending.clear();
+            clients.remove(this);
+            try {
+                context.complete();
+            } catch (IllegalStateException e) {
+                // Already completed by the container
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            close();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            synchronized (this) {
+                closed = true;
+                pending.clear();
+            }
+            clients.remove(this);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Not restarted
+        }
+    }
+}
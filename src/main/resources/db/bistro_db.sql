@@ -78,6 +78,25 @@ INSERT INTO `carts` VALUES (1,NULL,'3215740DCA2F4D92C7AD1A1D6BC5AA39','2025-05-0
 /*!40000 ALTER TABLE `carts` ENABLE KEYS */;
 UNLOCK TABLES;
 
+--
+-- Table structure for table `idempotency_keys`
+--
+
+DROP TABLE IF EXISTS `idempotency_keys`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `idempotency_keys` (
+  `key_hash` char(64) NOT NULL,
+  `status_code` int NOT NULL,
+  `content_type` varchar(100) DEFAULT NULL,
+  `body` mediumblob,
+  `created_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  `expires_at` timestamp NOT NULL,
+  PRIMARY KEY (`key_hash`),
+  KEY `idx_idempotency_keys_expires_at` (`expires_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
 --
 -- Table structure for table `menu_items`
 --
@@ -109,6 +128,24 @@ INSERT INTO `menu_items` VALUES (1,'Margherita Pizza','Classic pizza with tomato
 /*!40000 ALTER TABLE `menu_items` ENABLE KEYS */;
 UNLOCK TABLES;
 
+--
+-- Table structure for table `order_item_rollups`
+--
+
+DROP TABLE IF EXISTS `order_item_rollups`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `order_item_rollups` (
+  `granularity` varchar(5) NOT NULL,
+  `bucket_start` timestamp NOT NULL,
+  `menu_item_id` int NOT NULL,
+  `menu_item_name` varchar(100) NOT NULL,
+  `quantity` int NOT NULL,
+  `revenue` decimal(14,2) NOT NULL,
+  PRIMARY KEY (`granularity`,`bucket_start`,`menu_item_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
 --
 -- Table structure for table `order_items`
 --
@@ -141,6 +178,24 @@ LOCK TABLES `order_items` WRITE;
 /*!40000 ALTER TABLE `order_items` ENABLE KEYS */;
 UNLOCK TABLES;
 
+--
+-- Table structure for table `order_rollups`
+--
+
+DROP TABLE IF EXISTS `order_rollups`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `order_rollups` (
+  `granularity` varchar(5) NOT NULL,
+  `bucket_start` timestamp NOT NULL,
+  `order_count` int NOT NULL,
+  `cancelled_count` int NOT NULL,
+  `revenue` decimal(14,2) NOT NULL,
+  `items_sold` int NOT NULL,
+  PRIMARY KEY (`granularity`,`bucket_start`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
 --
 -- Table structure for table `orders`
 --
@@ -161,6 +216,9 @@ CREATE TABLE `orders` (
   `special_instructions` text,
   PRIMARY KEY (`id`),
   KEY `user_id` (`user_id`),
+  KEY `idx_orders_date_id` (`order_date`,`id`),
+  KEY `idx_orders_status_date_id` (`status`,`order_date`,`id`),
+  KEY `idx_orders_status_amount` (`status`,`total_amount`),
   CONSTRAINT `orders_ibfk_1` FOREIGN KEY (`user_id`) REFERENCES `users` (`id`)
 ) ENGINE=InnoDB AUTO_INCREMENT=12 DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 /*!40101 SET character_set_client = @saved_cs_client */;
@@ -174,6 +232,20 @@ LOCK TABLES `orders` WRITE;
 /*!40000 ALTER TABLE `orders` ENABLE KEYS */;
 UNLOCK TABLES;
 
+--
+-- Table structure for table `rollup_state`
+--
+
+DROP TABLE IF EXISTS `rollup_state`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `rollup_state` (
+  `name` varchar(50) NOT NULL,
+  `rolled_up_through` timestamp NOT NULL,
+  PRIMARY KEY (`name`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
 --
 -- Table structure for table `users`
 --
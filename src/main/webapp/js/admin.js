@@ -1557,6 +1557,9 @@ function displayOrderManagementContent(orders) {
             }
             });
     }
+    
+    // Keep the list current from the order event stream instead of re-fetching it
+    connectOrderStream();
 }
 
 // Get orders list HTML
@@ -1568,33 +1571,7 @@ function getOrdersListHtml(orders) {
     let html = '<table class="admin-table"><thead><tr><th>ID</th><th>Customer</th><th>Date</th><th>Items</th><th>Total</th><th>Status</th><th>Actions</th></tr></thead><tbody>';
     
     orders.forEach(order => {
-        // Ensure totalAmount is a number and properly formatted
-        let totalAmount = 0;
-        try {
-            totalAmount = typeof order.totalAmount === 'number' 
-                ? order.totalAmount 
-                : parseFloat(order.totalAmount || 0);
-            
-            if (isNaN(totalAmount)) totalAmount = 0;
-        } catch (e) {
-            console.error('Error parsing totalAmount', e);
-            totalAmount = 0;
-        }
-        
-        html += `
-            <tr data-status="${order.status}" data-id="${order.id}">
-                <td>#${order.id}</td>
-                <td>${order.userName || 'User #' + order.userId}</td>
-                <td>${formatDate(order.orderDate)}</td>
-                <td>${getOrderItemsCount(order)}</td>
-                <td>₹${totalAmount.toFixed(2)}</td>
-                <td><span class="order-status ${order.status.toLowerCase()}">${order.status}</span></td>
-                <td>
-                    <button class="btn-primary view-order-btn" data-id="${order.id}">View</button>
-                    <button class="btn-secondary update-status-btn" data-id="${order.id}" data-status="${order.status}">Update Status</button>
-                </td>
-            </tr>
-        `;
+        html += getOrderRowHtml(order);
     });
     
     html += '</tbody></table>';
@@ -1602,6 +1579,37 @@ function getOrdersListHtml(orders) {
     return html;
 }
 
+// Get the table row HTML for one order
+function getOrderRowHtml(order) {
+    // Ensure totalAmount is a number and properly formatted
+    let totalAmount = 0;
+    try {
+        totalAmount = typeof order.totalAmount === 'number' 
+            ? order.totalAmount 
+            : parseFloat(order.totalAmount || 0);
+        
+        if (isNaN(totalAmount)) totalAmount = 0;
+    } catch (e) {
+        console.error('Error parsing totalAmount', e);
+        totalAmount = 0;
+    }
+    
+    return `
+        <tr data-status="${order.status}" data-id="${order.id}">
+            <td>#${order.id}</td>
+            <td>${order.userName || 'User #' + order.userId}</td>
+            <td>${formatDate(order.orderDate)}</td>
+            <td>${getOrderItemsCount(order)}</td>
+            <td>₹${totalAmount.toFixed(2)}</td>
+            <td><span class="order-status ${order.status.toLowerCase()}">${order.status}</span></td>
+            <td>
+                <button class="btn-primary view-order-btn" data-id="${order.id}">View</button>
+                <button class="btn-secondary update-status-btn" data-id="${order.id}" data-status="${order.status}">Update Status</button>
+            </td>
+        </tr>
+    `;
+}
+
 // Get order items count
 function getOrderItemsCount(order) {
     const items = order.items || order.orderItems || [];
@@ -1622,6 +1630,92 @@ function filterOrdersByStatus(status) {
     });
 }
 
+// Live order updates pushed by the server (api/orders/stream)
+let orderEventSource = null;
+
+function connectOrderStream() {
+    if (orderEventSource || typeof EventSource === 'undefined') return;
+    
+    orderEventSource = new EventSource('api/orders/stream');
+    orderEventSource.addEventListener('order-created', e => addOrderRow(JSON.parse(e.data)));
+    orderEventSource.addEventListener('order-status-changed', e => updateOrderRow(JSON.parse(e.data)));
+    orderEventSource.addEventListener('order-updated', e => updateOrderRow(JSON.parse(e.data)));
+    orderEventSource.addEventListener('order-deleted', e => removeOrderRow(JSON.parse(e.data).orderId));
+    // Sent when the events since our last one are no longer available
+    orderEventSource.addEventListener('reset', () => loadOrderManagementContent());
+    orderEventSource.onerror = () => {
+        // The browser reconnects by itself unless the server refused the stream
+        if (orderEventSource.readyState === EventSource.CLOSED) {
+            console.warn('Order stream closed');
+            orderEventSource = null;
+        }
+    };
+}
+
+function isOrderStreamOpen() {
+    return orderEventSource !== null && orderEventSource.readyState === EventSource.OPEN;
+}
+
+function getOrdersTableBody() {
+    return orderManagementTab ? orderManagementTab.querySelector('.orders-list table tbody') : null;
+}
+
+function addOrderRow(event) {
+    const tbody = getOrdersTableBody();
+    if (!tbody || tbody.querySelector(`tr[data-id="${event.orderId}"]`)) return;
+    
+    // Events are compact; load the order itself for the row
+    fetch(`api/orders/${event.orderId}`)
+        .then(response => response.ok ? response.json() : null)
+        .then(order => {
+            if (!order || tbody.querySelector(`tr[data-id="${order.id}"]`)) return;
+            tbody.insertAdjacentHTML('afterbegin', getOrderRowHtml(order));
+            
+            const activeFilter = orderManagementTab.querySelector('.filter-btn.active');
+            const status = activeFilter ? activeFilter.getAttribute('data-status') : 'all';
+            if (status !== 'all' && order.status !== status) {
+                tbody.firstElementChild.style.display = 'none';
+            }
+        })
+        .catch(error => console.error('Error loading new order:', error));
+}
+
+function updateOrderRow(event) {
+    const tbody = getOrdersTableBody();
+    const row = tbody ? tbody.querySelector(`tr[data-id="${event.orderId}"]`) : null;
+    if (!row) {
+        addOrderRow(event);
+        return;
+    }
+    
+    row.setAttribute('data-status', event.status);
+    const statusBadge = row.querySelector('.order-status');
+    if (statusBadge) {
+        statusBadge.className = `order-status ${event.status.toLowerCase()}`;
+        statusBadge.textContent = event.status;
+    }
+    const statusButton = row.querySelector('.update-status-btn');
+    if (statusButton) {
+        statusButton.setAttribute('data-status', event.status);
+    }
+    const totalCell = row.children[4];
+    if (totalCell && event.totalAmount != null) {
+        totalCell.textContent = `₹${Number(event.totalAmount).toFixed(2)}`;
+    }
+    
+    const activeFilter = orderManagementTab.querySelector('.filter-btn.active');
+    const status = activeFilter ? activeFilter.getAttribute('data-status') : 'all';
+    row.style.display = (status === 'all' || event.status === status) ? '' : 'none';
+}
+
+function removeOrderRow(orderId) {
+    const tbody = getOrdersTableBody();
+    const row = tbody ? tbody.querySelector(`tr[data-id="${orderId}"]`) : null;
+    if (row) {
+        row.remove();
+    }
+}
+
 // Search orders
 function searchOrders(query) {
     if (!query) {
@@ -2013,8 +2107,10 @@ function updateOrderStatus(orderId, currentStatus) {
                         closeModal();
                         alert(`Order #${orderId} status updated to: ${newStatus}`);
                         
-                        // Refresh the order management view
-                        loadOrderManagementContent();
+                        // Refresh the order management view unless the order stream updates it
+                        if (!isOrderStreamOpen()) {
+                            loadOrderManagementContent();
+                        }
                         
                         // Also refresh order details if modal is open
                         const orderDetailsModal = document.getElementById('order-details-modal');
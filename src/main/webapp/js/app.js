@@ -221,6 +221,62 @@ function formatDate(dateString) {
     return new Date(dateString).toLocaleString('en-US', options);
 }
 
+// Generate a unique key so the server can recognise a retried request
+function generateIdempotencyKey() {
+    if (window.crypto && typeof window.crypto.randomUUID === 'function') {
+        return window.crypto.randomUUID();
+    }
+    return Date.now().toString(36) + '-' + Math.random().toString(36).slice(2) + Math.random().toString(36).slice(2);
+}
+
+// Retries of a keyed request after a network error or a response that means it was not applied
+const IDEMPOTENT_RETRIES = 2;
+
+// Whether a response leaves the request's outcome open, so it must be sent again
+// with the same Idempotency-Key: 409 means the first attempt is still running, and
+// a 5xx (or a gateway's 502-504) means it failed or never reached the application.
+// Any other status is a final answer: applied (2xx) or refused (4xx).
+function isRetryableStatus(status) {
+    return status === 409 || status >= 500;
+}
+
+// Send a JSON request with the given Idempotency-Key, retrying with the same key
+// while the outcome is open. Resolves with the last response.
+function sendWithIdempotencyKey(url, method, body, idempotencyKey) {
+    const attempt = retriesLeft => fetch(url, {
+        method: method,
+        headers: {
+            'Content-Type': 'application/json',
+            'Idempotency-Key': idempotencyKey
+        },
+        body: JSON.stringify(body)
+    })
+    .then(response => {
+        if (isRetryableStatus(response.status) && retriesLeft > 0) {
+            return retryIdempotent(attempt, retriesLeft);
+        }
+        return response;
+    }, error => {
+        if (retriesLeft > 0) {
+            return retryIdempotent(attempt, retriesLeft);
+        }
+        throw error;
+    });
+    return attempt(IDEMPOTENT_RETRIES);
+}
+
+function retryIdempotent(attempt, retriesLeft) {
+    const delay = 300 * (IDEMPOTENT_RETRIES - retriesLeft + 1);
+    return new Promise(resolve => setTimeout(resolve, delay)).then(() => attempt(retriesLeft - 1));
+}
+
+// Send a cart add or quantity change. The Idempotency-Key is made once per call
+// and sent with every retry, so a change the server already applied is not
+// applied again when its answer was lost.
+function sendCartChange(method, body) {
+    return sendWithIdempotencyKey('api/cart-service', method, body, generateIdempotencyKey());
+}
+
 // Get user data from session storage
 function getCurrentUser() {
     return JSON.parse(sessionStorage.getItem('user'));
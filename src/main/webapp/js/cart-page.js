@@ -11,6 +11,9 @@ if (typeof window.cartCount === 'undefined') {
     cartCount = window.cartCount;
 }
 
+// Idempotency key of the checkout in progress, kept until the server answers
+var pendingCheckoutKey = null;
+
 // Initialize cart page
 document.addEventListener('DOMContentLoaded', () => {
     console.log('Cart page initializing...');
@@ -368,15 +371,9 @@ function updateItemQuantity(itemId, change) {
     showItemOperation(itemId, change > 0 ? 'item-increasing' : 'item-decreasing');
     
     // Send update to server
-    fetch('api/cart-service', {
-        method: 'PUT',
-        headers: {
-            'Content-Type': 'application/json'
-        },
-        body: JSON.stringify({
-            menuItemId: itemId,
-            quantity: change
-        })
+    sendCartChange('PUT', {
+        menuItemId: itemId,
+        quantity: change
     })
     .then(response => {
         if (!response.ok) {
@@ -625,16 +622,21 @@ function placeOrder() {
             
             console.log('Placing order with items:', orderItems.length);
             
+            // Reuse the key of a checkout that never got an answer, so a retry
+            // returns the original order instead of placing a second one
+            if (!pendingCheckoutKey) {
+                pendingCheckoutKey = generateIdempotencyKey();
+            }
+            
             // Send order to server
-            return fetch('api/orders', {
-                method: 'POST',
-                headers: {
-                    'Content-Type': 'application/json'
-                },
-                body: JSON.stringify(order)
-            });
+            return sendWithIdempotencyKey('api/orders', 'POST', order, pendingCheckoutKey);
         })
         .then(response => {
+            // Only a final answer makes the next checkout a new request; after a 409
+            // or 5xx the order may still be placed, so a retry must send the same key
+            if (!isRetryableStatus(response.status)) {
+                pendingCheckoutKey = null;
+            }
             if (!response.ok) {
                 throw new Error('Failed to place order');
             }
@@ -18,6 +18,9 @@ const orderItemsContainer = document.getElementById('order-items');
 const orderTotal = document.getElementById('order-total');
 const checkoutForm = document.getElementById('checkout-form');
 
+// Idempotency key of the checkout in progress, kept until the server answers
+var pendingCheckoutKey = null;
+
 // Initialize cart
 document.addEventListener('DOMContentLoaded', () => {
     console.log('Cart script initializing...');
@@ -244,15 +247,9 @@ function updateItemQuantity(itemId, change) {
     console.log(`Updating item ${itemId} quantity by ${change}`);
     
     // Send update to server
-    fetch('api/cart-service', {
-        method: 'PUT',
-        headers: {
-            'Content-Type': 'application/json'
-        },
-        body: JSON.stringify({
-            menuItemId: itemId,
-            quantity: change
-        })
+    sendCartChange('PUT', {
+        menuItemId: itemId,
+        quantity: change
     })
     .then(response => {
         if (!response.ok) {
@@ -485,16 +482,21 @@ function placeOrder() {
                 checkoutBtn.textContent = 'Processing...';
             }
             
+            // Reuse the key of a checkout that never got an answer, so a retry
+            // returns the original order instead of placing a second one
+            if (!pendingCheckoutKey) {
+                pendingCheckoutKey = generateIdempotencyKey();
+            }
+            
             // Send order to server
-            return fetch('api/orders', {
-                method: 'POST',
-                headers: {
-                    'Content-Type': 'application/json'
-                },
-                body: JSON.stringify(order)
-            });
+            return sendWithIdempotencyKey('api/orders', 'POST', order, pendingCheckoutKey);
         })
         .then(response => {
+            // Only a final answer makes the next checkout a new request; after a 409
+            // or 5xx the order may still be placed, so a retry must send the same key
+            if (!isRetryableStatus(response.status)) {
+                pendingCheckoutKey = null;
+            }
             if (!response.ok) {
                 throw new Error('Failed to place order');
             }
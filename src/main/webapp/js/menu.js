@@ -6,6 +6,11 @@ const menuFilters = document.querySelector('.menu-filters');
 const menuSearchInput = document.getElementById('menu-search-input');
 const menuSearchBtn = document.getElementById('menu-search-btn');
 
+// Query of the search in flight; menu.html binds the search handlers as well,
+// so the same query can arrive twice
+let activeMenuSearch = null;
+let suggestTimer = null;
+
 // Initialize menu
 document.addEventListener('DOMContentLoaded', () => {
     console.log('Menu script initializing...');
@@ -32,9 +37,44 @@ function setupMenuEventListeners() {
                 searchMenuItems(menuSearchInput.value);
             }
         });
+        
+        setupMenuSuggestions();
     }
 }
 
+// Offer matching dish names while the user types
+function setupMenuSuggestions() {
+    const datalist = document.createElement('datalist');
+    datalist.id = 'menu-search-suggestions';
+    menuSearchInput.parentNode.appendChild(datalist);
+    menuSearchInput.setAttribute('list', datalist.id);
+    menuSearchInput.setAttribute('autocomplete', 'off');
+    
+    menuSearchInput.addEventListener('input', () => {
+        clearTimeout(suggestTimer);
+        const query = menuSearchInput.value.trim();
+        if (query.length < 2) {
+            datalist.innerHTML = '';
+            return;
+        }
+        suggestTimer = setTimeout(() => {
+            fetch(`api/menu/suggest?q=${encodeURIComponent(query)}&limit=8`)
+                .then(response => response.ok ? response.json() : [])
+                .then(suggestions => {
+                    // Drop answers to a query the user has already typed past
+                    if (menuSearchInput.value.trim() !== query) return;
+                    datalist.innerHTML = '';
+                    suggestions.forEach(suggestion => {
+                        const option = document.createElement('option');
+                        option.value = suggestion.name;
+                        datalist.appendChild(option);
+                    });
+                })
+                .catch(error => console.error('Error loading suggestions:', error));
+        }, 150);
+    });
+}
+
 // Load menu items
 function loadMenuItems() {
     console.log('Loading menu items...');
@@ -170,6 +210,7 @@ function createMenuItemElement(item) {
     const menuItem = document.createElement('div');
     menuItem.className = 'menu-item';
     menuItem.setAttribute('data-category', item.category);
+    menuItem.setAttribute('data-id', item.id);
     menuItem.innerHTML = `
         <div class="menu-item-image">
             <img src="${item.imageUrl || 'images/menu/default.jpg'}" alt="${item.name}">
@@ -211,14 +252,57 @@ function filterMenuItems(category) {
     }
 }
 
-// Search menu items
+// Search menu items, showing the best matches first
 function searchMenuItems(query) {
+    query = (query || '').trim();
     if (!query) {
         // If query is empty, show all items
+        activeMenuSearch = null;
         filterMenuItems('all');
         return;
     }
+    if (query === activeMenuSearch) return;
+    activeMenuSearch = query;
+    
+    fetch(`api/menu/search?q=${encodeURIComponent(query)}`)
+        .then(response => {
+            if (!response.ok) {
+                throw new Error('Failed to search menu items');
+            }
+            return response.json();
+        })
+        .then(results => {
+            if (activeMenuSearch !== query) return;
+            showRankedMenuItems(results.map(item => String(item.id)));
+            activeMenuSearch = null;
+        })
+        .catch(error => {
+            console.error('Error searching menu items:', error);
+            if (activeMenuSearch !== query) return;
+            searchMenuItemsLocally(query);
+            activeMenuSearch = null;
+        });
+}
+
+// Show only the ranked items, in rank order
+function showRankedMenuItems(ids) {
+    const cards = {};
+    menuItemsContainer.querySelectorAll('.menu-item').forEach(item => {
+        cards[item.getAttribute('data-id')] = item;
+        item.style.display = 'none';
+    });
     
+    ids.forEach(id => {
+        const card = cards[id];
+        if (card) {
+            card.style.display = 'block';
+            menuItemsContainer.appendChild(card);
+        }
+    });
+}
+
+// Substring search over the items on the page, for when the API is unavailable
+function searchMenuItemsLocally(query) {
     const menuItems = menuItemsContainer.querySelectorAll('.menu-item');
     const lowerCaseQuery = query.toLowerCase();
     
@@ -266,13 +350,7 @@ function addToCart(item) {
         console.log('Sending cart item to server:', cartItem);
         
         // Send to server
-        fetch('api/cart-service', {
-            method: 'POST',
-            headers: {
-                'Content-Type': 'application/json'
-            },
-            body: JSON.stringify(cartItem)
-        })
+        sendCartChange('POST', cartItem)
         .then(response => {
             if (!response.ok) {
                 throw new Error(`Server returned ${response.status}: ${response.statusText}`);
@@ -381,15 +459,9 @@ function setupCartItemButtons() {
 function decreaseCartItemQuantity(itemId) {
     console.log('Decreasing quantity for item:', itemId);
     
-    fetch('api/cart-service', {
-        method: 'PUT',
-        headers: {
-            'Content-Type': 'application/json'
-        },
-        body: JSON.stringify({
-            menuItemId: itemId,
-            quantity: -1
-        })
+    sendCartChange('PUT', {
+        menuItemId: itemId,
+        quantity: -1
     })
     .then(response => {
         if (!response.ok) {
@@ -411,15 +483,9 @@ function decreaseCartItemQuantity(itemId) {
 function increaseCartItemQuantity(itemId) {
     console.log('Increasing quantity for item:', itemId);
     
-    fetch('api/cart-service', {
-        method: 'PUT',
-        headers: {
-            'Content-Type': 'application/json'
-        },
-        body: JSON.stringify({
-            menuItemId: itemId,
-            quantity: 1
-        })
+    sendCartChange('PUT', {
+        menuItemId: itemId,
+        quantity: 1
     })
     .then(response => {
         if (!response.ok) {
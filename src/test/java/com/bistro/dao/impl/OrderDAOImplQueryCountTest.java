@@ -0,0 +1,138 @@
+package com.bistro.dao.impl;
+
+import com.bistro.model.Order;
+import com.bistro.util.CountingDriver;
+import com.bistro.util.DatabaseConfig;
+import com.bistro.util.ReadRouter;
+import com.bistro.util.TestDatabase;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the order listings load orders and their items with a single query,
+ * however many orders there are.
+ * <p>
+ * Runs against an in-memory H2 database (see {@code db/database.properties} in the
+ * test resources) opened through {@link CountingDriver}, which counts every statement
+ * prepared and executed on its connections.
+ */
+public class OrderDAOImplQueryCountTest {
+    private static final int USER_ID = 7;
+    private static final String STATUS = "pending";
+    private static final long DAY_MS = 86_400_000L;
+
+    private final OrderDAOImpl orderDAO = new OrderDAOImpl();
+
+    @BeforeClass
+    public static void createSchema() throws SQLException {
+        TestDatabase.createSchema();
+    }
+
+    @AfterClass
+    public static void closePools() {
+        DatabaseConfig.closeDataSource();
+    }
+
+    @Before
+    public void clearOrders() throws SQLException {
+        // The test replica has no tables; listings routed through ReadRouter must read the primary
+        ReadRouter.setPinnedToPrimary(true);
+        TestDatabase.execute("DELETE FROM orders");
+    }
+
+    @After
+    public void unpin() {
+        ReadRouter.setPinnedToPrimary(false);
+    }
+
+    @Test
+    public void listingsUseOneQueryForOneOrder() throws Exception {
+        insertOrders(1);
+        assertOneQueryPerListing(1);
+    }
+
+    @Test
+    public void listingsUseOneQueryForManyOrders() throws Exception {
+        insertOrders(25);
+        assertOneQueryPerListing(25);
+    }
+
+    private void assertOneQueryPerListing(int orderCount) throws Exception {
+        Date from = new Date(System.currentTimeMillis() - 365 * DAY_MS);
+        Date to = new Date(System.currentTimeMillis() + DAY_MS);
+
+        assertOneQuery("findAll", orderCount, orderDAO::findAll);
+        assertOneQuery("findByUserId", orderCount, () -> orderDAO.findByUserId(USER_ID));
+        assertOneQuery("findByStatus", orderCount, () -> orderDAO.findByStatus(STATUS));
+        assertOneQuery("findByDateRange", orderCount, () -> orderDAO.findByDateRange(from, to));
+        assertOneQuery("getRecentOrders", orderCount, () -> orderDAO.getRecentOrders(orderCount + 10));
+    }
+
+    private void assertOneQuery(String name, int orderCount, Listing listing) throws Exception {
+        CountingDriver.reset();
+
+        List<Order> orders = listing.load();
+
+        assertEquals(name + " orders", orderCount, orders.size());
+        for (Order order : orders) {
+            // Every other order has no items, so the LEFT JOIN's empty rows are covered too
+            assertEquals(name + " items of order " + order.getId(),
+                    order.getId() % 2 == 0 ? 0 : 2, order.getOrderItems().size());
+        }
+        assertEquals(name + " statements prepared", 1, CountingDriver.getPrepared());
+        assertEquals(name + " statements executed", 1, CountingDriver.getExecuted());
+    }
+
+    /**
+     * Insert orders for {@link #USER_ID}, one day apart; odd-numbered orders get two items.
+     */
+    private static void insertOrders(int count) throws SQLException {
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement orderStmt = conn.prepareStatement(
+                     "INSERT INTO orders (user_id, status, total_amount, order_date, payment_method, payment_status) " +
+                     "VALUES (?, ?, ?, ?, 'cash', 'pending')", Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement itemStmt = conn.prepareStatement(
+                     "INSERT INTO order_items (order_id, menu_item_id, menu_item_name, quantity, price) " +
+                     "VALUES (?, ?, 'Item', 1, 9.50)")) {
+            for (int i = 0; i < count; i++) {
+                orderStmt.setInt(1, USER_ID);
+                orderStmt.setString(2, STATUS);
+                orderStmt.setBigDecimal(3, new BigDecimal("19.00"));
+                orderStmt.setTimestamp(4, new Timestamp(System.currentTimeMillis() - i * DAY_MS));
+                orderStmt.executeUpdate();
+
+                int orderId;
+                try (ResultSet keys = orderStmt.getGeneratedKeys()) {
+                    keys.next();
+                    orderId = keys.getInt(1);
+                }
+                if (orderId % 2 == 1) {
+                    for (int menuItemId = 1; menuItemId <= 2; menuItemId++) {
+                        itemStmt.setInt(1, orderId);
+                        itemStmt.setInt(2, menuItemId);
+                        itemStmt.executeUpdate();
+                    }
+                }
+            }
+        }
+    }
+
+    private interface Listing {
+        List<Order> load() throws Exception;
+    }
+}
@@ -0,0 +1,215 @@
+package com.bistro.service;
+
+import com.bistro.model.CartItem;
+import com.bistro.util.CountingDriver;
+import com.bistro.util.DatabaseConfig;
+import com.bistro.util.ReadRouter;
+import com.bistro.util.TestDatabase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link CartEngine} keeps memory and the database in step, on the H2
+ * test database. Each test uses a cart of its own.
+ */
+public class CartEngineTest {
+
+    @BeforeClass
+    public static void createMenu() throws SQLException {
+        TestDatabase.createSchema();
+        // Inserted before anything reads the menu, so the cached catalog has them
+        TestDatabase.execute("INSERT INTO menu_items (id, name, price, category) VALUES " +
+                "(1, 'Soup', 6.50, 'Starters'), (2, 'Steak', 24.00, 'Mains'), (3, 'Tart', 8.00, 'Desserts'), " +
+                "(8, 'Special', 12.00, 'Mains'), (9, 'Special', 12.00, 'Mains')");
+    }
+
+    @Before
+    public void pinToPrimary() {
+        // The test replica has no tables
+        ReadRouter.setPinnedToPrimary(true);
+    }
+
+    @After
+    public void unpin() {
+        CountingDriver.setPrepareHook(null);
+        ReadRouter.setPinnedToPrimary(false);
+    }
+
+    @Test
+    public void changeDuringFlushIsWrittenByNextFlush() throws SQLException {
+        int cartId = newCart();
+        CartEngine.add(cartId, 1, 1);
+
+        // Change the cart after the flush has copied it, while it is writing the copy
+        boolean[] changed = new boolean[1];
+        CountingDriver.setPrepareHook(sql -> {
+            if (!changed[0] && sql.startsWith("DELETE FROM cart_items")) {
+                changed[0] = true;
+                try {
+                    CartEngine.add(cartId, 2, 1);
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        CartEngine.flushDirty();
+        CountingDriver.setPrepareHook(null);
+
+        assertTrue(changed[0]);
+        assertEquals(Collections.singletonList("1x1"), databaseLines(cartId));
+
+        CartEngine.flushDirty();
+
+        assertEquals(Arrays.asList("1x1", "2x1"), databaseLines(cartId));
+        assertEquals(memoryLines(cartId), databaseLines(cartId));
+    }
+
+    @Test
+    public void flushBeforeCheckoutLeavesDatabaseEqualToMemory() throws SQLException {
+        int cartId = newCart();
+        CartEngine.add(cartId, 1, 2);
+        CartEngine.add(cartId, 2, 1);
+        CartEngine.update(cartId, 1, -1);
+        CartEngine.add(cartId, 3, 4);
+        CartEngine.remove(cartId, 2);
+
+        CartEngine.flush(cartId);
+
+        assertEquals(Arrays.asList("1x1", "3x4"), memoryLines(cartId));
+        assertEquals(memoryLines(cartId), databaseLines(cartId));
+    }
+
+    @Test
+    public void evictedCartReloadsWithSameLines() throws SQLException {
+        int cartId = newCart();
+        CartEngine.add(cartId, 2, 3);
+        CartEngine.add(cartId, 1, 1);
+        CartEngine.flush(cartId);
+        List<String> before = memoryLines(cartId);
+
+        CartEngine.forget(Collections.singletonList(cartId));
+        assertFalse(CartEngine.isHeld(cartId));
+
+        assertEquals(before, memoryLines(cartId));
+        assertTrue(CartEngine.isHeld(cartId));
+    }
+
+    @Test
+    public void deletedAndForgottenCartIsNotFoundOnNextMutation() throws SQLException {
+        int cartId = newCart();
+        CartEngine.add(cartId, 1, 1);
+        CartEngine.flush(cartId);
+
+        // What the cart reaper does
+        TestDatabase.execute("DELETE FROM carts WHERE id = " + cartId);
+        CartEngine.forget(Collections.singletonList(cartId));
+
+        assertThrows(CartService.CartNotFoundException.class, () -> CartEngine.add(cartId, 2, 1));
+    }
+
+    @Test
+    public void cartDeletedUnderneathIsNotFoundAfterItsWriteFails() throws SQLException {
+        int cartId = newCart();
+        CartEngine.add(cartId, 1, 1);
+        CartEngine.flush(cartId);
+
+        // Deleted without telling the engine: the change is accepted in memory, but
+        // its write breaks the foreign key and the cart is dropped
+        TestDatabase.execute("DELETE FROM carts WHERE id = " + cartId);
+        CartEngine.add(cartId, 2, 1);
+        CartEngine.flushDirty();
+
+        assertFalse(CartEngine.isHeld(cartId));
+        assertThrows(CartService.CartNotFoundException.class, () -> CartEngine.add(cartId, 2, 1));
+    }
+
+    @Test
+    public void flushDropsOnlyLinesForDeletedMenuItems() throws SQLException {
+        int cartId = newCart();
+        CartEngine.add(cartId, 1, 2);
+        CartEngine.add(cartId, 9, 1);
+        CartEngine.add(cartId, 3, 1);
+
+        // Deleted after the menu was cached, so the engine accepted the line
+        TestDatabase.execute("DELETE FROM menu_items WHERE id = 9");
+        CartEngine.flushDirty();
+        CartEngine.flushDirty();
+
+        assertTrue(CartEngine.isHeld(cartId));
+        assertEquals(Arrays.asList("1x2", "3x1"), memoryLines(cartId));
+        assertEquals(memoryLines(cartId), databaseLines(cartId));
+    }
+
+    @Test
+    public void flushBeforeCheckoutDropsOnlyLinesForDeletedMenuItems() throws SQLException {
+        int cartId = newCart();
+        CartEngine.add(cartId, 8, 1);
+        CartEngine.add(cartId, 2, 1);
+
+        TestDatabase.execute("DELETE FROM menu_items WHERE id = 8");
+        CartEngine.flush(cartId);
+
+        assertEquals(Collections.singletonList("2x1"), memoryLines(cartId));
+        assertEquals(memoryLines(cartId), databaseLines(cartId));
+    }
+
+    private static int newCart() throws SQLException {
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "INSERT INTO carts (session_id) VALUES ('test')", Statement.RETURN_GENERATED_KEYS)) {
+            stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                keys.next();
+                return keys.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * The cart's lines in memory as "menuItemIdxquantity", by menu item ID.
+     */
+    private static List<String> memoryLines(int cartId) throws SQLException {
+        List<String> lines = new ArrayList<>();
+        for (CartItem item : CartEngine.getItems(cartId)) {
+            lines.add(item.getMenuItemId() + "x" + item.getQuantity());
+        }
+        Collections.sort(lines);
+        return lines;
+    }
+
+    /**
+     * The cart's lines in the database, in the same form as {@link #memoryLines}.
+     */
+    private static List<String> databaseLines(int cartId) throws SQLException {
+        List<String> lines = new ArrayList<>();
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT menu_item_id, quantity FROM cart_items WHERE cart_id = ?")) {
+            stmt.setInt(1, cartId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    lines.add(rs.getInt("menu_item_id") + "x" + rs.getInt("quantity"));
+                }
+            }
+        }
+        Collections.sort(lines);
+        return lines;
+    }
+}
@@ -0,0 +1,71 @@
+package com.bistro.service.impl;
+
+import com.bistro.model.Order;
+import com.bistro.model.OrderPage;
+import com.bistro.util.TestDatabase;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Pages through orders with {@link OrderServiceImpl#getOrdersPage}, including orders
+ * whose {@code order_date} is NULL.
+ */
+public class OrderServiceImplPageTest {
+    private final OrderServiceImpl orderService = new OrderServiceImpl();
+
+    @BeforeClass
+    public static void createSchema() throws SQLException {
+        TestDatabase.createSchema();
+    }
+
+    @Before
+    public void insertOrders() throws SQLException {
+        TestDatabase.execute("DELETE FROM orders");
+        // Three dated orders, one sharing its date with another, and three without a date
+        insertOrder(101, "'2024-01-03 12:00:00'");
+        insertOrder(102, "'2024-01-02 12:00:00'");
+        insertOrder(103, "'2024-01-02 12:00:00'");
+        insertOrder(104, "NULL");
+        insertOrder(105, "NULL");
+        insertOrder(106, "NULL");
+    }
+
+    @Test
+    public void pagesIncludeOrdersWithoutDateLast() throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            OrderPage page = orderService.getOrdersPage(null, null, null, cursor, 2);
+            for (Order order : page.getOrders()) {
+                ids.add(order.getId());
+            }
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null && pages < 10);
+
+        assertEquals(Arrays.asList(101, 103, 102, 106, 105, 104), ids);
+    }
+
+    @Test
+    public void cursorWithoutDateRoundTrips() {
+        OrderPage.Cursor cursor = OrderPage.Cursor.decode(new OrderPage.Cursor(null, 42).encode());
+
+        assertNull(cursor.getOrderDate());
+        assertEquals(42, cursor.getId());
+    }
+
+    private static void insertOrder(int id, String orderDate) throws SQLException {
+        TestDatabase.execute("INSERT INTO orders (id, user_id, status, total_amount, order_date, payment_method, payment_status) " +
+                "VALUES (" + id + ", 1, 'PENDING', 10.00, " + orderDate + ", 'cash', 'pending')");
+    }
+}
@@ -0,0 +1,135 @@
+package com.bistro.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Test JDBC driver that opens {@code jdbc:counting:<url>} as {@code jdbc:<url>} and
+ * counts the statements created and executed on the connections it returns.
+ * Registered through {@code META-INF/services/java.sql.Driver} in the test resources.
+ */
+public class CountingDriver implements Driver {
+    private static final String PREFIX = "jdbc:counting:";
+
+    private static final AtomicInteger prepared = new AtomicInteger();
+    private static final AtomicInteger executed = new AtomicInteger();
+    private static volatile Consumer<String> prepareHook;
+
+    static {
+        try {
+            DriverManager.registerDriver(new CountingDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Start counting from zero.
+     */
+    public static void reset() {
+        prepared.set(0);
+        executed.set(0);
+    }
+
+    /**
+     * Run code just before each statement is prepared, with the statement's SQL, for
+     * tests that need something to happen in the middle of a database write.
+     *
+     * @param hook the code to run, or null to stop
+     */
+    public static void setPrepareHook(Consumer<String> hook) {
+        prepareHook = hook;
+    }
+
+    /**
+     * @return the number of statements created since the last {@link #reset()}
+     */
+    public static int getPrepared() {
+        return prepared.get();
+    }
+
+    /**
+     * @return the number of statement executions since the last {@link #reset()}
+     */
+    public static int getExecuted() {
+        return executed.get();
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        Connection conn = DriverManager.getConnection("jdbc:" + url.substring(PREFIX.length()), info);
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    Consumer<String> hook = prepareHook;
+                    if (hook != null && method.getName().startsWith("prepare") && args != null && args[0] instanceof String) {
+                        hook.accept((String) args[0]);
+                    }
+                    Object result = invoke(conn, method, args);
+                    if (result instanceof Statement) {
+                        prepared.incrementAndGet();
+                        Statement stmt = (Statement) result;
+                        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {method.getReturnType()},
+                                (stmtProxy, stmtMethod, stmtArgs) -> {
+                                    if (stmtMethod.getName().startsWith("execute")) {
+                                        executed.incrementAndGet();
+                                    }
+                                    return invoke(stmt, stmtMethod, stmtArgs);
+                                });
+                    }
+                    return result;
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+}
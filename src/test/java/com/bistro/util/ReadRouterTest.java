@@ -0,0 +1,92 @@
+package com.bistro.util;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks which target hedged reads are counted against.
+ * <p>
+ * The test configuration ({@code db/database.properties} in the test resources) runs
+ * two local in-memory H2 instances, a primary and one replica, with a hedge delay of
+ * {@code db.replica.hedgeDelayMs}. A read that is slower than that on the replica is
+ * hedged to the primary.
+ */
+public class ReadRouterTest {
+    private static final String REPLICA_DB = "bistro_replica";
+    private static final long SLOW_READ_MS = 2000;
+
+    @BeforeClass
+    public static void waitForReplica() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!isReplicaHealthy()) {
+            assertTrue("replica never became healthy", System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    public void fastReplicaReadCountsAsReplicaRead() throws SQLException {
+        Map<String, Object> before = ReadRouter.getStats();
+
+        String target = ReadRouter.read(DatabaseConfig.Pool.OLTP, conn -> targetOf(conn));
+
+        assertEquals("replica", target);
+        assertCounted(before, 1, 0, 0);
+    }
+
+    @Test
+    public void hedgeWonByPrimaryCountsAsPrimaryReadOnly() throws SQLException {
+        Map<String, Object> before = ReadRouter.getStats();
+
+        String target = ReadRouter.read(DatabaseConfig.Pool.OLTP, conn -> {
+            String name = targetOf(conn);
+            if (name.equals("replica")) {
+                // Slower than the hedge delay, so the primary answers first
+                sleep(SLOW_READ_MS);
+            }
+            return name;
+        });
+
+        assertEquals("primary", target);
+        assertCounted(before, 0, 1, 1);
+    }
+
+    private static void assertCounted(Map<String, Object> before, long replicaReads, long primaryReads, long hedgedReads) {
+        Map<String, Object> after = ReadRouter.getStats();
+        assertEquals("replicaReads", replicaReads, delta(before, after, "replicaReads"));
+        assertEquals("primaryReads", primaryReads, delta(before, after, "primaryReads"));
+        assertEquals("hedgedReads", hedgedReads, delta(before, after, "hedgedReads"));
+    }
+
+    private static long delta(Map<String, Object> before, Map<String, Object> after, String key) {
+        return (Long) after.get(key) - (Long) before.get(key);
+    }
+
+    private static String targetOf(Connection conn) throws SQLException {
+        return conn.getMetaData().getURL().contains(REPLICA_DB) ? "replica" : "primary";
+    }
+
+    private static void sleep(long millis) throws SQLException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            // Cancelled because the other attempt won
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean isReplicaHealthy() {
+        List<Map<String, Object>> replicas = (List<Map<String, Object>>) ReadRouter.getStats().get("replicas");
+        return !replicas.isEmpty() && Boolean.TRUE.equals(replicas.get(0).get("healthy"));
+    }
+}
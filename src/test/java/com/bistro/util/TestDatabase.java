@@ -0,0 +1,62 @@
+package com.bistro.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Schema of the in-memory H2 test database, following {@code db/bistro_db.sql}
+ * without the foreign keys to tables the tests do not use. Every test class that
+ * needs the tables calls {@link #createSchema()}; the tables are created once per JVM.
+ */
+public final class TestDatabase {
+    private static boolean created;
+
+    private TestDatabase() {
+    }
+
+    public static synchronized void createSchema() throws SQLException {
+        if (created) {
+            return;
+        }
+        try (Connection conn = DatabaseConfig.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE orders (" +
+                    "id INT AUTO_INCREMENT PRIMARY KEY, user_id INT NOT NULL, status VARCHAR(20) NOT NULL, " +
+                    "total_amount DECIMAL(10,2) NOT NULL, order_date TIMESTAMP NULL, delivery_date TIMESTAMP NULL, " +
+                    "delivery_address TEXT, payment_method VARCHAR(50) NOT NULL, payment_status VARCHAR(20) NOT NULL, " +
+                    "special_instructions TEXT)");
+            stmt.execute("CREATE INDEX idx_orders_date_id ON orders (order_date, id)");
+            stmt.execute("CREATE TABLE order_items (" +
+                    "id INT AUTO_INCREMENT PRIMARY KEY, order_id INT NOT NULL, menu_item_id INT NOT NULL, " +
+                    "menu_item_name VARCHAR(100) NOT NULL, quantity INT NOT NULL, price DECIMAL(10,2) NOT NULL, " +
+                    "special_instructions TEXT, " +
+                    "FOREIGN KEY (order_id) REFERENCES orders (id) ON DELETE CASCADE)");
+            stmt.execute("CREATE TABLE menu_items (" +
+                    "id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(100) NOT NULL, description TEXT, " +
+                    "price DECIMAL(10,2) NOT NULL, category VARCHAR(50) NOT NULL, image_url VARCHAR(255), " +
+                    "available TINYINT(1) DEFAULT 1, featured TINYINT(1) DEFAULT 0, preparation_time INT DEFAULT 15)");
+            stmt.execute("CREATE TABLE carts (" +
+                    "id INT AUTO_INCREMENT PRIMARY KEY, user_id INT, session_id VARCHAR(100) NOT NULL, " +
+                    "created_at TIMESTAMP NULL DEFAULT CURRENT_TIMESTAMP, updated_at TIMESTAMP NULL DEFAULT CURRENT_TIMESTAMP)");
+            stmt.execute("CREATE TABLE cart_items (" +
+                    "id INT AUTO_INCREMENT PRIMARY KEY, cart_id INT NOT NULL, menu_item_id INT NOT NULL, " +
+                    "quantity INT NOT NULL DEFAULT 1, created_at TIMESTAMP NULL DEFAULT CURRENT_TIMESTAMP, " +
+                    "updated_at TIMESTAMP NULL DEFAULT CURRENT_TIMESTAMP, " +
+                    "UNIQUE (cart_id, menu_item_id), " +
+                    "FOREIGN KEY (cart_id) REFERENCES carts (id) ON DELETE CASCADE, " +
+                    "FOREIGN KEY (menu_item_id) REFERENCES menu_items (id) ON DELETE CASCADE)");
+        }
+        created = true;
+    }
+
+    /**
+     * Run a statement on the primary, for test data set-up.
+     */
+    public static void execute(String sql) throws SQLException {
+        try (Connection conn = DatabaseConfig.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}